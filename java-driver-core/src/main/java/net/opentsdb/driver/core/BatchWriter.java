@@ -0,0 +1,339 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.model.DataPoint;
+import net.opentsdb.driver.core.model.Point;
+import net.opentsdb.driver.core.model.PutResult;
+
+/**
+ * The batch writer accepts data points from many threads and puts them to opentsdb in batches
+ * through the {@link Session} it is created from. A batch is flushed when it reaches
+ * batchSize data points (see {@link Point#count()}), when its estimated bytes (see
+ * {@link Point#size()}) reach batchBytes, or when its first data point has waited batchLinger
+ * ms, see {@link Configuration}.
+ * <p/>
+ * Full batches are queued to batchThreadCount flush threads, at most batchBufferNum batches can
+ * be queued, after that {@link #write(Point)} blocks until a flush thread catches up.
+ * Failed batches are logged and counted by {@link #getFailedCount()}, the data points the
+ * session spooled or handed to its dead letter handler are counted by {@link #getSpooledCount()}
+ * and {@link #getRejectedCount()}.
+ */
+public class BatchWriter implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchWriter.class);
+    private static final AtomicInteger WRITER_ID = new AtomicInteger();
+
+    private final Session session;
+    private final int batchSize;
+    private final long batchBytes;
+    private final long lingerNanos;
+    private final boolean sync;
+
+    private final BlockingQueue<List<Point>> batches;
+    private final ExecutorService flushPool;
+    private final ScheduledExecutorService lingerTimer;
+
+    private final Object bufferLock = new Object();
+    private List<Point> buffer;
+    private int bufferCount;
+    private long bufferBytes;
+    private long bufferStart;
+
+    /** batches which are queued or being put */
+    private final AtomicInteger unfinished = new AtomicInteger();
+    private final Object finishLock = new Object();
+    private volatile boolean closed = false;
+
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong flushedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong spooledCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    /**
+     * Constructs a new BatchWriter instance, the batch options are got from the configuration.
+     *
+     * @param session the session to put the batches through
+     * @param configuration the configuration of the batch writer
+     */
+    public BatchWriter(Session session, Configuration configuration) {
+        this.session = session;
+        this.batchSize = configuration.getBatchSize();
+        this.batchBytes = configuration.getBatchBytes();
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getBatchLinger());
+        this.sync = configuration.getSyncTimeout() > 0;
+        this.batches = new ArrayBlockingQueue<>(configuration.getBatchBufferNum());
+        this.buffer = new ArrayList<>(batchSize);
+
+        int id = WRITER_ID.incrementAndGet();
+        int threadCount = configuration.getBatchThreadCount();
+        this.flushPool = Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder()
+                .setNameFormat("BatchWriter-" + id + "-flush-%d").setDaemon(true).build());
+        for (int i = 0; i < threadCount; i++) {
+            flushPool.execute(this::runFlusher);
+        }
+
+        long period = Math.max(1, configuration.getBatchLinger() / 2);
+        this.lingerTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("BatchWriter-" + id + "-linger").setDaemon(true).build());
+        this.lingerTimer.scheduleWithFixedDelay(this::checkLinger, period, period,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add the data point to the current batch, this blocks only when batchBufferNum full batches
+     * are waiting for being flushed; any {@link Point} can be written, like {@link DataPoint},
+     * {@link net.opentsdb.driver.core.model.PrimitiveDataPoint} or a whole
+     * {@link net.opentsdb.driver.core.model.DataPointBatch}.
+     *
+     * @param dataPoint the data point to put into opentsdb
+     */
+    public void write(Point dataPoint) throws InterruptedException {
+        List<Point> full = null;
+        synchronized (bufferLock) {
+            // under the lock, so no data point is added after the last flush of close
+            if (closed) {
+                throw new IllegalStateException("The batch writer has been closed.");
+            }
+            if (buffer.isEmpty()) {
+                bufferStart = System.nanoTime();
+            }
+            buffer.add(dataPoint);
+            bufferCount += dataPoint.count();
+            bufferBytes += dataPoint.size();
+            if (bufferCount >= batchSize || bufferBytes >= batchBytes) {
+                full = swapBuffer();
+            }
+        }
+        writtenCount.addAndGet(dataPoint.count());
+        if (full != null) {
+            enqueue(full);
+        }
+    }
+
+    /**
+     * Add all the data points to the current batch, see {@link #write(Point)}.
+     *
+     * @param dataPoints the data points to put into opentsdb
+     */
+    public void write(Collection<? extends Point> dataPoints) throws InterruptedException {
+        for (Point dataPoint : dataPoints) {
+            write(dataPoint);
+        }
+    }
+
+    /**
+     * Flush the current batch and wait until all the queued batches have been put.
+     */
+    public void flush() throws InterruptedException {
+        List<Point> rest;
+        synchronized (bufferLock) {
+            rest = swapBuffer();
+        }
+        if (!rest.isEmpty()) {
+            enqueue(rest);
+        }
+        synchronized (finishLock) {
+            while (unfinished.get() > 0) {
+                finishLock.wait();
+            }
+        }
+    }
+
+    /**
+     * Return the number of data points written into this batch writer.
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * Return the number of data points successfully put into opentsdb.
+     */
+    public long getFlushedCount() {
+        return flushedCount.get();
+    }
+
+    /**
+     * Return the number of data points whose batch failed to be put.
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Return the number of data points the session spooled to be put later, because opentsdb
+     * could not be reached, see {@link PutResult#getSpooled()}.
+     */
+    public long getSpooledCount() {
+        return spooledCount.get();
+    }
+
+    /**
+     * Return the number of data points opentsdb refused which were handed to the dead letter
+     * handler of the session, see {@link PutResult#getFailed()}.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Return the number of batches which have been put.
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Flush all the buffered data points and stop the flush threads, the session is not closed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (bufferLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        // a linger check which already took the buffer is let finish queueing it
+        lingerTimer.shutdown();
+        try {
+            lingerTimer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing the batch writer.");
+        } finally {
+            flushPool.shutdown();
+        }
+    }
+
+    /**
+     * Take the buffered data points under the bufferLock; a non empty batch is counted unfinished
+     * at once, so a flush or close does not miss it before it is queued.
+     */
+    private List<Point> swapBuffer() {
+        List<Point> full = buffer;
+        if (full.isEmpty()) {
+            return full;
+        }
+        unfinished.incrementAndGet();
+        buffer = new ArrayList<>(batchSize);
+        bufferCount = 0;
+        bufferBytes = 0;
+        return full;
+    }
+
+    private void enqueue(List<Point> batch) throws InterruptedException {
+        try {
+            batches.put(batch);
+        } catch (InterruptedException e) {
+            failedCount.addAndGet(count(batch));
+            LOG.error("Batch writer dropped " + count(batch)
+                    + " data points, interrupted while queueing them");
+            finish();
+            throw e;
+        }
+    }
+
+    private void checkLinger() {
+        List<Point> full = null;
+        synchronized (bufferLock) {
+            if (!buffer.isEmpty() && System.nanoTime() - bufferStart >= lingerNanos) {
+                full = swapBuffer();
+            }
+        }
+        if (full != null) {
+            try {
+                enqueue(full);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            List<Point> batch;
+            try {
+                batch = batches.poll(TimeUnit.NANOSECONDS.toMillis(lingerNanos) + 1,
+                        TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (batch == null) {
+                if (closed && unfinished.get() == 0) {
+                    return;
+                }
+                continue;
+            }
+            putBatch(batch);
+        }
+    }
+
+    private void putBatch(List<Point> batch) {
+        try {
+            PutResult putResult = session.put(batch, sync, true);
+            flushedCount.addAndGet(putResult.getSuccess());
+            spooledCount.addAndGet(putResult.getSpooled());
+            rejectedCount.addAndGet(putResult.getFailed());
+        } catch (Exception e) {
+            failedCount.addAndGet(count(batch));
+            LOG.error("Batch writer failed to put " + count(batch)
+                    + " data points, detailed information : " + e.toString());
+        } finally {
+            batchCount.incrementAndGet();
+            finish();
+        }
+    }
+
+    private static long count(List<Point> batch) {
+        long count = 0;
+        for (Point point : batch) {
+            count += point.count();
+        }
+        return count;
+    }
+
+    private void finish() {
+        if (unfinished.decrementAndGet() == 0) {
+            synchronized (finishLock) {
+                finishLock.notifyAll();
+            }
+        }
+    }
+}
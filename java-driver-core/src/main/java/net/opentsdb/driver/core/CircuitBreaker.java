@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import net.opentsdb.driver.core.conf.Configuration;
+
+/**
+ * Tracks the outcome of the last circuitBreakerWindow requests of a node; when the rate of the
+ * failed and slow ones reaches circuitBreakerFailureRate the node is ejected. An ejected node is
+ * probed with the version request after circuitBreakerOpenTime ms, longer every time it is
+ * ejected again, and ramped up once it answers, see {@link NodeState}.
+ */
+final class CircuitBreaker {
+    /** the share of the requests a node gets when it starts to recover */
+    private static final double RAMP_UP_START = 0.1;
+    /** the max times the open time is multiplied for a node ejected again and again */
+    private static final int MAX_OPEN_TIME_FACTOR = 8;
+
+    private final boolean[] failures;
+    private final int failureThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final long rampUpNanos;
+    private int next;
+    private int count;
+    private int failureCount;
+    private volatile NodeState state = NodeState.UP;
+    private long stateTime;
+    private int ejections;
+
+    CircuitBreaker(Configuration configuration) {
+        this.failures = new boolean[configuration.getCircuitBreakerWindow()];
+        this.failureThreshold = Math.max(1,
+                (int) Math.ceil(failures.length * configuration.getCircuitBreakerFailureRate()));
+        this.slowCallNanos =
+                TimeUnit.MILLISECONDS.toNanos(configuration.getCircuitBreakerSlowCallTime());
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getCircuitBreakerOpenTime());
+        this.rampUpNanos =
+                TimeUnit.MILLISECONDS.toNanos(configuration.getCircuitBreakerRampUpTime());
+    }
+
+    NodeState getState() {
+        return state;
+    }
+
+    /**
+     * Count the outcome of a request, a successful one slower than circuitBreakerSlowCallTime
+     * counts as failed.
+     *
+     * @return true when the node is ejected by this request
+     */
+    synchronized boolean record(boolean success, long latency, long now) {
+        if (state == NodeState.EJECTED) {
+            // the requests sent while all the nodes are ejected tell nothing new
+            return false;
+        }
+        boolean failure = !success || (slowCallNanos > 0 && latency >= slowCallNanos);
+        if (count == failures.length) {
+            if (failures[next]) {
+                failureCount--;
+            }
+        } else {
+            count++;
+        }
+        failures[next] = failure;
+        if (failure) {
+            failureCount++;
+        }
+        next = (next + 1) % failures.length;
+        if (failure && count == failures.length && failureCount >= failureThreshold) {
+            eject(now);
+            return true;
+        }
+        if (state == NodeState.RECOVERING && now - stateTime >= rampUpNanos) {
+            state = NodeState.UP;
+            ejections = 0;
+        }
+        return false;
+    }
+
+    private void eject(long now) {
+        state = NodeState.EJECTED;
+        stateTime = now;
+        ejections = Math.min(ejections + 1, MAX_OPEN_TIME_FACTOR);
+        reset();
+    }
+
+    private void reset() {
+        next = 0;
+        count = 0;
+        failureCount = 0;
+    }
+
+    /**
+     * Returns if the request may be sent to the node; a recovering node takes a growing share
+     * of the requests.
+     */
+    boolean allowRequest(long now) {
+        NodeState current = state;
+        if (current == NodeState.UP) {
+            return true;
+        } else if (current == NodeState.EJECTED) {
+            return false;
+        }
+        double share;
+        synchronized (this) {
+            if (state != NodeState.RECOVERING) {
+                return state == NodeState.UP;
+            }
+            long elapsed = now - stateTime;
+            if (elapsed >= rampUpNanos) {
+                state = NodeState.UP;
+                ejections = 0;
+                return true;
+            }
+            share = RAMP_UP_START + (1 - RAMP_UP_START) * elapsed / rampUpNanos;
+        }
+        return ThreadLocalRandom.current().nextDouble() < share;
+    }
+
+    /**
+     * Returns if the ejected node is due for a version probe.
+     */
+    synchronized boolean isProbeDue(long now) {
+        return state == NodeState.EJECTED && now - stateTime >= openNanos * ejections;
+    }
+
+    /**
+     * Count the outcome of a version probe; an ejected node which answered starts to recover,
+     * otherwise it waits longer for the next probe.
+     */
+    synchronized void probed(boolean success, long latency, long now) {
+        if (state != NodeState.EJECTED) {
+            record(success, latency, now);
+        } else if (success) {
+            state = NodeState.RECOVERING;
+            stateTime = now;
+            reset();
+        } else {
+            stateTime = now;
+            ejections = Math.min(ejections + 1, MAX_OPEN_TIME_FACTOR);
+        }
+    }
+}
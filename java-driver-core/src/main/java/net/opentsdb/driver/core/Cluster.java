@@ -2,23 +2,38 @@ package net.opentsdb.driver.core;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import org.apache.http.nio.reactor.IOReactorException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.http.BufferPool;
+import net.opentsdb.driver.core.http.HttpAsyncClient;
 
 /**
- * We got a Session which contains the single http client 
+ * We got a Session which contains the single http client; a cluster of more contact points,
+ * like {@code Cluster.builder().addContactPoints("tsd1", "tsd2", "tsd3")}, spreads the requests
+ * of its sessions across the opentsdb instances by the
+ * {@link net.opentsdb.driver.core.policies.LoadBalancingPolicy} of the configuration. All the
+ * sessions of a cluster share one io reactor, one http connection pool, one buffer pool and the
+ * query results cache, a session holds only its own batches, spool and node stats.
  * */
 public class Cluster implements Closeable {
     private static final Logger LOG = LoggerFactory.getLogger(Cluster.class);
-    private final String host;
-    private final int port;
+    private final List<InetSocketAddress> contactPoints;
     private final Configuration configuration;
     private BlockingQueue<Session> sessions = new LinkedBlockingQueue<>();
     private Session masterSession;
+    private final BufferPool bufferPool =
+            new BufferPool(TConstants.BUFFER_CHUNK_SIZE, TConstants.BUFFER_POOL_CHUNKS);
+    private final HttpAsyncClient httpAsyncClient;
+    /** the query results cache of all the sessions, null when it is disabled */
+    private final QueryCache queryCache;
 
     /**
      * Constructs a new Cluster instance.
@@ -32,14 +47,28 @@ public class Cluster implements Closeable {
      * @param configuration the configuration for the new cluster.
      */
     public Cluster(String host, int port, Configuration configuration) {
-        this.host = host;
-        this.port = port;
+        this(Collections.singletonList(InetSocketAddress.createUnresolved(host, port)),
+                configuration);
+    }
+
+    /**
+     * Constructs a new Cluster instance of more opentsdb instances.
+     *
+     * @param contactPoints the opentsdb instances of the cluster, not resolved until connected.
+     * @param configuration the configuration for the new cluster.
+     */
+    public Cluster(List<InetSocketAddress> contactPoints, Configuration configuration) {
+        this.contactPoints = Collections.unmodifiableList(new ArrayList<>(contactPoints));
         this.configuration = configuration;
-        this.masterSession = new Session(host, port, configuration);
+        this.httpAsyncClient = new HttpAsyncClient(configuration, bufferPool, Scheduler.TIMER);
+        this.queryCache =
+                configuration.getQueryCacheMaxBytes() > 0 ? new QueryCache(configuration) : null;
+        this.masterSession = new Session(this.contactPoints, configuration, httpAsyncClient,
+                bufferPool, queryCache);
     }
 
     public Cluster(Builder builder) {
-        this(builder.getHost(), builder.getPort(), builder.getConfiguration());
+        this(builder.getContactPoints(), builder.getConfiguration());
     }
 
     /**
@@ -59,6 +88,9 @@ public class Cluster implements Closeable {
         private String host;
         private int port = TConstants.DEFAULT_PORT;
         private Configuration configuration;
+        /** the hosts added without a port get the port of the builder, it is kept as -1 */
+        private final List<String> contactHosts = new ArrayList<>();
+        private final List<Integer> contactPorts = new ArrayList<>();
 
 
         /**
@@ -94,6 +126,48 @@ public class Cluster implements Closeable {
             return this;
         }
 
+        /**
+         * Add an opentsdb instance to the contact points of the cluster, it gets the port of
+         * {@link #withPort(int)}; the host of {@link #withAddress(String)} is a contact point too.
+         * 
+         * @param host the String of host
+         * @return this Builder
+         */
+        public Builder addContactPoint(String host) {
+            return addContactPoint(host, -1);
+        }
+
+        /**
+         * Add an opentsdb instance listening on its own port to the contact points of the
+         * cluster.
+         * 
+         * @param host the String of host
+         * @param port the port of the host
+         * @return this Builder
+         */
+        public Builder addContactPoint(String host, int port) {
+            if (host == null || host.isEmpty()) {
+                throw new IllegalArgumentException("the host of a contact point is empty");
+            }
+            contactHosts.add(host);
+            contactPorts.add(port);
+            return this;
+        }
+
+        /**
+         * Add the opentsdb instances to the contact points of the cluster, they get the port of
+         * {@link #withPort(int)}.
+         * 
+         * @param hosts the hosts
+         * @return this Builder
+         */
+        public Builder addContactPoints(String... hosts) {
+            for (String host : hosts) {
+                addContactPoint(host);
+            }
+            return this;
+        }
+
         public String getHost() {
             return host;
         }
@@ -106,6 +180,22 @@ public class Cluster implements Closeable {
             return configuration;
         }
 
+        /**
+         * Returns the contact points of the cluster, the address first and then the added ones.
+         */
+        public List<InetSocketAddress> getContactPoints() {
+            List<InetSocketAddress> contactPoints = new ArrayList<>();
+            if (host != null) {
+                contactPoints.add(InetSocketAddress.createUnresolved(host, port));
+            }
+            for (int i = 0; i < contactHosts.size(); i++) {
+                int contactPort = contactPorts.get(i);
+                contactPoints.add(InetSocketAddress.createUnresolved(contactHosts.get(i),
+                        contactPort > 0 ? contactPort : port));
+            }
+            return contactPoints;
+        }
+
         public Cluster build() {
             return new Cluster(this);
         }
@@ -132,12 +222,26 @@ public class Cluster implements Closeable {
      * @throws IOReactorException 
      * */
     public Session newSession() throws IOReactorException {
-        Session session = new Session(host, port, configuration);
+        Session session = new Session(contactPoints, configuration, httpAsyncClient, bufferPool,
+                queryCache);
         session.start();
         sessions.add(session);
         return session;
     }
     
+    /**
+     * Create a new {@link BatchWriter} on a new Session of this cluster; the batches are put
+     * through the connection pool all the sessions of the cluster share, so a busy batch writer
+     * competes with them for the connections of each node, up to maxRoute. The batch writer is
+     * flushed and closed when this cluster is closed.
+     * 
+     * @return the new batch writer
+     * @throws IOReactorException
+     */
+    public BatchWriter newBatchWriter() throws IOReactorException {
+        return newSession().newBatchWriter();
+    }
+
     /**
      * Close the sepcified session
      * 
@@ -151,6 +255,13 @@ public class Cluster implements Closeable {
         }
     }
 
+    /**
+     * return the opentsdb instances of this cluster
+     * */
+    public List<InetSocketAddress> getContactPoints() {
+        return contactPoints;
+    }
+
     /**
      * return all new sessions
      * */
@@ -159,7 +270,7 @@ public class Cluster implements Closeable {
     }
     
     /**
-     * close all session
+     * close all session, then the shared connections
      * */
     @Override
     public void close() throws IOException {
@@ -173,6 +284,7 @@ public class Cluster implements Closeable {
             }
         }
         sessions.clear();
+        httpAsyncClient.close();
         LOG.info("The cluster have been successfully closed .");
     }
 }
@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import java.util.List;
+import net.opentsdb.driver.core.model.Errors;
+import net.opentsdb.driver.core.model.Point;
+
+/**
+ * Receives the data points opentsdb rejected for good in a put, with the errors of them, so they
+ * can be logged or kept somewhere instead of being retried; see
+ * {@link net.opentsdb.driver.core.conf.Configuration.Builder#deadLetterHandler(DeadLetterHandler)}.
+ * It is called from the thread completing the put, it should not block.
+ */
+public interface DeadLetterHandler {
+
+    /**
+     * Handle the rejected data points.
+     *
+     * @param dataPoints the rejected data points
+     * @param errors the errors of the data points, in the same order
+     */
+    void onRejected(List<Point> dataPoints, List<Errors> errors);
+}
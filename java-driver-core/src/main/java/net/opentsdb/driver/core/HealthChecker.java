@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import net.opentsdb.driver.core.http.HttpApiEndpoint;
+import net.opentsdb.driver.core.http.HttpClient;
+
+/**
+ * Sends the version probes of the nodes of a session, see {@link Node#startProbe}; the probes are
+ * asynchronous, so the {@link Scheduler} thread serves the health checks of all the sessions.
+ */
+final class HealthChecker implements Runnable, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(HealthChecker.class);
+
+    private final List<Node> nodes;
+    private ScheduledFuture<?> future;
+
+    HealthChecker(List<Node> nodes) {
+        this.nodes = nodes;
+    }
+
+    void start() {
+        future = Scheduler.TIMER.scheduleWithFixedDelay(this, TConstants.HEALTH_CHECK_TICK,
+                TConstants.HEALTH_CHECK_TICK, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run() {
+        long now = System.nanoTime();
+        for (Node node : nodes) {
+            if (node.isRunning() && node.startProbe(now)) {
+                try {
+                    probe(node);
+                } catch (RuntimeException e) {
+                    LOG.warn("Version probe of node " + node + " failed : " + e);
+                    node.probed(now, false);
+                }
+            }
+        }
+    }
+
+    private void probe(Node node) {
+        HttpClient httpClient = node.getHttpClient();
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse> request = httpClient.versionAsync(HttpApiEndpoint.VERSION);
+        request.whenComplete((response, e) -> {
+            boolean success = false;
+            if (e == null) {
+                success = response.getStatusLine().getStatusCode() == TConstants.SUCCESS_CODE;
+                EntityUtils.consumeQuietly(response.getEntity());
+            }
+            node.probed(start, success);
+        });
+    }
+
+    @Override
+    public void close() {
+        if (future != null) {
+            future.cancel(false);
+            future = null;
+        }
+    }
+}
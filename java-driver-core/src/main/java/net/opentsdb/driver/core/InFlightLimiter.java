@@ -0,0 +1,358 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.exceptions.BackpressureException;
+import net.opentsdb.driver.core.policies.BackpressurePolicy;
+
+/**
+ * Bounds the requests a {@link Session} has in flight by number and by request body bytes. A
+ * request takes a {@link Permit} before it is sent and gives it back by {@link #release(Permit)}
+ * when it is done, retries included. The requests over the limit wait in a pending queue of
+ * maxPendingRequests and are granted in order; when the queue is full the
+ * {@link BackpressurePolicy} decides, see {@link Configuration}.
+ * <p/>
+ * A request larger than maxInFlightBytes is let through when nothing else is in flight, so it
+ * does not wait forever. The limiter is disabled when neither limit is set.
+ */
+public class InFlightLimiter {
+    private static final Permit NO_LIMIT = new Permit(0);
+
+    private final int maxRequests;
+    private final long maxBytes;
+    private final int maxPending;
+    private final BackpressurePolicy policy;
+    private final long timeoutNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition space = lock.newCondition();
+    private final ArrayDeque<Waiter> pending = new ArrayDeque<>();
+    private int requests;
+    private long bytes;
+
+    private final AtomicLong blockedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong droppedOldestCount = new AtomicLong();
+    private final AtomicLong droppedNewestCount = new AtomicLong();
+    private final AtomicLong failFastCount = new AtomicLong();
+
+    /**
+     * The right of one request to be in flight.
+     */
+    public static final class Permit {
+        private final long bytes;
+        private boolean released;
+
+        Permit(long bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class Waiter {
+        final Permit permit;
+        final CompletableFuture<Permit> future = new CompletableFuture<>();
+
+        Waiter(Permit permit) {
+            this.permit = permit;
+        }
+    }
+
+    public InFlightLimiter(Configuration configuration) {
+        this.maxRequests = configuration.getMaxInFlightRequests();
+        this.maxBytes = configuration.getMaxInFlightBytes();
+        this.maxPending = configuration.getMaxPendingRequests();
+        this.policy = configuration.getBackpressurePolicy();
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getBackpressureTimeout());
+    }
+
+    public boolean isEnabled() {
+        return maxRequests > 0 || maxBytes > 0;
+    }
+
+    /**
+     * Take a permit for a request of the bytes. The returned future is completed when the request
+     * may be sent, at once when there is room, and fails with {@link BackpressureException} when
+     * the request is rejected or dropped. With {@link BackpressurePolicy#BLOCK} this blocks the
+     * caller while the pending queue is full.
+     *
+     * @param size the bytes of the request body
+     * @return the future of the permit
+     */
+    public CompletableFuture<Permit> acquire(long size) {
+        return acquire(size, true);
+    }
+
+    /**
+     * Take a permit like {@link #acquire(long)} but never block the caller: with
+     * {@link BackpressurePolicy#BLOCK} the request is queued even when the pending queue is full.
+     * Meant for the resends of the requests already let in, from the io reactor thread, which
+     * must not wait for the responses it completes itself.
+     *
+     * @param size the bytes of the request body
+     * @return the future of the permit
+     */
+    public CompletableFuture<Permit> acquireQueued(long size) {
+        return acquire(size, false);
+    }
+
+    private CompletableFuture<Permit> acquire(long size, boolean block) {
+        if (!isEnabled()) {
+            return CompletableFuture.completedFuture(NO_LIMIT);
+        }
+        Permit permit = new Permit(size);
+        Waiter dropped = null;
+        Waiter waiter;
+        lock.lock();
+        try {
+            if (pending.isEmpty() && hasRoom(size)) {
+                take(size);
+                return CompletableFuture.completedFuture(permit);
+            }
+            if (policy == BackpressurePolicy.FAIL_FAST) {
+                failFastCount.incrementAndGet();
+                return rejected(policy, "too many requests in flight");
+            }
+            if (pending.size() >= maxPending) {
+                switch (policy) {
+                    case BLOCK:
+                        if (!block) {
+                            break;
+                        }
+                        blockedCount.incrementAndGet();
+                        long nanos = timeoutNanos;
+                        while (pending.size() >= maxPending
+                                && !(pending.isEmpty() && hasRoom(size))) {
+                            if (nanos <= 0) {
+                                timeoutCount.incrementAndGet();
+                                return rejected(policy, "timeout waiting for room in flight");
+                            }
+                            try {
+                                nanos = space.awaitNanos(nanos);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                return rejected(policy, "interrupted waiting for room in flight");
+                            }
+                        }
+                        if (pending.isEmpty() && hasRoom(size)) {
+                            take(size);
+                            return CompletableFuture.completedFuture(permit);
+                        }
+                        break;
+                    case DROP_OLDEST:
+                        dropped = pending.pollFirst();
+                        if (dropped == null) {
+                            droppedNewestCount.incrementAndGet();
+                            return rejected(policy, "no pending request to drop");
+                        }
+                        droppedOldestCount.incrementAndGet();
+                        break;
+                    default:
+                        droppedNewestCount.incrementAndGet();
+                        return rejected(policy, "the pending requests are full");
+                }
+            }
+            waiter = new Waiter(permit);
+            pending.addLast(waiter);
+        } finally {
+            lock.unlock();
+        }
+        if (dropped != null) {
+            dropped.future.completeExceptionally(
+                    new BackpressureException(policy, "dropped for a newer request"));
+        }
+        return waiter.future;
+    }
+
+    /**
+     * Take a permit and wait for it, see {@link #acquire(long)}. With
+     * {@link BackpressurePolicy#BLOCK} the caller waits at most backpressureTimeout ms in all,
+     * queued or not, then the request fails with {@link BackpressureException}.
+     */
+    public Permit acquireSync(long size) throws BackpressureException, InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        CompletableFuture<Permit> future = acquire(size);
+        try {
+            if (policy != BackpressurePolicy.BLOCK || future.isDone()) {
+                return future.get();
+            }
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            cancel(future);
+            timeoutCount.incrementAndGet();
+            throw new BackpressureException(policy, "timeout waiting for room in flight");
+        } catch (InterruptedException e) {
+            cancel(future);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BackpressureException) {
+                throw (BackpressureException) e.getCause();
+            }
+            throw new BackpressureException(policy, e.getMessage());
+        } catch (CancellationException e) {
+            throw new BackpressureException(policy, "cancelled waiting for room in flight");
+        }
+    }
+
+    /**
+     * Cancel the waiting of the future, or give the permit back when it was granted meanwhile.
+     */
+    private void cancel(CompletableFuture<Permit> future) {
+        if (!future.cancel(false) && !future.isCompletedExceptionally()) {
+            release(future.join());
+        }
+    }
+
+    /**
+     * Give the permit back and grant the pending requests which fit now, a permit is released
+     * once whatever times this is called.
+     */
+    public void release(Permit permit) {
+        if (permit == null || permit == NO_LIMIT) {
+            return;
+        }
+        List<Waiter> granted = null;
+        lock.lock();
+        try {
+            if (permit.released) {
+                return;
+            }
+            permit.released = true;
+            requests--;
+            bytes -= permit.bytes;
+            while (!pending.isEmpty() && hasRoom(pending.peekFirst().permit.bytes)) {
+                Waiter waiter = pending.pollFirst();
+                take(waiter.permit.bytes);
+                if (granted == null) {
+                    granted = new ArrayList<>();
+                }
+                granted.add(waiter);
+            }
+            space.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (granted != null) {
+            for (Waiter waiter : granted) {
+                // the waiter was cancelled, give its permit back
+                if (!waiter.future.complete(waiter.permit)) {
+                    release(waiter.permit);
+                }
+            }
+        }
+    }
+
+    private boolean hasRoom(long size) {
+        return (maxRequests <= 0 || requests < maxRequests)
+                && (maxBytes <= 0 || bytes + size <= maxBytes || requests == 0);
+    }
+
+    private void take(long size) {
+        requests++;
+        bytes += size;
+    }
+
+    private static CompletableFuture<Permit> rejected(BackpressurePolicy policy, String errmsg) {
+        CompletableFuture<Permit> future = new CompletableFuture<>();
+        future.completeExceptionally(new BackpressureException(policy, errmsg));
+        return future;
+    }
+
+    public BackpressurePolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Return the number of requests in flight
+     */
+    public int getInFlightRequests() {
+        lock.lock();
+        try {
+            return requests;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return the request body bytes in flight
+     */
+    public long getInFlightBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return the number of requests waiting for a permit
+     */
+    public int getPendingRequests() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return how many times a caller blocked on the full pending queue, BLOCK policy
+     */
+    public long getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    /**
+     * Return how many blocked callers timed out, BLOCK policy
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Return how many pending requests were dropped for newer ones, DROP_OLDEST policy
+     */
+    public long getDroppedOldestCount() {
+        return droppedOldestCount.get();
+    }
+
+    /**
+     * Return how many new requests were dropped, DROP_NEWEST policy
+     */
+    public long getDroppedNewestCount() {
+        return droppedNewestCount.get();
+    }
+
+    /**
+     * Return how many requests were rejected at once, FAIL_FAST policy
+     */
+    public long getFailFastCount() {
+        return failFastCount.get();
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.http.HttpAsyncClient;
+import net.opentsdb.driver.core.http.HttpClient;
+
+/**
+ * One opentsdb instance a {@link Session} sends its requests to, through the http client and the
+ * connection pool the session shares with the other sessions of its cluster, where the route of
+ * the node holds its connections; it counts the requests in flight and keeps the moving average
+ * of their latency, which the {@link net.opentsdb.driver.core.policies.LoadBalancingPolicy}
+ * chooses the node of a request by.
+ * <p/>
+ * With circuitBreaker enabled a node whose requests fail or are slow is ejected, and probed with
+ * the version request till it answers again, see {@link NodeState}.
+ */
+public class Node {
+    private static final Logger LOG = LoggerFactory.getLogger(Node.class);
+
+    private final String host;
+    private final int port;
+    private final Configuration configuration;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicReference<Latency> latency = new AtomicReference<>(new Latency(0, 0));
+    private final CircuitBreaker circuitBreaker;
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private final AtomicBoolean opening = new AtomicBoolean();
+    private volatile long lastProbe = System.nanoTime();
+    private volatile HttpClient httpClient;
+
+    /**
+     * The moving average of the latency, ns, at the time it was updated; 0 until the first
+     * response.
+     */
+    private static final class Latency {
+        final double average;
+        final long time;
+
+        Latency(double average, long time) {
+            this.average = average;
+            this.time = time;
+        }
+
+        /**
+         * The average decays towards 0 while no response comes, so a node which was slow once is
+         * tried again later instead of being avoided for ever.
+         */
+        double averageAt(long now) {
+            if (average == 0) {
+                return 0;
+            }
+            return average * Math.exp(-(double) Math.max(now - time, 0) / LATENCY_DECAY_NANOS);
+        }
+    }
+
+    private static final double LATENCY_DECAY_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(TConstants.LATENCY_EWMA_DECAY);
+
+    Node(String host, int port, Configuration configuration) {
+        this.host = host;
+        this.port = port;
+        this.configuration = configuration;
+        this.circuitBreaker = new CircuitBreaker(configuration);
+    }
+
+    /**
+     * start the http client of this node on the io reactor and connection pool of the session,
+     * which are shared by all its nodes and all the sessions of a cluster
+     * 
+     * @param asyncClient the shared client, opened if it is not
+     */
+    void start(HttpAsyncClient asyncClient) throws IOReactorException {
+        if (httpClient == null || !httpClient.isRunning()) {
+            httpClient = new HttpClient.Builder().setHost(host).setPort(port)
+                    .setConf(configuration).client(asyncClient).build();
+        }
+    }
+
+    HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Open idle connections to this node till it has the given number, for the first requests
+     * after the start.
+     *
+     * @return the future of the number of idle connections
+     */
+    CompletableFuture<Integer> openConnections(int connections) {
+        return httpClient.openConnections(connections, Scheduler.TIMER);
+    }
+
+    /**
+     * Open the missing idle connections to this node when it has less than minIdle, unless
+     * requests are waiting for connections already or the node is ejected; only one top up of a
+     * node is in flight.
+     */
+    void keepIdleConnections(int minIdle) {
+        HttpClient client = httpClient;
+        if (client == null || !client.isRunning() || getState() == NodeState.EJECTED
+                || !opening.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            PoolStats stats = client.getConnectionStats();
+            if (stats.getAvailable() >= minIdle || stats.getPending() > 0) {
+                opening.set(false);
+                return;
+            }
+            // the idle connections are leased by the top up too, so all minIdle are asked for
+            client.openConnections(Math.min(minIdle, stats.getMax() - stats.getLeased()),
+                    Scheduler.TIMER)
+                    .whenComplete((idle, e) -> opening.set(false));
+        } catch (RuntimeException e) {
+            opening.set(false);
+            LOG.warn("Opening idle connections to node " + this + " failed : " + e);
+        }
+    }
+
+    /**
+     * Count a request sent to this node, returns the start time to give to {@link #end}.
+     */
+    long begin() {
+        outstanding.incrementAndGet();
+        requestCount.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Count the end of a request got from {@link #begin()}; the latency of a failed request is
+     * counted as well, so a node which fails slowly is avoided like a slow one.
+     *
+     * @param start the start time of the request
+     * @param success if the node answered the request, an error answer caused by the request
+     *        itself is a success of the node
+     */
+    void end(long start, boolean success) {
+        outstanding.decrementAndGet();
+        if (!success) {
+            failureCount.incrementAndGet();
+        }
+        long now = System.nanoTime();
+        if (circuitBreaker.record(success, now - start, now)) {
+            LOG.warn("Node " + this + " is ejected after too many failed requests");
+        }
+        updateLatency(now - start, now);
+    }
+
+    /**
+     * Count the end of a request got from {@link #begin()} which was cancelled by the caller, it
+     * tells nothing about the node.
+     */
+    void cancel() {
+        outstanding.decrementAndGet();
+    }
+
+    private void updateLatency(double sample, long now) {
+        Latency prev;
+        Latency next;
+        do {
+            prev = latency.get();
+            double average = prev.averageAt(now);
+            next = new Latency(average == 0 ? sample
+                    : average + TConstants.LATENCY_EWMA_WEIGHT * (sample - average), now);
+        } while (!latency.compareAndSet(prev, next));
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Returns the number of requests sent to this node and not answered yet
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Returns the number of requests sent to this node
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the number of requests this node did not answer
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * Returns the exponentially weighted moving average of the latency of this node, 0 until it
+     * answered once; it decays while the node gets no requests, see
+     * Tconstants.LATENCY_EWMA_DECAY
+     *
+     * @param unit the unit of the returned latency
+     */
+    public double getLatencyEwma(TimeUnit unit) {
+        return latency.get().averageAt(System.nanoTime()) / unit.toNanos(1);
+    }
+
+    /**
+     * Returns the number of connections to this node which are open and idle in the pool
+     */
+    public int getIdleConnections() {
+        HttpClient client = httpClient;
+        return client != null && client.isRunning() ? client.getConnectionStats().getAvailable()
+                : 0;
+    }
+
+    /**
+     * Returns the health of this node
+     */
+    public NodeState getState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * Returns if a request may be sent to this node now, see {@link NodeState}
+     */
+    boolean allowRequest(long now) {
+        return circuitBreaker.allowRequest(now);
+    }
+
+    /**
+     * Returns if the version probe should be sent to this node now: an ejected node after the
+     * open time, the other ones every healthCheckInterval when it is set. Only one probe of a
+     * node is in flight, {@link #probed} must be called when this returned true.
+     */
+    boolean startProbe(long now) {
+        boolean due = circuitBreaker.isProbeDue(now) || (configuration.getHealthCheckInterval() > 0
+                && circuitBreaker.getState() != NodeState.EJECTED && now - lastProbe >= TimeUnit
+                        .MILLISECONDS.toNanos(configuration.getHealthCheckInterval()));
+        return due && probing.compareAndSet(false, true);
+    }
+
+    /**
+     * Count the outcome of the version probe got from {@link #startProbe}.
+     */
+    void probed(long start, boolean success) {
+        long now = System.nanoTime();
+        NodeState before = circuitBreaker.getState();
+        circuitBreaker.probed(success, now - start, now);
+        NodeState after = circuitBreaker.getState();
+        if (before != after) {
+            LOG.warn("Node " + this + " is " + after + " after the version probe");
+        }
+        if (success) {
+            updateLatency(now - start, now);
+        }
+        lastProbe = now;
+        probing.set(false);
+    }
+
+    public boolean isRunning() {
+        return httpClient != null && httpClient.isRunning();
+    }
+
+    /**
+     * stop sending requests to this node, the shared connections are left open; the client is
+     * kept, so the retries and resends still scheduled fail with its IllegalStateException
+     */
+    void close() throws IOException {
+        HttpClient client = httpClient;
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+/**
+ * The health of a {@link Node} as its circuit breaker sees it.
+ */
+public enum NodeState {
+    /**
+     * The node answers, it gets its full share of the requests.
+     */
+    UP,
+    /**
+     * Too many requests to the node failed or were slow, it gets no requests until a version
+     * probe succeeds again; unless all the nodes of the session are ejected.
+     */
+    EJECTED,
+    /**
+     * The node answered the probe after it was ejected, its share of the requests grows from a
+     * tenth to the full share in circuitBreakerRampUpTime ms.
+     */
+    RECOVERING
+}
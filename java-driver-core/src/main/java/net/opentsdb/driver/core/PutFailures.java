@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import net.opentsdb.driver.core.model.DataPoint;
+import net.opentsdb.driver.core.model.DataPointBatch;
+import net.opentsdb.driver.core.model.Errors;
+import net.opentsdb.driver.core.model.Point;
+import net.opentsdb.driver.core.model.PrimitiveDataPoint;
+import net.opentsdb.driver.core.model.PutResult;
+import net.opentsdb.driver.core.model.TagSet;
+import net.opentsdb.driver.core.model.ValueType;
+import net.opentsdb.driver.core.policies.PutErrorClassifier;
+
+/**
+ * The failed data points of a put, found by matching the data points opentsdb echoes in the
+ * errors of a detailed put with the data points sent, by metric, timestamp and tags. The failed
+ * points are split into the retryable and the rejected ones by the {@link PutErrorClassifier},
+ * the data points of a {@link DataPointBatch} are split one by one.
+ */
+final class PutFailures {
+    private final List<Point> retryable = new ArrayList<>();
+    private final List<Errors> retryableErrors = new ArrayList<>();
+    private final List<Point> rejected = new ArrayList<>();
+    private final List<Errors> rejectedErrors = new ArrayList<>();
+    private boolean matched = true;
+
+    private PutFailures() {
+    }
+
+    /**
+     * Split the failed data points of the put.
+     *
+     * @param dataPoints the data points sent
+     * @param putResult the detailed result of the put
+     * @param classifier the classifier of the errors
+     * @return the failures, every failure is matched with a sent data point only when
+     *         {@link #isMatched()}
+     */
+    static PutFailures split(List<? extends Point> dataPoints, PutResult putResult,
+            PutErrorClassifier classifier) {
+        PutFailures failures = new PutFailures();
+        List<Errors> errors = putResult.getErrors();
+        if (errors == null || errors.size() < putResult.getFailed()) {
+            failures.matched = false;
+            return failures;
+        }
+        Map<Key, ArrayDeque<Errors>> byKey = new HashMap<>();
+        for (Errors error : errors) {
+            if (error.getDatapoint() == null || error.getDatapoint().getMetric() == null
+                    || error.getDatapoint().getTimestamp() == null) {
+                failures.matched = false;
+                return failures;
+            }
+            Key key = new Key(error.getDatapoint().getMetric(),
+                    error.getDatapoint().getTimestamp(), TagSet.of(error.getDatapoint().getTags()));
+            byKey.computeIfAbsent(key, k -> new ArrayDeque<>()).add(error);
+        }
+
+        int found = 0;
+        for (Point point : dataPoints) {
+            if (byKey.isEmpty()) {
+                break;
+            }
+            if (point instanceof DataPointBatch) {
+                DataPointBatch batch = (DataPointBatch) point;
+                for (int i = 0; i < batch.count(); i++) {
+                    Errors error = take(byKey, batch.getMetric(), batch.getTimestamp(i),
+                            batch.getTags());
+                    if (error != null) {
+                        failures.add(pointOf(batch, i), error, classifier);
+                        found++;
+                    }
+                }
+            } else {
+                Errors error = take(byKey, point);
+                if (error != null) {
+                    failures.add(point, error, classifier);
+                    found++;
+                }
+            }
+        }
+        failures.matched = found == errors.size();
+        return failures;
+    }
+
+    private static Errors take(Map<Key, ArrayDeque<Errors>> byKey, Point point) {
+        if (point instanceof PrimitiveDataPoint) {
+            PrimitiveDataPoint primitive = (PrimitiveDataPoint) point;
+            return take(byKey, primitive.getMetric(), primitive.getTimestamp(),
+                    primitive.getTags());
+        }
+        DataPoint dataPoint = (DataPoint) point;
+        if (dataPoint.getMetric() == null || dataPoint.getTimestamp() == null) {
+            return null;
+        }
+        return take(byKey, dataPoint.getMetric(), dataPoint.getTimestamp(),
+                TagSet.of(dataPoint.getTags()));
+    }
+
+    private static Errors take(Map<Key, ArrayDeque<Errors>> byKey, String metric, long timestamp,
+            TagSet tags) {
+        Key key = new Key(metric, timestamp, tags);
+        ArrayDeque<Errors> errors = byKey.get(key);
+        if (errors == null) {
+            return null;
+        }
+        Errors error = errors.poll();
+        if (errors.isEmpty()) {
+            byKey.remove(key);
+        }
+        return error;
+    }
+
+    private static Point pointOf(DataPointBatch batch, int index) {
+        if (batch.getValueType() == ValueType.LONG) {
+            return new PrimitiveDataPoint(batch.getMetric(), batch.getTags(),
+                    batch.getTimestamp(index), batch.getLongValue(index));
+        }
+        return new PrimitiveDataPoint(batch.getMetric(), batch.getTags(),
+                batch.getTimestamp(index), batch.getDoubleValue(index));
+    }
+
+    private void add(Point point, Errors error, PutErrorClassifier classifier) {
+        if (classifier.isRetryable(error)) {
+            retryable.add(point);
+            retryableErrors.add(error);
+        } else {
+            rejected.add(point);
+            rejectedErrors.add(error);
+        }
+    }
+
+    /**
+     * Returns true when every error is matched with a sent data point, otherwise the failed data
+     * points are unknown.
+     */
+    boolean isMatched() {
+        return matched;
+    }
+
+    List<Point> getRetryable() {
+        return retryable;
+    }
+
+    List<Errors> getRetryableErrors() {
+        return retryableErrors;
+    }
+
+    List<Point> getRejected() {
+        return rejected;
+    }
+
+    List<Errors> getRejectedErrors() {
+        return rejectedErrors;
+    }
+
+    private static final class Key {
+        private final String metric;
+        private final long timestamp;
+        private final TagSet tags;
+
+        Key(String metric, long timestamp, TagSet tags) {
+            this.metric = metric;
+            this.timestamp = timestamp;
+            this.tags = tags;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(metric, timestamp, tags);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return timestamp == other.timestamp && metric.equals(other.metric)
+                    && tags.equals(other.tags);
+        }
+    }
+}
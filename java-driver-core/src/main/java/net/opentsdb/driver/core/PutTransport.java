@@ -0,0 +1,28 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+/**
+ * The transport the data points of a {@link Session} are put with.
+ */
+public enum PutTransport {
+    /** The /api/put http endpoint, every put is answered by opentsdb */
+    HTTP,
+    /**
+     * The telnet put lines over a few persistent connections, fire and forget: nothing is
+     * answered, the put result only counts the data points handed to the connections
+     */
+    TELNET
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.model.Filter;
+import net.opentsdb.driver.core.model.MetricQuery;
+import net.opentsdb.driver.core.model.Query;
+import net.opentsdb.driver.core.model.QueryResult;
+
+/**
+ * A bounded cache of the results of /api/query shared by the sessions of a cluster, so the same
+ * query of many dashboards is sent to opentsdb once per ttl; see
+ * {@link Configuration.Builder#queryCacheMaxBytes(long)}.
+ * <p/>
+ * The key is a canonical fingerprint of the {@link Query}, its {@link MetricQuery} list in order
+ * and the tags and {@link Filter}s of each sorted, so queries built alike share an entry whatever
+ * the order of their tags and filters is. A query ending more than queryCacheHistoricalAge ago is
+ * cached for queryCacheHistoricalTtl, its data points do not change any more, any other for
+ * queryCacheRecentTtl; the start and end are part of the key, so a rolling window shares the
+ * entry only when its callers align it, like to the refresh interval of a dashboard. The least
+ * recently used entries are evicted beyond the max estimated bytes of the results.
+ * <p/>
+ * The cache keeps its own copies of the results and every hit gets new copies, in an
+ * unmodifiable list, so a caller changing its results does not change the ones of the others.
+ */
+class QueryCache {
+    /** a timestamp up to this is in seconds, like opentsdb tells them from milliseconds */
+    private static final long MAX_SECONDS = 9999999999L;
+
+    private final Cache<String, Entry> cache;
+    private final long recentTtl;
+    private final long historicalTtl;
+    private final long historicalAge;
+
+    QueryCache(Configuration configuration) {
+        this.recentTtl = configuration.getQueryCacheRecentTtl();
+        this.historicalTtl = configuration.getQueryCacheHistoricalTtl();
+        this.historicalAge = configuration.getQueryCacheHistoricalAge();
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(configuration.getQueryCacheMaxBytes())
+                .weigher((String key, Entry entry) -> entry.weight)
+                .expireAfterWrite(Math.max(Math.max(recentTtl, historicalTtl), 1),
+                        TimeUnit.MILLISECONDS)
+                .recordStats().build();
+    }
+
+    /**
+     * Returns if the results of the query are cached, the deletes are not.
+     */
+    static boolean isCached(Query query) {
+        return !Boolean.TRUE.equals(query.getDelete());
+    }
+
+    /**
+     * Returns a copy of the cached results of the query, null when they are not cached or
+     * expired.
+     *
+     * @param key the fingerprint of the query, see {@link #fingerprint(Query)}
+     */
+    List<QueryResult> get(String key) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expires >= 0) {
+            cache.invalidate(key);
+            return null;
+        }
+        return copy(entry.results);
+    }
+
+    /**
+     * Caches a copy of the results of the query for the ttl of its end.
+     *
+     * @param key the fingerprint of the query, see {@link #fingerprint(Query)}
+     * @param query the query
+     * @param results the results of the query
+     */
+    void put(String key, Query query, List<QueryResult> results) {
+        long ttl = ttl(query, System.currentTimeMillis());
+        if (ttl <= 0 || results == null) {
+            return;
+        }
+        long expires = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl);
+        cache.put(key, new Entry(copy(results), expires, weigh(key, results)));
+    }
+
+    private static List<QueryResult> copy(List<QueryResult> results) {
+        List<QueryResult> copies = new ArrayList<>(results.size());
+        for (QueryResult result : results) {
+            copies.add(result.copy());
+        }
+        return Collections.unmodifiableList(copies);
+    }
+
+    /**
+     * Drop all the cached results, like after a delete.
+     */
+    void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns the number of cached queries.
+     */
+    long size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the hit and miss statistics of the cache, a hit on an expired entry counts as hit.
+     */
+    CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Returns the time the results of the query are cached for at now, ms.
+     */
+    long ttl(Query query, long now) {
+        Long end = query.getEnd();
+        if (end == null) {
+            return recentTtl;
+        }
+        long endMillis = end <= MAX_SECONDS ? end * 1000 : end;
+        return endMillis < now - historicalAge ? historicalTtl : recentTtl;
+    }
+
+    /**
+     * Returns the canonical fingerprint of the query, every field of the query which may change
+     * the answer of opentsdb is in it.
+     */
+    static String fingerprint(Query query) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(query.getStart()).append('|').append(query.getEnd()).append('|')
+                .append(query.getTimezone()).append('|').append(query.getUseCalendar())
+                .append('|').append(query.getMsResolution()).append('|')
+                .append(query.getNoAnnotations()).append('|')
+                .append(query.getGlobalAnnotations()).append('|')
+                .append(query.getShowTSUIDs()).append('|').append(query.getShowSummary())
+                .append('|').append(query.getShowStats()).append('|')
+                .append(query.getShowQuery());
+        if (query.getQueries() != null) {
+            for (MetricQuery metricQuery : query.getQueries()) {
+                sb.append("|{").append(metricQuery.getMetric()).append('|')
+                        .append(metricQuery.getAggregator()).append('|')
+                        .append(metricQuery.getRate()).append('|')
+                        .append(metricQuery.getDownsample()).append('|')
+                        .append(metricQuery.getExplicitTags()).append('|');
+                if (metricQuery.getTags() != null) {
+                    sb.append(new TreeMap<>(metricQuery.getTags()));
+                }
+                if (metricQuery.getFilters() != null) {
+                    List<String> filters = new ArrayList<>(metricQuery.getFilters().size());
+                    for (Filter filter : metricQuery.getFilters()) {
+                        filters.add(filter.getType() + ":" + filter.getTagk() + "="
+                                + filter.getFilter() + ":" + filter.getGroupBy());
+                    }
+                    Collections.sort(filters);
+                    sb.append(filters);
+                }
+                sb.append('}');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the estimated bytes of the cached results of a query.
+     */
+    private static int weigh(String key, List<QueryResult> results) {
+        long bytes = 64 + 2L * key.length();
+        for (QueryResult result : results) {
+            // the object headers and the primitive arrays of the data points
+            bytes += 96 + 16L * result.size();
+            bytes += 2L * length(result.getMetric());
+            if (result.getTags() != null) {
+                for (Map.Entry<String, String> tag : result.getTags().entrySet()) {
+                    bytes += 64 + 2L * (length(tag.getKey()) + length(tag.getValue()));
+                }
+            }
+            if (result.getAggregatedTags() != null) {
+                for (String tag : result.getAggregatedTags()) {
+                    bytes += 48 + 2L * length(tag);
+                }
+            }
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    private static int length(String s) {
+        return s != null ? s.length() : 0;
+    }
+
+    private static final class Entry {
+        private final List<QueryResult> results;
+        /** the System.nanoTime the entry expires at */
+        private final long expires;
+        private final int weight;
+
+        Entry(List<QueryResult> results, long expires, int weight) {
+            this.results = results;
+            this.expires = expires;
+            this.weight = weight;
+        }
+    }
+}
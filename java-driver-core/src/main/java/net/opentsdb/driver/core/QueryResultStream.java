@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.apache.http.ParseException;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONReader;
+import net.opentsdb.driver.core.codec.QueryResultDecoder;
+import net.opentsdb.driver.core.model.QueryResult;
+
+/**
+ * The query results of {@link Session#queryStream(Query)}, decoded one series at a time while
+ * the response arrives, so the memory of a query of thousands of series stays that of one series
+ * and the read ahead buffer of the response; a UTF-8 response is decoded by a
+ * {@link QueryResultDecoder}, another charset by a fastjson {@link JSONReader}.
+ * <p/>
+ * The stream must be closed, it is closed by itself after the last series or an error.
+ * Closing it before aborts the http request, the rest of the response is not read. The
+ * iterator throws {@link UncheckedIOException} when the response fails on the way and
+ * {@link ParseException} when it is not the query answer. A stream is not thread safe.
+ */
+public class QueryResultStream implements Iterator<QueryResult>, Closeable {
+    private final InputStream in;
+    private final QueryResultDecoder decoder;
+    private final JSONReader reader;
+    private final Runnable onClose;
+    private boolean started;
+    private boolean done;
+    private boolean closed;
+    private QueryResult next;
+
+    /**
+     * @param in the content of the query response
+     * @param charset the charset of the content, null for UTF-8
+     * @param onClose called once when the stream is closed
+     */
+    QueryResultStream(InputStream in, Charset charset, Runnable onClose) {
+        this.in = in;
+        this.onClose = onClose;
+        if (charset == null || charset.equals(TConstants.UTF8_CHARSET)) {
+            this.decoder = new QueryResultDecoder();
+            this.decoder.begin(in);
+            this.reader = null;
+        } else {
+            this.decoder = null;
+            this.reader = new JSONReader(new InputStreamReader(in, charset));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !done) {
+            next = read();
+            if (next == null) {
+                done = true;
+                close();
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public QueryResult next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        QueryResult result = next;
+        next = null;
+        return result;
+    }
+
+    /**
+     * Returns the rest of the series as a sequential stream, closing it closes this.
+     */
+    public Stream<QueryResult> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+    }
+
+    private QueryResult read() {
+        if (closed) {
+            return null;
+        }
+        try {
+            if (decoder != null) {
+                return decoder.next();
+            }
+            if (!started) {
+                started = true;
+                reader.startArray();
+            }
+            if (reader.hasNext()) {
+                return reader.readObject(QueryResult.class);
+            }
+            reader.endArray();
+            return null;
+        } catch (IOException | JSONException e) {
+            throw fail(e);
+        }
+    }
+
+    /**
+     * Push the rest of the series to the consumer, see {@link SeriesConsumer}; the stream is
+     * closed after, the errors are thrown like by the iterator.
+     */
+    void push(SeriesConsumer consumer) {
+        try {
+            if (decoder != null) {
+                while (!closed && decoder.next(consumer)) {
+                    // the consumer got the series
+                }
+                return;
+            }
+            while (hasNext()) {
+                QueryResult result = next();
+                consumer.onSeriesStart(result.getMetric(), result.getTags(),
+                        result.getAggregatedTags());
+                QueryResult.Cursor cursor = result.cursor();
+                while (cursor.next()) {
+                    consumer.onPoint(cursor.timestamp(), cursor.doubleValue());
+                }
+                consumer.onSeriesEnd();
+            }
+        } catch (IOException | JSONException e) {
+            throw fail(e);
+        } finally {
+            done = true;
+            close();
+        }
+    }
+
+    private RuntimeException fail(Exception e) {
+        done = true;
+        close();
+        if (e instanceof IOException) {
+            return new UncheckedIOException((IOException) e);
+        }
+        if (e.getCause() instanceof IOException) {
+            return new UncheckedIOException((IOException) e.getCause());
+        }
+        return new ParseException("Can not parse the query results : " + e.getMessage());
+    }
+
+    /**
+     * Close the stream, the http request is aborted when the response is not read to its end.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            in.close();
+        } catch (IOException e) {
+            // nothing more is read
+        } finally {
+            onClose.run();
+        }
+    }
+}
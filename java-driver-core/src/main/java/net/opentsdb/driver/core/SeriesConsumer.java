@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receives the series of a query answer while they are decoded, see
+ * {@link Session#query(Query, SeriesConsumer)}: {@link #onSeriesStart}, then {@link #onPoint}
+ * for every data point of the series in the order of the answer, which is by timestamp for
+ * opentsdb, then {@link #onSeriesEnd}. Neither a {@link net.opentsdb.driver.core.model.QueryResult}
+ * nor a boxed data point is made for it, so a consumer keeping running aggregates holds no more
+ * than them. It is called from the thread of the query, an exception it throws aborts the query.
+ */
+public interface SeriesConsumer {
+
+    /**
+     * A series starts.
+     *
+     * @param metric the metric of the series
+     * @param tags the tags of the series, may be null
+     * @param aggregatedTags the tags aggregated away, may be null
+     */
+    void onSeriesStart(String metric, Map<String, String> tags, List<String> aggregatedTags);
+
+    /**
+     * A data point of the series, integer values are given as doubles too.
+     *
+     * @param timestamp the timestamp of the data point
+     * @param value the value of the data point
+     */
+    void onPoint(long timestamp, double value);
+
+    /**
+     * The series ends.
+     */
+    void onSeriesEnd();
+}
@@ -14,47 +14,122 @@
  */
 package net.opentsdb.driver.core;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.net.InetSocketAddress;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.ParseException;
+import org.apache.http.entity.ContentType;
 import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONException;
 import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.TypeReference;
 import com.alibaba.fastjson.serializer.SerializerFeature;
+import net.opentsdb.driver.core.codec.DataPointSerializer;
+import net.opentsdb.driver.core.codec.QueryResultDecoder;
+import net.opentsdb.driver.core.codec.SeriesKeyCache;
 import net.opentsdb.driver.core.conf.Configuration;
 import net.opentsdb.driver.core.exceptions.AbnormalResultException;
+import net.opentsdb.driver.core.exceptions.BackpressureException;
 import net.opentsdb.driver.core.exceptions.ErrorResultException;
+import net.opentsdb.driver.core.exceptions.ErrorValueTypeException;
 import net.opentsdb.driver.core.exceptions.OverRetryException;
 import net.opentsdb.driver.core.http.HttpApiEndpoint;
+import net.opentsdb.driver.core.http.BufferPool;
+import net.opentsdb.driver.core.http.HttpAsyncClient;
 import net.opentsdb.driver.core.http.HttpClient;
+import net.opentsdb.driver.core.http.PooledBytes;
+import net.opentsdb.driver.core.http.PooledOutputStream;
 import net.opentsdb.driver.core.model.AnalyziedResult;
 import net.opentsdb.driver.core.model.DataPoint;
+import net.opentsdb.driver.core.model.Errors;
+import net.opentsdb.driver.core.model.Point;
+import net.opentsdb.driver.core.model.PrimitiveDataPoint;
 import net.opentsdb.driver.core.model.PutResult;
 import net.opentsdb.driver.core.model.Query;
 import net.opentsdb.driver.core.model.QueryResult;
+import net.opentsdb.driver.core.model.TagSet;
+import net.opentsdb.driver.core.policies.HedgingPolicy;
+import net.opentsdb.driver.core.policies.LoadBalancingPolicy;
+import net.opentsdb.driver.core.policies.RetryPolicy;
+import net.opentsdb.driver.core.spool.Spool;
+import net.opentsdb.driver.core.telnet.TelnetClient;
 
 /**
- * put/query/version and other requests can be done through this class but batch is not support this
- * time ,multi datapoints can be put throw put ,batch may be of better throghtput, latter will be
- * support; the configuration , host , port shoud be get from Cluster. and {@link #start()} should
- * be called before other interface;
+ * put/query/version and other requests can be done through this class, multi datapoints can be put
+ * throw put, and for better throughput data points can be batched in the background by the
+ * {@link BatchWriter} got from {@link #newBatchWriter()}; the configuration , host , port shoud be
+ * get from Cluster. and {@link #start()} should be called before other interface; every operation
+ * also has an asynchronous form like {@link #putAsync(List, boolean, boolean)} which returns a
+ * CompletableFuture completed by the io reactor, so no thread waits for the response.
+ * <p/>
+ * A session of more contact points has a {@link Node} for each of them, and the sessions of a
+ * cluster share one http client and connection pool, one route for each node; the
+ * {@link LoadBalancingPolicy} of the configuration chooses the node of every request;
+ * with circuitBreaker enabled the nodes which fail are left out till they recover, see
+ * {@link NodeState}.
  */
 public class Session implements Closeable{
     private static final Logger LOG = LoggerFactory.getLogger(Session.class);
 
-    private HttpClient httpClient;
+    private final List<Node> nodes;
+    private final LoadBalancingPolicy loadBalancingPolicy;
+    private final RetryPolicy retryPolicy;
+    private final HedgingPolicy hedgingPolicy;
     private String host;
     private int port;
     private Configuration configuration;
+    private final Queue<BatchWriter> batchWriters = new ConcurrentLinkedQueue<>();
+    private final BufferPool bufferPool;
+    /** the io reactor and connection pool of all the nodes, shared with the cluster sessions */
+    private final HttpAsyncClient httpAsyncClient;
+    private final boolean ownsHttpClient;
+    private final DataPointSerializer serializer;
+    private final InFlightLimiter inFlightLimiter;
+    /** the query results cache, shared with the cluster sessions, null when it is disabled */
+    private final QueryCache queryCache;
+    private final Map<String, String> putParams;
+    private final Map<String, String> detailedPutParams;
+    private Spool spool;
+    private SpoolReplayer spoolReplayer;
+    private TelnetClient telnetClient;
+    private HealthChecker healthChecker;
+    private ScheduledFuture<?> idleConnectionKeeper;
 
     /**
      * Constructs a new Session instance.
@@ -66,38 +141,198 @@ public class Session implements Closeable{
      * @param configuration the configuration of the session.
      */
     public Session(String host, int port, Configuration configuration) {
-        this.host = host;
-        this.port = port;
+        this(Collections.singletonList(InetSocketAddress.createUnresolved(host, port)),
+                configuration);
+    }
+
+    /**
+     * Constructs a new Session instance which spreads the requests across the contact points.
+     * <p/>
+     * The spool and the telnet connections of the session are named after the first contact
+     * point.
+     *
+     * @param contactPoints the opentsdb instances of the session, not resolved until connected.
+     * @param configuration the configuration of the session.
+     */
+    public Session(List<InetSocketAddress> contactPoints, Configuration configuration) {
+        this(contactPoints, configuration, null,
+                new BufferPool(TConstants.BUFFER_CHUNK_SIZE, TConstants.BUFFER_POOL_CHUNKS), null);
+    }
+
+    /**
+     * Constructs a new Session instance on the io reactor and connection pool of the given
+     * client, which is opened by {@link #start()} and left open by {@link #close()}; a session of
+     * its own client, when it is null, closes it as well.
+     *
+     * @param contactPoints the opentsdb instances of the session, not resolved until connected.
+     * @param configuration the configuration of the session.
+     * @param httpAsyncClient the shared client, null for a client of this session
+     * @param bufferPool the pool the request and response bodies are held in
+     * @param queryCache the shared query results cache, null for a cache of this session when
+     *        queryCacheMaxBytes is set
+     */
+    Session(List<InetSocketAddress> contactPoints, Configuration configuration,
+            HttpAsyncClient httpAsyncClient, BufferPool bufferPool, QueryCache queryCache) {
+        if (contactPoints == null || contactPoints.isEmpty()) {
+            throw new IllegalArgumentException("no contact point for the session");
+        }
+        List<Node> nodes = new ArrayList<>(contactPoints.size());
+        for (InetSocketAddress contactPoint : contactPoints) {
+            nodes.add(new Node(contactPoint.getHostString(), contactPoint.getPort(),
+                    configuration));
+        }
+        this.nodes = Collections.unmodifiableList(nodes);
+        this.bufferPool = bufferPool;
+        this.ownsHttpClient = httpAsyncClient == null;
+        this.httpAsyncClient = httpAsyncClient != null ? httpAsyncClient
+                : new HttpAsyncClient(configuration, bufferPool, Scheduler.TIMER);
+        this.loadBalancingPolicy = configuration.getLoadBalancingPolicy();
+        this.retryPolicy = configuration.getRetryPolicy();
+        this.hedgingPolicy = configuration.getHedgingPolicy();
+        this.host = contactPoints.get(0).getHostString();
+        this.port = contactPoints.get(0).getPort();
         this.configuration = configuration;
+        this.serializer = configuration.getSeriesKeyCacheSize() > 0
+                ? new DataPointSerializer(new SeriesKeyCache(configuration.getSeriesKeyCacheSize()))
+                : new DataPointSerializer();
+        this.inFlightLimiter = new InFlightLimiter(configuration);
+        this.queryCache = queryCache != null ? queryCache
+                : configuration.getQueryCacheMaxBytes() > 0 ? new QueryCache(configuration)
+                        : null;
+        this.putParams = createPutParams(false);
+        this.detailedPutParams = createPutParams(true);
     }
 
     /**
-     * start the real http client ;
+     * start the real http clients of the nodes, and open warmUpConnections connections to every
+     * node before it returns;
      */
     public void start() throws IOReactorException {
-        this.httpClient = new HttpClient.Builder().setHost(host).setPort(port)
-                .setConf(configuration).client().build();
-        this.httpClient.start();
+        for (Node node : nodes) {
+            node.start(httpAsyncClient);
+        }
+        if (configuration.getWarmUpConnections() > 0) {
+            warmUp(configuration.getWarmUpConnections());
+        }
+        if (configuration.getMinIdleConnections() > 0 && idleConnectionKeeper == null) {
+            int minIdle = configuration.getMinIdleConnections();
+            idleConnectionKeeper = Scheduler.TIMER.scheduleWithFixedDelay(() -> {
+                for (Node node : nodes) {
+                    node.keepIdleConnections(minIdle);
+                }
+            }, TConstants.IDLE_CONNECTION_CHECK_INTERVAL,
+                    TConstants.IDLE_CONNECTION_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+        if (configuration.isCircuitBreaker() && healthChecker == null) {
+            healthChecker = new HealthChecker(nodes);
+            healthChecker.start();
+        }
+        openSpool();
+        if (configuration.getPutTransport() == PutTransport.TELNET && telnetClient == null) {
+            List<InetSocketAddress> addresses = new ArrayList<>(nodes.size());
+            for (Node node : nodes) {
+                addresses.add(InetSocketAddress.createUnresolved(node.getHost(),
+                        configuration.getTelnetPort() > 0 ? configuration.getTelnetPort()
+                                : node.getPort()));
+            }
+            TelnetClient client = new TelnetClient(addresses, configuration);
+            try {
+                client.start();
+            } catch (IOException e) {
+                throw new IOReactorException("can not start the telnet client", e);
+            }
+            this.telnetClient = client;
+        }
+    }
+
+    /**
+     * Return the nodes of the contact points of this session
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Return the telnet client the data points are put with, null unless putTransport is
+     * {@link PutTransport#TELNET}
+     */
+    public TelnetClient getTelnetClient() {
+        return telnetClient;
+    }
+
+    /**
+     * open the write-ahead spool when spoolDirectory is set, in the sub directory of the host and
+     * port; more sessions of the same host and port spool to numbered sub directories.
+     */
+    private void openSpool() throws IOReactorException {
+        if (configuration.getSpoolDirectory() == null || spool != null) {
+            return;
+        }
+        String name = host + "_" + port;
+        try {
+            for (int i = 0; spool == null; i++) {
+                File dir = new File(configuration.getSpoolDirectory(),
+                        i == 0 ? name : name + "." + i);
+                spool = Spool.open(dir, configuration.getSpoolSegmentSize(),
+                        configuration.getSpoolMaxBytes(), configuration.getSpoolForceInterval());
+            }
+        } catch (IOException e) {
+            throw new IOReactorException(
+                    "can not open the spool in " + configuration.getSpoolDirectory(), e);
+        }
+        spoolReplayer = new SpoolReplayer(this, spool, retryPolicy,
+                configuration.getSpoolReplayRate(), TConstants.SPOOL_REPLAY_BACKOFF);
+        spoolReplayer.start();
+    }
+
+    /**
+     * Return the write-ahead spool of this session, null when spoolDirectory is not set
+     */
+    public Spool getSpool() {
+        return spool;
+    }
+
+    /**
+     * Return the limiter of the requests in flight of this session, it also counts how often the
+     * backpressure policy fired, see {@link InFlightLimiter}
+     */
+    public InFlightLimiter getInFlightLimiter() {
+        return inFlightLimiter;
+    }
+
+    /**
+     * Create a new {@link BatchWriter} which puts data points through this session in batches, the
+     * batch options are got from the {@Configuration} of this session; the batch writer is flushed
+     * and closed when this session is closed.
+     *
+     * @return the new batch writer
+     */
+    public BatchWriter newBatchWriter() {
+        BatchWriter batchWriter = new BatchWriter(this, configuration);
+        batchWriters.add(batchWriter);
+        return batchWriter;
     }
 
     /**
      * put for opentsdb /api/put operation ; this will use the default of sync and detailed params,
      * which will sync datapoints to opentsdb storage and return withc the detailed messages;
      * 
-     * @param dataPoint the data point to put into the opentsdb
+     * @param dataPoint the data point to put into the opentsdb, a {@link DataPoint} or any other
+     *        {@link Point} like {@link net.opentsdb.driver.core.model.PrimitiveDataPoint}
      * @return PutResult the return result for this put, the detail see {@PutResult}
      */
-    public PutResult put(DataPoint dataPoint) throws ParseException, IllegalArgumentException,
+    public PutResult put(Point dataPoint) throws ParseException, IllegalArgumentException,
             InterruptedException, ExecutionException, IOException, AbnormalResultException,
-            URISyntaxException, OverRetryException, ErrorResultException {
+            URISyntaxException, OverRetryException, ErrorResultException, BackpressureException {
         return put(Arrays.asList(dataPoint), true, true);
     }
 
 
 
-    public PutResult put(DataPoint dataPoint, boolean detailed) throws ParseException,
+    public PutResult put(Point dataPoint, boolean detailed) throws ParseException,
             IllegalArgumentException, InterruptedException, ExecutionException, IOException,
-            AbnormalResultException, URISyntaxException, OverRetryException, ErrorResultException {
+            AbnormalResultException, URISyntaxException, OverRetryException, ErrorResultException,
+            BackpressureException {
         if (configuration.getSyncTimeout() > 0) {
             return put(Arrays.asList(dataPoint), true, detailed);
         } else {
@@ -108,111 +343,425 @@ public class Session implements Closeable{
     /**
      * real put operation ,using this the data point can be put into opentsdb ,if sync is set and
      * putRetryNum is set more than 0 ,then this operation will retry when exception is occurs,
-     * retry times can be got from putRetryNum of {@Configuration};
+     * retry times can be got from putRetryNum of {@Configuration}; when detailed is set and only
+     * some data points are failed, the ones failed with retryable errors are put again up to
+     * putRetryNum times, after the delay and within the budget of the {@link RetryPolicy}, and
+     * the rejected ones are given to the deadLetterHandler of
+     * {@Configuration}, {@ErrorResultException} holds only the data points still failed; when
+     * spoolDirectory is set, the data points which would fail with {@OverRetryException}, or
+     * without sync with an error the {@link RetryPolicy} retries, like an io error, are appended
+     * to the spool to be put later instead, see {@link PutResult#getSpooled()}; with the
+     * TELNET putTransport the data points are only queued as telnet lines, sync and detailed do
+     * not apply;
      * 
      * @param dataPoints the list of data point that will be put into opentsdb
      * @param sync when set to true then the data will be put entil successfully to opentsdb storage
      * @param detailed when set to true then will return with the detailed message see {@PutResult}
      * @return PutResult the result of put operation see {@PutResult}
      */
-    public PutResult put(List<DataPoint> dataPoints, boolean sync, boolean detailed)
+    public PutResult put(List<? extends Point> dataPoints, boolean sync, boolean detailed)
+            throws ParseException, IllegalArgumentException, InterruptedException,
+            ExecutionException, IOException, AbnormalResultException, URISyntaxException,
+            OverRetryException, ErrorResultException, BackpressureException {
+        if (telnetClient != null) {
+            return putTelnet(dataPoints);
+        }
+        PutProgress progress = new PutProgress();
+        List<? extends Point> points = dataPoints;
+        int resend = configuration.getPutRetryNum();
+        while (true) {
+            PutResult putResult;
+            try {
+                putResult = putOnce(points, sync, detailed);
+            } catch (Exception e) {
+                if (!isSpoolable(e) || !spool(points, progress)) {
+                    throw e;
+                }
+                return progress.toPutResult();
+            }
+            List<Point> retry = handlePutResult(putResult, points, progress, resend > 0);
+            if (retry == null) {
+                return progress.toPutResult();
+            }
+            resend--;
+            points = retry;
+            if (progress.resendDelay > 0) {
+                Thread.sleep(progress.resendDelay);
+            }
+        }
+    }
+
+    private PutResult putOnce(List<? extends Point> dataPoints, boolean sync, boolean detailed)
+            throws ParseException, IllegalArgumentException, InterruptedException,
+            ExecutionException, IOException, AbnormalResultException, URISyntaxException,
+            OverRetryException, BackpressureException {
+        PooledBytes body = serializePut(dataPoints);
+        InFlightLimiter.Permit permit = null;
+        try {
+            permit = inFlightLimiter.acquireSync(body.length());
+            return JSON.parseObject(putContent(body, sync, detailed), PutResult.class);
+        } finally {
+            inFlightLimiter.release(permit);
+            body.release();
+        }
+    }
+
+    private String putContent(PooledBytes body, boolean sync, boolean detailed)
             throws ParseException, IllegalArgumentException, InterruptedException,
             ExecutionException, IOException, AbnormalResultException, URISyntaxException,
-            OverRetryException, ErrorResultException {
+            OverRetryException {
+        return getHttpContent(HttpApiEndpoint.PUT, body, detailed,
+                sync ? configuration.getPutRetryNum() : 0);
+    }
 
-        String jsonString =
-                JSON.toJSONString(dataPoints, SerializerFeature.DisableCircularReferenceDetect);
-        String content = null;
+    /**
+     * asynchronous put operation of one data point, see {@link #put(Point)}; the returned
+     * future is completed from the io reactor thread.
+     * 
+     * @param dataPoint the data point to put into the opentsdb
+     * @return the future of the put result
+     */
+    public CompletableFuture<PutResult> putAsync(Point dataPoint) {
+        return putAsync(Arrays.asList(dataPoint), true, true);
+    }
 
-        int time = configuration.getPutRetryNum();
-        if (configuration.getPutRetryNum() > 0 && sync) {
-            while (time > 0) {
-                try {
-                    content = getHttpContent(HttpApiEndpoint.PUT, jsonString, detailed);
-                    break;
-                } catch (AbnormalResultException e) {
-                    // TODO: handle exception
-                    time--;
-                    LOG.warn("Put occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver put tried after " + configuration.getQueryRetryNum()
-                                + " times for AbnormalResultException, detailed information : "
-                                + e.toString());
-                        throw new OverRetryException(e.getStatCode(), e.getErrmsg(),
-                                e.getServerException());
-                    }
-                } catch (InterruptedException e) {
-                    time--;
-                    LOG.warn("Put occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver put tried after " + configuration.getQueryRetryNum()
-                                + " times for InterruptedException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
-                    }
-                } catch (ExecutionException e) {
-                    time--;
-                    LOG.warn("Put occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver put tried after " + configuration.getQueryRetryNum()
-                                + " times for ExecutionException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
-                    }
-                } catch (ParseException e) {
-                    time--;
-                    LOG.warn("Put occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver put tried after " + configuration.getQueryRetryNum()
-                                + " times for ParseException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
-                    }
-                } catch (IllegalArgumentException e) {
-                    time--;
-                    LOG.warn("Put occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver put tried after " + configuration.getQueryRetryNum()
-                                + " times for IllegalArgumentException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
+    /**
+     * asynchronous put operation, see {@link #put(List, boolean, boolean)}; no thread waits for
+     * the response, the returned future is completed from the io reactor thread, and fails with
+     * {@OverRetryException} after putRetryNum tries or {@ErrorResultException} if some data
+     * points are failed.
+     * 
+     * @param dataPoints the list of data point that will be put into opentsdb
+     * @param sync when set to true then the data will be put entil successfully to opentsdb storage
+     * @param detailed when set to true then will return with the detailed message see {@PutResult}
+     * @return the future of the put result
+     */
+    public CompletableFuture<PutResult> putAsync(List<? extends Point> dataPoints, boolean sync,
+            boolean detailed) {
+        if (telnetClient != null) {
+            CompletableFuture<PutResult> result = new CompletableFuture<>();
+            try {
+                result.complete(putTelnet(dataPoints));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+        return putAsync(dataPoints, sync, detailed, configuration.getPutRetryNum(),
+                new PutProgress());
+    }
+
+    /**
+     * Queue the data points as telnet lines, nothing is answered so the result only counts them.
+     */
+    private PutResult putTelnet(List<? extends Point> dataPoints)
+            throws IOException, BackpressureException, InterruptedException {
+        return new PutResult(0, telnetClient.write(dataPoints), new ArrayList<>());
+    }
+
+    private CompletableFuture<PutResult> putAsync(List<? extends Point> dataPoints, boolean sync,
+            boolean detailed, int resend, PutProgress progress) {
+        PooledBytes body;
+        try {
+            body = serializePut(dataPoints);
+        } catch (IOException e) {
+            CompletableFuture<PutResult> result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
+        }
+        int retryNum = sync ? configuration.getPutRetryNum() : 0;
+        // a resend starts from the shared timer thread, it must not block on the limiter there
+        boolean queued = resend < configuration.getPutRetryNum();
+        return getHttpContentAsync(HttpApiEndpoint.PUT, body, detailed, retryNum, queued,
+                STRING_CONTENT).handle((content, error) -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException
+                                && error.getCause() != null ? error.getCause() : error;
+                        CompletableFuture<PutResult> result = new CompletableFuture<>();
+                        if (isSpoolable(cause) && spool(dataPoints, progress)) {
+                            result.complete(progress.toPutResult());
+                        } else {
+                            result.completeExceptionally(cause);
+                        }
+                        return result;
                     }
-                } catch (IOException e) {
-                    time--;
-                    LOG.warn("Put occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver put tried after " + configuration.getQueryRetryNum()
-                                + " times for IOException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
+                    List<Point> retry;
+                    try {
+                        retry = handlePutResult(JSON.parseObject(content, PutResult.class),
+                                dataPoints, progress, resend > 0);
+                    } catch (ErrorResultException e) {
+                        CompletableFuture<PutResult> result = new CompletableFuture<>();
+                        result.completeExceptionally(e);
+                        return result;
                     }
-                } catch (URISyntaxException e) {
-                    time--;
-                    LOG.warn("Put occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver put tried after " + configuration.getQueryRetryNum()
-                                + " times for URISyntaxException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
+                    if (retry == null) {
+                        return CompletableFuture.completedFuture(progress.toPutResult());
                     }
+                    CompletableFuture<PutResult> result = new CompletableFuture<>();
+                    Scheduler.TIMER.schedule(() -> {
+                        try {
+                            putAsync(retry, sync, detailed, resend - 1, progress)
+                                    .whenComplete((putResult, e) -> {
+                                        if (e != null) {
+                                            result.completeExceptionally(e);
+                                        } else {
+                                            result.complete(putResult);
+                                        }
+                                    });
+                        } catch (RuntimeException e) {
+                            result.completeExceptionally(e);
+                        }
+                    }, progress.resendDelay, TimeUnit.MILLISECONDS);
+                    return result;
+                }).thenCompose(result -> result);
+    }
+
+    /**
+     * Returns if the put failed by the error is spooled: the retries are exhausted, or the put
+     * was tried once and failed with an error the {@link RetryPolicy} would retry.
+     */
+    private boolean isSpoolable(Throwable error) {
+        return error instanceof OverRetryException
+                || retryPolicy.isRetryable(HttpApiEndpoint.PUT, error);
+    }
+
+    /**
+     * Append the data points to the spool, to be put again once opentsdb is back.
+     * 
+     * @return false when the spool is disabled or the data points could not be spooled
+     */
+    private boolean spool(List<? extends Point> dataPoints, PutProgress progress) {
+        if (spool == null) {
+            return false;
+        }
+        int count = 0;
+        for (Point dataPoint : dataPoints) {
+            count += dataPoint.count();
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            serializer.serialize(dataPoints, out);
+            if (!spool.append(out.toByteArray(), count)) {
+                LOG.error("The spool is full, " + count + " data points are lost");
+                return false;
+            }
+        } catch (IOException e) {
+            LOG.error("Spool " + count + " data points failed, detailed information : " + e);
+            return false;
+        }
+        LOG.warn("Opentsdb is unreachable, " + count + " data points are spooled");
+        progress.spooled += count;
+        return true;
+    }
+
+    /**
+     * Put a spooled body again, tried once; called by the {@link SpoolReplayer}. Of the data
+     * points opentsdb fails, the ones failed with retryable errors are spooled again and the
+     * rejected ones are given to the {@link DeadLetterHandler}.
+     * 
+     * @return the number of data points spooled again
+     */
+    int replay(byte[] payload) throws IOException, InterruptedException, ExecutionException,
+            AbnormalResultException, URISyntaxException, BackpressureException {
+        PooledOutputStream out = newBodyStream();
+        PooledBytes body;
+        try {
+            out.write(payload);
+            body = out.toPooledBytes();
+        } catch (IOException | RuntimeException e) {
+            out.release();
+            throw e;
+        }
+        InFlightLimiter.Permit permit = null;
+        try {
+            permit = inFlightLimiter.acquireSync(body.length());
+            // detailed, so opentsdb answers with the put result instead of an empty 204
+            PutResult putResult = JSON.parseObject(getHttpContent(HttpApiEndpoint.PUT, body, true),
+                    PutResult.class);
+            if (putResult == null || putResult.getFailed() == 0) {
+                return 0;
+            }
+            PutFailures failures = PutFailures.split(spooledPoints(payload), putResult,
+                    configuration.getPutErrorClassifier());
+            if (!failures.isMatched()) {
+                LOG.error("Opentsdb refused " + putResult.getFailed() + " spooled data points");
+                return 0;
+            }
+            if (!failures.getRejected().isEmpty()
+                    && !deadLetter(failures.getRejected(), failures.getRejectedErrors())) {
+                LOG.error("Opentsdb refused " + failures.getRejected().size()
+                        + " spooled data points : " + failures.getRejectedErrors());
+            }
+            if (!failures.getRetryable().isEmpty()) {
+                PutProgress progress = new PutProgress();
+                if (spool(failures.getRetryable(), progress)) {
+                    return progress.spooled;
                 }
             }
-        } else {
-            content = getHttpContent(HttpApiEndpoint.PUT, jsonString, detailed);
+            return 0;
+        } finally {
+            inFlightLimiter.release(permit);
+            body.release();
         }
+    }
 
-        PutResult putResult = JSON.parseObject(content, PutResult.class);
-        if (putResult.getFailed() != 0) {
-            throw new ErrorResultException("put errors :" + putResult.getErrors(), dataPoints);
+    /**
+     * Read the data points of a spooled body back whole, so every error of opentsdb is matched
+     * and the data points spooled again are put as they were first.
+     */
+    private static List<Point> spooledPoints(byte[] payload) {
+        JSONArray array = JSON.parseArray(new String(payload, TConstants.UTF8_CHARSET));
+        List<Point> dataPoints = new ArrayList<>(array.size());
+        for (int i = 0; i < array.size(); i++) {
+            dataPoints.add(spooledPoint(array.getJSONObject(i)));
         }
-        return putResult;
+        return dataPoints;
+    }
+
+    private static Point spooledPoint(JSONObject point) {
+        String metric = point.getString("metric");
+        HashMap<String, String> tagMap = point.getObject("tags", TAGS_TYPE);
+        long timestamp = point.getLongValue("timestamp");
+        Object value = point.get("value");
+        String tsuid = point.getString("tsuid");
+        boolean integral = value instanceof Long || value instanceof Integer;
+        if (tsuid == null && value instanceof Number) {
+            TagSet tags = TagSet.of(tagMap);
+            return integral
+                    ? new PrimitiveDataPoint(metric, tags, timestamp, ((Number) value).longValue())
+                    : new PrimitiveDataPoint(metric, tags, timestamp,
+                            ((Number) value).doubleValue());
+        }
+        // the string values and the tsuids are only carried by a DataPoint
+        DataPoint.Builder builder = new DataPoint.Builder().setMetric(metric)
+                .setTimestamp(timestamp).setTags(tagMap).setTsuid(tsuid);
+        if (value instanceof Number) {
+            try {
+                builder.setValue(integral ? (Object) ((Number) value).longValue()
+                        : (Object) ((Number) value).doubleValue());
+            } catch (ErrorValueTypeException e) {
+                // a long or a double is always accepted
+                throw new IllegalStateException(e);
+            }
+        }
+        DataPoint dataPoint = builder.build();
+        if (value != null && !(value instanceof Number)) {
+            dataPoint.setValue(value.toString());
+        }
+        return dataPoint;
+    }
+
+    /**
+     * Return if opentsdb answers the version request, tried once.
+     */
+    boolean isReachable() {
+        try {
+            getHttpContent(HttpApiEndpoint.VERSION, null, false);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Handle the result of one put request: when opentsdb echoes the failed data points in the
+     * errors, only the retryable ones are put again and the rejected ones are given to the
+     * {@link DeadLetterHandler}; otherwise the whole put fails with {@ErrorResultException} as
+     * before. A resend takes its delay from the {@link RetryPolicy}, set in the progress, and
+     * when the policy allows no more retries the retryable data points are failed.
+     * 
+     * @return the data points to put again, or null when the put is done
+     */
+    private List<Point> handlePutResult(PutResult putResult, List<? extends Point> dataPoints,
+            PutProgress progress, boolean resend) throws ErrorResultException {
+        if (putResult == null) {
+            for (Point dataPoint : dataPoints) {
+                progress.success += dataPoint.count();
+            }
+            return null;
+        }
+        progress.success += putResult.getSuccess();
+        if (putResult.getFailed() == 0) {
+            return null;
+        }
+        PutFailures failures =
+                PutFailures.split(dataPoints, putResult, configuration.getPutErrorClassifier());
+        if (!failures.isMatched()) {
+            throw new ErrorResultException("put errors :" + putResult.getErrors(), dataPoints,
+                    putResult.getErrors());
+        }
+        if (!failures.getRejected().isEmpty()) {
+            if (deadLetter(failures.getRejected(), failures.getRejectedErrors())) {
+                progress.rejected += failures.getRejected().size();
+                progress.rejectedErrors.addAll(failures.getRejectedErrors());
+            } else {
+                progress.failed.addAll(failures.getRejected());
+                progress.failedErrors.addAll(failures.getRejectedErrors());
+            }
+        }
+        if (!failures.getRetryable().isEmpty()) {
+            long delay = resend ? retryPolicy.retryDelay(++progress.resends) : -1;
+            if (delay >= 0) {
+                LOG.warn("Put again " + failures.getRetryable().size()
+                        + " data points failed with retryable errors in " + delay + " ms");
+                progress.resendDelay = delay;
+                return failures.getRetryable();
+            }
+            progress.failed.addAll(failures.getRetryable());
+            progress.failedErrors.addAll(failures.getRetryableErrors());
+        }
+        if (!progress.failed.isEmpty()) {
+            throw new ErrorResultException("put errors :" + progress.failedErrors,
+                    progress.failed, progress.failedErrors);
+        }
+        return null;
     }
 
     /**
-     * real query operation ,using this the data point can be query from opentsdb , if putRetryNum
-     * is set more than 0 ,then this operation will retry when exception is occurs, retry times can
-     * be got from getRetryNum of {@Configuration};
+     * Give the rejected data points to the {@link DeadLetterHandler}.
+     * 
+     * @return false when no dead letter handler is set
+     */
+    private boolean deadLetter(List<Point> rejected, List<Errors> errors) {
+        DeadLetterHandler deadLetterHandler = configuration.getDeadLetterHandler();
+        if (deadLetterHandler == null) {
+            return false;
+        }
+        try {
+            deadLetterHandler.onRejected(rejected, errors);
+        } catch (RuntimeException e) {
+            LOG.error("dead letter handler failed, detailed information : " + e);
+        }
+        return true;
+    }
+
+    /**
+     * What a put has done so far over the requests putting the retryable data points again.
+     */
+    private static final class PutProgress {
+        private int success;
+        private int rejected;
+        private int spooled;
+        private int resends;
+        /** the delay before the next resend, ms */
+        private long resendDelay;
+        private final List<Errors> rejectedErrors = new ArrayList<>();
+        private final List<Point> failed = new ArrayList<>();
+        private final List<Errors> failedErrors = new ArrayList<>();
+
+        PutResult toPutResult() {
+            PutResult putResult = new PutResult(rejected, success, rejectedErrors);
+            putResult.setSpooled(spooled);
+            return putResult;
+        }
+    }
+
+    /**
+     * real query operation ,using this the data point can be query from opentsdb , if queryRetryNum
+     * is set more than 0 ,then the errors the {@link RetryPolicy} retries are tried again after its
+     * delay, up to queryRetryNum times of {@Configuration};
+     * the /api/query results are cached when queryCacheMaxBytes is set, see {@link QueryCache},
+     * then the list is unmodifiable and the results are the caller's own copies;
      * 
      * @param query the query data see {@Query}
      * @param api the api for http endpoint
@@ -220,91 +769,113 @@ public class Session implements Closeable{
      */
     public List<QueryResult> query(Query query, HttpApiEndpoint api) throws OverRetryException,
             ParseException, IllegalArgumentException, InterruptedException, ExecutionException,
-            IOException, AbnormalResultException, URISyntaxException {
-        String jsonString =
-                JSON.toJSONString(query, SerializerFeature.DisableCircularReferenceDetect);
-        String content = null;
-
-        int time = configuration.getQueryRetryNum();
-        if (configuration.getQueryRetryNum() > 0) {
-            while (time > 0) {
-                try {
-                    content = getHttpContent(api, jsonString, false);
-                    break;
-                } catch (AbnormalResultException e) {
-                    // TODO: handle exception
-                    time--;
-                    LOG.warn("Query occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver query tried after " + configuration.getQueryRetryNum()
-                                + " times for AbnormalResultException, detailed information : "
-                                + e.toString());
-                        throw new OverRetryException(e.getStatCode(), e.getErrmsg(),
-                                e.getServerException());
-                    }
-                } catch (InterruptedException e) {
-                    time--;
-                    LOG.warn("Query occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver query tried after " + configuration.getQueryRetryNum()
-                                + " times for InterruptedException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
-                    }
-                } catch (ExecutionException e) {
-                    time--;
-                    LOG.warn("Query occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver query tried after " + configuration.getQueryRetryNum()
-                                + " times for ExecutionException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
-                    }
-                } catch (ParseException e) {
-                    time--;
-                    LOG.warn("Query occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver query tried after " + configuration.getQueryRetryNum()
-                                + " times for ParseException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
-                    }
-                } catch (IllegalArgumentException e) {
-                    time--;
-                    LOG.warn("Query occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver query tried after " + configuration.getQueryRetryNum()
-                                + " times for IllegalArgumentException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
-                    }
-                } catch (IOException e) {
-                    time--;
-                    LOG.warn("Query occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver query tried after " + configuration.getQueryRetryNum()
-                                + " times for IOException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
-                    }
-                } catch (URISyntaxException e) {
-                    time--;
-                    LOG.warn("Query occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver query tried after " + configuration.getQueryRetryNum()
-                                + " times for URISyntaxException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
-                    }
-                }
+            IOException, AbnormalResultException, URISyntaxException, BackpressureException {
+        String key = cacheKey(query, api);
+        if (key != null) {
+            List<QueryResult> cached = queryCache.get(key);
+            if (cached != null) {
+                return cached;
             }
-        } else {
-            content = getHttpContent(api, jsonString, false);
         }
+        PooledBytes body = serializeQuery(query);
+        InFlightLimiter.Permit permit = null;
+        try {
+            permit = inFlightLimiter.acquireSync(body.length());
+            List<QueryResult> results = queryContent(body, api);
+            if (key != null) {
+                queryCache.put(key, query, results);
+                return Collections.unmodifiableList(results);
+            } else if (api == HttpApiEndpoint.DELETE && queryCache != null) {
+                queryCache.invalidateAll();
+            }
+            return results;
+        } finally {
+            inFlightLimiter.release(permit);
+            body.release();
+        }
+    }
+
+    private List<QueryResult> queryContent(PooledBytes body, HttpApiEndpoint api)
+            throws OverRetryException, ParseException, IllegalArgumentException,
+            InterruptedException, ExecutionException, IOException, AbnormalResultException,
+            URISyntaxException {
+        return getHttpContent(api, body, false, configuration.getQueryRetryNum(), QUERY_RESULTS);
+    }
 
-        List<QueryResult> queryResults = JSON.parseArray(content, QueryResult.class);
-        return queryResults;
+    /**
+     * asynchronous query operation, see {@link #query(Query, HttpApiEndpoint)}; the returned
+     * future is completed from the io reactor thread, and fails with {@OverRetryException} after
+     * queryRetryNum tries.
+     * 
+     * @param query the query data see {@Query}
+     * @param api the api for http endpoint
+     * @return the future of the List of QueryResult see {@QueryResult}
+     */
+    public CompletableFuture<List<QueryResult>> queryAsync(Query query, HttpApiEndpoint api) {
+        String key = cacheKey(query, api);
+        if (key != null) {
+            List<QueryResult> cached = queryCache.get(key);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        PooledBytes body;
+        try {
+            body = serializeQuery(query);
+        } catch (IOException e) {
+            CompletableFuture<List<QueryResult>> result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
+        }
+        CompletableFuture<List<QueryResult>> result = getHttpContentAsync(api, body, false,
+                configuration.getQueryRetryNum(), QUERY_RESULTS);
+        if (key != null) {
+            CompletableFuture<List<QueryResult>> cached = result.thenApply(results -> {
+                queryCache.put(key, query, results);
+                return Collections.unmodifiableList(results);
+            });
+            // cancelling the returned future still aborts the request
+            cached.whenComplete((results, e) -> {
+                if (cached.isCancelled()) {
+                    result.cancel(false);
+                }
+            });
+            return cached;
+        } else if (api == HttpApiEndpoint.DELETE && queryCache != null) {
+            result.thenRun(queryCache::invalidateAll);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the fingerprint the results of the query are cached by, null when they are not:
+     * only the /api/query results are, and all of them are dropped after a delete.
+     */
+    private String cacheKey(Query query, HttpApiEndpoint api) {
+        if (queryCache == null || api != HttpApiEndpoint.QUERY || !QueryCache.isCached(query)) {
+            return null;
+        }
+        return QueryCache.fingerprint(query);
+    }
+
+    /**
+     * asynchronous query operation, default is /api/query;
+     * 
+     * @param query the query param for the operation see {@Query};
+     * @return the future of the list of {@QueryResult}
+     */
+    public CompletableFuture<List<QueryResult>> queryAsync(Query query) {
+        return queryAsync(query, HttpApiEndpoint.QUERY);
+    }
+
+    /**
+     * asynchronous query last operation, for /api/query/last
+     * 
+     * @param query the query param see {@Query}
+     * @return the future of the list of {@QueryResult}
+     */
+    public CompletableFuture<List<QueryResult>> queryLastAsync(Query query) {
+        return queryAsync(query, HttpApiEndpoint.QUERY_LAST);
     }
 
     /**
@@ -315,10 +886,91 @@ public class Session implements Closeable{
      */
     public List<QueryResult> query(Query query) throws ParseException, IllegalArgumentException,
             OverRetryException, InterruptedException, ExecutionException, IOException,
-            AbnormalResultException, URISyntaxException {
+            AbnormalResultException, URISyntaxException, BackpressureException {
         return query(query, HttpApiEndpoint.QUERY);
     }
 
+    /**
+     * streamed query operation, the series are decoded one at a time while the response arrives
+     * instead of into a list of the whole answer, for queries of many series like exports, see
+     * {@link QueryResultStream}. The request is tried again like {@link #query(Query,
+     * HttpApiEndpoint)} till the head of the response is received, the errors after are thrown
+     * by the stream; it is not hedged, and it holds its share of the in flight limit till the
+     * stream is closed.
+     * 
+     * @param query the query data see {@Query}
+     * @param api the api for http endpoint
+     * @return the stream of the query results, it must be closed
+     */
+    public QueryResultStream queryStream(Query query, HttpApiEndpoint api)
+            throws OverRetryException, ParseException, IllegalArgumentException,
+            InterruptedException, ExecutionException, IOException, AbnormalResultException,
+            URISyntaxException, BackpressureException {
+        PooledBytes body = serializeQuery(query);
+        InFlightLimiter.Permit permit = null;
+        try {
+            permit = inFlightLimiter.acquireSync(body.length());
+            InFlightLimiter.Permit granted = permit;
+            QueryResultStream stream = getHttpStream(api, body, configuration.getQueryRetryNum(),
+                    () -> inFlightLimiter.release(granted));
+            // the stream releases it when it is closed
+            permit = null;
+            return stream;
+        } finally {
+            inFlightLimiter.release(permit);
+            body.release();
+        }
+    }
+
+    /**
+     * streamed query operation, default is /api/query; see
+     * {@link #queryStream(Query, HttpApiEndpoint)}
+     * 
+     * @param query the query param for the operation see {@Query};
+     * @return the stream of the query results, it must be closed
+     */
+    public QueryResultStream queryStream(Query query) throws ParseException,
+            IllegalArgumentException, OverRetryException, InterruptedException,
+            ExecutionException, IOException, AbnormalResultException, URISyntaxException,
+            BackpressureException {
+        return queryStream(query, HttpApiEndpoint.QUERY);
+    }
+
+    /**
+     * pushed query operation, the series are handed to the consumer while the response is
+     * decoded, without a {@QueryResult} or a boxed data point, see {@link SeriesConsumer}; the
+     * consumer is called from this thread, the response is read ahead of it by a bounded buffer
+     * only. The request is tried again like {@link #queryStream(Query, HttpApiEndpoint)}.
+     * 
+     * @param query the query data see {@Query}
+     * @param api the api for http endpoint
+     * @param consumer receives the series of the answer
+     */
+    public void query(Query query, HttpApiEndpoint api, SeriesConsumer consumer)
+            throws OverRetryException, ParseException, IllegalArgumentException,
+            InterruptedException, ExecutionException, IOException, AbnormalResultException,
+            URISyntaxException, BackpressureException {
+        try (QueryResultStream stream = queryStream(query, api)) {
+            stream.push(consumer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * pushed query operation, default is /api/query; see
+     * {@link #query(Query, HttpApiEndpoint, SeriesConsumer)}
+     * 
+     * @param query the query param for the operation see {@Query};
+     * @param consumer receives the series of the answer
+     */
+    public void query(Query query, SeriesConsumer consumer) throws ParseException,
+            IllegalArgumentException, OverRetryException, InterruptedException,
+            ExecutionException, IOException, AbnormalResultException, URISyntaxException,
+            BackpressureException {
+        query(query, HttpApiEndpoint.QUERY, consumer);
+    }
+
     /**
      * query exp operation, for /api/query/exp
      * 
@@ -335,7 +987,7 @@ public class Session implements Closeable{
      */
     public List<QueryResult> queryExp(Query query) throws ParseException, IllegalArgumentException,
             OverRetryException, InterruptedException, ExecutionException, IOException,
-            AbnormalResultException, URISyntaxException {
+            AbnormalResultException, URISyntaxException, BackpressureException {
         return query(query, HttpApiEndpoint.QUERY_EXP);
     }
 
@@ -355,7 +1007,7 @@ public class Session implements Closeable{
      */
     public List<QueryResult> queryGexp(Query query) throws ParseException, IllegalArgumentException,
             OverRetryException, InterruptedException, ExecutionException, IOException,
-            AbnormalResultException, URISyntaxException {
+            AbnormalResultException, URISyntaxException, BackpressureException {
         return query(query, HttpApiEndpoint.QUERY_GEXP);
     }
 
@@ -375,7 +1027,7 @@ public class Session implements Closeable{
      */
     public List<QueryResult> queryLast(Query query) throws ParseException, IllegalArgumentException,
             OverRetryException, InterruptedException, ExecutionException, IOException,
-            AbnormalResultException, URISyntaxException {
+            AbnormalResultException, URISyntaxException, BackpressureException {
         return query(query, HttpApiEndpoint.QUERY_LAST);
     }
 
@@ -395,87 +1047,21 @@ public class Session implements Closeable{
     public TsdbVsersion version() throws OverRetryException, ParseException,
             IllegalArgumentException, InterruptedException, ExecutionException, IOException,
             AbnormalResultException, URISyntaxException {
-        String content = null;
-        int time = configuration.getQueryRetryNum();
-        if (configuration.getQueryRetryNum() > 0) {
-            while (time > 0) {
-                try {
-                    content = getHttpContent(HttpApiEndpoint.VERSION, null, false);
-                    break;
-                } catch (AbnormalResultException e) {
-                    // TODO: handle exception
-                    time--;
-                    LOG.warn("Version occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver version tried after " + configuration.getQueryRetryNum()
-                                + " times for AbnormalResultException, detailed information : "
-                                + e.toString());
-                        throw new OverRetryException(e.getStatCode(), e.getErrmsg(),
-                                e.getServerException());
-                    }
-                } catch (InterruptedException e) {
-                    time--;
-                    LOG.warn("Version occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver version tried after " + configuration.getQueryRetryNum()
-                                + " times for InterruptedException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
-                    }
-                } catch (ExecutionException e) {
-                    time--;
-                    LOG.warn("Version occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver version tried after " + configuration.getQueryRetryNum()
-                                + " times for ExecutionException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
-                    }
-                } catch (ParseException e) {
-                    time--;
-                    LOG.warn("Version occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver version tried after " + configuration.getQueryRetryNum()
-                                + " times for ParseException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
-                    }
-                } catch (IllegalArgumentException e) {
-                    time--;
-                    LOG.warn("Version occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver version tried after " + configuration.getQueryRetryNum()
-                                + " times for IllegalArgumentException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
-                    }
-                } catch (IOException e) {
-                    time--;
-                    LOG.warn("Version occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver version tried after " + configuration.getQueryRetryNum()
-                                + " times for IOException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
-                    }
-                } catch (URISyntaxException e) {
-                    time--;
-                    LOG.warn("Version occurs exceptions time : "
-                            + (configuration.getQueryRetryNum() - time));
-                    if (time <= 0) {
-                        LOG.error("driver version tried after " + configuration.getQueryRetryNum()
-                                + " times for URISyntaxException, detailed information : " + e.getMessage());
-                        throw new OverRetryException(e.getMessage());
-                    }
-                }
-            }
-        } else {
-            content = getHttpContent(HttpApiEndpoint.VERSION, null, false);
-        }
+        String content = getHttpContent(HttpApiEndpoint.VERSION, null, false,
+                configuration.getQueryRetryNum());
         return getVersionResult(content);
     }
 
+    /**
+     * asynchronous version operation, see {@link #version()}
+     * 
+     * @return the future of the version of openstdb server
+     */
+    public CompletableFuture<TsdbVsersion> versionAsync() {
+        return getHttpContentAsync(HttpApiEndpoint.VERSION, null, false,
+                configuration.getQueryRetryNum()).thenApply(this::getVersionResult);
+    }
+
     /**
      * get the enum version of opentsdb
      * 
@@ -521,63 +1107,807 @@ public class Session implements Closeable{
      */
     public List<QueryResult> delete(Query query) throws ParseException, IllegalArgumentException,
             OverRetryException, InterruptedException, ExecutionException, IOException,
-            AbnormalResultException, URISyntaxException {
+            AbnormalResultException, URISyntaxException, BackpressureException {
         query.setDelete(true);
         return query(query, HttpApiEndpoint.DELETE);
     }
 
+    /**
+     * asynchronous delete operation, see {@link #delete(Query)}
+     * 
+     * @param query the query for specified metri in query ,see {@Query}
+     * @return the future of the delete result ;
+     */
+    public CompletableFuture<List<QueryResult>> deleteAsync(Query query) {
+        query.setDelete(true);
+        return queryAsync(query, HttpApiEndpoint.DELETE);
+    }
+
+    /**
+     * the http request tried up to retryNum times, see {@link #getHttpContent(HttpApiEndpoint,
+     * PooledBytes, boolean)}; the {@link RetryPolicy} tells which errors are tried again and how
+     * long to wait before, an error it does not retry is thrown at once. When the tries or the
+     * retry budget are spent it fails with {@OverRetryException}.
+     * 
+     * @param endpoint the http endpoint see {@HttpApiEndpoint}
+     * @param body the request json held in the pooled buffer
+     * @param detailed the detailed for request to return detailed message
+     * @param retryNum the max number of times the request is tried, 0 tries it once
+     * @return the http content
+     */
+    private String getHttpContent(HttpApiEndpoint endpoint, PooledBytes body, boolean detailed,
+            int retryNum) throws InterruptedException, ExecutionException, ParseException,
+            IllegalArgumentException, IOException, AbnormalResultException, URISyntaxException,
+            OverRetryException {
+        return getHttpContent(endpoint, body, detailed, retryNum, STRING_CONTENT);
+    }
+
+    /**
+     * the http request tried up to retryNum times, see {@link #getHttpContent(HttpApiEndpoint,
+     * PooledBytes, boolean, int)}; the content is decoded by the parser.
+     */
+    private <T> T getHttpContent(HttpApiEndpoint endpoint, PooledBytes body, boolean detailed,
+            int retryNum, ResponseParser<T> parser) throws InterruptedException,
+            ExecutionException, ParseException, IllegalArgumentException, IOException,
+            AbnormalResultException, URISyntaxException, OverRetryException {
+        for (int tries = 1;; tries++) {
+            try {
+                T content = getHttpContent(endpoint, body, detailed, parser);
+                retryPolicy.onSuccess();
+                return content;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                if (retryNum <= 0 || !retryPolicy.isRetryable(endpoint, e)) {
+                    throw e;
+                }
+                long delay = tries < retryNum ? retryPolicy.retryDelay(tries) : -1;
+                if (delay < 0) {
+                    throw overRetry(endpoint, tries, e);
+                }
+                LOG.warn(endpoint + " occurs exceptions time : " + tries + ", retry in " + delay
+                        + " ms");
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the {@OverRetryException} of a request which failed tries times by the cause.
+     */
+    private static OverRetryException overRetry(HttpApiEndpoint endpoint, int tries,
+            Throwable cause) {
+        if (cause instanceof AbnormalResultException) {
+            AbnormalResultException abnormal = (AbnormalResultException) cause;
+            LOG.error("driver " + endpoint + " tried after " + tries
+                    + " times for AbnormalResultException, detailed information : "
+                    + abnormal.toString());
+            return new OverRetryException(abnormal.getStatCode(), abnormal.getErrmsg(),
+                    abnormal.getServerException());
+        }
+        LOG.error("driver " + endpoint + " tried after " + tries + " times for "
+                + cause.getClass().getSimpleName() + ", detailed information : "
+                + cause.getMessage());
+        return new OverRetryException(cause.getMessage());
+    }
+
     /**
      * the http request ,for different type of http request ,we return differenet result
      * 
      * @param endpoint the http endpoint see {@HttpApiEndpoint}
-     * @param jsonString the request json
+     * @param body the request json held in the pooled buffer
      * @param detailed the detailed for request to return detailed message
      * @return the http response
      */
-    private String getHttpContent(HttpApiEndpoint endpoint, String jsonString, boolean detailed)
+    private String getHttpContent(HttpApiEndpoint endpoint, PooledBytes body, boolean detailed)
             throws InterruptedException, ExecutionException, ParseException,
             IllegalArgumentException, IOException, AbnormalResultException, URISyntaxException {
+        return getHttpContent(endpoint, body, detailed, STRING_CONTENT);
+    }
+
+    private <T> T getHttpContent(HttpApiEndpoint endpoint, PooledBytes body, boolean detailed,
+            ResponseParser<T> parser) throws InterruptedException, ExecutionException,
+            ParseException, IllegalArgumentException, IOException, AbnormalResultException,
+            URISyntaxException {
+        if (isHedged(endpoint)) {
+            return getHedgedContent(endpoint, body, detailed, parser);
+        }
+        Node node = selectNode();
+        HttpClient httpClient = node.getHttpClient();
         assert httpClient != null;
+        long start = node.begin();
+        CompletableFuture<HttpResponse> request;
+        try {
+            request = sendRequest(httpClient, endpoint, body, detailed);
+        } catch (RuntimeException e) {
+            node.cancel();
+            throw e;
+        }
+        try {
+            HttpResponse httpResponse = request.get();
+            T content = getResponseContent(httpResponse, parser);
+            node.end(start, true);
+            return content;
+        } catch (InterruptedException e) {
+            // the request would go on sending the body after the caller released it
+            request.cancel(false);
+            node.cancel();
+            throw e;
+        } catch (Exception e) {
+            node.end(start, !isNodeFailure(e));
+            throw e;
+        }
+    }
+
+    /**
+     * the streamed http request tried up to retryNum times, see {@link #getHttpContent(
+     * HttpApiEndpoint, PooledBytes, boolean, int)}; a try succeeds with the head of the answer.
+     */
+    private QueryResultStream getHttpStream(HttpApiEndpoint endpoint, PooledBytes body,
+            int retryNum, Runnable onClose) throws InterruptedException, ExecutionException,
+            ParseException, IllegalArgumentException, IOException, AbnormalResultException,
+            OverRetryException {
+        for (int tries = 1;; tries++) {
+            try {
+                QueryResultStream stream = getHttpStream(endpoint, body, onClose);
+                retryPolicy.onSuccess();
+                return stream;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                if (retryNum <= 0 || !retryPolicy.isRetryable(endpoint, e)) {
+                    throw e;
+                }
+                long delay = tries < retryNum ? retryPolicy.retryDelay(tries) : -1;
+                if (delay < 0) {
+                    throw overRetry(endpoint, tries, e);
+                }
+                LOG.warn(endpoint + " occurs exceptions time : " + tries + ", retry in " + delay
+                        + " ms");
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+            }
+        }
+    }
+
+    private QueryResultStream getHttpStream(HttpApiEndpoint endpoint, PooledBytes body,
+            Runnable onClose) throws InterruptedException, ExecutionException, ParseException,
+            IllegalArgumentException, IOException, AbnormalResultException {
+        Node node = selectNode();
+        HttpClient httpClient = node.getHttpClient();
+        assert httpClient != null;
+        long start = node.begin();
+        body.retain();
+        CompletableFuture<HttpResponse> request;
+        try {
+            request = httpClient.postStreamed(body, null, endpoint);
+        } catch (RuntimeException e) {
+            body.release();
+            node.cancel();
+            throw e;
+        }
+        request.whenComplete((r, e) -> body.release());
         HttpResponse httpResponse = null;
+        try {
+            httpResponse = request.get();
+            HttpEntity entity = httpResponse.getEntity();
+            QueryResultStream stream;
+            if (entity != null
+                    && httpResponse.getStatusLine().getStatusCode() == TConstants.SUCCESS_CODE) {
+                stream = new QueryResultStream(entity.getContent(),
+                        ContentType.getOrDefault(entity).getCharset(), onClose);
+            } else {
+                // an answer without results is small, it is read whole
+                String content = getResponseContent(httpResponse);
+                stream = new QueryResultStream(
+                        new ByteArrayInputStream(content.getBytes(TConstants.UTF8_CHARSET)), null,
+                        onClose);
+            }
+            node.end(start, true);
+            return stream;
+        } catch (InterruptedException e) {
+            request.cancel(true);
+            node.cancel();
+            throw e;
+        } catch (Exception e) {
+            abort(httpResponse);
+            node.end(start, !isNodeFailure(e));
+            throw e;
+        }
+    }
+
+    /**
+     * abort the request of a streamed answer which is not read to its end
+     */
+    private static void abort(HttpResponse httpResponse) {
+        HttpEntity entity = httpResponse != null ? httpResponse.getEntity() : null;
+        if (entity == null || !entity.isStreaming()) {
+            return;
+        }
+        try {
+            entity.getContent().close();
+        } catch (IOException | IllegalStateException e) {
+            // it is read already
+        }
+    }
+
+    /**
+     * choose the node of a request by the load balancing policy among the nodes the circuit
+     * breaker allows; when it allows none all the nodes are chosen from, rather than failing
+     * every request till a probe succeeds.
+     */
+    private Node selectNode() {
+        if (!configuration.isCircuitBreaker() || nodes.size() == 1) {
+            return loadBalancingPolicy.select(nodes);
+        }
+        long now = System.nanoTime();
+        List<Node> allowed = null;
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            if (node.allowRequest(now)) {
+                if (allowed != null) {
+                    allowed.add(node);
+                }
+            } else if (allowed == null) {
+                allowed = new ArrayList<>(nodes.subList(0, i));
+            }
+        }
+        if (allowed == null || allowed.isEmpty()) {
+            return loadBalancingPolicy.select(nodes);
+        }
+        return loadBalancingPolicy.select(allowed);
+    }
+
+    /**
+     * choose the node of a duplicate request among the nodes the circuit breaker allows, but
+     * the excluded one; the excluded one is returned when there is no other.
+     */
+    private Node selectNode(Node excluded) {
+        long now = System.nanoTime();
+        List<Node> candidates = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (node != excluded
+                    && (!configuration.isCircuitBreaker() || node.allowRequest(now))) {
+                candidates.add(node);
+            }
+        }
+        return candidates.isEmpty() ? excluded : loadBalancingPolicy.select(candidates);
+    }
+
+    /**
+     * Returns if the failure of a request is the fault of the node: an error answer below 500 is
+     * caused by the request itself, like a bad query, and tells nothing about the node.
+     */
+    private static boolean isNodeFailure(Throwable cause) {
+        if (cause instanceof AbnormalResultException) {
+            try {
+                String code = ((AbnormalResultException) cause).getStatCode();
+                return Integer.parseInt(code) >= TConstants.SERVER_ERROR_PREFIX;
+            } catch (NumberFormatException e) {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * the asynchronous http request, the returned future is completed from the io reactor thread
+     * with the http content; when retryNum is more than 0 the request is retried until it
+     * succeeds or retryNum times is reached, then the future fails with {@OverRetryException};
+     * the body is released when the future is completed.
+     * 
+     * @param endpoint the http endpoint see {@HttpApiEndpoint}
+     * @param body the request json held in the pooled buffer
+     * @param detailed the detailed for request to return detailed message
+     * @param retryNum the max number of times the request is tried
+     * @return the future of the http content
+     */
+    private CompletableFuture<String> getHttpContentAsync(HttpApiEndpoint endpoint,
+            PooledBytes body, boolean detailed, int retryNum) {
+        return getHttpContentAsync(endpoint, body, detailed, retryNum, STRING_CONTENT);
+    }
+
+    /**
+     * the asynchronous http request, see {@link #getHttpContentAsync(HttpApiEndpoint,
+     * PooledBytes, boolean, int)}; the content is decoded by the parser.
+     */
+    private <T> CompletableFuture<T> getHttpContentAsync(HttpApiEndpoint endpoint,
+            PooledBytes body, boolean detailed, int retryNum, ResponseParser<T> parser) {
+        return getHttpContentAsync(endpoint, body, detailed, retryNum, false, parser);
+    }
+
+    /**
+     * the asynchronous http request, see {@link #getHttpContentAsync(HttpApiEndpoint,
+     * PooledBytes, boolean, int)}; when queued is set the permit is taken without blocking, see
+     * {@link InFlightLimiter#acquireQueued(long)}.
+     */
+    private <T> CompletableFuture<T> getHttpContentAsync(HttpApiEndpoint endpoint,
+            PooledBytes body, boolean detailed, int retryNum, boolean queued,
+            ResponseParser<T> parser) {
+        long size = body != null ? body.length() : 0;
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<T> returned = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<T>> current = new AtomicReference<>();
+        AtomicReference<InFlightLimiter.Permit> granted = new AtomicReference<>();
+        // the version requests are not limited, they are tiny and used to probe the server
+        CompletableFuture<InFlightLimiter.Permit> permit = endpoint == HttpApiEndpoint.VERSION
+                ? CompletableFuture.completedFuture(null)
+                : queued ? inFlightLimiter.acquireQueued(size) : inFlightLimiter.acquire(size);
+        // the permit and the body are released before the caller sees the result
+        result.whenComplete((content, e) -> {
+            CompletableFuture<T> request = current.get();
+            if (result.isCancelled() && request != null) {
+                request.cancel(false);
+            }
+            permit.cancel(false);
+            inFlightLimiter.release(granted.getAndSet(null));
+            if (body != null) {
+                body.release();
+            }
+            if (e != null) {
+                returned.completeExceptionally(e);
+            } else {
+                returned.complete(content);
+            }
+        });
+        returned.whenComplete((content, e) -> {
+            if (returned.isCancelled()) {
+                result.cancel(false);
+            }
+        });
+        permit.whenComplete((p, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+                return;
+            }
+            granted.set(p);
+            if (result.isDone()) {
+                inFlightLimiter.release(granted.getAndSet(null));
+            } else {
+                tryHttpContentAsync(endpoint, body, detailed, parser, retryNum, 1, current,
+                        result);
+            }
+        });
+        return returned;
+    }
+
+    /**
+     * start the try number tries of the asynchronous http request, a retry is scheduled on the
+     * {@link Scheduler} after the delay of the {@link RetryPolicy}, so no thread waits for it
+     */
+    private <T> void tryHttpContentAsync(HttpApiEndpoint endpoint, PooledBytes body,
+            boolean detailed, ResponseParser<T> parser, int retryNum, int tries,
+            AtomicReference<CompletableFuture<T>> current, CompletableFuture<T> result) {
+        if (result.isDone()) {
+            return;
+        }
+        // every try chooses its node, so a retry may go to another node
+        CompletableFuture<T> request = isHedged(endpoint)
+                ? hedgedContentAsync(endpoint, body, detailed, parser)
+                : sendAsync(selectNode(), endpoint, body, detailed, parser);
+        current.set(request);
+        if (result.isDone()) {
+            request.cancel(false);
+            return;
+        }
+
+        request.whenComplete((content, e) -> {
+            if (e == null) {
+                retryPolicy.onSuccess();
+                result.complete(content);
+                return;
+            }
+            Throwable cause = e;
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (result.isDone()) {
+                return;
+            }
+            if (retryNum <= 0 || !retryPolicy.isRetryable(endpoint, cause)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            long delay = tries < retryNum ? retryPolicy.retryDelay(tries) : -1;
+            if (delay < 0) {
+                result.completeExceptionally(overRetry(endpoint, tries, cause));
+                return;
+            }
+            LOG.warn(endpoint + " occurs exceptions time : " + tries + ", retry in " + delay
+                    + " ms");
+            if (delay == 0) {
+                tryHttpContentAsync(endpoint, body, detailed, parser, retryNum, tries + 1,
+                        current, result);
+            } else {
+                Scheduler.TIMER.schedule(() -> {
+                    try {
+                        tryHttpContentAsync(endpoint, body, detailed, parser, retryNum,
+                                tries + 1, current, result);
+                    } catch (RuntimeException ex) {
+                        result.completeExceptionally(ex);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    /**
+     * send one asynchronous http request to the node, the future is completed with the http
+     * content from the io reactor thread; the request is counted on the node, and cancelling the
+     * future aborts it. The body is kept till the http request is finished, not only till the
+     * future is done.
+     */
+    private <T> CompletableFuture<T> sendAsync(Node node, HttpApiEndpoint endpoint,
+            PooledBytes body, boolean detailed, ResponseParser<T> parser) {
+        HttpClient httpClient = node.getHttpClient();
+        assert httpClient != null;
+        long start = node.begin();
+        CompletableFuture<HttpResponse> request;
+        try {
+            request = sendRequest(httpClient, endpoint, body, detailed);
+        } catch (RuntimeException e) {
+            node.cancel();
+            throw e;
+        }
+        CompletableFuture<T> content = new CompletableFuture<>();
+        request.whenComplete((httpResponse, e) -> {
+            Throwable cause = e;
+            if (cause == null) {
+                try {
+                    T c = getResponseContent(httpResponse, parser);
+                    node.end(start, true);
+                    content.complete(c);
+                    return;
+                } catch (Exception ex) {
+                    cause = ex;
+                }
+            }
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof CancellationException) {
+                node.cancel();
+            } else {
+                node.end(start, !isNodeFailure(cause));
+            }
+            content.completeExceptionally(cause);
+        });
+        content.whenComplete((c, e) -> {
+            if (content.isCancelled()) {
+                request.cancel(false);
+            }
+        });
+        return content;
+    }
+
+    /**
+     * send the http request of the endpoint, the body is retained till the exchange is finished
+     * or aborted, so the caller may release it as soon as it stops waiting; cancelling the
+     * future aborts the request.
+     */
+    private CompletableFuture<HttpResponse> sendRequest(HttpClient httpClient,
+            HttpApiEndpoint endpoint, PooledBytes body, boolean detailed) {
+        if (body != null) {
+            body.retain();
+        }
+        CompletableFuture<HttpResponse> request;
+        try {
+            switch (endpoint) {
+                case PUT:
+                    request = httpClient.postDetailedAsync(body, getPutParams(detailed),
+                            endpoint);
+                    break;
+                case DELETE:
+                    request = httpClient.deleteAsync(body, endpoint);
+                    break;
+                case VERSION:
+                    request = httpClient.versionAsync(endpoint);
+                    break;
+                default:
+                    request = httpClient.postDetailedAsync(body, null, endpoint);
+                    break;
+            }
+        } catch (RuntimeException e) {
+            if (body != null) {
+                body.release();
+            }
+            throw e;
+        }
+        if (body != null) {
+            request.whenComplete((httpResponse, e) -> body.release());
+        }
+        return request;
+    }
+
+    /**
+     * Returns if the requests of the endpoint are hedged: only the reads, a put or delete sent
+     * twice would be applied twice.
+     */
+    private boolean isHedged(HttpApiEndpoint endpoint) {
+        if (hedgingPolicy == null) {
+            return false;
+        }
         switch (endpoint) {
-            case PUT:
-                int syncTimeout = configuration.getSyncTimeout();
-                Map<String, String> map = new HashMap<>();
-                if (detailed) {
-                    map.put("details", "true");
-                    if (syncTimeout > 0) {
-                        map.put("sync", "true");
-                        map.put("timeout", syncTimeout + "");
+            case QUERY:
+            case QUERY_LAST:
+            case QUERY_EXP:
+            case QUERY_GEXP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * send one try of a read, and a duplicate of it to another node, or another connection of
+     * the only node, when it is not answered within the delay of the {@link HedgingPolicy}; the
+     * first answer wins and the other request is cancelled, the try fails only when all its
+     * requests failed.
+     */
+    private <T> CompletableFuture<T> hedgedContentAsync(HttpApiEndpoint endpoint,
+            PooledBytes body, boolean detailed, ResponseParser<T> parser) {
+        long start = System.nanoTime();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        List<CompletableFuture<T>> requests = new CopyOnWriteArrayList<>();
+        AtomicInteger running = new AtomicInteger(1);
+        BiConsumer<T, Throwable> onComplete = (content, e) -> {
+            if (e == null) {
+                if (result.complete(content)) {
+                    hedgingPolicy.onResponse(endpoint, System.nanoTime() - start,
+                            TimeUnit.NANOSECONDS);
+                }
+            } else if (running.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            }
+        };
+        Node first = selectNode();
+        CompletableFuture<T> primary = sendAsync(first, endpoint, body, detailed, parser);
+        requests.add(primary);
+        primary.whenComplete(onComplete);
+
+        long delay = hedgingPolicy.hedgeDelay(endpoint);
+        ScheduledFuture<?> timer = delay < 0 ? null : Scheduler.TIMER.schedule(() -> {
+            if (result.isDone() || !hedgingPolicy.allowHedge(endpoint)) {
+                return;
+            }
+            // the duplicate is only sent while the first request is running
+            int count;
+            do {
+                count = running.get();
+                if (count == 0) {
+                    return;
+                }
+            } while (!running.compareAndSet(count, count + 1));
+            try {
+                CompletableFuture<T> hedge =
+                        sendAsync(selectNode(first), endpoint, body, detailed, parser);
+                requests.add(hedge);
+                hedge.whenComplete(onComplete);
+                if (result.isDone()) {
+                    hedge.cancel(false);
+                }
+            } catch (RuntimeException e) {
+                onComplete.accept(null, e);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+        result.whenComplete((content, e) -> {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            for (CompletableFuture<T> request : requests) {
+                request.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * the synchronous hedged read, see {@link #hedgedContentAsync}; the errors are thrown like
+     * the ones of the not hedged requests.
+     */
+    private <T> T getHedgedContent(HttpApiEndpoint endpoint, PooledBytes body, boolean detailed,
+            ResponseParser<T> parser)
+            throws InterruptedException, ExecutionException, AbnormalResultException {
+        CompletableFuture<T> request = hedgedContentAsync(endpoint, body, detailed, parser);
+        try {
+            return request.get();
+        } catch (InterruptedException e) {
+            request.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof AbnormalResultException) {
+                throw (AbnormalResultException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * the stream the request bodies are serialized into, it gzips the bodies which are not
+     * smaller than the compression threshold when the compression is enabled
+     */
+    private PooledOutputStream newBodyStream() {
+        if (configuration.isCompression()) {
+            return new PooledOutputStream(bufferPool, configuration.getCompressionThreshold(),
+                    configuration.getCompressionLevel());
+        }
+        return new PooledOutputStream(bufferPool);
+    }
+
+    /**
+     * serialize the data points straight into the pooled buffer, see {@DataPointSerializer}
+     */
+    private PooledBytes serializePut(List<? extends Point> dataPoints) throws IOException {
+        PooledOutputStream out = newBodyStream();
+        try {
+            serializer.serialize(dataPoints, out);
+            return out.toPooledBytes();
+        } catch (IOException | RuntimeException e) {
+            out.release();
+            throw e;
+        }
+    }
+
+    private PooledBytes serializeQuery(Query query) throws IOException {
+        PooledOutputStream out = newBodyStream();
+        try {
+            JSON.writeJSONString(out, query, SerializerFeature.DisableCircularReferenceDetect);
+            return out.toPooledBytes();
+        } catch (IOException | RuntimeException e) {
+            out.release();
+            throw e;
+        }
+    }
+
+    /**
+     * the params of the put request, for the detailed and sync/timeout options; they are built
+     * once, so the http client resolves the put uri once for each of them
+     * 
+     * @param detailed the detailed for request to return detailed message
+     * @return the params of the put uri
+     */
+    private Map<String, String> getPutParams(boolean detailed) {
+        return detailed ? detailedPutParams : putParams;
+    }
+
+    private Map<String, String> createPutParams(boolean detailed) {
+        int syncTimeout = configuration.getSyncTimeout();
+        Map<String, String> map = new HashMap<>();
+        if (detailed) {
+            map.put("details", "true");
+        }
+        if (syncTimeout > 0) {
+            map.put("sync", "true");
+            map.put("timeout", syncTimeout + "");
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Decodes the content of a successful answer; a parser which reads the entity of a 200
+     * answer as a stream overrides {@link #parse(HttpEntity)}, so the content is never held in
+     * one string.
+     */
+    private interface ResponseParser<T> {
+        T parse(String content);
+
+        default boolean isStreamed() {
+            return false;
+        }
+
+        /**
+         * decode the entity of a 200 answer when {@link #isStreamed()}, the entity is consumed
+         * by the caller after
+         */
+        default T parse(HttpEntity entity) throws IOException {
+            return parse(EntityUtils.toString(entity));
+        }
+    }
+
+    private static final ResponseParser<String> STRING_CONTENT = content -> content;
+
+    private static final Type TAGS_TYPE = new TypeReference<HashMap<String, String>>() {
+    }.getType();
+
+    private static final Type QUERY_RESULTS_TYPE = new TypeReference<List<QueryResult>>() {
+    }.getType();
+
+    /**
+     * The query results are decoded from the pooled chunks of the response by a
+     * {@link QueryResultDecoder}, without the string of the whole response and without boxing
+     * the data points; a response in another charset than UTF-8 is read by a json reader.
+     */
+    private static final ResponseParser<List<QueryResult>> QUERY_RESULTS =
+            new ResponseParser<List<QueryResult>>() {
+                @Override
+                public List<QueryResult> parse(String content) {
+                    return JSON.parseArray(content, QueryResult.class);
+                }
+
+                @Override
+                public boolean isStreamed() {
+                    return true;
+                }
+
+                @Override
+                public List<QueryResult> parse(HttpEntity entity) throws IOException {
+                    if (entity.getContentLength() == 0) {
+                        return null;
                     }
-                } else {
-                    if (syncTimeout > 0) {
-                        map.put("sync", "true");
-                        map.put("timeout", syncTimeout + "");
+                    Charset charset = ContentType.getOrDefault(entity).getCharset();
+                    if (charset == null || charset.equals(TConstants.UTF8_CHARSET)) {
+                        try (InputStream in = entity.getContent()) {
+                            return new QueryResultDecoder().decode(in);
+                        } catch (JSONException e) {
+                            throw new ParseException(
+                                    "Can not parse the query results : " + e.getMessage());
+                        }
+                    }
+                    try (JSONReader reader = new JSONReader(
+                            new InputStreamReader(entity.getContent(), charset))) {
+                        return reader.readObject(QUERY_RESULTS_TYPE);
+                    } catch (JSONException e) {
+                        throw new ParseException(
+                                "Can not parse the query results : " + e.getMessage());
                     }
                 }
-                httpResponse = httpClient.postDetailed(jsonString, map, endpoint);
-                break;
-            case DELETE:
-                httpResponse = httpClient.delete(jsonString, endpoint);
-                break;
-            case VERSION:
-                httpResponse = httpClient.version(endpoint);
-                break;
-            default:
-                httpResponse = httpClient.post(jsonString, endpoint);
-                break;
+            };
+
+    /**
+     * check the http response, decode the content of a successful response by the parser,
+     * otherwise throw the error information of the opentsdb server
+     */
+    private <T> T getResponseContent(HttpResponse httpResponse, ResponseParser<T> parser)
+            throws ParseException, IllegalArgumentException, IOException, AbnormalResultException {
+        HttpEntity entity = httpResponse.getEntity();
+        if (parser.isStreamed() && entity != null
+                && httpResponse.getStatusLine().getStatusCode() == TConstants.SUCCESS_CODE) {
+            try {
+                return parser.parse(entity);
+            } finally {
+                EntityUtils.consumeQuietly(entity);
+            }
         }
+        return parser.parse(getResponseContent(httpResponse));
+    }
 
+    /**
+     * check the http response, return the content for a successful response, otherwise throw the
+     * error information of the opentsdb server
+     * 
+     * @param httpResponse the http response
+     * @return the content of the response
+     */
+    private String getResponseContent(HttpResponse httpResponse)
+            throws ParseException, IllegalArgumentException, IOException, AbnormalResultException {
         AnalyziedResult resultResponse = new AnalyziedResult.Builder().httpResponse(httpResponse)
                 .statusCode().httpStatus().content().build();
         TsdbHttpStatus httpStatus = resultResponse.getHttpStatus();
 
         if (httpStatus == TsdbHttpStatus.REQUEST_COMPLETED_SUCCESS) {
             return resultResponse.getContent();
+        } else if (httpStatus == TsdbHttpStatus.REQUEST_SUCCESS_NOCONTENT) {
+            return TConstants.EMPTY_STTING;
         } else {
-            JSONObject json = JSONObject.parseObject(resultResponse.getContent());
-            String errorContent = json.getString("error");
-            JSONObject erroJson = JSONObject.parseObject(errorContent);
+            JSONObject json = parseError(resultResponse.getContent());
+            // a put with failed data points answers 400 with the put result, not an error
+            if (json != null && json.containsKey("failed") && !json.containsKey("error")) {
+                return resultResponse.getContent();
+            }
+            JSONObject erroJson = json != null ? parseError(json.getString("error")) : null;
+            if (erroJson == null) {
+                // not an opentsdb error, like the html page of a proxy, keep the status code so
+                // the retry policy can tell it
+                throw new AbnormalResultException(String.valueOf(resultResponse.getStatusCode()),
+                        null, resultResponse.getContent());
+            }
             String errorCode = erroJson.getString("code");
             String serverException = erroJson.getString("trace");
             String message = erroJson.getString("message");
@@ -585,21 +1915,85 @@ public class Session implements Closeable{
         }
     }
 
+    private static JSONObject parseError(String content) {
+        try {
+            return JSONObject.parseObject(content);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
     /**
      * Return if the session is running;
      */
     public boolean isRunning() {
-        if (httpClient != null) {
-            return httpClient.isRunning();
-        } else {
-            return false;
+        for (Node node : nodes) {
+            if (!node.isRunning()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Open the connections of all the nodes at once, so the tcp and tls handshakes are not paid by
+     * the first requests; a node which can not be connected within the connection timeout is
+     * left to the requests.
+     */
+    private void warmUp(int connections) {
+        List<CompletableFuture<Integer>> futures = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            futures.add(node.openConnections(connections));
+        }
+        try {
+            // a connection waits for the pool, then for the connect, both bounded by the timeout
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                    .get(2L * configuration.getHttpConnectionTimeout(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            LOG.warn("Warming up the connections is not finished : " + e);
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            Integer idle = futures.get(i).getNow(null);
+            if (idle == null || idle < connections) {
+                LOG.warn("Only " + (idle == null ? 0 : idle) + " of " + connections
+                        + " connections to node " + nodes.get(i) + " are opened on start");
+            }
         }
     }
 
     @Override
     public void close() throws IOException {
-        if (this.httpClient != null) {
-            this.httpClient.close();
+        BatchWriter batchWriter;
+        while ((batchWriter = batchWriters.poll()) != null) {
+            batchWriter.close();
+        }
+        if (this.telnetClient != null) {
+            this.telnetClient.close();
+            this.telnetClient = null;
+        }
+        if (this.spoolReplayer != null) {
+            this.spoolReplayer.close();
+            this.spoolReplayer = null;
+        }
+        if (this.spool != null) {
+            this.spool.close();
+            this.spool = null;
+        }
+        if (this.healthChecker != null) {
+            this.healthChecker.close();
+            this.healthChecker = null;
+        }
+        if (this.idleConnectionKeeper != null) {
+            this.idleConnectionKeeper.cancel(false);
+            this.idleConnectionKeeper = null;
+        }
+        for (Node node : nodes) {
+            node.close();
+        }
+        if (ownsHttpClient) {
+            httpAsyncClient.close();
         }
     }
 }
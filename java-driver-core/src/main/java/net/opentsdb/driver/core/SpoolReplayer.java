@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.google.common.util.concurrent.RateLimiter;
+import net.opentsdb.driver.core.exceptions.AbnormalResultException;
+import net.opentsdb.driver.core.http.HttpApiEndpoint;
+import net.opentsdb.driver.core.policies.RetryPolicy;
+import net.opentsdb.driver.core.spool.Spool;
+
+/**
+ * Puts the bodies of the {@link Spool} of a session again, oldest first, at most
+ * spoolReplayRate data points per second. After a failure, or a status the {@link RetryPolicy}
+ * retries like 429, it waits until opentsdb answers the version request and tries the body
+ * again; a body opentsdb refuses as a bad request is dropped, it would be refused forever. The
+ * data points of a body failed with retryable errors are spooled again, after a pause.
+ */
+final class SpoolReplayer implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(SpoolReplayer.class);
+
+    private final Session session;
+    private final Spool spool;
+    private final RetryPolicy retryPolicy;
+    private final RateLimiter rateLimiter;
+    private final long backoff;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+
+    SpoolReplayer(Session session, Spool spool, RetryPolicy retryPolicy, int rate, long backoff) {
+        this.session = session;
+        this.spool = spool;
+        this.retryPolicy = retryPolicy;
+        this.rateLimiter = RateLimiter.create(rate);
+        this.backoff = backoff;
+        this.thread = new Thread(this, "opentsdb-spool-replay");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        boolean healthy = true;
+        while (running) {
+            try {
+                Spool.Record record = spool.peek(backoff, TimeUnit.MILLISECONDS);
+                if (record == null) {
+                    continue;
+                }
+                if (!healthy) {
+                    if (!session.isReachable()) {
+                        pause();
+                        continue;
+                    }
+                    healthy = true;
+                }
+                rateLimiter.acquire(Math.max(1, record.getCount()));
+                int respooled = 0;
+                try {
+                    respooled = session.replay(record.getPayload());
+                    replayed.addAndGet(record.getCount() - respooled);
+                } catch (AbnormalResultException e) {
+                    if (e.getStatCode() == null || !e.getStatCode().startsWith("4")
+                            || retryPolicy.isRetryable(HttpApiEndpoint.PUT, e)) {
+                        throw e;
+                    }
+                    LOG.error("Drop " + record.getCount()
+                            + " spooled data points refused by opentsdb : " + e);
+                    refused.addAndGet(record.getCount());
+                }
+                spool.ack(record);
+                if (respooled > 0) {
+                    // opentsdb asked to slow down or its storage failed
+                    pause();
+                }
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+            } catch (Exception e) {
+                if (running) {
+                    healthy = false;
+                    LOG.warn("Replay of the spool failed, waiting for opentsdb : " + e);
+                    pause();
+                }
+            }
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(backoff);
+        } catch (InterruptedException e) {
+            // woken up by close
+        }
+    }
+
+    /**
+     * Returns the number of spooled data points put again
+     */
+    long getReplayedCount() {
+        return replayed.get();
+    }
+
+    /**
+     * Returns the number of spooled data points dropped because opentsdb refused them
+     */
+    long getRefusedCount() {
+        return refused.get();
+    }
+
+    void close() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -55,9 +55,110 @@ public class TConstants {
     /** Normal http socket timeout, ms */
     public static final int HTTP_SOCKET_TIMEOUT = 200;
     
+    /** The default number of full batches a BatchWriter queues before writers block */
     public static final int BUFFER_NUM = 64;
+    /** The default number of threads a BatchWriter flushes batches with */
     public static final int BATCH_COUNT_CONST = 3;
-    
+
+    /** The default max data point number of one batch */
+    public static final int DEFAULT_BATCH_SIZE = 5000;
+    /** The default max estimated bytes of one batch */
+    public static final long DEFAULT_BATCH_BYTES = 2 * 1024 * 1024;
+    /** The default max time a data point waits in a batch before being flushed, ms */
+    public static final int DEFAULT_BATCH_LINGER = 100;
+
+    /** The size of one pooled buffer chunk request bodies are serialized into, bytes */
+    public static final int BUFFER_CHUNK_SIZE = 32 * 1024;
+    /** The max number of free chunks a buffer pool keeps for reuse */
+    public static final int BUFFER_POOL_CHUNKS = 512;
+
+    /** The size of the buffer a streamed response is read into, bytes */
+    public static final int STREAM_BUFFER_SIZE = 256 * 1024;
+
+    /** The default min request body size to gzip when compression is enabled, bytes */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 4 * 1024;
+    /** The default gzip level of request bodies, 1 is the fastest and 9 the smallest */
+    public static final int DEFAULT_COMPRESSION_LEVEL = 1;
+
+    /** The default max number of series whose metric and tags json is cached for put */
+    public static final int DEFAULT_SERIES_KEY_CACHE_SIZE = 10000;
+
+    /** The default max number of requests waiting for the in flight limit of a session */
+    public static final int DEFAULT_MAX_PENDING_REQUESTS = 1024;
+    /** The default max time a caller blocks for the in flight limit with the BLOCK policy, ms */
+    public static final int DEFAULT_BACKPRESSURE_TIMEOUT = 1000;
+
+    /** The default size of one spool segment file, bytes */
+    public static final int DEFAULT_SPOOL_SEGMENT_SIZE = 64 * 1024 * 1024;
+    /** The default max total size of the spool segment files, bytes */
+    public static final long DEFAULT_SPOOL_MAX_BYTES = 1024L * 1024 * 1024;
+    /** The default max number of spooled data points replayed per second */
+    public static final int DEFAULT_SPOOL_REPLAY_RATE = 10000;
+    /** The default interval the spool segments are forced to the disk, ms */
+    public static final int DEFAULT_SPOOL_FORCE_INTERVAL = 1000;
+    /** The time the spool replay waits after opentsdb failed before it tries again, ms */
+    public static final int SPOOL_REPLAY_BACKOFF = 1000;
+
+    /** The default number of persistent telnet connections of a session */
+    public static final int DEFAULT_TELNET_CONNECTIONS = 2;
+    /** The size of one direct buffer the telnet lines are queued in, bytes */
+    public static final int DEFAULT_TELNET_BUFFER_SIZE = 64 * 1024;
+    /** The default max bytes of telnet lines queued on one connection before puts block */
+    public static final long DEFAULT_TELNET_MAX_QUEUED_BYTES = 16 * 1024 * 1024;
+    /** The default max time closing a session waits for the queued telnet lines, ms */
+    public static final int DEFAULT_TELNET_CLOSE_TIMEOUT = 10000;
+
+    /** The weight of the latest latency in the moving average of the latency of a node */
+    public static final double LATENCY_EWMA_WEIGHT = 0.2;
+    /** The time the latency average of a node falls to 1/e in when it gets no response, ms */
+    public static final int LATENCY_EWMA_DECAY = 10000;
+
+    /** The default number of the last requests the failure rate of a node is counted over */
+    public static final int DEFAULT_CIRCUIT_BREAKER_WINDOW = 20;
+    /** The default rate of the failed requests a node is ejected at */
+    public static final double DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE = 0.5;
+    /** The default time an ejected node waits for the first version probe, ms */
+    public static final int DEFAULT_CIRCUIT_BREAKER_OPEN_TIME = 5000;
+    /** The default time a recovered node is ramped up to its full share of the requests in, ms */
+    public static final int DEFAULT_CIRCUIT_BREAKER_RAMP_UP_TIME = 10000;
+    /** The interval the health of the nodes of a session is checked at, ms */
+    public static final int HEALTH_CHECK_TICK = 100;
+
+    /** The default max delay of the first retry of a request, ms */
+    public static final long DEFAULT_RETRY_BASE_DELAY = 50;
+    /** The default max delay of any retry of a request, ms */
+    public static final long DEFAULT_RETRY_MAX_DELAY = 2000;
+    /** The default retries allowed for one successful request */
+    public static final double DEFAULT_RETRY_BUDGET_RATIO = 0.1;
+    /** The default retries allowed every second without any successful request */
+    public static final int DEFAULT_RETRY_BUDGET_MIN_PER_SECOND = 10;
+
+    /** The default percentile of the latency a read is hedged after */
+    public static final double DEFAULT_HEDGE_PERCENTILE = 0.95;
+    /** The default min delay of the duplicate of a read, ms */
+    public static final long DEFAULT_HEDGE_MIN_DELAY = 5;
+    /** The default max delay of the duplicate of a read, ms */
+    public static final long DEFAULT_HEDGE_MAX_DELAY = 1000;
+    /** The default duplicates allowed for one read */
+    public static final double DEFAULT_HEDGE_BUDGET_RATIO = 0.1;
+    /** The default duplicates allowed every second without any read */
+    public static final int DEFAULT_HEDGE_BUDGET_MIN_PER_SECOND = 1;
+
+    /** The default max time a http connection stays idle in the pool, ms */
+    public static final long DEFAULT_MAX_IDLE_TIME = 30000;
+    /** The default interval the expired and idle http connections are closed at, ms */
+    public static final long DEFAULT_CONNECTION_EVICTION_INTERVAL = 5000;
+
+    /** The default time the results of a query ending in the last minutes are cached, ms */
+    public static final long DEFAULT_QUERY_CACHE_RECENT_TTL = 10000;
+    /** The default time the results of a query ending before the last minutes are cached, ms */
+    public static final long DEFAULT_QUERY_CACHE_HISTORICAL_TTL = 60 * 60 * 1000;
+    /** The default age of the end of a query its results do not change after any more, ms */
+    public static final long DEFAULT_QUERY_CACHE_HISTORICAL_AGE = 10 * 60 * 1000;
+
+    /** The interval the idle connections of the nodes are topped up to minIdleConnections at, ms */
+    public static final int IDLE_CONNECTION_CHECK_INTERVAL = 500;
+
     /** The default Connection number */
     public static final int DEFAULT_POOL_SIZE = 256;
     /** The deafult max route*/
@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import net.opentsdb.driver.core.model.DataPoint;
+import net.opentsdb.driver.core.model.DataPointBatch;
+import net.opentsdb.driver.core.model.Point;
+import net.opentsdb.driver.core.model.PrimitiveDataPoint;
+import net.opentsdb.driver.core.model.TagSet;
+import net.opentsdb.driver.core.model.ValueType;
+
+/**
+ * Serialize the data points of a put into the /api/put json array, the json is written straight
+ * into the output stream as UTF-8 bytes, so no intermediate json string is created; for the
+ * detailed format see http://opentsdb.net/docs/build/html/api_http/put.html
+ * <p/>
+ * The fields of a {@link PrimitiveDataPoint} are written from the primitives, its tags in the
+ * sorted order of the {@link TagSet}; a {@link DataPointBatch} is written as one json object per
+ * point straight from its columns.
+ * <p/>
+ * With a {@link SeriesKeyCache} the metric and tags of a point are copied from the cached bytes
+ * of its series, only the timestamp and value are formatted per point.
+ */
+public class DataPointSerializer {
+    private static final byte[] METRIC = "\"metric\":".getBytes();
+    private static final byte[] TIMESTAMP = "\"timestamp\":".getBytes();
+    private static final byte[] VALUE = "\"value\":".getBytes();
+    private static final byte[] TAGS = "\"tags\":".getBytes();
+    private static final byte[] TSUID = "\"tsuid\":".getBytes();
+
+    private final SeriesKeyCache seriesKeyCache;
+
+    /**
+     * Constructs a serializer which encodes the metric and tags of every point.
+     */
+    public DataPointSerializer() {
+        this(null);
+    }
+
+    /**
+     * Constructs a serializer which takes the metric and tags json from the cache.
+     *
+     * @param seriesKeyCache the cache of the series keys, null to encode every point
+     */
+    public DataPointSerializer(SeriesKeyCache seriesKeyCache) {
+        this.seriesKeyCache = seriesKeyCache;
+    }
+
+    public SeriesKeyCache getSeriesKeyCache() {
+        return seriesKeyCache;
+    }
+
+    /**
+     * Write the json array of the data points into the output stream.
+     *
+     * @param dataPoints the data points to put
+     * @param out the stream of the request body
+     */
+    public void serialize(List<? extends Point> dataPoints, OutputStream out) throws IOException {
+        JsonByteWriter writer = new JsonByteWriter(out);
+        writer.writeByte((byte) '[');
+        boolean first = true;
+        for (int i = 0; i < dataPoints.size(); i++) {
+            Point point = dataPoints.get(i);
+            if (point.count() == 0) {
+                continue;
+            }
+            first = comma(first, writer);
+            writePoint(point, writer);
+        }
+        writer.writeByte((byte) ']');
+        writer.flush();
+    }
+
+    private void writePoint(Point point, JsonByteWriter writer) throws IOException {
+        if (point instanceof PrimitiveDataPoint) {
+            writePrimitive((PrimitiveDataPoint) point, writer);
+        } else if (point instanceof DataPointBatch) {
+            writeBatch((DataPointBatch) point, writer);
+        } else if (point instanceof DataPoint) {
+            writeDataPoint((DataPoint) point, writer);
+        } else {
+            throw new IllegalArgumentException(
+                    "Unsupported point type : " + point.getClass().getName());
+        }
+    }
+
+    private void writePrimitive(PrimitiveDataPoint point, JsonByteWriter writer)
+            throws IOException {
+        writeSeriesKey(point.getMetric(), point.getTags(), writer);
+        writer.writeRaw(TIMESTAMP);
+        writer.writeLong(point.getTimestamp());
+        writer.writeByte((byte) ',');
+        writer.writeRaw(VALUE);
+        if (point.getValueType() == ValueType.LONG) {
+            writer.writeLong(point.getLongValue());
+        } else {
+            writer.writeDouble(point.getDoubleValue());
+        }
+        writer.writeByte((byte) '}');
+    }
+
+    private void writeBatch(DataPointBatch batch, JsonByteWriter writer) throws IOException {
+        boolean isLong = batch.getValueType() == ValueType.LONG;
+        byte[] series = seriesBytes(batch.getMetric(), batch.getTags());
+        for (int i = 0; i < batch.count(); i++) {
+            if (i > 0) {
+                writer.writeByte((byte) ',');
+            }
+            writer.writeRaw(series);
+            writer.writeRaw(TIMESTAMP);
+            writer.writeLong(batch.getTimestamp(i));
+            writer.writeByte((byte) ',');
+            writer.writeRaw(VALUE);
+            if (isLong) {
+                writer.writeLong(batch.getLongValue(i));
+            } else {
+                writer.writeDouble(batch.getDoubleValue(i));
+            }
+            writer.writeByte((byte) '}');
+        }
+    }
+
+    private void writeSeriesKey(String metric, TagSet tags, JsonByteWriter writer)
+            throws IOException {
+        if (seriesKeyCache != null && metric != null) {
+            writer.writeRaw(seriesKeyCache.get(metric, tags));
+        } else {
+            writeSeries(metric, tags, writer);
+        }
+    }
+
+    /**
+     * Returns the json bytes of the series, from the cache when there is one.
+     */
+    private byte[] seriesBytes(String metric, TagSet tags) throws IOException {
+        if (seriesKeyCache != null && metric != null) {
+            return seriesKeyCache.get(metric, tags);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + tags.bytes());
+        JsonByteWriter writer = new JsonByteWriter(out);
+        writeSeries(metric, tags, writer);
+        writer.flush();
+        return out.toByteArray();
+    }
+
+    /**
+     * Write the opening of a point object with the metric and tags, till the comma before the
+     * timestamp.
+     */
+    static void writeSeries(String metric, TagSet tags, JsonByteWriter writer)
+            throws IOException {
+        writer.writeByte((byte) '{');
+        if (metric != null) {
+            writer.writeRaw(METRIC);
+            writer.writeString(metric);
+            writer.writeByte((byte) ',');
+        }
+        writer.writeRaw(TAGS);
+        writeTags(tags, writer);
+        writer.writeByte((byte) ',');
+    }
+
+    private static void writeTags(TagSet tags, JsonByteWriter writer) throws IOException {
+        writer.writeByte((byte) '{');
+        for (int i = 0; i < tags.size(); i++) {
+            if (i > 0) {
+                writer.writeByte((byte) ',');
+            }
+            writer.writeString(tags.keyAt(i));
+            writer.writeByte((byte) ':');
+            writer.writeString(tags.valueAt(i));
+        }
+        writer.writeByte((byte) '}');
+    }
+
+    private void writeDataPoint(DataPoint dataPoint, JsonByteWriter writer) throws IOException {
+        if (seriesKeyCache != null && dataPoint.getMetric() != null
+                && dataPoint.getTags() != null && dataPoint.getTimestamp() != null
+                && dataPoint.getValue() != null) {
+            writer.writeRaw(seriesKeyCache.get(dataPoint.getMetric(), dataPoint.getTags()));
+            writer.writeRaw(TIMESTAMP);
+            writer.writeLong(dataPoint.getTimestamp());
+            writer.writeByte((byte) ',');
+            writer.writeRaw(VALUE);
+            writeValue(dataPoint.getValue(), writer);
+            if (dataPoint.getTSUID() != null) {
+                writer.writeByte((byte) ',');
+                writer.writeRaw(TSUID);
+                writer.writeString(dataPoint.getTSUID());
+            }
+            writer.writeByte((byte) '}');
+            return;
+        }
+        writer.writeByte((byte) '{');
+        boolean first = true;
+        if (dataPoint.getMetric() != null) {
+            writer.writeRaw(METRIC);
+            writer.writeString(dataPoint.getMetric());
+            first = false;
+        }
+        if (dataPoint.getTags() != null) {
+            first = comma(first, writer);
+            writer.writeRaw(TAGS);
+            writeTags(dataPoint.getTags(), writer);
+        }
+        if (dataPoint.getTimestamp() != null) {
+            first = comma(first, writer);
+            writer.writeRaw(TIMESTAMP);
+            writer.writeLong(dataPoint.getTimestamp());
+        }
+        if (dataPoint.getValue() != null) {
+            first = comma(first, writer);
+            writer.writeRaw(VALUE);
+            writeValue(dataPoint.getValue(), writer);
+        }
+        if (dataPoint.getTSUID() != null) {
+            first = comma(first, writer);
+            writer.writeRaw(TSUID);
+            writer.writeString(dataPoint.getTSUID());
+        }
+        writer.writeByte((byte) '}');
+    }
+
+    private boolean comma(boolean first, JsonByteWriter writer) throws IOException {
+        if (!first) {
+            writer.writeByte((byte) ',');
+        }
+        return false;
+    }
+
+    private void writeTags(Map<String, String> tags, JsonByteWriter writer) throws IOException {
+        writer.writeByte((byte) '{');
+        boolean first = true;
+        for (Map.Entry<String, String> entry : tags.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null) {
+                continue;
+            }
+            first = comma(first, writer);
+            writer.writeString(entry.getKey());
+            writer.writeByte((byte) ':');
+            writer.writeString(entry.getValue());
+        }
+        writer.writeByte((byte) '}');
+    }
+
+    private void writeValue(Object value, JsonByteWriter writer) throws IOException {
+        if (value instanceof Long || value instanceof Integer) {
+            writer.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double) {
+            writer.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            writer.writeFloat((Float) value);
+        } else {
+            writer.writeString(value.toString());
+        }
+    }
+}
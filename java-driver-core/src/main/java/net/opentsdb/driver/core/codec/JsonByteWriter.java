@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A minimal json writer which encodes strings and numbers straight into UTF-8 bytes of a small
+ * scratch buffer, the buffer is written to the output stream when it is full or on
+ * {@link #flush()}. Numbers are formatted without creating strings except for the non integral
+ * floating values.
+ */
+public class JsonByteWriter {
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final int SCRATCH_SIZE = 8 * 1024;
+
+    private final OutputStream out;
+    private final byte[] buf = new byte[SCRATCH_SIZE];
+    private int pos = 0;
+
+    public JsonByteWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public void writeByte(byte b) throws IOException {
+        if (pos == buf.length) {
+            flushBuffer();
+        }
+        buf[pos++] = b;
+    }
+
+    public void writeRaw(byte[] bytes) throws IOException {
+        writeRaw(bytes, 0, bytes.length);
+    }
+
+    public void writeRaw(byte[] bytes, int off, int len) throws IOException {
+        if (len > buf.length - pos) {
+            flushBuffer();
+            if (len > buf.length) {
+                out.write(bytes, off, len);
+                return;
+            }
+        }
+        System.arraycopy(bytes, off, buf, pos, len);
+        pos += len;
+    }
+
+    /**
+     * Write the json string of the value with the quotes, the value is escaped and encoded as
+     * UTF-8.
+     */
+    public void writeString(String value) throws IOException {
+        writeByte((byte) '"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    writeByte((byte) c);
+                } else {
+                    writeEscaped(c);
+                }
+            } else {
+                i = writeNonAscii(value, i, c);
+            }
+        }
+        writeByte((byte) '"');
+    }
+
+    /**
+     * Write the value encoded as UTF-8, without quotes and escaping.
+     */
+    public void writeUtf8(String value) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                writeByte((byte) c);
+            } else {
+                i = writeNonAscii(value, i, c);
+            }
+        }
+    }
+
+    /**
+     * Write the UTF-8 bytes of the non ascii char at i, returns the index of its last char.
+     */
+    private int writeNonAscii(String value, int i, char c) throws IOException {
+        if (c < 0x800) {
+            writeByte((byte) (0xc0 | (c >> 6)));
+            writeByte((byte) (0x80 | (c & 0x3f)));
+        } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, value.charAt(++i));
+            writeByte((byte) (0xf0 | (cp >> 18)));
+            writeByte((byte) (0x80 | ((cp >> 12) & 0x3f)));
+            writeByte((byte) (0x80 | ((cp >> 6) & 0x3f)));
+            writeByte((byte) (0x80 | (cp & 0x3f)));
+        } else if (Character.isSurrogate(c)) {
+            writeByte((byte) '?');
+        } else {
+            writeByte((byte) (0xe0 | (c >> 12)));
+            writeByte((byte) (0x80 | ((c >> 6) & 0x3f)));
+            writeByte((byte) (0x80 | (c & 0x3f)));
+        }
+        return i;
+    }
+
+    private void writeEscaped(char c) throws IOException {
+        writeByte((byte) '\\');
+        switch (c) {
+            case '"':
+                writeByte((byte) '"');
+                break;
+            case '\\':
+                writeByte((byte) '\\');
+                break;
+            case '\n':
+                writeByte((byte) 'n');
+                break;
+            case '\r':
+                writeByte((byte) 'r');
+                break;
+            case '\t':
+                writeByte((byte) 't');
+                break;
+            case '\b':
+                writeByte((byte) 'b');
+                break;
+            case '\f':
+                writeByte((byte) 'f');
+                break;
+            default:
+                writeByte((byte) 'u');
+                writeByte((byte) '0');
+                writeByte((byte) '0');
+                writeByte(HEX[(c >> 4) & 0xf]);
+                writeByte(HEX[c & 0xf]);
+                break;
+        }
+    }
+
+    public void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeRaw(MIN_LONG);
+            return;
+        }
+        if (buf.length - pos < 20) {
+            flushBuffer();
+        }
+        if (value < 0) {
+            buf[pos++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value / 10; v != 0; v /= 10) {
+            digits++;
+        }
+        int end = pos + digits;
+        for (int i = end - 1; i >= pos; i--) {
+            buf[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        pos = end;
+    }
+
+    /**
+     * Write the double value, the integral values are written like 12.0 without creating a
+     * string, NaN and infinite values are written as null like fastjson does.
+     */
+    public void writeDouble(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeRaw(NULL);
+        } else if (value == (long) value && Math.abs(value) < (1L << 53)
+                && !(value == 0 && 1 / value < 0)) {
+            writeLong((long) value);
+            writeByte((byte) '.');
+            writeByte((byte) '0');
+        } else {
+            writeAscii(Double.toString(value));
+        }
+    }
+
+    public void writeFloat(float value) throws IOException {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            writeRaw(NULL);
+        } else {
+            writeAscii(Float.toString(value));
+        }
+    }
+
+    /**
+     * Write the string which only consists of ascii chars without quotes.
+     */
+    public void writeAscii(String value) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            writeByte((byte) value.charAt(i));
+        }
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (pos > 0) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+}
@@ -0,0 +1,834 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.alibaba.fastjson.JSONException;
+import net.opentsdb.driver.core.SeriesConsumer;
+import net.opentsdb.driver.core.TConstants;
+import net.opentsdb.driver.core.model.QueryResult;
+
+/**
+ * A decoder of the /api/query answer, the reading side of {@link JsonByteWriter}: it reads the
+ * UTF-8 bytes of the stream through a small scratch buffer, the dps timestamps are parsed as
+ * longs straight from the key bytes and the values into primitive buffers which grow by doubling
+ * and are reused for every series, so a data point costs no string and no boxed number. Both the
+ * map form of the dps and the array form of the arrays query flag are read.
+ * <p/>
+ * Only metric, tags, aggregateTags and dps are kept, the other fields of a series, like the
+ * annotations, the tsuids or the stats, are skipped without decoding their strings. A decoder
+ * is not thread safe, one decoder can decode one stream after another.
+ */
+public class QueryResultDecoder {
+    private static final int SCRATCH_SIZE = 8 * 1024;
+    private static final int INITIAL_POINTS = 256;
+    /** a mantissa of at most 15 digits times a power of ten up to 22 is exact, then rounded once */
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POW10 = new double[23];
+
+    private static final byte[] METRIC = "metric".getBytes(TConstants.UTF8_CHARSET);
+    private static final byte[] TAGS = "tags".getBytes(TConstants.UTF8_CHARSET);
+    private static final byte[] AGGREGATE_TAGS = "aggregateTags".getBytes(TConstants.UTF8_CHARSET);
+    private static final byte[] AGGREGATED_TAGS =
+            "aggregatedTags".getBytes(TConstants.UTF8_CHARSET);
+    private static final byte[] DPS = "dps".getBytes(TConstants.UTF8_CHARSET);
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private final byte[] buf = new byte[SCRATCH_SIZE];
+    private InputStream in;
+    private int pos;
+    private int limit;
+    private long offset;
+    /** if the next token is the start of the array */
+    private boolean first;
+
+    /** the decoded bytes of the last string */
+    private byte[] string = new byte[64];
+    private int stringLength;
+    /** the chars of the last number, for the values which are not parsed exactly */
+    private final StringBuilder number = new StringBuilder();
+    private long longValue;
+    private double doubleValue;
+
+    private long[] timestamps = new long[INITIAL_POINTS];
+    private long[] longs = new long[INITIAL_POINTS];
+    private double[] doubles;
+    private int size;
+    private boolean doubleValues;
+    private boolean sorted;
+    /** the consumer the data points are handed to while the dps are read */
+    private SeriesConsumer pushTo;
+
+    /**
+     * Decodes the query results of the stream, the stream is read to the end of the json array
+     * and is not closed.
+     *
+     * @param in the UTF-8 json of the query answer
+     * @return the query results, empty when the answer is empty
+     * @throws JSONException when the json is not the query answer
+     */
+    public List<QueryResult> decode(InputStream in) throws IOException {
+        begin(in);
+        try {
+            List<QueryResult> results = new ArrayList<>();
+            for (QueryResult result = next(); result != null; result = next()) {
+                results.add(result);
+            }
+            return results;
+        } finally {
+            this.in = null;
+        }
+    }
+
+    /**
+     * Decodes the query results of the stream to the consumer without a {@link QueryResult}:
+     * when the metric of a series comes before its dps, as opentsdb writes them, the data points
+     * are handed over while they are parsed, otherwise they are kept till the end of the series.
+     * The stream is read to the end of the json array and is not closed.
+     *
+     * @param in the UTF-8 json of the query answer
+     * @param consumer receives the series
+     * @throws JSONException when the json is not the query answer
+     */
+    public void decode(InputStream in, SeriesConsumer consumer) throws IOException {
+        begin(in);
+        try {
+            while (next(consumer)) {
+                // the consumer got the series
+            }
+        } finally {
+            this.in = null;
+        }
+    }
+
+    /**
+     * Starts to decode the query results of the stream one series at a time, see
+     * {@link #next()}; the stream is not closed.
+     *
+     * @param in the UTF-8 json of the query answer
+     */
+    public void begin(InputStream in) {
+        this.in = in;
+        this.pos = 0;
+        this.limit = 0;
+        this.offset = 0;
+        this.first = true;
+    }
+
+    /**
+     * Decodes the next series of the stream given to {@link #begin(InputStream)}; the stream is
+     * read no further than the scratch buffer past the end of the series, so a series can be
+     * handled before the next ones arrived.
+     *
+     * @return the next query result, null after the last one
+     * @throws JSONException when the json is not the query answer
+     */
+    public QueryResult next() throws IOException {
+        return nextSeries() ? readSeries(null) : null;
+    }
+
+    /**
+     * Decodes the next series of the stream given to {@link #begin(InputStream)} to the consumer,
+     * see {@link #decode(InputStream, SeriesConsumer)}.
+     *
+     * @param consumer receives the series
+     * @return false after the last series
+     * @throws JSONException when the json is not the query answer
+     */
+    public boolean next(SeriesConsumer consumer) throws IOException {
+        if (!nextSeries()) {
+            return false;
+        }
+        readSeries(consumer);
+        return true;
+    }
+
+    /**
+     * Reads up to the start of the next series, returns false at the end of the array.
+     */
+    private boolean nextSeries() throws IOException {
+        if (in == null) {
+            return false;
+        }
+        int c = nextToken();
+        if (first) {
+            first = false;
+            if (c == -1) {
+                in = null;
+                return false;
+            }
+            expect(c, '[');
+            c = nextToken();
+            if (c == ']') {
+                in = null;
+                return false;
+            }
+        } else {
+            if (c == ']') {
+                in = null;
+                return false;
+            }
+            expect(c, ',');
+            c = nextToken();
+        }
+        expect(c, '{');
+        return true;
+    }
+
+    /**
+     * Reads a series, it is returned as a query result without a consumer, otherwise it is
+     * handed to the consumer and null is returned.
+     */
+    private QueryResult readSeries(SeriesConsumer consumer) throws IOException {
+        String metric = null;
+        Map<String, String> tags = null;
+        List<String> aggregatedTags = null;
+        boolean started = false;
+        size = 0;
+        doubleValues = false;
+        sorted = true;
+        pushTo = null;
+        int c = nextToken();
+        if (c == '}') {
+            return toResult(consumer, null, null, null, false);
+        }
+        for (;;) {
+            expect(c, '"');
+            readStringBytes();
+            expect(nextToken(), ':');
+            if (isString(METRIC)) {
+                metric = readNullableString();
+            } else if (isString(TAGS)) {
+                tags = readTags();
+            } else if (isString(AGGREGATE_TAGS) || isString(AGGREGATED_TAGS)) {
+                aggregatedTags = readStrings();
+            } else if (isString(DPS)) {
+                if (consumer != null && metric != null && !started) {
+                    consumer.onSeriesStart(metric, tags, aggregatedTags);
+                    started = true;
+                    pushTo = consumer;
+                }
+                readDps();
+                pushTo = null;
+            } else {
+                skipValue();
+            }
+            c = nextToken();
+            if (c == '}') {
+                return toResult(consumer, metric, tags, aggregatedTags, started);
+            }
+            expect(c, ',');
+            c = nextToken();
+        }
+    }
+
+    private QueryResult toResult(SeriesConsumer consumer, String metric,
+            Map<String, String> tags, List<String> aggregatedTags, boolean started) {
+        if (!sorted) {
+            sort();
+        }
+        if (consumer != null) {
+            if (!started) {
+                consumer.onSeriesStart(metric, tags, aggregatedTags);
+            }
+            for (int i = 0; i < size; i++) {
+                consumer.onPoint(timestamps[i], doubleValues ? doubles[i] : longs[i]);
+            }
+            consumer.onSeriesEnd();
+            return null;
+        }
+        long[] ts = Arrays.copyOf(timestamps, size);
+        if (doubleValues) {
+            return new QueryResult(metric, tags, aggregatedTags, ts, Arrays.copyOf(doubles, size));
+        }
+        return new QueryResult(metric, tags, aggregatedTags, ts, Arrays.copyOf(longs, size));
+    }
+
+    private Map<String, String> readTags() throws IOException {
+        int c = nextToken();
+        if (c == 'n') {
+            readLiteral(c);
+            return null;
+        }
+        expect(c, '{');
+        Map<String, String> tags = new HashMap<>();
+        c = nextToken();
+        if (c == '}') {
+            return tags;
+        }
+        for (;;) {
+            expect(c, '"');
+            String key = readString();
+            expect(nextToken(), ':');
+            String value = readNullableString();
+            if (value != null) {
+                tags.put(key, value);
+            }
+            c = nextToken();
+            if (c == '}') {
+                return tags;
+            }
+            expect(c, ',');
+            c = nextToken();
+        }
+    }
+
+    private List<String> readStrings() throws IOException {
+        int c = nextToken();
+        if (c == 'n') {
+            readLiteral(c);
+            return null;
+        }
+        expect(c, '[');
+        List<String> strings = new ArrayList<>();
+        c = nextToken();
+        if (c == ']') {
+            return strings;
+        }
+        for (;;) {
+            strings.add(readNullableString(c));
+            c = nextToken();
+            if (c == ']') {
+                return strings;
+            }
+            expect(c, ',');
+            c = nextToken();
+        }
+    }
+
+    /**
+     * Reads the dps of the map form {"ts":value,...} or of the array form [[ts,value],...]; the
+     * points with a null or a string value are skipped.
+     */
+    private void readDps() throws IOException {
+        int c = nextToken();
+        if (c == 'n') {
+            readLiteral(c);
+            return;
+        }
+        boolean map = c == '{';
+        if (!map) {
+            expect(c, '[');
+        }
+        int end = map ? '}' : ']';
+        c = nextToken();
+        if (c == end) {
+            return;
+        }
+        for (;;) {
+            long timestamp;
+            if (map) {
+                expect(c, '"');
+                timestamp = readTimestampKey();
+                expect(nextToken(), ':');
+            } else {
+                expect(c, '[');
+                timestamp = readTimestamp();
+                expect(nextToken(), ',');
+            }
+            readValue(timestamp);
+            if (!map) {
+                expect(nextToken(), ']');
+            }
+            c = nextToken();
+            if (c == end) {
+                return;
+            }
+            expect(c, ',');
+            c = nextToken();
+        }
+    }
+
+    /**
+     * Parse the digits of the key up to the closing quote as a long.
+     */
+    private long readTimestampKey() throws IOException {
+        long value = 0;
+        int digits = 0;
+        for (int c = read(); c != '"'; c = read()) {
+            if (c < '0' || c > '9' || digits == 18) {
+                throw error(c, "a timestamp");
+            }
+            value = value * 10 + (c - '0');
+            digits++;
+        }
+        if (digits == 0) {
+            throw error('"', "a timestamp");
+        }
+        return value;
+    }
+
+    private long readTimestamp() throws IOException {
+        int c = nextToken();
+        if (c == '"') {
+            return readTimestampKey();
+        }
+        if (!readNumber(c)) {
+            throw error(c, "a timestamp");
+        }
+        return longValue;
+    }
+
+    private void readValue(long timestamp) throws IOException {
+        int c = nextToken();
+        if (c == '"') {
+            skipString();
+            return;
+        }
+        if (c == 'n') {
+            readLiteral(c);
+            return;
+        }
+        if (c == 'N' || c == 'I') {
+            // opentsdb writes NaN and Infinity unquoted for the nan fill policy
+            add(timestamp, readLiteral(c) == 'N' ? Double.NaN : Double.POSITIVE_INFINITY);
+            return;
+        }
+        if (c == '-' && peek() == 'I') {
+            readLiteral(read());
+            add(timestamp, Double.NEGATIVE_INFINITY);
+            return;
+        }
+        if (readNumber(c)) {
+            add(timestamp, longValue);
+        } else {
+            add(timestamp, doubleValue);
+        }
+    }
+
+    private void add(long timestamp, long value) {
+        if (pushTo != null) {
+            pushTo.onPoint(timestamp, value);
+            return;
+        }
+        if (size == timestamps.length) {
+            grow();
+        }
+        sorted &= size == 0 || timestamps[size - 1] < timestamp;
+        timestamps[size] = timestamp;
+        if (doubleValues) {
+            doubles[size] = value;
+        } else {
+            longs[size] = value;
+        }
+        size++;
+    }
+
+    private void add(long timestamp, double value) {
+        if (pushTo != null) {
+            pushTo.onPoint(timestamp, value);
+            return;
+        }
+        if (!doubleValues) {
+            // one double value makes the whole series doubles, like QueryResult.setDps
+            if (doubles == null || doubles.length < timestamps.length) {
+                doubles = new double[timestamps.length];
+            }
+            for (int i = 0; i < size; i++) {
+                doubles[i] = longs[i];
+            }
+            doubleValues = true;
+        }
+        if (size == timestamps.length) {
+            grow();
+        }
+        sorted &= size == 0 || timestamps[size - 1] < timestamp;
+        timestamps[size] = timestamp;
+        doubles[size] = value;
+        size++;
+    }
+
+    private void grow() {
+        int capacity = timestamps.length * 2;
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        longs = Arrays.copyOf(longs, capacity);
+        if (doubles != null) {
+            doubles = Arrays.copyOf(doubles, capacity);
+        }
+    }
+
+    /**
+     * Sorts the points by timestamp, opentsdb answers them sorted so this is rare.
+     */
+    private void sort() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        long[] ts = Arrays.copyOf(timestamps, size);
+        Arrays.sort(order, Comparator.comparingLong(i -> ts[i]));
+        if (doubleValues) {
+            double[] values = Arrays.copyOf(doubles, size);
+            for (int i = 0; i < size; i++) {
+                timestamps[i] = ts[order[i]];
+                doubles[i] = values[order[i]];
+            }
+        } else {
+            long[] values = Arrays.copyOf(longs, size);
+            for (int i = 0; i < size; i++) {
+                timestamps[i] = ts[order[i]];
+                longs[i] = values[order[i]];
+            }
+        }
+    }
+
+    /**
+     * Parse the json number starting with c, returns true with the longValue for an integer of
+     * at most 18 digits, false with the doubleValue otherwise.
+     */
+    private boolean readNumber(int c) throws IOException {
+        boolean negative = c == '-';
+        if (negative) {
+            c = read();
+        }
+        if (c < '0' || c > '9') {
+            throw error(c, "a number");
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean integral = true;
+        number.setLength(0);
+        if (negative) {
+            number.append('-');
+        }
+        for (; c >= '0' && c <= '9'; c = read()) {
+            number.append((char) c);
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exponent++;
+                digits++;
+            }
+        }
+        if (c == '.') {
+            integral = false;
+            number.append('.');
+            for (c = read(); c >= '0' && c <= '9'; c = read()) {
+                number.append((char) c);
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    exponent--;
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                }
+            }
+        }
+        if (c == 'e' || c == 'E') {
+            integral = false;
+            number.append('e');
+            c = read();
+            boolean negativeExponent = c == '-';
+            if (c == '-' || c == '+') {
+                number.append((char) c);
+                c = read();
+            }
+            int e = 0;
+            for (; c >= '0' && c <= '9'; c = read()) {
+                number.append((char) c);
+                e = Math.min(e * 10 + (c - '0'), 100000);
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        if (c != -1) {
+            pos--;
+        }
+        if (integral && exponent == 0) {
+            longValue = negative ? -mantissa : mantissa;
+            return true;
+        }
+        if (integral && digits <= 19) {
+            // 19 digits may still fit a long, the first 18 of them are in mantissa
+            long last = number.charAt(number.length() - 1) - '0';
+            if (mantissa <= (Long.MAX_VALUE - last) / 10
+                    || negative && mantissa * 10 + last == Long.MIN_VALUE) {
+                longValue = negative ? -(mantissa * 10 + last) : mantissa * 10 + last;
+                return true;
+            }
+        }
+        if (digits <= MAX_EXACT_DIGITS && exponent >= -22 && exponent <= 22) {
+            double value = mantissa;
+            value = exponent < 0 ? value / POW10[-exponent] : value * POW10[exponent];
+            doubleValue = negative ? -value : value;
+        } else {
+            doubleValue = Double.parseDouble(number.toString());
+        }
+        return false;
+    }
+
+    /**
+     * Reads the literal starting with c, like null, true, false, NaN or Infinity, returns c.
+     */
+    private int readLiteral(int c) throws IOException {
+        int first = c;
+        for (c = read(); (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'); c = read()) {
+            // the letters of the literal
+        }
+        if (c != -1) {
+            pos--;
+        }
+        return first;
+    }
+
+    private String readNullableString() throws IOException {
+        return readNullableString(nextToken());
+    }
+
+    private String readNullableString(int c) throws IOException {
+        if (c == 'n') {
+            readLiteral(c);
+            return null;
+        }
+        expect(c, '"');
+        return readString();
+    }
+
+    /**
+     * Decode the string after the opening quote, returns it as a string.
+     */
+    private String readString() throws IOException {
+        readStringBytes();
+        return new String(string, 0, stringLength, TConstants.UTF8_CHARSET);
+    }
+
+    /**
+     * Decode the string after the opening quote into the UTF-8 string bytes.
+     */
+    private void readStringBytes() throws IOException {
+        stringLength = 0;
+        for (int c = read(); c != '"'; c = read()) {
+            if (c == -1) {
+                throw error(c, "'\"'");
+            }
+            if (c == '\\') {
+                readEscaped();
+            } else {
+                appendString(c);
+            }
+        }
+    }
+
+    private void readEscaped() throws IOException {
+        int c = read();
+        switch (c) {
+            case 'b':
+                appendString('\b');
+                break;
+            case 'f':
+                appendString('\f');
+                break;
+            case 'n':
+                appendString('\n');
+                break;
+            case 'r':
+                appendString('\r');
+                break;
+            case 't':
+                appendString('\t');
+                break;
+            case 'u':
+                int ch = readHex();
+                if (Character.isHighSurrogate((char) ch) && peek() == '\\') {
+                    read();
+                    expect(read(), 'u');
+                    int low = readHex();
+                    if (Character.isLowSurrogate((char) low)) {
+                        appendUtf8(Character.toCodePoint((char) ch, (char) low));
+                        break;
+                    }
+                    appendUtf8('?');
+                    appendUtf8(low);
+                    break;
+                }
+                appendUtf8(Character.isSurrogate((char) ch) ? '?' : ch);
+                break;
+            case -1:
+                throw error(c, "an escaped char");
+            default:
+                // \" \\ \/ and the lenient other ones are the char itself
+                appendString(c);
+                break;
+        }
+    }
+
+    private int readHex() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int c = read();
+            int digit = Character.digit(c, 16);
+            if (c == -1 || digit < 0) {
+                throw error(c, "a hex digit");
+            }
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+    private void appendUtf8(int cp) {
+        if (cp < 0x80) {
+            appendString(cp);
+        } else if (cp < 0x800) {
+            appendString(0xc0 | (cp >> 6));
+            appendString(0x80 | (cp & 0x3f));
+        } else if (cp < 0x10000) {
+            appendString(0xe0 | (cp >> 12));
+            appendString(0x80 | ((cp >> 6) & 0x3f));
+            appendString(0x80 | (cp & 0x3f));
+        } else {
+            appendString(0xf0 | (cp >> 18));
+            appendString(0x80 | ((cp >> 12) & 0x3f));
+            appendString(0x80 | ((cp >> 6) & 0x3f));
+            appendString(0x80 | (cp & 0x3f));
+        }
+    }
+
+    private void appendString(int b) {
+        if (stringLength == string.length) {
+            string = Arrays.copyOf(string, string.length * 2);
+        }
+        string[stringLength++] = (byte) b;
+    }
+
+    private boolean isString(byte[] name) {
+        if (stringLength != name.length) {
+            return false;
+        }
+        for (int i = 0; i < stringLength; i++) {
+            if (string[i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skip the string after the opening quote.
+     */
+    private void skipString() throws IOException {
+        for (int c = read(); c != '"'; c = read()) {
+            if (c == -1) {
+                throw error(c, "'\"'");
+            }
+            if (c == '\\') {
+                read();
+            }
+        }
+    }
+
+    /**
+     * Skip the next value, the nested objects and arrays as well.
+     */
+    private void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            int c = nextToken();
+            switch (c) {
+                case '"':
+                    skipString();
+                    break;
+                case '{':
+                case '[':
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    depth--;
+                    break;
+                case ',':
+                case ':':
+                    if (depth == 0) {
+                        throw error(c, "a value");
+                    }
+                    break;
+                case -1:
+                    throw error(c, "a value");
+                default:
+                    // a number or a literal
+                    for (c = read(); c != -1 && c != ',' && c != '}' && c != ']'
+                            && !isWhitespace(c); c = read()) {
+                        // the chars of the number or the literal
+                    }
+                    if (c != -1) {
+                        pos--;
+                    }
+                    break;
+            }
+        } while (depth > 0);
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /**
+     * Returns the next byte which is not whitespace, -1 at the end of the stream.
+     */
+    private int nextToken() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (isWhitespace(c));
+        return c;
+    }
+
+    private int peek() throws IOException {
+        int c = read();
+        if (c != -1) {
+            pos--;
+        }
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (pos == limit) {
+            offset += limit;
+            pos = 0;
+            limit = in.read(buf, 0, buf.length);
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buf[pos++] & 0xff;
+    }
+
+    private void expect(int c, char expected) throws JSONException {
+        if (c != expected) {
+            throw error(c, "'" + expected + "'");
+        }
+    }
+
+    private JSONException error(int c, String expected) {
+        return new JSONException("expect " + expected + " at " + (offset + pos) + " of the query "
+                + "results, but " + (c == -1 ? "the end" : "'" + (char) c + "'"));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import net.opentsdb.driver.core.model.TagSet;
+
+/**
+ * A bounded concurrent cache of the encoded json of series keys, one entry is the UTF-8 bytes of
+ * <code>{"metric":"...","tags":{...},</code> which every point of the series starts with, so the
+ * put serializer copies the bytes instead of encoding the metric and tags again and only formats
+ * the timestamp and value of a point.
+ * <p/>
+ * The key is the metric with the canonical {@link TagSet} of the tags, so tags maps with the same
+ * entries share one entry whatever their iteration order is; the tags are written sorted by key.
+ * The least recently used entries are evicted beyond maxSize.
+ */
+public class SeriesKeyCache {
+    private final Cache<SeriesKey, byte[]> cache;
+
+    /**
+     * Constructs a new cache holding at most maxSize series keys.
+     *
+     * @param maxSize the max number of series
+     */
+    public SeriesKeyCache(long maxSize) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).recordStats().build();
+    }
+
+    /**
+     * Returns the json bytes of the series, encodes and caches them on miss.
+     *
+     * @param metric the metric of the series
+     * @param tags the tags of the series, any map is accepted and not retained
+     * @return the bytes from the opening brace of a point till the comma after the tags
+     */
+    public byte[] get(String metric, Map<String, String> tags) throws IOException {
+        byte[] fragment = cache.getIfPresent(new SeriesKey(metric, tags));
+        if (fragment == null) {
+            TagSet tagSet = TagSet.of(tags);
+            fragment = encode(metric, tagSet);
+            // the tags with null keys or values never equal their tag set, they are not cached
+            if (tagSet.size() == tags.size()) {
+                cache.put(new SeriesKey(metric, tagSet), fragment);
+            }
+        }
+        return fragment;
+    }
+
+    /**
+     * Returns the number of cached series.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the hit and miss statistics of the cache.
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private static byte[] encode(String metric, TagSet tags) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + tags.bytes());
+        JsonByteWriter writer = new JsonByteWriter(out);
+        DataPointSerializer.writeSeries(metric, tags, writer);
+        writer.flush();
+        return out.toByteArray();
+    }
+
+    /**
+     * The metric and tags of a series, the tags of a lookup key may be any map, it compares equal
+     * with the {@link TagSet} of a cached key by the Map contract.
+     */
+    private static final class SeriesKey {
+        private final String metric;
+        private final Map<String, String> tags;
+        private final int hash;
+
+        SeriesKey(String metric, Map<String, String> tags) {
+            this.metric = metric;
+            this.tags = tags;
+            this.hash = 31 * metric.hashCode() + tags.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof SeriesKey)) {
+                return false;
+            }
+            SeriesKey other = (SeriesKey) o;
+            return hash == other.hash && metric.equals(other.metric) && tags.equals(other.tags);
+        }
+    }
+}
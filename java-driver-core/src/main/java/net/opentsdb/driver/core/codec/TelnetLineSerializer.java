@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import net.opentsdb.driver.core.model.DataPoint;
+import net.opentsdb.driver.core.model.DataPointBatch;
+import net.opentsdb.driver.core.model.Point;
+import net.opentsdb.driver.core.model.PrimitiveDataPoint;
+import net.opentsdb.driver.core.model.TagSet;
+import net.opentsdb.driver.core.model.ValueType;
+
+/**
+ * Writes data points as the lines of the opentsdb telnet protocol,
+ * {@code put <metric> <timestamp> <value> <tagk1=tagv1 ...>}, one line per data point. The
+ * names are checked for whitespace and '=', which would break the line apart.
+ */
+public class TelnetLineSerializer {
+    private static final byte[] PUT = "put ".getBytes();
+
+    /**
+     * Write the lines of the data points into the output stream.
+     *
+     * @param dataPoints the data points to put
+     * @param out the stream of the lines
+     * @return the number of lines written
+     * @throws IllegalArgumentException when a data point can not be written as a line
+     */
+    public int serialize(List<? extends Point> dataPoints, OutputStream out) throws IOException {
+        JsonByteWriter writer = new JsonByteWriter(out);
+        int lines = 0;
+        for (int i = 0; i < dataPoints.size(); i++) {
+            Point point = dataPoints.get(i);
+            if (point instanceof PrimitiveDataPoint) {
+                PrimitiveDataPoint primitive = (PrimitiveDataPoint) point;
+                writeHead(primitive.getMetric(), primitive.getTimestamp(), writer);
+                if (primitive.getValueType() == ValueType.LONG) {
+                    writer.writeLong(primitive.getLongValue());
+                } else {
+                    writer.writeDouble(primitive.getDoubleValue());
+                }
+                writeTags(primitive.getTags(), writer);
+                lines++;
+            } else if (point instanceof DataPointBatch) {
+                DataPointBatch batch = (DataPointBatch) point;
+                for (int j = 0; j < batch.count(); j++) {
+                    writeHead(batch.getMetric(), batch.getTimestamp(j), writer);
+                    if (batch.getValueType() == ValueType.LONG) {
+                        writer.writeLong(batch.getLongValue(j));
+                    } else {
+                        writer.writeDouble(batch.getDoubleValue(j));
+                    }
+                    writeTags(batch.getTags(), writer);
+                    lines++;
+                }
+            } else if (point instanceof DataPoint) {
+                DataPoint dataPoint = (DataPoint) point;
+                if (dataPoint.getTimestamp() == null || dataPoint.getValue() == null) {
+                    throw new IllegalArgumentException(
+                            "The data point has no timestamp or value : " + dataPoint);
+                }
+                writeHead(dataPoint.getMetric(), dataPoint.getTimestamp(), writer);
+                writeValue(dataPoint.getValue(), writer);
+                writeTags(dataPoint.getTags(), writer);
+                lines++;
+            } else {
+                throw new IllegalArgumentException(
+                        "Unsupported point type : " + point.getClass().getName());
+            }
+        }
+        writer.flush();
+        return lines;
+    }
+
+    private void writeHead(String metric, long timestamp, JsonByteWriter writer)
+            throws IOException {
+        writer.writeRaw(PUT);
+        writeName(metric, writer);
+        writer.writeByte((byte) ' ');
+        writer.writeLong(timestamp);
+        writer.writeByte((byte) ' ');
+    }
+
+    private void writeTags(Map<String, String> tags, JsonByteWriter writer) throws IOException {
+        if (tags == null || tags.isEmpty()) {
+            throw new IllegalArgumentException("The telnet put needs at least one tag");
+        }
+        if (tags instanceof TagSet) {
+            TagSet tagSet = (TagSet) tags;
+            for (int i = 0; i < tagSet.size(); i++) {
+                writeTag(tagSet.keyAt(i), tagSet.valueAt(i), writer);
+            }
+        } else {
+            for (Map.Entry<String, String> entry : tags.entrySet()) {
+                writeTag(entry.getKey(), entry.getValue(), writer);
+            }
+        }
+        writer.writeByte((byte) '\n');
+    }
+
+    private void writeTag(String key, String value, JsonByteWriter writer) throws IOException {
+        writer.writeByte((byte) ' ');
+        writeName(key, writer);
+        writer.writeByte((byte) '=');
+        writeName(value, writer);
+    }
+
+    private void writeName(String name, JsonByteWriter writer) throws IOException {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Empty metric or tag name in a telnet put");
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c <= ' ' || c == '=') {
+                throw new IllegalArgumentException(
+                        "Metric or tag name with whitespace or '=' in a telnet put : " + name);
+            }
+        }
+        writer.writeUtf8(name);
+    }
+
+    private void writeValue(Object value, JsonByteWriter writer) throws IOException {
+        if (value instanceof Long || value instanceof Integer) {
+            writer.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double) {
+            writer.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            writer.writeFloat((Float) value);
+        } else {
+            writeName(value.toString(), writer);
+        }
+    }
+}
@@ -17,7 +17,19 @@
  */
 package net.opentsdb.driver.core.conf;
 
+import net.opentsdb.driver.core.BatchWriter;
+import net.opentsdb.driver.core.DeadLetterHandler;
+import net.opentsdb.driver.core.PutTransport;
 import net.opentsdb.driver.core.TConstants;
+import net.opentsdb.driver.core.model.DataPoint;
+import net.opentsdb.driver.core.policies.BackpressurePolicy;
+import net.opentsdb.driver.core.policies.DefaultPutErrorClassifier;
+import net.opentsdb.driver.core.policies.DefaultRetryPolicy;
+import net.opentsdb.driver.core.policies.HedgingPolicy;
+import net.opentsdb.driver.core.policies.LoadBalancingPolicy;
+import net.opentsdb.driver.core.policies.PutErrorClassifier;
+import net.opentsdb.driver.core.policies.RetryPolicy;
+import net.opentsdb.driver.core.policies.RoundRobinPolicy;
 
 /**
  * The configuration of the cluster.
@@ -55,6 +67,66 @@ public class Configuration {
      
     private int syncTimeout;
     private boolean isSSL;
+
+    private int batchSize = TConstants.DEFAULT_BATCH_SIZE;
+    private long batchBytes = TConstants.DEFAULT_BATCH_BYTES;
+    private int batchLinger = TConstants.DEFAULT_BATCH_LINGER;
+    private int batchBufferNum = TConstants.BUFFER_NUM;
+    private int batchThreadCount = TConstants.BATCH_COUNT_CONST;
+
+    private boolean compression = false;
+    private int compressionThreshold = TConstants.DEFAULT_COMPRESSION_THRESHOLD;
+    private int compressionLevel = TConstants.DEFAULT_COMPRESSION_LEVEL;
+
+    private int seriesKeyCacheSize = TConstants.DEFAULT_SERIES_KEY_CACHE_SIZE;
+
+    private int maxInFlightRequests = 0;
+    private long maxInFlightBytes = 0;
+    private int maxPendingRequests = TConstants.DEFAULT_MAX_PENDING_REQUESTS;
+    private BackpressurePolicy backpressurePolicy = BackpressurePolicy.BLOCK;
+    private int backpressureTimeout = TConstants.DEFAULT_BACKPRESSURE_TIMEOUT;
+
+    private PutErrorClassifier putErrorClassifier = DefaultPutErrorClassifier.INSTANCE;
+    private DeadLetterHandler deadLetterHandler = null;
+
+    private String spoolDirectory = null;
+    private int spoolSegmentSize = TConstants.DEFAULT_SPOOL_SEGMENT_SIZE;
+    private long spoolMaxBytes = TConstants.DEFAULT_SPOOL_MAX_BYTES;
+    private int spoolReplayRate = TConstants.DEFAULT_SPOOL_REPLAY_RATE;
+    private int spoolForceInterval = TConstants.DEFAULT_SPOOL_FORCE_INTERVAL;
+
+    private PutTransport putTransport = PutTransport.HTTP;
+    private int telnetPort = 0;
+    private int telnetConnections = TConstants.DEFAULT_TELNET_CONNECTIONS;
+    private int telnetBufferSize = TConstants.DEFAULT_TELNET_BUFFER_SIZE;
+    private long telnetMaxQueuedBytes = TConstants.DEFAULT_TELNET_MAX_QUEUED_BYTES;
+    private int telnetCloseTimeout = TConstants.DEFAULT_TELNET_CLOSE_TIMEOUT;
+
+    private LoadBalancingPolicy loadBalancingPolicy = new RoundRobinPolicy();
+
+    private boolean circuitBreaker = true;
+    private int circuitBreakerWindow = TConstants.DEFAULT_CIRCUIT_BREAKER_WINDOW;
+    private double circuitBreakerFailureRate = TConstants.DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE;
+    private int circuitBreakerSlowCallTime = 0;
+    private int circuitBreakerOpenTime = TConstants.DEFAULT_CIRCUIT_BREAKER_OPEN_TIME;
+    private int circuitBreakerRampUpTime = TConstants.DEFAULT_CIRCUIT_BREAKER_RAMP_UP_TIME;
+    private int healthCheckInterval = 0;
+
+    private RetryPolicy retryPolicy = new DefaultRetryPolicy();
+
+    private int warmUpConnections = 0;
+    private int minIdleConnections = 0;
+
+    private HedgingPolicy hedgingPolicy = null;
+
+    private long connectionTimeToLive = 0;
+    private long maxIdleTime = TConstants.DEFAULT_MAX_IDLE_TIME;
+    private long connectionEvictionInterval = TConstants.DEFAULT_CONNECTION_EVICTION_INTERVAL;
+
+    private long queryCacheMaxBytes = 0;
+    private long queryCacheRecentTtl = TConstants.DEFAULT_QUERY_CACHE_RECENT_TTL;
+    private long queryCacheHistoricalTtl = TConstants.DEFAULT_QUERY_CACHE_HISTORICAL_TTL;
+    private long queryCacheHistoricalAge = TConstants.DEFAULT_QUERY_CACHE_HISTORICAL_AGE;
     
     public Configuration(int httpKeepaliveTimeout, 
             int httpConnectionTimeout, 
@@ -89,6 +161,52 @@ public class Configuration {
         this.ioThreadCount = builder.ioThreadCount;
         this.syncTimeout = builder.syncTimeout;
         this.isSSL = builder.isSSL;
+        this.batchSize = builder.batchSize;
+        this.batchBytes = builder.batchBytes;
+        this.batchLinger = builder.batchLinger;
+        this.batchBufferNum = builder.batchBufferNum;
+        this.batchThreadCount = builder.batchThreadCount;
+        this.compression = builder.compression;
+        this.compressionThreshold = builder.compressionThreshold;
+        this.compressionLevel = builder.compressionLevel;
+        this.seriesKeyCacheSize = builder.seriesKeyCacheSize;
+        this.maxInFlightRequests = builder.maxInFlightRequests;
+        this.maxInFlightBytes = builder.maxInFlightBytes;
+        this.maxPendingRequests = builder.maxPendingRequests;
+        this.backpressurePolicy = builder.backpressurePolicy;
+        this.backpressureTimeout = builder.backpressureTimeout;
+        this.putErrorClassifier = builder.putErrorClassifier;
+        this.deadLetterHandler = builder.deadLetterHandler;
+        this.spoolDirectory = builder.spoolDirectory;
+        this.spoolSegmentSize = builder.spoolSegmentSize;
+        this.spoolMaxBytes = builder.spoolMaxBytes;
+        this.spoolReplayRate = builder.spoolReplayRate;
+        this.spoolForceInterval = builder.spoolForceInterval;
+        this.putTransport = builder.putTransport;
+        this.telnetPort = builder.telnetPort;
+        this.telnetConnections = builder.telnetConnections;
+        this.telnetBufferSize = builder.telnetBufferSize;
+        this.telnetMaxQueuedBytes = builder.telnetMaxQueuedBytes;
+        this.telnetCloseTimeout = builder.telnetCloseTimeout;
+        this.loadBalancingPolicy = builder.loadBalancingPolicy;
+        this.circuitBreaker = builder.circuitBreaker;
+        this.circuitBreakerWindow = builder.circuitBreakerWindow;
+        this.circuitBreakerFailureRate = builder.circuitBreakerFailureRate;
+        this.circuitBreakerSlowCallTime = builder.circuitBreakerSlowCallTime;
+        this.circuitBreakerOpenTime = builder.circuitBreakerOpenTime;
+        this.circuitBreakerRampUpTime = builder.circuitBreakerRampUpTime;
+        this.healthCheckInterval = builder.healthCheckInterval;
+        this.retryPolicy = builder.retryPolicy;
+        this.warmUpConnections = builder.warmUpConnections;
+        this.minIdleConnections = builder.minIdleConnections;
+        this.hedgingPolicy = builder.hedgingPolicy;
+        this.connectionTimeToLive = builder.connectionTimeToLive;
+        this.maxIdleTime = builder.maxIdleTime;
+        this.connectionEvictionInterval = builder.connectionEvictionInterval;
+        this.queryCacheMaxBytes = builder.queryCacheMaxBytes;
+        this.queryCacheRecentTtl = builder.queryCacheRecentTtl;
+        this.queryCacheHistoricalTtl = builder.queryCacheHistoricalTtl;
+        this.queryCacheHistoricalAge = builder.queryCacheHistoricalAge;
     }
 
     
@@ -109,6 +227,66 @@ public class Configuration {
         private int syncTimeout;
         
         private boolean isSSL;
+
+        private int batchSize = TConstants.DEFAULT_BATCH_SIZE;
+        private long batchBytes = TConstants.DEFAULT_BATCH_BYTES;
+        private int batchLinger = TConstants.DEFAULT_BATCH_LINGER;
+        private int batchBufferNum = TConstants.BUFFER_NUM;
+        private int batchThreadCount = TConstants.BATCH_COUNT_CONST;
+
+        private boolean compression = false;
+        private int compressionThreshold = TConstants.DEFAULT_COMPRESSION_THRESHOLD;
+        private int compressionLevel = TConstants.DEFAULT_COMPRESSION_LEVEL;
+
+        private int seriesKeyCacheSize = TConstants.DEFAULT_SERIES_KEY_CACHE_SIZE;
+
+        private int maxInFlightRequests = 0;
+        private long maxInFlightBytes = 0;
+        private int maxPendingRequests = TConstants.DEFAULT_MAX_PENDING_REQUESTS;
+        private BackpressurePolicy backpressurePolicy = BackpressurePolicy.BLOCK;
+        private int backpressureTimeout = TConstants.DEFAULT_BACKPRESSURE_TIMEOUT;
+
+        private PutErrorClassifier putErrorClassifier = DefaultPutErrorClassifier.INSTANCE;
+        private DeadLetterHandler deadLetterHandler = null;
+
+        private String spoolDirectory = null;
+        private int spoolSegmentSize = TConstants.DEFAULT_SPOOL_SEGMENT_SIZE;
+        private long spoolMaxBytes = TConstants.DEFAULT_SPOOL_MAX_BYTES;
+        private int spoolReplayRate = TConstants.DEFAULT_SPOOL_REPLAY_RATE;
+        private int spoolForceInterval = TConstants.DEFAULT_SPOOL_FORCE_INTERVAL;
+
+        private PutTransport putTransport = PutTransport.HTTP;
+        private int telnetPort = 0;
+        private int telnetConnections = TConstants.DEFAULT_TELNET_CONNECTIONS;
+        private int telnetBufferSize = TConstants.DEFAULT_TELNET_BUFFER_SIZE;
+        private long telnetMaxQueuedBytes = TConstants.DEFAULT_TELNET_MAX_QUEUED_BYTES;
+        private int telnetCloseTimeout = TConstants.DEFAULT_TELNET_CLOSE_TIMEOUT;
+
+        private LoadBalancingPolicy loadBalancingPolicy = new RoundRobinPolicy();
+
+        private boolean circuitBreaker = true;
+        private int circuitBreakerWindow = TConstants.DEFAULT_CIRCUIT_BREAKER_WINDOW;
+        private double circuitBreakerFailureRate = TConstants.DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE;
+        private int circuitBreakerSlowCallTime = 0;
+        private int circuitBreakerOpenTime = TConstants.DEFAULT_CIRCUIT_BREAKER_OPEN_TIME;
+        private int circuitBreakerRampUpTime = TConstants.DEFAULT_CIRCUIT_BREAKER_RAMP_UP_TIME;
+        private int healthCheckInterval = 0;
+
+        private RetryPolicy retryPolicy = new DefaultRetryPolicy();
+
+        private int warmUpConnections = 0;
+        private int minIdleConnections = 0;
+
+        private HedgingPolicy hedgingPolicy = null;
+
+        private long connectionTimeToLive = 0;
+        private long maxIdleTime = TConstants.DEFAULT_MAX_IDLE_TIME;
+        private long connectionEvictionInterval = TConstants.DEFAULT_CONNECTION_EVICTION_INTERVAL;
+
+        private long queryCacheMaxBytes = 0;
+        private long queryCacheRecentTtl = TConstants.DEFAULT_QUERY_CACHE_RECENT_TTL;
+        private long queryCacheHistoricalTtl = TConstants.DEFAULT_QUERY_CACHE_HISTORICAL_TTL;
+        private long queryCacheHistoricalAge = TConstants.DEFAULT_QUERY_CACHE_HISTORICAL_AGE;
         
         /**
          * Sets the http keepalive timeout conf for this cluster.
@@ -149,7 +327,7 @@ public class Configuration {
         
         /**
          * Sets the http connection pool size connection ,the default is 
-         * Tconstants.DEFAULT_POOL_SIZE
+         * Tconstants.DEFAULT_POOL_SIZE; the sessions of a cluster share one pool.
          * 
          * @param poolSize the pool size connection of the http coonection
          * @return this builder
@@ -172,7 +350,7 @@ public class Configuration {
         }
         
         /**
-         * Sets the io thread
+         * Sets the io thread, the sessions of a cluster share one io reactor of these threads
          * 
          * @param count io thread count
          * @return this builder
@@ -234,109 +412,1072 @@ public class Configuration {
         }
         
         /**
-         * Builds the final object from this builder.
-         * <p/>
-         * Any field that hasn't been set explicitly will get its default value.
-         *
-         * @return the object.
+         * Sets the max data point number of one batch of the {@link BatchWriter}, when the
+         * buffered data points reach this number the batch is flushed, the default is
+         * Tconstants.DEFAULT_BATCH_SIZE
+         * 
+         * @param batchSize the max data point number of one batch
+         * @return this builder.
          */
-        public Configuration build() {
-            return new Configuration(httpKeepaliveTimeout != 0 ? httpKeepaliveTimeout : 0, 
-                    httpConnectionTimeout != 0 ? httpConnectionTimeout : TConstants.HTTP_CONNECTION_TIMOUT, 
-                    httpSocketTimeout != 0 ? httpSocketTimeout : TConstants.HTTP_SOCKET_TIMEOUT, 
-                    queryRetryNum != 0 ? queryRetryNum : TConstants.NORMAL_RETRY, 
-                    putRetryNum != 0 ? putRetryNum : TConstants.NORMAL_RETRY, 
-                    poolSize != 0 ? poolSize : TConstants.DEFAULT_POOL_SIZE, 
-                    maxRoute != 0 ? maxRoute : TConstants.DEFAULT_MAX_ROUTE,
-                    ioThreadCount != 0 ? ioThreadCount : Runtime.getRuntime().availableProcessors(),
-                    syncTimeout > 0 ? syncTimeout : 0,        
-                    isSSL != false ? isSSL : false);
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
         }
-    }
 
-    /** 
-     * Returns the http keepalive timeout configuration
-     * 
-     *  @return the http keepalive timeout
-     * */
-    public int getHttpKeepaliveTimeout() {
-        return httpKeepaliveTimeout;
-    }
+        /**
+         * Sets the max estimated bytes of one batch of the {@link BatchWriter}, the size of
+         * every data point is estimated by {@link DataPoint#size()}, the default is
+         * Tconstants.DEFAULT_BATCH_BYTES
+         * 
+         * @param batchBytes the max bytes of one batch
+         * @return this builder.
+         */
+        public Builder batchBytes(long batchBytes) {
+            this.batchBytes = batchBytes;
+            return this;
+        }
 
-    /**
-     * Returns the http connection timeout
-     * 
-     * @return the http connection timeout
-     * */
-    public int getHttpConnectionTimeout() {
-        return httpConnectionTimeout;
-    }
-    
-    /**
-     * Returns the http socket timeout
-     * 
-     * @return the http socket timeout
-     * */
-    public int getHttpSocketTimeout() {
-        return httpSocketTimeout;
-    }
-    
-    /**
-     * Returns the pool size which mean the 
-     * http connection max number;
-     * 
-     * @return the pool size
-     * */
-    public int getPoolSize() {
-        return poolSize;
-    }
-    
-    /**
-     * Returns the max route 
-     * 
-     * @return the max route
-     * */
-    public int getMaxRoute() {
-        return maxRoute;
-    }
-    
-    /**
-     * Returns the  io thread count 
-     * 
-     * @return the io thread count
-     * */
-    public int getIoThreadCount() {
-        return ioThreadCount;
-    }
+        /**
+         * Sets the max time in ms a data point waits in the {@link BatchWriter} before its batch
+         * is flushed even though it is not full, the default is Tconstants.DEFAULT_BATCH_LINGER
+         * 
+         * @param batchLinger the linger time, ms
+         * @return this builder.
+         */
+        public Builder batchLinger(int batchLinger) {
+            this.batchLinger = batchLinger;
+            return this;
+        }
+
+        /**
+         * Sets the number of full batches the {@link BatchWriter} queues for flushing, when the
+         * queue is full the writers block, the default is Tconstants.BUFFER_NUM
+         * 
+         * @param batchBufferNum the number of queued batches
+         * @return this builder.
+         */
+        public Builder batchBufferNum(int batchBufferNum) {
+            this.batchBufferNum = batchBufferNum;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads the {@link BatchWriter} flushes batches with, the default is
+         * Tconstants.BATCH_COUNT_CONST
+         * 
+         * @param batchThreadCount the flush thread count
+         * @return this builder.
+         */
+        public Builder batchThreadCount(int batchThreadCount) {
+            this.batchThreadCount = batchThreadCount;
+            return this;
+        }
         
-    /**
-     * Returns the query retry number
-     * 
-     * @return the get retry number
-     * */
-    public int getQueryRetryNum() {
-        return queryRetryNum;
-    }
+        /**
+         * Sets the compression conf for this cluster, after it is set to true the request bodies
+         * of put and query which are not smaller than {@link #compressionThreshold} are sent
+         * with gzip Content-Encoding.
+         * 
+         * @param compression the conf.
+         * @return this builder.
+         */
+        public Builder compression(boolean compression) {
+            this.compression = compression;
+            return this;
+        }
 
-    /**
-     * Returns the put operation retry number when excption occurs
-     * */
-    public int getPutRetryNum() {
-        return putRetryNum;
-    }
-    
-    /**
-     * Return the sync timeout
-     * */
-    public int getSyncTimeout() {
-        return syncTimeout;
-    }
-    
-    /**
-     * Returns the is ssl or not
-     * */
-    public boolean isSSL() {
-        return isSSL;
+        /**
+         * Sets the min request body size in bytes to compress, the smaller bodies are sent
+         * plain, the default is Tconstants.DEFAULT_COMPRESSION_THRESHOLD
+         * 
+         * @param compressionThreshold the min bytes to compress
+         * @return this builder.
+         */
+        public Builder compressionThreshold(int compressionThreshold) {
+            this.compressionThreshold = compressionThreshold;
+            return this;
+        }
+
+        /**
+         * Sets the gzip level from 1 (fastest) to 9 (smallest), the default is
+         * Tconstants.DEFAULT_COMPRESSION_LEVEL
+         * 
+         * @param compressionLevel the gzip level
+         * @return this builder.
+         */
+        public Builder compressionLevel(int compressionLevel) {
+            this.compressionLevel = compressionLevel;
+            return this;
+        }
+        
+        /**
+         * Sets the max number of series whose metric and tags json is cached by the put serializer,
+         * see {@link net.opentsdb.driver.core.codec.SeriesKeyCache}; 0 disables the cache, the
+         * default is Tconstants.DEFAULT_SERIES_KEY_CACHE_SIZE
+         * 
+         * @param seriesKeyCacheSize the max number of cached series
+         * @return this builder.
+         */
+        public Builder seriesKeyCacheSize(int seriesKeyCacheSize) {
+            this.seriesKeyCacheSize = seriesKeyCacheSize;
+            return this;
+        }
+
+        /**
+         * Sets the max number of put and query requests a session has in flight, the requests over
+         * it wait or are rejected by the backpressurePolicy; 0 is unlimited, the default.
+         * 
+         * @param maxInFlightRequests the max number of requests in flight
+         * @return this builder.
+         */
+        public Builder maxInFlightRequests(int maxInFlightRequests) {
+            this.maxInFlightRequests = maxInFlightRequests;
+            return this;
+        }
+
+        /**
+         * Sets the max request body bytes a session has in flight, see maxInFlightRequests; 0 is
+         * unlimited, the default.
+         * 
+         * @param maxInFlightBytes the max bytes in flight
+         * @return this builder.
+         */
+        public Builder maxInFlightBytes(long maxInFlightBytes) {
+            this.maxInFlightBytes = maxInFlightBytes;
+            return this;
+        }
+
+        /**
+         * Sets the max number of requests waiting for the in flight limit, when more requests come
+         * the backpressurePolicy fires, the default is Tconstants.DEFAULT_MAX_PENDING_REQUESTS
+         * 
+         * @param maxPendingRequests the max number of pending requests
+         * @return this builder.
+         */
+        public Builder maxPendingRequests(int maxPendingRequests) {
+            this.maxPendingRequests = maxPendingRequests;
+            return this;
+        }
+
+        /**
+         * Sets what to do with a request when the in flight limit is reached and the pending queue
+         * is full, see {@link BackpressurePolicy}, the default is BLOCK.
+         * 
+         * @param backpressurePolicy the backpressure policy
+         * @return this builder.
+         */
+        public Builder backpressurePolicy(BackpressurePolicy backpressurePolicy) {
+            this.backpressurePolicy = backpressurePolicy;
+            return this;
+        }
+
+        /**
+         * Sets the max time in ms a caller blocks with the BLOCK policy before the request fails,
+         * the default is Tconstants.DEFAULT_BACKPRESSURE_TIMEOUT
+         * 
+         * @param backpressureTimeout the max blocking time, ms
+         * @return this builder.
+         */
+        public Builder backpressureTimeout(int backpressureTimeout) {
+            this.backpressureTimeout = backpressureTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the classifier which tells the data points failed by a detailed put that are put
+         * again from the ones rejected for good, the default is {@link DefaultPutErrorClassifier}.
+         * 
+         * @param putErrorClassifier the put error classifier
+         * @return this builder.
+         */
+        public Builder putErrorClassifier(PutErrorClassifier putErrorClassifier) {
+            this.putErrorClassifier = putErrorClassifier;
+            return this;
+        }
+
+        /**
+         * Sets the handler of the data points rejected for good by a detailed put, they are given
+         * to the handler instead of failing the put with {@ErrorResultException}; not set by
+         * default.
+         * 
+         * @param deadLetterHandler the dead letter handler
+         * @return this builder.
+         */
+        public Builder deadLetterHandler(DeadLetterHandler deadLetterHandler) {
+            this.deadLetterHandler = deadLetterHandler;
+            return this;
+        }
+
+        /**
+         * Sets the directory of the write-ahead spool; when set, the data points of a put which is
+         * failed after putRetryNum tries with {@OverRetryException} are appended to the spool on
+         * the local disk and put again in order once opentsdb is back. Not set by default, the
+         * spool is disabled.
+         * 
+         * @param spoolDirectory the spool directory
+         * @return this builder.
+         */
+        public Builder spoolDirectory(String spoolDirectory) {
+            this.spoolDirectory = spoolDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the size of one memory mapped spool segment file, bytes.
+         * 
+         * @param spoolSegmentSize the spool segment size
+         * @return this builder.
+         */
+        public Builder spoolSegmentSize(int spoolSegmentSize) {
+            this.spoolSegmentSize = spoolSegmentSize;
+            return this;
+        }
+
+        /**
+         * Sets the max total size of the spool segment files, bytes; the data points failed when
+         * the spool is full are lost.
+         * 
+         * @param spoolMaxBytes the max spool size
+         * @return this builder.
+         */
+        public Builder spoolMaxBytes(long spoolMaxBytes) {
+            this.spoolMaxBytes = spoolMaxBytes;
+            return this;
+        }
+
+        /**
+         * Sets the max number of spooled data points put again per second, so the replay does not
+         * flood opentsdb just back from an outage.
+         * 
+         * @param spoolReplayRate the spool replay rate
+         * @return this builder.
+         */
+        public Builder spoolReplayRate(int spoolReplayRate) {
+            this.spoolReplayRate = spoolReplayRate;
+            return this;
+        }
+
+        /**
+         * Sets the interval the spool segments are forced to the disk in the background, ms; the
+         * spooled data points of the last interval may be lost if the machine crashes.
+         * 
+         * @param spoolForceInterval the spool force interval
+         * @return this builder.
+         */
+        public Builder spoolForceInterval(int spoolForceInterval) {
+            this.spoolForceInterval = spoolForceInterval;
+            return this;
+        }
+
+        /**
+         * Sets the transport the data points are put with, {@link PutTransport#HTTP} by default;
+         * with {@link PutTransport#TELNET} the puts are fire and forget lines over persistent
+         * connections, the detailed and sync options do not apply and no error comes back.
+         * 
+         * @param putTransport the put transport
+         * @return this builder.
+         */
+        public Builder putTransport(PutTransport putTransport) {
+            this.putTransport = putTransport;
+            return this;
+        }
+
+        /**
+         * Sets the port of the telnet puts, the port of the session when not set; opentsdb
+         * accepts the telnet puts on its http port.
+         * 
+         * @param telnetPort the telnet port
+         * @return this builder.
+         */
+        public Builder telnetPort(int telnetPort) {
+            this.telnetPort = telnetPort;
+            return this;
+        }
+
+        /**
+         * Sets the number of persistent telnet connections of a session.
+         * 
+         * @param telnetConnections the telnet connection number
+         * @return this builder.
+         */
+        public Builder telnetConnections(int telnetConnections) {
+            this.telnetConnections = telnetConnections;
+            return this;
+        }
+
+        /**
+         * Sets the size of one direct buffer the telnet lines are queued in, bytes.
+         * 
+         * @param telnetBufferSize the telnet buffer size
+         * @return this builder.
+         */
+        public Builder telnetBufferSize(int telnetBufferSize) {
+            this.telnetBufferSize = telnetBufferSize;
+            return this;
+        }
+
+        /**
+         * Sets the max bytes of telnet lines queued on one connection, a put waits up to
+         * backpressureTimeout beyond it and then fails with {@BackpressureException}.
+         * 
+         * @param telnetMaxQueuedBytes the max queued bytes
+         * @return this builder.
+         */
+        public Builder telnetMaxQueuedBytes(long telnetMaxQueuedBytes) {
+            this.telnetMaxQueuedBytes = telnetMaxQueuedBytes;
+            return this;
+        }
+
+        /**
+         * Sets the max time in ms closing a session waits for the queued telnet lines to be
+         * written, the lines still queued after it are dropped, the default is
+         * Tconstants.DEFAULT_TELNET_CLOSE_TIMEOUT
+         * 
+         * @param telnetCloseTimeout the max time to flush on close, ms
+         * @return this builder.
+         */
+        public Builder telnetCloseTimeout(int telnetCloseTimeout) {
+            this.telnetCloseTimeout = telnetCloseTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the policy which chooses the contact point each request of a session is sent to, see
+         * {@link LoadBalancingPolicy}, the default is {@link RoundRobinPolicy}.
+         * 
+         * @param loadBalancingPolicy the load balancing policy
+         * @return this builder.
+         */
+        public Builder loadBalancingPolicy(LoadBalancingPolicy loadBalancingPolicy) {
+            this.loadBalancingPolicy = loadBalancingPolicy;
+            return this;
+        }
+
+        /**
+         * Sets if the nodes whose requests fail or are slow are ejected from the load balancing
+         * till they answer the version probe again, see {@link net.opentsdb.driver.core.NodeState};
+         * the default is true.
+         * 
+         * @param circuitBreaker true to eject the failing nodes
+         * @return this builder.
+         */
+        public Builder circuitBreaker(boolean circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        /**
+         * Sets the number of the last requests of a node the failure rate is counted over, the
+         * default is Tconstants.DEFAULT_CIRCUIT_BREAKER_WINDOW
+         * 
+         * @param circuitBreakerWindow the number of requests
+         * @return this builder.
+         */
+        public Builder circuitBreakerWindow(int circuitBreakerWindow) {
+            this.circuitBreakerWindow = circuitBreakerWindow;
+            return this;
+        }
+
+        /**
+         * Sets the rate of the failed and slow requests in the window a node is ejected at, the
+         * default is Tconstants.DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE
+         * 
+         * @param circuitBreakerFailureRate the failure rate, more than 0 and at most 1
+         * @return this builder.
+         */
+        public Builder circuitBreakerFailureRate(double circuitBreakerFailureRate) {
+            this.circuitBreakerFailureRate = circuitBreakerFailureRate;
+            return this;
+        }
+
+        /**
+         * Sets the time in ms a request which takes longer counts as failed for the circuit
+         * breaker, like when a TSD stalls in GC; 0 disables it, the default.
+         * 
+         * @param circuitBreakerSlowCallTime the slow request time, ms
+         * @return this builder.
+         */
+        public Builder circuitBreakerSlowCallTime(int circuitBreakerSlowCallTime) {
+            this.circuitBreakerSlowCallTime = circuitBreakerSlowCallTime;
+            return this;
+        }
+
+        /**
+         * Sets the time in ms an ejected node waits for the first version probe, it is multiplied
+         * by the times the node was ejected in a row; the default is
+         * Tconstants.DEFAULT_CIRCUIT_BREAKER_OPEN_TIME
+         * 
+         * @param circuitBreakerOpenTime the ejection time, ms
+         * @return this builder.
+         */
+        public Builder circuitBreakerOpenTime(int circuitBreakerOpenTime) {
+            this.circuitBreakerOpenTime = circuitBreakerOpenTime;
+            return this;
+        }
+
+        /**
+         * Sets the time in ms a recovered node takes to get its full share of the requests again,
+         * the default is Tconstants.DEFAULT_CIRCUIT_BREAKER_RAMP_UP_TIME
+         * 
+         * @param circuitBreakerRampUpTime the ramp up time, ms
+         * @return this builder.
+         */
+        public Builder circuitBreakerRampUpTime(int circuitBreakerRampUpTime) {
+            this.circuitBreakerRampUpTime = circuitBreakerRampUpTime;
+            return this;
+        }
+
+        /**
+         * Sets the interval in ms the nodes which are not ejected are probed with the version
+         * request too, a failed probe counts like a failed request; 0 disables it, the default,
+         * then only the ejected nodes are probed.
+         * 
+         * @param healthCheckInterval the health check interval, ms
+         * @return this builder.
+         */
+        public Builder healthCheckInterval(int healthCheckInterval) {
+            this.healthCheckInterval = healthCheckInterval;
+            return this;
+        }
+
+        /**
+         * Sets the policy which decides if and when a failed request is tried again, up to
+         * putRetryNum or queryRetryNum tries, see {@link RetryPolicy}; the sessions of this
+         * configuration share it and its retry budget. The default is {@link DefaultRetryPolicy}.
+         * 
+         * @param retryPolicy the retry policy
+         * @return this builder.
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the number of connections opened to every node when the session starts, before
+         * the first request; start waits for them up to twice the connection timeout. 0 disables
+         * it, the default. The connections are idle till the first requests, keep them with
+         * httpKeepaliveTimeout when the requests should reuse them.
+         * 
+         * @param warmUpConnections the number of connections opened on start per node
+         * @return this builder.
+         */
+        public Builder warmUpConnections(int warmUpConnections) {
+            this.warmUpConnections = warmUpConnections;
+            return this;
+        }
+
+        /**
+         * Sets the min number of idle connections to every node, the missing ones are opened in
+         * the background after the requests took them or they expired. 0 disables it, the default.
+         * 
+         * @param minIdleConnections the min number of idle connections per node
+         * @return this builder.
+         */
+        public Builder minIdleConnections(int minIdleConnections) {
+            this.minIdleConnections = minIdleConnections;
+            return this;
+        }
+
+        /**
+         * Sets the policy which sends a duplicate of a slow query to another node, the first
+         * answer wins, see {@link HedgingPolicy}; only query, queryLast, queryExp and queryGexp
+         * are hedged. The sessions of this configuration share it and its budget. null disables
+         * it, the default.
+         * 
+         * @param hedgingPolicy the hedging policy, like
+         *        {@link net.opentsdb.driver.core.policies.PercentileHedgingPolicy}
+         * @return this builder.
+         */
+        public Builder hedgingPolicy(HedgingPolicy hedgingPolicy) {
+            this.hedgingPolicy = hedgingPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the max time a http connection is used for from its connect, ms; a connection older
+         * than it is closed when it is released or by the connection evictor, so the connections
+         * are spread again after a balancer or a node changed. 0 disables it, the default.
+         * 
+         * @param connectionTimeToLive the max life time of a connection, ms
+         * @return this builder.
+         */
+        public Builder connectionTimeToLive(long connectionTimeToLive) {
+            this.connectionTimeToLive = connectionTimeToLive;
+            return this;
+        }
+
+        /**
+         * Sets the max time a http connection stays idle in the pool, ms; the connection evictor
+         * closes it after, before a balancer drops it silently and the next request fails on it.
+         * The default is TConstants.DEFAULT_MAX_IDLE_TIME, 0 keeps the idle connections till they
+         * expire by the keepalive timeout or the time to live.
+         * 
+         * @param maxIdleTime the max idle time of a connection, ms
+         * @return this builder.
+         */
+        public Builder maxIdleTime(long maxIdleTime) {
+            this.maxIdleTime = maxIdleTime;
+            return this;
+        }
+
+        /**
+         * Sets the interval the expired and idle http connections are closed at in the background,
+         * ms; the default is TConstants.DEFAULT_CONNECTION_EVICTION_INTERVAL, 0 disables the
+         * evictor and the connections are only checked when they are leased.
+         * 
+         * @param connectionEvictionInterval the interval of the connection evictor, ms
+         * @return this builder.
+         */
+        public Builder connectionEvictionInterval(long connectionEvictionInterval) {
+            this.connectionEvictionInterval = connectionEvictionInterval;
+            return this;
+        }
+
+        /**
+         * Sets the max estimated bytes of the query results cached by /api/query, the least
+         * recently used ones are evicted beyond it. The sessions of a cluster share one cache, so
+         * the same query of many of them is sent to opentsdb once per ttl. 0 disables the cache,
+         * the default.
+         * 
+         * @param queryCacheMaxBytes the max bytes of the cached query results
+         * @return this builder.
+         */
+        public Builder queryCacheMaxBytes(long queryCacheMaxBytes) {
+            this.queryCacheMaxBytes = queryCacheMaxBytes;
+            return this;
+        }
+
+        /**
+         * Sets the time the results of a query without end or ending less than
+         * queryCacheHistoricalAge ago are cached, ms; opentsdb may still get data points for
+         * them, so it is how stale they can be. 0 does not cache them.
+         * 
+         * @param queryCacheRecentTtl the ttl of the recent query results, ms
+         * @return this builder.
+         */
+        public Builder queryCacheRecentTtl(long queryCacheRecentTtl) {
+            this.queryCacheRecentTtl = queryCacheRecentTtl;
+            return this;
+        }
+
+        /**
+         * Sets the time the results of a query ending more than queryCacheHistoricalAge ago are
+         * cached, ms; they only change with late or deleted data points. 0 does not cache them.
+         * 
+         * @param queryCacheHistoricalTtl the ttl of the historical query results, ms
+         * @return this builder.
+         */
+        public Builder queryCacheHistoricalTtl(long queryCacheHistoricalTtl) {
+            this.queryCacheHistoricalTtl = queryCacheHistoricalTtl;
+            return this;
+        }
+
+        /**
+         * Sets the age of the end of a query its results are historical after, ms, when the data
+         * points of opentsdb do not change any more.
+         * 
+         * @param queryCacheHistoricalAge the age of the end of the historical queries, ms
+         * @return this builder.
+         */
+        public Builder queryCacheHistoricalAge(long queryCacheHistoricalAge) {
+            this.queryCacheHistoricalAge = queryCacheHistoricalAge;
+            return this;
+        }
+
+        /**
+         * Builds the final object from this builder.
+         * <p/>
+         * Any field that hasn't been set explicitly will get its default value.
+         *
+         * @return the object.
+         */
+        public Configuration build() {
+            httpConnectionTimeout = httpConnectionTimeout != 0 ? httpConnectionTimeout
+                    : TConstants.HTTP_CONNECTION_TIMOUT;
+            httpSocketTimeout = httpSocketTimeout != 0 ? httpSocketTimeout
+                    : TConstants.HTTP_SOCKET_TIMEOUT;
+            queryRetryNum = queryRetryNum != 0 ? queryRetryNum : TConstants.NORMAL_RETRY;
+            putRetryNum = putRetryNum != 0 ? putRetryNum : TConstants.NORMAL_RETRY;
+            poolSize = poolSize != 0 ? poolSize : TConstants.DEFAULT_POOL_SIZE;
+            maxRoute = maxRoute != 0 ? maxRoute : TConstants.DEFAULT_MAX_ROUTE;
+            ioThreadCount = ioThreadCount != 0 ? ioThreadCount
+                    : Runtime.getRuntime().availableProcessors();
+            syncTimeout = syncTimeout > 0 ? syncTimeout : 0;
+            batchSize = batchSize > 0 ? batchSize : TConstants.DEFAULT_BATCH_SIZE;
+            batchBytes = batchBytes > 0 ? batchBytes : TConstants.DEFAULT_BATCH_BYTES;
+            batchLinger = batchLinger > 0 ? batchLinger : TConstants.DEFAULT_BATCH_LINGER;
+            batchBufferNum = batchBufferNum > 0 ? batchBufferNum : TConstants.BUFFER_NUM;
+            batchThreadCount = batchThreadCount > 0 ? batchThreadCount
+                    : TConstants.BATCH_COUNT_CONST;
+            compressionThreshold = compressionThreshold >= 0 ? compressionThreshold
+                    : TConstants.DEFAULT_COMPRESSION_THRESHOLD;
+            compressionLevel = compressionLevel >= 1 && compressionLevel <= 9 ? compressionLevel
+                    : TConstants.DEFAULT_COMPRESSION_LEVEL;
+            seriesKeyCacheSize = seriesKeyCacheSize >= 0 ? seriesKeyCacheSize
+                    : TConstants.DEFAULT_SERIES_KEY_CACHE_SIZE;
+            maxInFlightRequests = maxInFlightRequests > 0 ? maxInFlightRequests : 0;
+            maxInFlightBytes = maxInFlightBytes > 0 ? maxInFlightBytes : 0;
+            maxPendingRequests = maxPendingRequests >= 0 ? maxPendingRequests
+                    : TConstants.DEFAULT_MAX_PENDING_REQUESTS;
+            backpressurePolicy = backpressurePolicy != null ? backpressurePolicy
+                    : BackpressurePolicy.BLOCK;
+            backpressureTimeout = backpressureTimeout >= 0 ? backpressureTimeout
+                    : TConstants.DEFAULT_BACKPRESSURE_TIMEOUT;
+            putErrorClassifier = putErrorClassifier != null ? putErrorClassifier
+                    : DefaultPutErrorClassifier.INSTANCE;
+            spoolSegmentSize = spoolSegmentSize > 0 ? spoolSegmentSize
+                    : TConstants.DEFAULT_SPOOL_SEGMENT_SIZE;
+            spoolMaxBytes = spoolMaxBytes > 0 ? spoolMaxBytes : TConstants.DEFAULT_SPOOL_MAX_BYTES;
+            spoolReplayRate = spoolReplayRate > 0 ? spoolReplayRate
+                    : TConstants.DEFAULT_SPOOL_REPLAY_RATE;
+            spoolForceInterval = spoolForceInterval > 0 ? spoolForceInterval
+                    : TConstants.DEFAULT_SPOOL_FORCE_INTERVAL;
+            putTransport = putTransport != null ? putTransport : PutTransport.HTTP;
+            telnetPort = telnetPort >= 0 ? telnetPort : 0;
+            telnetConnections = telnetConnections > 0 ? telnetConnections
+                    : TConstants.DEFAULT_TELNET_CONNECTIONS;
+            telnetBufferSize = telnetBufferSize > 0 ? telnetBufferSize
+                    : TConstants.DEFAULT_TELNET_BUFFER_SIZE;
+            telnetMaxQueuedBytes = telnetMaxQueuedBytes > 0 ? telnetMaxQueuedBytes
+                    : TConstants.DEFAULT_TELNET_MAX_QUEUED_BYTES;
+            telnetCloseTimeout = telnetCloseTimeout >= 0 ? telnetCloseTimeout
+                    : TConstants.DEFAULT_TELNET_CLOSE_TIMEOUT;
+            loadBalancingPolicy = loadBalancingPolicy != null ? loadBalancingPolicy
+                    : new RoundRobinPolicy();
+            circuitBreakerWindow = circuitBreakerWindow > 0 ? circuitBreakerWindow
+                    : TConstants.DEFAULT_CIRCUIT_BREAKER_WINDOW;
+            circuitBreakerFailureRate =
+                    circuitBreakerFailureRate > 0 && circuitBreakerFailureRate <= 1
+                            ? circuitBreakerFailureRate
+                            : TConstants.DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE;
+            circuitBreakerSlowCallTime =
+                    circuitBreakerSlowCallTime > 0 ? circuitBreakerSlowCallTime : 0;
+            circuitBreakerOpenTime = circuitBreakerOpenTime > 0 ? circuitBreakerOpenTime
+                    : TConstants.DEFAULT_CIRCUIT_BREAKER_OPEN_TIME;
+            circuitBreakerRampUpTime = circuitBreakerRampUpTime >= 0 ? circuitBreakerRampUpTime
+                    : TConstants.DEFAULT_CIRCUIT_BREAKER_RAMP_UP_TIME;
+            healthCheckInterval = healthCheckInterval > 0 ? healthCheckInterval : 0;
+            retryPolicy = retryPolicy != null ? retryPolicy : new DefaultRetryPolicy();
+            warmUpConnections = warmUpConnections > 0 ? warmUpConnections : 0;
+            minIdleConnections = minIdleConnections > 0 ? minIdleConnections : 0;
+            connectionTimeToLive = connectionTimeToLive > 0 ? connectionTimeToLive : 0;
+            maxIdleTime = maxIdleTime > 0 ? maxIdleTime : 0;
+            connectionEvictionInterval =
+                    connectionEvictionInterval > 0 ? connectionEvictionInterval : 0;
+            queryCacheMaxBytes = queryCacheMaxBytes > 0 ? queryCacheMaxBytes : 0;
+            queryCacheRecentTtl = queryCacheRecentTtl > 0 ? queryCacheRecentTtl : 0;
+            queryCacheHistoricalTtl = queryCacheHistoricalTtl > 0 ? queryCacheHistoricalTtl : 0;
+            queryCacheHistoricalAge = queryCacheHistoricalAge > 0 ? queryCacheHistoricalAge : 0;
+            return new Configuration(this);
+        }
+    }
+
+    /** 
+     * Returns the http keepalive timeout configuration
+     * 
+     *  @return the http keepalive timeout
+     * */
+    public int getHttpKeepaliveTimeout() {
+        return httpKeepaliveTimeout;
+    }
+
+    /**
+     * Returns the http connection timeout
+     * 
+     * @return the http connection timeout
+     * */
+    public int getHttpConnectionTimeout() {
+        return httpConnectionTimeout;
+    }
+    
+    /**
+     * Returns the http socket timeout
+     * 
+     * @return the http socket timeout
+     * */
+    public int getHttpSocketTimeout() {
+        return httpSocketTimeout;
+    }
+    
+    /**
+     * Returns the pool size which mean the 
+     * http connection max number;
+     * 
+     * @return the pool size
+     * */
+    public int getPoolSize() {
+        return poolSize;
+    }
+    
+    /**
+     * Returns the max route 
+     * 
+     * @return the max route
+     * */
+    public int getMaxRoute() {
+        return maxRoute;
+    }
+    
+    /**
+     * Returns the  io thread count 
+     * 
+     * @return the io thread count
+     * */
+    public int getIoThreadCount() {
+        return ioThreadCount;
+    }
+        
+    /**
+     * Returns the query retry number
+     * 
+     * @return the get retry number
+     * */
+    public int getQueryRetryNum() {
+        return queryRetryNum;
+    }
+
+    /**
+     * Returns the put operation retry number when excption occurs
+     * */
+    public int getPutRetryNum() {
+        return putRetryNum;
+    }
+    
+    /**
+     * Return the sync timeout
+     * */
+    public int getSyncTimeout() {
+        return syncTimeout;
+    }
+    
+    /**
+     * Returns the is ssl or not
+     * */
+    public boolean isSSL() {
+        return isSSL;
+    }
+
+    /**
+     * Returns the max data point number of one batch
+     * */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns the max estimated bytes of one batch
+     * */
+    public long getBatchBytes() {
+        return batchBytes;
+    }
+
+    /**
+     * Returns the max linger time of a batch, ms
+     * */
+    public int getBatchLinger() {
+        return batchLinger;
+    }
+
+    /**
+     * Returns the number of full batches queued for flushing
+     * */
+    public int getBatchBufferNum() {
+        return batchBufferNum;
+    }
+
+    /**
+     * Returns the number of batch flush threads
+     * */
+    public int getBatchThreadCount() {
+        return batchThreadCount;
+    }
+
+    /**
+     * Returns the request bodies are compressed or not
+     * */
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * Returns the min request body size to compress, bytes
+     * */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Returns the gzip level of the request bodies
+     * */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Returns the max number of cached series keys, 0 when the cache is disabled
+     * */
+    public int getSeriesKeyCacheSize() {
+        return seriesKeyCacheSize;
+    }
+
+    /**
+     * Returns the max number of requests in flight of a session, 0 is unlimited
+     * */
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    /**
+     * Returns the max request body bytes in flight of a session, 0 is unlimited
+     * */
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    /**
+     * Returns the max number of requests waiting for the in flight limit
+     * */
+    public int getMaxPendingRequests() {
+        return maxPendingRequests;
+    }
+
+    /**
+     * Returns the backpressure policy of the in flight limit
+     * */
+    public BackpressurePolicy getBackpressurePolicy() {
+        return backpressurePolicy;
+    }
+
+    /**
+     * Returns the max time a caller blocks with the BLOCK policy, ms
+     * */
+    public int getBackpressureTimeout() {
+        return backpressureTimeout;
+    }
+
+    /**
+     * Returns the classifier of the put errors
+     * */
+    public PutErrorClassifier getPutErrorClassifier() {
+        return putErrorClassifier;
+    }
+
+    /**
+     * Returns the handler of the rejected data points, null when not set
+     * */
+    public DeadLetterHandler getDeadLetterHandler() {
+        return deadLetterHandler;
+    }
+
+    /**
+     * Returns the directory of the write-ahead spool, null when the spool is disabled
+     * */
+    public String getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    /**
+     * Returns the size of one spool segment file, bytes
+     * */
+    public int getSpoolSegmentSize() {
+        return spoolSegmentSize;
+    }
+
+    /**
+     * Returns the max total size of the spool segment files, bytes
+     * */
+    public long getSpoolMaxBytes() {
+        return spoolMaxBytes;
+    }
+
+    /**
+     * Returns the max number of spooled data points put again per second
+     * */
+    public int getSpoolReplayRate() {
+        return spoolReplayRate;
+    }
+
+    /**
+     * Returns the interval the spool segments are forced to the disk, ms
+     * */
+    public int getSpoolForceInterval() {
+        return spoolForceInterval;
+    }
+
+    /**
+     * Returns the transport the data points are put with
+     * */
+    public PutTransport getPutTransport() {
+        return putTransport;
+    }
+
+    /**
+     * Returns the port of the telnet puts, 0 for the port of the session
+     * */
+    public int getTelnetPort() {
+        return telnetPort;
+    }
+
+    /**
+     * Returns the number of persistent telnet connections of a session
+     * */
+    public int getTelnetConnections() {
+        return telnetConnections;
+    }
+
+    /**
+     * Returns the size of one direct buffer the telnet lines are queued in, bytes
+     * */
+    public int getTelnetBufferSize() {
+        return telnetBufferSize;
+    }
+
+    /**
+     * Returns the max bytes of telnet lines queued on one connection
+     * */
+    public long getTelnetMaxQueuedBytes() {
+        return telnetMaxQueuedBytes;
+    }
+
+    /**
+     * Returns the max time closing a session waits for the queued telnet lines, ms
+     * */
+    public int getTelnetCloseTimeout() {
+        return telnetCloseTimeout;
+    }
+
+    /**
+     * Returns the policy which chooses the contact point of a request
+     * */
+    public LoadBalancingPolicy getLoadBalancingPolicy() {
+        return loadBalancingPolicy;
+    }
+
+    /**
+     * Returns if the failing nodes are ejected
+     * */
+    public boolean isCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Returns the number of the last requests the failure rate of a node is counted over
+     * */
+    public int getCircuitBreakerWindow() {
+        return circuitBreakerWindow;
+    }
+
+    /**
+     * Returns the failure rate a node is ejected at
+     * */
+    public double getCircuitBreakerFailureRate() {
+        return circuitBreakerFailureRate;
+    }
+
+    /**
+     * Returns the time a request counts as slow after, ms; 0 when disabled
+     * */
+    public int getCircuitBreakerSlowCallTime() {
+        return circuitBreakerSlowCallTime;
+    }
+
+    /**
+     * Returns the time an ejected node waits for the version probe, ms
+     * */
+    public int getCircuitBreakerOpenTime() {
+        return circuitBreakerOpenTime;
+    }
+
+    /**
+     * Returns the time a recovered node is ramped up in, ms
+     * */
+    public int getCircuitBreakerRampUpTime() {
+        return circuitBreakerRampUpTime;
+    }
+
+    /**
+     * Returns the interval the healthy nodes are probed at, ms; 0 when disabled
+     * */
+    public int getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    /**
+     * Returns the policy of the retries
+     * */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Returns the number of connections opened to every node on start
+     * */
+    public int getWarmUpConnections() {
+        return warmUpConnections;
+    }
+
+    /**
+     * Returns the min number of idle connections to every node
+     * */
+    public int getMinIdleConnections() {
+        return minIdleConnections;
+    }
+
+    /**
+     * Returns the hedging policy of the queries, null when they are not hedged
+     * */
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * Returns the max life time of a http connection, ms
+     * */
+    public long getConnectionTimeToLive() {
+        return connectionTimeToLive;
+    }
+
+    /**
+     * Returns the max idle time of a http connection, ms
+     * */
+    public long getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    /**
+     * Returns the interval the expired and idle http connections are closed at, ms
+     * */
+    public long getConnectionEvictionInterval() {
+        return connectionEvictionInterval;
+    }
+
+    /**
+     * Returns the max estimated bytes of the cached query results
+     * */
+    public long getQueryCacheMaxBytes() {
+        return queryCacheMaxBytes;
+    }
+
+    /**
+     * Returns the time the recent query results are cached, ms
+     * */
+    public long getQueryCacheRecentTtl() {
+        return queryCacheRecentTtl;
+    }
+
+    /**
+     * Returns the time the historical query results are cached, ms
+     * */
+    public long getQueryCacheHistoricalTtl() {
+        return queryCacheHistoricalTtl;
+    }
+
+    /**
+     * Returns the age of the end of a query its results are historical after, ms
+     * */
+    public long getQueryCacheHistoricalAge() {
+        return queryCacheHistoricalAge;
     }
     
 }
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.exceptions;
+
+import net.opentsdb.driver.core.policies.BackpressurePolicy;
+
+/**
+ * Thrown when a request is rejected or dropped because too many requests or bytes are in flight,
+ * the policy tells which {@link BackpressurePolicy} fired.
+ */
+public class BackpressureException extends Exception {
+    private final BackpressurePolicy policy;
+    private final String errmsg;
+
+    public BackpressureException(BackpressurePolicy policy, String errmsg) {
+        super(errmsg);
+        this.policy = policy;
+        this.errmsg = errmsg;
+    }
+
+    public BackpressurePolicy getPolicy() {
+        return policy;
+    }
+
+    public String getErrmsg() {
+        return errmsg;
+    }
+
+    public String toString() {
+        return "backpressure policy : " + policy + ", errmsg : " + errmsg;
+    }
+}
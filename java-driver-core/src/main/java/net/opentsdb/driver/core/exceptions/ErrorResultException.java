@@ -15,17 +15,46 @@
 package net.opentsdb.driver.core.exceptions;
 
 import java.util.List;
-import net.opentsdb.driver.core.model.DataPoint;
+import net.opentsdb.driver.core.model.Errors;
+import net.opentsdb.driver.core.model.Point;
 
+/**
+ * Thrown when opentsdb fails some data points of a put, the list is the data points which are
+ * failed, or all the data points of the put when the failed ones are unknown.
+ */
 public class ErrorResultException extends Exception {
-    private List<DataPoint> list;
+    private List<? extends Point> list;
+    private List<Errors> errors;
     private String errmsg;
 
-    public ErrorResultException(String errmsg, List<DataPoint> list) {
+    public ErrorResultException(String errmsg, List<? extends Point> list) {
         this.errmsg = errmsg;
         this.list = list;
     }
 
+    public ErrorResultException(String errmsg, List<? extends Point> list, List<Errors> errors) {
+        this(errmsg, list);
+        this.errors = errors;
+    }
+
+    /**
+     * Returns the failed data points
+     */
+    public List<? extends Point> getDataPoints() {
+        return list;
+    }
+
+    /**
+     * Returns the errors of the failed data points, in the same order, null when unknown
+     */
+    public List<Errors> getErrors() {
+        return errors;
+    }
+
+    public String getErrmsg() {
+        return errmsg;
+    }
+
     public String toString() {
         return "error data points are : " + list + ", error message is : " + errmsg;
     }
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.http;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of fixed size byte array chunks which request bodies are serialized into and response
+ * bodies are read into, the chunks are given back by {@link PooledBytes#release()} after the
+ * request is done or the response is parsed, so a put allocates almost nothing once the pool is
+ * warm. At most maxChunks free chunks are kept, the chunks
+ * released beyond that are left to the garbage collector.
+ */
+public class BufferPool {
+    private final int chunkSize;
+    private final int maxChunks;
+    private final Queue<byte[]> chunks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger free = new AtomicInteger();
+
+    public BufferPool(int chunkSize, int maxChunks) {
+        this.chunkSize = chunkSize;
+        this.maxChunks = maxChunks;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Return the number of free chunks in the pool
+     */
+    public int getFreeChunks() {
+        return free.get();
+    }
+
+    /**
+     * Take a chunk from the pool, a new chunk is allocated when the pool is empty.
+     */
+    public byte[] acquire() {
+        byte[] chunk = chunks.poll();
+        if (chunk != null) {
+            free.decrementAndGet();
+            return chunk;
+        }
+        return new byte[chunkSize];
+    }
+
+    /**
+     * Give the chunk back to the pool.
+     */
+    public void release(byte[] chunk) {
+        if (chunk.length != chunkSize) {
+            return;
+        }
+        if (free.incrementAndGet() <= maxChunks) {
+            chunks.offer(chunk);
+        } else {
+            free.decrementAndGet();
+        }
+    }
+}
@@ -15,60 +15,143 @@
 package net.opentsdb.driver.core.http;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.net.ssl.SSLContext;
 import org.apache.http.ConnectionReuseStrategy;
 import org.apache.http.Consts;
+import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.auth.AuthSchemeProvider;
 import org.apache.http.client.config.AuthSchemes;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.config.ConnectionConfig;
 import org.apache.http.config.Lookup;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.ssl.SSLContexts;
 import org.apache.http.impl.auth.BasicSchemeFactory;
 import org.apache.http.impl.auth.DigestSchemeFactory;
 import org.apache.http.impl.auth.KerberosSchemeFactory;
 import org.apache.http.impl.auth.NTLMSchemeFactory;
 import org.apache.http.impl.auth.SPNegoSchemeFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
 import org.apache.http.impl.nio.client.HttpAsyncClients;
 import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
 import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
 import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
 import org.apache.http.nio.conn.NoopIOSessionStrategy;
 import org.apache.http.nio.conn.SchemeIOSessionStrategy;
 import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
 import org.apache.http.nio.reactor.ConnectingIOReactor;
 import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.protocol.HttpContext;
 import net.opentsdb.driver.core.conf.Configuration;
 
 public class HttpAsyncClient {
     private Configuration configuration;
 
-    private CloseableHttpAsyncClient realHttpClient;
+    private volatile CloseableHttpAsyncClient realHttpClient;
+
+    private volatile PoolingNHttpClientConnectionManager connectionManager;
+
+    private final BufferPool bufferPool;
+
+    private final ScheduledExecutorService evictor;
+
+    private ScheduledFuture<?> eviction;
 
     public HttpAsyncClient(Configuration configuration) {
+        this(configuration, null);
+    }
+
+    /**
+     * Constructs a client which reads the response bodies into chunks of the pool, see
+     * {@link PooledResponseConsumer}.
+     * 
+     * @param configuration the configuration
+     * @param bufferPool the pool of the response bodies, null to read them into one buffer
+     */
+    public HttpAsyncClient(Configuration configuration, BufferPool bufferPool) {
+        this(configuration, bufferPool, null);
+    }
+
+    /**
+     * Constructs a client which closes the expired connections and the connections idle longer
+     * than the maxIdleTime of the configuration every connectionEvictionInterval, so a request
+     * does not lease a connection a balancer dropped silently in between.
+     * 
+     * @param configuration the configuration
+     * @param bufferPool the pool of the response bodies, null to read them into one buffer
+     * @param evictor runs the eviction, null to check the connections only when they are leased
+     */
+    public HttpAsyncClient(Configuration configuration, BufferPool bufferPool,
+            ScheduledExecutorService evictor) {
         this.configuration = configuration;
+        this.bufferPool = bufferPool;
+        this.evictor = evictor;
     }
 
-    public HttpAsyncClient create() throws IOReactorException {
+    public synchronized HttpAsyncClient create() throws IOReactorException {
         if (configuration != null) {
             this.realHttpClient = createAsyncClient(configuration);
+            long interval = configuration.getConnectionEvictionInterval();
+            if (evictor != null && interval > 0 && eviction == null) {
+                eviction = evictor.scheduleWithFixedDelay(this::evictConnections, interval,
+                        interval, TimeUnit.MILLISECONDS);
+            }
             return this;
         }
         return null;
     }
 
+    /**
+     * Close the expired connections and the ones idle longer than maxIdleTime.
+     */
+    public void evictConnections() {
+        PoolingNHttpClientConnectionManager manager = connectionManager;
+        if (manager == null || !isRunning()) {
+            return;
+        }
+        manager.closeExpiredConnections();
+        if (configuration.getMaxIdleTime() > 0) {
+            manager.closeIdleConnections(configuration.getMaxIdleTime(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Create the io reactor and the connection pool when they are not, or were closed, and start
+     * them; a client shared by more {@link HttpClient}s is opened by each of them, only the first
+     * one creates it.
+     * 
+     * @return this client
+     */
+    public synchronized HttpAsyncClient open() throws IOReactorException {
+        if (realHttpClient == null) {
+            create();
+        }
+        start();
+        return this;
+    }
+
     private PoolingNHttpClientConnectionManager getTheConnectionManager(Configuration configuration)
             throws IOReactorException {
         SSLContext sslcontext = SSLContexts.createDefault();
@@ -81,8 +164,10 @@ public class HttpAsyncClient {
                 IOReactorConfig.custom().setIoThreadCount(configuration.getIoThreadCount()).build();
 
         ConnectingIOReactor ioReactor = new DefaultConnectingIOReactor(ioReactorConfig);
+        // a connection older than the time to live is closed on release or by the evictor
         PoolingNHttpClientConnectionManager pconMgr = new PoolingNHttpClientConnectionManager(
-                ioReactor, null, sessionStrategyRegistry, null);
+                ioReactor, null, sessionStrategyRegistry, null, null,
+                configuration.getConnectionTimeToLive(), TimeUnit.MILLISECONDS);
         return pconMgr;
     }
 
@@ -94,11 +179,11 @@ public class HttpAsyncClient {
         if (configuration.getPoolSize() > 0) {
             pconMgr.setMaxTotal(configuration.getPoolSize());
             pconMgr.setDefaultMaxPerRoute(configuration.getMaxRoute());
-            pconMgr.closeExpiredConnections();
         }
 
         HttpAsyncClientBuilder httpAsyncClientBuilder = HttpAsyncClients.custom();
         httpAsyncClientBuilder.setConnectionManager(pconMgr);
+        this.connectionManager = pconMgr;
 
         RequestConfig requestConfig = RequestConfig.custom()
                 .setConnectTimeout(configuration.getHttpConnectionTimeout())
@@ -121,7 +206,13 @@ public class HttpAsyncClient {
         return client;
     }
 
+    /**
+     * Keeps a connection for the configured time, or shorter when the Keep-Alive header of the
+     * response says the server closes it before; the connection is given up a little before the
+     * server timeout, so a request is not sent on a socket the server is closing.
+     */
     class TsdbkeepAliveStrategy implements ConnectionKeepAliveStrategy {
+        private static final long SERVER_TIMEOUT_MARGIN = 1000;
 
         private long time;
 
@@ -132,7 +223,15 @@ public class HttpAsyncClient {
 
         @Override
         public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
-            return time;
+            long timeout = DefaultConnectionKeepAliveStrategy.INSTANCE
+                    .getKeepAliveDuration(response, context);
+            if (timeout <= 0) {
+                return time;
+            }
+            // the timeout of the header is in seconds, at least 1
+            timeout = timeout > SERVER_TIMEOUT_MARGIN ? timeout - SERVER_TIMEOUT_MARGIN
+                    : timeout / 2;
+            return Math.min(timeout, time);
         }
 
     }
@@ -151,25 +250,189 @@ public class HttpAsyncClient {
 
     public HttpResponse execute(HttpRequestBase requestJson, FutureCallback<HttpResponse> callback)
             throws InterruptedException, ExecutionException {
-        Future<HttpResponse> future = realHttpClient.execute(requestJson, null);
+        Future<HttpResponse> future = executeAsync(requestJson, callback);
         return future.get();
     }
 
+    /**
+     * Execute the request without waiting for the response, the callback is called from the io
+     * reactor thread when the response is received or the request fails.
+     * 
+     * @param request the http request
+     * @param callback the callback of the response, may be null
+     * @return the future of the response
+     */
+    public Future<HttpResponse> executeAsync(HttpRequestBase request,
+            FutureCallback<HttpResponse> callback) {
+        if (bufferPool == null) {
+            return realHttpClient.execute(request, callback);
+        }
+        return realHttpClient.execute(HttpAsyncMethods.create(request),
+                new PooledResponseConsumer(bufferPool), callback);
+    }
+
+    /**
+     * Execute the request and hand the response over as soon as its head is received, its body
+     * is read while it arrives through a buffer of bufferSize bytes, see
+     * {@link StreamedResponseConsumer}; cancelling the future or closing the stream of the entity
+     * before its end aborts the request.
+     * 
+     * @param request the http request
+     * @param bufferSize the max bytes of the body read ahead of the reader
+     * @return the future of the response, completed from the io reactor thread
+     */
+    public CompletableFuture<HttpResponse> executeStreamed(HttpRequestBase request,
+            int bufferSize) {
+        StreamedResponseConsumer consumer = new StreamedResponseConsumer(bufferSize);
+        Future<HttpResponse> exchange = realHttpClient.execute(HttpAsyncMethods.create(request),
+                consumer, new FutureCallback<HttpResponse>() {
+                    @Override
+                    public void completed(HttpResponse response) {
+                    }
+
+                    @Override
+                    public void failed(Exception ex) {
+                        consumer.fail(ex);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        consumer.fail(new InterruptedIOException("the request is cancelled"));
+                    }
+                });
+        consumer.setExchange(exchange);
+        CompletableFuture<HttpResponse> head = consumer.getHead();
+        head.whenComplete((response, e) -> {
+            if (head.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return head;
+    }
+
+    /**
+     * Lease count connections of the route to the target at once and put them back idle into the
+     * pool, so the next requests find them connected; the idle connections of the pool are leased
+     * first, only the missing ones are opened. The client must be started.
+     * <p/>
+     * The pool hands a new connection to the callback before it counts it as leased, a release
+     * from the callback is lost, so the connections are put back from the executor.
+     * 
+     * @param target the host the requests are sent to
+     * @param count the number of connections
+     * @param executor runs the release of the connections, it must not block
+     * @return the future of the number of connections which are idle in the pool after it
+     */
+    public CompletableFuture<Integer> openConnections(HttpHost target, int count,
+            Executor executor) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        if (count <= 0) {
+            result.complete(0);
+            return result;
+        }
+        HttpRoute route = toRoute(target);
+        AtomicInteger opened = new AtomicInteger();
+        AtomicInteger remaining = new AtomicInteger(count);
+        Runnable done = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                result.complete(opened.get());
+            }
+        };
+        int timeout = configuration.getHttpConnectionTimeout();
+        for (int i = 0; i < count; i++) {
+            connectionManager.requestConnection(route, null, timeout, timeout,
+                    TimeUnit.MILLISECONDS, new FutureCallback<NHttpClientConnection>() {
+
+                        @Override
+                        public void completed(NHttpClientConnection connection) {
+                            executor.execute(() -> {
+                                if (release(route, connection)) {
+                                    opened.incrementAndGet();
+                                }
+                                done.run();
+                            });
+                        }
+
+                        @Override
+                        public void failed(Exception ex) {
+                            done.run();
+                        }
+
+                        @Override
+                        public void cancelled() {
+                            done.run();
+                        }
+                    });
+        }
+        return result;
+    }
+
+    private boolean release(HttpRoute route, NHttpClientConnection connection) {
+        boolean open = connection.isOpen();
+        try {
+            // start the tls session now as well, the requests only complete the route once
+            if (open && !connectionManager.isRouteComplete(connection)) {
+                HttpClientContext context = HttpClientContext.create();
+                connectionManager.startRoute(connection, route, context);
+                connectionManager.routeComplete(connection, route, context);
+            }
+        } catch (IOException e) {
+            open = false;
+            try {
+                connection.shutdown();
+            } catch (IOException ignore) {
+                // closed anyway
+            }
+        }
+        long keepalive = configuration.getHttpKeepaliveTimeout() > 0
+                ? configuration.getHttpKeepaliveTimeout() : 0;
+        // a closed connection is dropped by the pool, an open one stays idle till it is leased or
+        // the keepalive timeout
+        connectionManager.releaseConnection(connection, null, keepalive, TimeUnit.MILLISECONDS);
+        return open;
+    }
+
+    /**
+     * Returns the connection numbers of the route to the target in the pool.
+     * 
+     * @param target the host the requests are sent to
+     */
+    public PoolStats getRouteStats(HttpHost target) {
+        return connectionManager.getStats(toRoute(target));
+    }
+
+    private static HttpRoute toRoute(HttpHost target) {
+        // the same route the requests of the client get, see DefaultRoutePlanner
+        return new HttpRoute(target, null, "https".equalsIgnoreCase(target.getSchemeName()));
+    }
+
     public void start() {
-        if (realHttpClient != null && !realHttpClient.isRunning()) {
-            this.realHttpClient.start();
+        CloseableHttpAsyncClient client = realHttpClient;
+        if (client != null && !client.isRunning()) {
+            client.start();
         }
     }
 
-    public void close() throws IOException {
-        if (realHttpClient != null) {
-            this.realHttpClient.close();
+    /**
+     * Close the io reactor and the connections, the client can be opened again by
+     * {@link #open()}.
+     */
+    public synchronized void close() throws IOException {
+        if (eviction != null) {
+            eviction.cancel(false);
+            eviction = null;
+        }
+        CloseableHttpAsyncClient client = realHttpClient;
+        if (client != null) {
+            realHttpClient = null;
+            client.close();
         }
     }
 
     public boolean isRunning() {
-        if (realHttpClient != null) {
-            return realHttpClient.isRunning();
+        CloseableHttpAsyncClient client = realHttpClient;
+        if (client != null) {
+            return client.isRunning();
         } else {
             return false;
         }
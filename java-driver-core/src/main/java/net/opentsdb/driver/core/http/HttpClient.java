@@ -18,15 +18,26 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import net.opentsdb.driver.core.TConstants;
@@ -34,11 +45,17 @@ import net.opentsdb.driver.core.conf.Configuration;
 
 public class HttpClient {
     private static final Logger LOG = LoggerFactory.getLogger(HttpClient.class);
+    private static final int MAX_CACHED_URIS = 64;
 
     private HttpAsyncClient realAsyncClient;
     private Configuration configuration;
     private String host;
     private int port;
+    /** the async client is shared with other http clients, it is closed by its owner */
+    private boolean shared;
+    /** set by {@link #close()}, the requests sent after it fail */
+    private volatile boolean closed;
+    private final ConcurrentMap<UriKey, URI> uris = new ConcurrentHashMap<>();
 
     /**
      * Constructs a new HttpClient instance, the basic Constructi=or
@@ -52,6 +69,7 @@ public class HttpClient {
 
     public HttpClient(Builder builder) {
         this(builder.realAsyncClient, builder.configuration, builder.host, builder.port);
+        this.shared = builder.shared;
     }
 
     /**
@@ -62,6 +80,8 @@ public class HttpClient {
         private int port;
         private Configuration configuration;
         private HttpAsyncClient realAsyncClient;
+        private BufferPool bufferPool;
+        private boolean shared;
 
         public Builder setHost(String host) {
             this.host = host;
@@ -78,12 +98,36 @@ public class HttpClient {
             return this;
         }
 
+        /**
+         * read the response bodies into chunks of the pool, see {@link HttpAsyncClient}
+         */
+        public Builder setBufferPool(BufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+            return this;
+        }
+
         public Builder client() throws IOReactorException {
-            this.realAsyncClient = new HttpAsyncClient(configuration).create();
+            this.realAsyncClient = new HttpAsyncClient(configuration, bufferPool).create();
+            this.shared = false;
+            return this;
+        }
+
+        /**
+         * Send the requests through the io reactor and connection pool of the given client, it is
+         * shared with other http clients, so {@link HttpClient#close()} leaves it open.
+         * 
+         * @param client the shared client, opened by {@link #build()} if it is not
+         */
+        public Builder client(HttpAsyncClient client) {
+            this.realAsyncClient = client;
+            this.shared = true;
             return this;
         }
 
-        public HttpClient build() {
+        public HttpClient build() throws IOReactorException {
+            if (shared) {
+                realAsyncClient.open();
+            }
             return new HttpClient(this);
         }
     }
@@ -91,35 +135,114 @@ public class HttpClient {
     /**
      * send http request to server and get the result ;
      */
-    private HttpResponse modifyRequestHttp(HttpMethod httpMethod, String requestJson,
+    private HttpResponse modifyRequestHttp(HttpMethod httpMethod, HttpEntity entity,
             Map<String, String> params, HttpApiEndpoint api) throws InterruptedException,
-            ExecutionException, URISyntaxException, UnsupportedEncodingException {
+            ExecutionException, URISyntaxException {
+        if (closed) {
+            throw closedException();
+        }
+        HttpRequestBase request = createRequest(httpMethod, entity, params, api);
+        HttpResponse httpResponse = realAsyncClient.execute(request, null);
+        return httpResponse;
+    }
+
+    /**
+     * send http request to server without waiting, the returned future is completed from the io
+     * reactor thread, cancelling it aborts the http request;
+     */
+    private CompletableFuture<HttpResponse> modifyRequestHttpAsync(HttpMethod httpMethod,
+            HttpEntity entity, Map<String, String> params, HttpApiEndpoint api) {
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        if (closed) {
+            result.completeExceptionally(closedException());
+            return result;
+        }
+        HttpRequestBase request;
+        try {
+            request = createRequest(httpMethod, entity, params, api);
+        } catch (URISyntaxException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        Future<HttpResponse> future =
+                realAsyncClient.executeAsync(request, new FutureCallback<HttpResponse>() {
+                    @Override
+                    public void completed(HttpResponse response) {
+                        result.complete(response);
+                    }
+
+                    @Override
+                    public void failed(Exception ex) {
+                        result.completeExceptionally(ex);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        result.cancel(false);
+                    }
+                });
+        result.whenComplete((response, e) -> {
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * send http request to server, the returned future is completed with the head of the
+     * response and its entity is read while the body arrives, see
+     * {@link HttpAsyncClient#executeStreamed(HttpRequestBase, int)}
+     */
+    private CompletableFuture<HttpResponse> modifyRequestHttpStreamed(HttpMethod httpMethod,
+            HttpEntity entity, Map<String, String> params, HttpApiEndpoint api) {
+        if (closed) {
+            CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+            result.completeExceptionally(closedException());
+            return result;
+        }
+        try {
+            return realAsyncClient.executeStreamed(createRequest(httpMethod, entity, params, api),
+                    TConstants.STREAM_BUFFER_SIZE);
+        } catch (URISyntaxException e) {
+            CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
+        }
+    }
+
+    private IllegalStateException closedException() {
+        return new IllegalStateException(
+                "The http client of " + host + ":" + port + " has been closed.");
+    }
+
+    private HttpRequestBase createRequest(HttpMethod httpMethod, HttpEntity entity,
+            Map<String, String> params, HttpApiEndpoint api) throws URISyntaxException {
         HttpRequestBase request = null;
-        HttpClientUrI uri = new HttpClientUrI.Builder().setHost(host).setPort(port).setApi(api)
-                .setEnableSSL(configuration.isSSL()).build();
 
         switch (httpMethod) {
             case GET:
-                request = new HttpGet(uri.getRightUrI());
+                request = new HttpGet(getURI(api, null));
                 break;
 
             case POST:
-                URI localUri = uri.createURI(params);
+                URI localUri = getURI(api, params);
                 HttpEntityEnclosingRequestBase innerRequest = null;
                 innerRequest = new HttpPost(localUri);
-                if (requestJson != null && requestJson.length() > 0) {
+                if (entity != null) {
                     innerRequest.addHeader("Content-Type", "application/json");
-                    innerRequest.setEntity(generateStringEntity(requestJson));
+                    innerRequest.setEntity(entity);
                 }
                 request = innerRequest;
                 break;
 
             case DELETE:
                 HttpEntityEnclosingRequestBase tmpRequest = null;
-                tmpRequest = new HttpPost(uri.getRightUrI());
-                if (requestJson != null && requestJson.length() > 0) {
+                tmpRequest = new HttpPost(getURI(api, null));
+                if (entity != null) {
                     tmpRequest.addHeader("Content-Type", "application/json");
-                    tmpRequest.setEntity(generateStringEntity(requestJson));
+                    tmpRequest.setEntity(entity);
                 }
                 request = tmpRequest;
                 break;
@@ -128,13 +251,62 @@ public class HttpClient {
                 LOG.error("Http request format error, input error http method.");
                 break;
         }
+        return request;
+    }
 
-        HttpResponse httpResponse = realAsyncClient.execute(request, null);
-        return httpResponse;
+    /**
+     * Return the uri of the endpoint with the params; host and port never change for a client, so
+     * the uri of every endpoint and params is built once and reused by the later requests.
+     * 
+     * @param api the http endpoint
+     * @param params the query params of the request, may be null
+     * @return the uri
+     */
+    public URI getURI(HttpApiEndpoint api, Map<String, String> params) throws URISyntaxException {
+        UriKey key = new UriKey(api, params);
+        URI uri = uris.get(key);
+        if (uri == null) {
+            uri = new HttpClientUrI.Builder().setHost(host).setPort(port).setApi(api)
+                    .setEnableSSL(configuration.isSSL()).build().createURI(params);
+            // the params are given by the callers, do not let odd ones grow the cache for ever
+            if (uri != null && uris.size() < MAX_CACHED_URIS) {
+                uris.putIfAbsent(new UriKey(api,
+                        key.params.isEmpty() ? key.params : new HashMap<>(key.params)), uri);
+            }
+        }
+        return uri;
     }
 
+    private static final class UriKey {
+        private final HttpApiEndpoint api;
+        private final Map<String, String> params;
+        private final int hash;
+
+        UriKey(HttpApiEndpoint api, Map<String, String> params) {
+            this.api = api;
+            this.params = params != null ? params : Collections.<String, String>emptyMap();
+            this.hash = api.hashCode() * 31 + this.params.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof UriKey)) {
+                return false;
+            }
+            UriKey other = (UriKey) o;
+            return api == other.api && params.equals(other.params);
+        }
+    }
 
     private StringEntity generateStringEntity(String json) throws UnsupportedEncodingException {
+        if (json == null || json.length() == 0) {
+            return null;
+        }
         StringEntity stringEntity = new StringEntity(json);
         return stringEntity;
     }
@@ -152,24 +324,89 @@ public class HttpClient {
     public HttpResponse postDetailed(String jsonRequest, Map<String, String> map,
             HttpApiEndpoint api) throws InterruptedException, ExecutionException,
             URISyntaxException, UnsupportedEncodingException {
-        return modifyRequestHttp(HttpMethod.POST, jsonRequest, map, api);
+        return modifyRequestHttp(HttpMethod.POST, generateStringEntity(jsonRequest), map, api);
     }
 
     public HttpResponse get(String jsonRequest, HttpApiEndpoint api) throws InterruptedException,
             ExecutionException, URISyntaxException, UnsupportedEncodingException {
-        return modifyRequestHttp(HttpMethod.GET, jsonRequest, null, api);
+        return modifyRequestHttp(HttpMethod.GET, generateStringEntity(jsonRequest), null, api);
     }
 
     public HttpResponse delete(String jsonRequest, HttpApiEndpoint api) throws InterruptedException,
             ExecutionException, URISyntaxException, UnsupportedEncodingException {
-        return modifyRequestHttp(HttpMethod.DELETE, jsonRequest, null, api);
+        return modifyRequestHttp(HttpMethod.DELETE, generateStringEntity(jsonRequest), null, api);
     }
-    
+
     /**
-     * the http client is start
+     * post the request body held in the pooled buffer, see {@link PooledBytes}
+     */
+    public HttpResponse postDetailed(PooledBytes body, Map<String, String> map,
+            HttpApiEndpoint api) throws InterruptedException, ExecutionException,
+            URISyntaxException {
+        return modifyRequestHttp(HttpMethod.POST, toEntity(body), map, api);
+    }
+
+    public HttpResponse delete(PooledBytes body, HttpApiEndpoint api)
+            throws InterruptedException, ExecutionException, URISyntaxException {
+        return modifyRequestHttp(HttpMethod.DELETE, toEntity(body), null, api);
+    }
+
+    public CompletableFuture<HttpResponse> versionAsync(HttpApiEndpoint api) {
+        return modifyRequestHttpAsync(HttpMethod.POST, null, null, api);
+    }
+
+    public CompletableFuture<HttpResponse> postDetailedAsync(PooledBytes body,
+            Map<String, String> map, HttpApiEndpoint api) {
+        return modifyRequestHttpAsync(HttpMethod.POST, toEntity(body), map, api);
+    }
+
+    /**
+     * post the request body held in the pooled buffer, the future is completed as soon as the
+     * head of the response is received and the content of its entity is read while the body
+     * arrives; the content must be closed, closing it before its end aborts the request
+     */
+    public CompletableFuture<HttpResponse> postStreamed(PooledBytes body,
+            Map<String, String> map, HttpApiEndpoint api) {
+        return modifyRequestHttpStreamed(HttpMethod.POST, toEntity(body), map, api);
+    }
+
+    public CompletableFuture<HttpResponse> deleteAsync(PooledBytes body, HttpApiEndpoint api) {
+        return modifyRequestHttpAsync(HttpMethod.DELETE, toEntity(body), null, api);
+    }
+
+    private HttpEntity toEntity(PooledBytes body) {
+        return body != null ? body.toEntity() : null;
+    }
+
+    /**
+     * Open up to connections idle connections to the host before the requests need them, the
+     * route of the host has at most maxRoute connections.
+     * 
+     * @param connections the number of idle connections wanted
+     * @param executor runs the release of the opened connections into the pool
+     * @return the future of the number of idle connections
+     */
+    public CompletableFuture<Integer> openConnections(int connections, Executor executor) {
+        return realAsyncClient.openConnections(target(),
+                Math.min(connections, configuration.getMaxRoute()), executor);
+    }
+
+    /**
+     * Returns the numbers of the leased, pending and idle connections to the host
+     */
+    public PoolStats getConnectionStats() {
+        return realAsyncClient.getRouteStats(target());
+    }
+
+    private HttpHost target() {
+        return new HttpHost(host, port, configuration.isSSL() ? "https" : "http");
+    }
+
+    /**
+     * the http client is start and not closed
      * */
     public boolean isRunning() {
-        if (realAsyncClient != null) {
+        if (!closed && realAsyncClient != null) {
             return realAsyncClient.isRunning();
         } else {
             return false;
@@ -182,8 +419,13 @@ public class HttpClient {
         }
     }
 
+    /**
+     * close the async client, a shared one is left to its owner; the requests sent after this
+     * fail with an IllegalStateException, which is not retried
+     */
     public void close() throws IOException {
-        if (realAsyncClient != null && isRunning()) {
+        closed = true;
+        if (realAsyncClient != null && !shared && realAsyncClient.isRunning()) {
             this.realAsyncClient.close();
         }
     }
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import org.apache.http.HttpEntity;
+
+/**
+ * The serialized body of a request held in chunks of a {@link BufferPool}. It stays valid while
+ * the request is retried, every try sends it through a new {@link #toEntity()}, and the chunks
+ * must be given back by {@link #release()} once the request is done. A try which may still be
+ * sent after the request is done, like a cancelled hedge, keeps them by {@link #retain()}.
+ */
+public class PooledBytes {
+    /** The Content-Encoding of the gzipped bodies */
+    public static final String GZIP_ENCODING = "gzip";
+
+    private final BufferPool pool;
+    private List<byte[]> chunks;
+    private final long length;
+    private String contentEncoding;
+    private int references = 1;
+
+    PooledBytes(BufferPool pool, List<byte[]> chunks, long length) {
+        this.pool = pool;
+        this.chunks = chunks;
+        this.length = length;
+    }
+
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Return the Content-Encoding of the bytes, null when they are not encoded
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    int chunkCount() {
+        return chunks.size();
+    }
+
+    byte[] chunk(int index) {
+        return chunks.get(index);
+    }
+
+    int chunkLength(int index) {
+        if (index < chunks.size() - 1) {
+            return chunks.get(index).length;
+        }
+        return (int) (length - (long) index * pool.getChunkSize());
+    }
+
+    /**
+     * Create a new http entity of these bytes for one try of the request.
+     */
+    public HttpEntity toEntity() {
+        return new PooledBytesEntity(this);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        for (int i = 0; i < chunks.size(); i++) {
+            out.write(chunks.get(i), 0, chunkLength(i));
+        }
+    }
+
+    public InputStream getInputStream() {
+        return new InputStream() {
+            private int index = 0;
+            private int pos = 0;
+
+            @Override
+            public int read() {
+                if (!next()) {
+                    return -1;
+                }
+                return chunks.get(index)[pos++] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!next()) {
+                    return -1;
+                }
+                int n = Math.min(len, chunkLength(index) - pos);
+                System.arraycopy(chunks.get(index), pos, b, off, n);
+                pos += n;
+                return n;
+            }
+
+            private boolean next() {
+                while (index < chunks.size() && pos >= chunkLength(index)) {
+                    index++;
+                    pos = 0;
+                }
+                return index < chunks.size();
+            }
+        };
+    }
+
+    /**
+     * Keep the chunks for one more user, who gives them back by its own {@link #release()}.
+     * 
+     * @return this bytes
+     * @throws IllegalStateException when the chunks are given back already
+     */
+    public synchronized PooledBytes retain() {
+        if (chunks == null) {
+            throw new IllegalStateException("the bytes are released");
+        }
+        references++;
+        return this;
+    }
+
+    /**
+     * Give the chunks back to the pool when the last user released them, the bytes must not be
+     * used after.
+     */
+    public synchronized void release() {
+        if (chunks != null && --references == 0) {
+            for (byte[] chunk : chunks) {
+                pool.release(chunk);
+            }
+            chunks = null;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+
+/**
+ * The http entity of one try of a request whose body is a {@link PooledBytes}. It is also the
+ * {@link HttpAsyncContentProducer} of the request, so the io reactor writes the pooled chunks to
+ * the socket directly instead of copying them through an input stream.
+ */
+class PooledBytesEntity extends AbstractHttpEntity implements HttpAsyncContentProducer {
+    private final PooledBytes bytes;
+    private int index = 0;
+    private ByteBuffer buffer;
+
+    PooledBytesEntity(PooledBytes bytes) {
+        this.bytes = bytes;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+        if (bytes.getContentEncoding() != null) {
+            setContentEncoding(bytes.getContentEncoding());
+        }
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return bytes.length();
+    }
+
+    @Override
+    public InputStream getContent() {
+        return bytes.getInputStream();
+    }
+
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException {
+        bytes.writeTo(outstream);
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException {
+        while (true) {
+            if (buffer == null) {
+                if (index >= bytes.chunkCount()) {
+                    encoder.complete();
+                    return;
+                }
+                buffer = ByteBuffer.wrap(bytes.chunk(index), 0, bytes.chunkLength(index));
+                index++;
+            }
+            encoder.write(buffer);
+            if (buffer.hasRemaining()) {
+                return;
+            }
+            buffer = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        index = 0;
+        buffer = null;
+    }
+}
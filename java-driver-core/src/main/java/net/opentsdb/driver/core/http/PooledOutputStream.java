@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An output stream which writes into chunks taken from a {@link BufferPool}, so a large request
+ * body never needs one contiguous array or a copy when it grows; {@link #toPooledBytes()} hands
+ * the written chunks over to a {@link PooledBytes}.
+ * <p/>
+ * With a compress threshold the stream gzips the body once compressThreshold bytes are written:
+ * the bytes written so far are compressed into new chunks and the rest is compressed as it is
+ * written, so the plain body is never held in full. Smaller bodies are kept plain.
+ */
+public class PooledOutputStream extends OutputStream {
+    private static final int GZIP_BUFFER_SIZE = 8 * 1024;
+
+    private final BufferPool pool;
+    private final long compressThreshold;
+    private final int compressLevel;
+    private List<byte[]> chunks = new ArrayList<>();
+    private byte[] current;
+    private int pos;
+    private long length;
+
+    private PooledOutputStream compressed;
+    private GZIPOutputStream gzip;
+
+    public PooledOutputStream(BufferPool pool) {
+        this(pool, -1, 0);
+    }
+
+    /**
+     * Constructs a stream which gzips the body when it is not smaller than compressThreshold.
+     *
+     * @param pool the pool to take the chunks from
+     * @param compressThreshold the min body bytes to compress, negative to never compress
+     * @param compressLevel the gzip level from 1 to 9
+     */
+    public PooledOutputStream(BufferPool pool, long compressThreshold, int compressLevel) {
+        this.pool = pool;
+        this.compressThreshold = compressThreshold;
+        this.compressLevel = compressLevel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (gzip != null) {
+            gzip.write(b);
+            length++;
+            return;
+        }
+        if (current == null || pos == current.length) {
+            nextChunk();
+        }
+        current[pos++] = (byte) b;
+        length++;
+        checkCompress();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (gzip != null) {
+            gzip.write(b, off, len);
+            length += len;
+            return;
+        }
+        writePlain(b, off, len);
+        checkCompress();
+    }
+
+    private void writePlain(byte[] b, int off, int len) {
+        while (len > 0) {
+            if (current == null || pos == current.length) {
+                nextChunk();
+            }
+            int n = Math.min(len, current.length - pos);
+            System.arraycopy(b, off, current, pos, n);
+            pos += n;
+            off += n;
+            len -= n;
+            length += n;
+        }
+    }
+
+    /**
+     * Return the number of bytes written, before compression
+     */
+    public long size() {
+        return length;
+    }
+
+    /**
+     * Return the body is being gzipped or not
+     */
+    public boolean isCompressed() {
+        return gzip != null;
+    }
+
+    /**
+     * Hand the written chunks over to a {@link PooledBytes}, this stream must not be used after.
+     */
+    public PooledBytes toPooledBytes() throws IOException {
+        if (gzip != null) {
+            gzip.finish();
+            PooledBytes bytes = compressed.toPooledBytes();
+            bytes.setContentEncoding(PooledBytes.GZIP_ENCODING);
+            return bytes;
+        }
+        PooledBytes bytes = new PooledBytes(pool, chunks, length);
+        chunks = null;
+        current = null;
+        return bytes;
+    }
+
+    /**
+     * Give the written chunks back to the pool, used when the serialization fails.
+     */
+    public void release() {
+        if (compressed != null) {
+            compressed.release();
+        }
+        if (chunks != null) {
+            new PooledBytes(pool, chunks, length).release();
+            chunks = null;
+            current = null;
+        }
+    }
+
+    private void checkCompress() throws IOException {
+        if (compressThreshold < 0 || length < compressThreshold) {
+            return;
+        }
+        compressed = new PooledOutputStream(pool);
+        gzip = new GZIPOutputStream(compressed, GZIP_BUFFER_SIZE) {
+            {
+                def.setLevel(compressLevel);
+            }
+        };
+        PooledBytes plain = new PooledBytes(pool, chunks, length);
+        chunks = null;
+        current = null;
+        try {
+            plain.writeTo(gzip);
+        } finally {
+            plain.release();
+        }
+    }
+
+    private void nextChunk() {
+        current = pool.acquire();
+        chunks.add(current);
+        pos = 0;
+    }
+}
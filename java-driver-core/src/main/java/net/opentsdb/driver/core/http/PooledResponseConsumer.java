@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Reads the body of a response into chunks of a {@link BufferPool} as it arrives instead of one
+ * growing buffer, the response gets an entity which reads the chunks as a stream and gives them
+ * back to the pool when the stream is closed, so a parser can decode a large answer without a
+ * copy of it in one array or string. An entity which is never read leaves its chunks to the
+ * garbage collector.
+ */
+class PooledResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+    private final BufferPool pool;
+    private HttpResponse response;
+    private ContentType contentType;
+    private Header contentEncoding;
+    private List<byte[]> chunks;
+    private byte[] chunk;
+    private int position;
+    private long length;
+
+    PooledResponseConsumer(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse response) {
+        this.response = response;
+    }
+
+    @Override
+    protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+        this.contentType = contentType;
+        this.contentEncoding = entity.getContentEncoding();
+        this.chunks = new ArrayList<>();
+    }
+
+    @Override
+    protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl)
+            throws IOException {
+        for (;;) {
+            // only the last chunk is not full, a new one is taken when the current one is full
+            if (chunk == null || position == chunk.length) {
+                chunk = pool.acquire();
+                chunks.add(chunk);
+                position = 0;
+            }
+            int read = decoder.read(ByteBuffer.wrap(chunk, position, chunk.length - position));
+            if (read <= 0) {
+                return;
+            }
+            position += read;
+            length += read;
+        }
+    }
+
+    @Override
+    protected HttpResponse buildResult(HttpContext context) {
+        if (chunks != null) {
+            PooledResponseEntity entity =
+                    new PooledResponseEntity(new PooledBytes(pool, chunks, length));
+            if (contentType != null) {
+                entity.setContentType(contentType.toString());
+            }
+            entity.setContentEncoding(contentEncoding);
+            response.setEntity(entity);
+            // the entity owns the chunks now
+            chunks = null;
+        }
+        return response;
+    }
+
+    @Override
+    protected void releaseResources() {
+        if (chunks != null) {
+            for (byte[] c : chunks) {
+                pool.release(c);
+            }
+            chunks = null;
+        }
+        chunk = null;
+        response = null;
+    }
+
+    /**
+     * The pooled body of a response, it can be read once.
+     */
+    static final class PooledResponseEntity extends AbstractHttpEntity {
+        private final PooledBytes bytes;
+        private boolean consumed;
+
+        PooledResponseEntity(PooledBytes bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return bytes.length();
+        }
+
+        @Override
+        public InputStream getContent() {
+            consume();
+            return new FilterInputStream(bytes.getInputStream()) {
+                @Override
+                public void close() {
+                    bytes.release();
+                }
+            };
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            consume();
+            try {
+                bytes.writeTo(out);
+            } finally {
+                bytes.release();
+            }
+        }
+
+        private synchronized void consume() {
+            if (consumed) {
+                throw new IllegalStateException("the content is consumed already");
+            }
+            consumed = true;
+        }
+
+        /**
+         * the content is streamed from the chunks, consuming the entity closes the stream which
+         * gives them back to the pool
+         */
+        @Override
+        public boolean isStreaming() {
+            return !consumed;
+        }
+    }
+}
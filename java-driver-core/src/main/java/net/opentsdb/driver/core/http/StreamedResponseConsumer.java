@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SharedInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Hands the response over as soon as its head is received, the body is read from a bounded
+ * buffer while it arrives: the io reactor stops reading the connection when the buffer is full
+ * and goes on when the reader drained it, so a response of any size holds no more than the
+ * buffer. A reader which leaves the buffer full for longer than the socket timeout fails the
+ * response.
+ * <p/>
+ * Closing the stream of the entity before its end aborts the request, the connection is closed
+ * rather than drained.
+ */
+class StreamedResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+    private final SharedInputBuffer buffer;
+    private final CompletableFuture<HttpResponse> head = new CompletableFuture<>();
+    private volatile Future<HttpResponse> exchange;
+    private volatile Exception failure;
+    private volatile boolean completed;
+    private volatile boolean aborted;
+    private HttpResponse response;
+
+    StreamedResponseConsumer(int bufferSize) {
+        this.buffer = new SharedInputBuffer(bufferSize, HeapByteBufferAllocator.INSTANCE);
+    }
+
+    /**
+     * Returns the future of the response, completed with its head; the entity is read while the
+     * body arrives.
+     */
+    CompletableFuture<HttpResponse> getHead() {
+        return head;
+    }
+
+    /**
+     * Sets the future of the request, which is cancelled to abort it.
+     */
+    void setExchange(Future<HttpResponse> exchange) {
+        this.exchange = exchange;
+        if (aborted) {
+            exchange.cancel(true);
+        }
+    }
+
+    /**
+     * Fails the response, when the request failed before the consumer got to know it.
+     */
+    void fail(Exception e) {
+        if (failure == null) {
+            failure = e;
+        }
+        buffer.shutdown();
+        head.completeExceptionally(e);
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse response) {
+        this.response = response;
+    }
+
+    @Override
+    protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+        StreamedEntity streamed = new StreamedEntity(entity.getContentLength());
+        if (contentType != null) {
+            streamed.setContentType(contentType.toString());
+        }
+        streamed.setContentEncoding(entity.getContentEncoding());
+        response.setEntity(streamed);
+        head.complete(response);
+    }
+
+    @Override
+    protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl)
+            throws IOException {
+        if (aborted) {
+            throw new InterruptedIOException("the response stream is closed");
+        }
+        buffer.consumeContent(decoder, ioctrl);
+    }
+
+    @Override
+    protected HttpResponse buildResult(HttpContext context) {
+        completed = true;
+        // a response without a body
+        head.complete(response);
+        return response;
+    }
+
+    @Override
+    protected void releaseResources() {
+        if (!completed) {
+            Exception e = getException();
+            fail(e != null ? e : new InterruptedIOException("the request is cancelled"));
+        }
+        response = null;
+    }
+
+    /**
+     * The body of the response as it arrives, it can be read once.
+     */
+    private final class StreamedEntity extends AbstractHttpEntity {
+        private final long length;
+        private boolean consumed;
+
+        StreamedEntity(long length) {
+            this.length = length;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return length;
+        }
+
+        @Override
+        public synchronized InputStream getContent() {
+            if (consumed) {
+                throw new IllegalStateException("the content is consumed already");
+            }
+            consumed = true;
+            return new StreamedContent();
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            try (InputStream in = getContent()) {
+                byte[] b = new byte[4096];
+                for (int n = in.read(b); n != -1; n = in.read(b)) {
+                    out.write(b, 0, n);
+                }
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return !consumed;
+        }
+    }
+
+    private final class StreamedContent extends InputStream {
+        private boolean ended;
+        private boolean closed;
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return check(buffer.read());
+            } catch (InterruptedIOException e) {
+                throw failure(e);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return check(buffer.read(b, off, len));
+            } catch (InterruptedIOException e) {
+                throw failure(e);
+            }
+        }
+
+        @Override
+        public int available() {
+            return buffer.available();
+        }
+
+        /**
+         * the buffer ends the same way when the body is complete and when the request failed,
+         * the failure is thrown
+         */
+        private int check(int read) throws IOException {
+            if (closed) {
+                throw new IOException("the response stream is closed");
+            }
+            if (read == -1) {
+                if (failure != null) {
+                    throw failure(null);
+                }
+                ended = true;
+            }
+            return read;
+        }
+
+        /**
+         * the failure of the request, a reader waiting for the body is interrupted by it
+         */
+        private IOException failure(InterruptedIOException interrupted) {
+            Exception e = failure;
+            if (e == null) {
+                return interrupted;
+            }
+            return new IOException(e.getMessage(), e);
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!ended && !completed) {
+                aborted = true;
+                Future<HttpResponse> e = exchange;
+                if (e != null) {
+                    e.cancel(true);
+                }
+            }
+        }
+    }
+}
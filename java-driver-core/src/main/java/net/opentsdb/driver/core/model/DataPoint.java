@@ -24,7 +24,7 @@ import net.opentsdb.driver.core.exceptions.ErrorValueTypeException;
  * put datapoint ,which consist of metric, timestamp, tags and other you can see details from
  * http://opentsdb.net/docs/build/html/api_http/put.html
  */
-public class DataPoint extends BaseRequest {
+public class DataPoint extends Point {
 
     private String metric;
     private Long timestamp;
@@ -146,10 +146,16 @@ public class DataPoint extends BaseRequest {
     }
 
 
+    /**
+     * Returns the estimated bytes of this data point, which is the sum of the metric, tags, tsuid
+     * and value length; it is used by {@link net.opentsdb.driver.core.BatchWriter} to limit the
+     * bytes of one batch.
+     */
+    @Override
     public long size() {
         int tagsLen = 0;
         String key = "";
-        if (tags.size() > 0) {
+        if (tags != null && tags.size() > 0) {
             Iterator<String> iter = tags.keySet().iterator();
             while (iter.hasNext()) {
                 key = iter.next();
@@ -164,9 +170,9 @@ public class DataPoint extends BaseRequest {
         int metriLen = metric != null ? metric.getBytes(TConstants.UTF8_CHARSET).length : 0;
         int tsUidLen = tsuid != null ? tsuid.getBytes(TConstants.UTF8_CHARSET).length : 0;
         int valueLen = 0;
-        if (value instanceof Long || value instanceof Float) {
+        if (value instanceof Long || value instanceof Double) {
             valueLen = 8;
-        } else if (value instanceof Integer) {
+        } else if (value instanceof Integer || value instanceof Float) {
             valueLen = 4;
         } else {
             String tmp = (String) value;
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.model;
+
+import java.util.Arrays;
+
+/**
+ * Many data points of one series in columns: one metric and {@link TagSet} with parallel arrays
+ * of the timestamps and the values, the values are all longs or all doubles told by
+ * {@link ValueType}. A buffered point costs 16 bytes of the arrays instead of a {@link DataPoint}
+ * with its own metric and tags map.
+ * <p/>
+ * The batch is put as {@link #count()} data points by every put of
+ * {@link net.opentsdb.driver.core.Session} and {@link net.opentsdb.driver.core.BatchWriter}. The
+ * arrays given to the constructors are not copied, they must not be modified after.
+ */
+public final class DataPointBatch extends Point {
+    private final String metric;
+    private final TagSet tags;
+    private final ValueType valueType;
+    private final long[] timestamps;
+    private final long[] longValues;
+    private final double[] doubleValues;
+    private final int count;
+
+    /**
+     * Constructs a batch of long values.
+     *
+     * @param metric the metric of the series
+     * @param tags the tags of the series
+     * @param timestamps the timestamps of the points
+     * @param values the values of the points, as many as the timestamps
+     */
+    public DataPointBatch(String metric, TagSet tags, long[] timestamps, long[] values) {
+        this(metric, tags, ValueType.LONG, timestamps, values, null, timestamps.length);
+        if (values.length != timestamps.length) {
+            throw new IllegalArgumentException("The timestamps and values should be as many.");
+        }
+    }
+
+    /**
+     * Constructs a batch of double values.
+     *
+     * @param metric the metric of the series
+     * @param tags the tags of the series
+     * @param timestamps the timestamps of the points
+     * @param values the values of the points, as many as the timestamps
+     */
+    public DataPointBatch(String metric, TagSet tags, long[] timestamps, double[] values) {
+        this(metric, tags, ValueType.DOUBLE, timestamps, null, values, timestamps.length);
+        if (values.length != timestamps.length) {
+            throw new IllegalArgumentException("The timestamps and values should be as many.");
+        }
+    }
+
+    private DataPointBatch(String metric, TagSet tags, ValueType valueType, long[] timestamps,
+            long[] longValues, double[] doubleValues, int count) {
+        this.metric = metric;
+        this.tags = tags != null ? tags : TagSet.EMPTY;
+        this.valueType = valueType;
+        this.timestamps = timestamps;
+        this.longValues = longValues;
+        this.doubleValues = doubleValues;
+        this.count = count;
+    }
+
+    /**
+     * Helper class to build {@link DataPointBatch} instances point by point, the values added
+     * should be all longs or all doubles.
+     */
+    public static class Builder {
+        private String metric;
+        private TagSet tags;
+        private ValueType valueType;
+        private long[] timestamps = new long[16];
+        private long[] longValues;
+        private double[] doubleValues;
+        private int count = 0;
+
+        public Builder setMetric(String metric) {
+            this.metric = metric;
+            return this;
+        }
+
+        public Builder setTags(TagSet tags) {
+            this.tags = tags;
+            return this;
+        }
+
+        public Builder add(long timestamp, long value) {
+            checkType(ValueType.LONG);
+            grow();
+            timestamps[count] = timestamp;
+            longValues[count] = value;
+            count++;
+            return this;
+        }
+
+        public Builder add(long timestamp, double value) {
+            checkType(ValueType.DOUBLE);
+            grow();
+            timestamps[count] = timestamp;
+            doubleValues[count] = value;
+            count++;
+            return this;
+        }
+
+        private void checkType(ValueType type) {
+            if (valueType == null) {
+                valueType = type;
+                if (type == ValueType.LONG) {
+                    longValues = new long[timestamps.length];
+                } else {
+                    doubleValues = new double[timestamps.length];
+                }
+            } else if (valueType != type) {
+                throw new IllegalArgumentException(
+                        "The values of a batch should be all longs or all doubles.");
+            }
+        }
+
+        private void grow() {
+            if (count < timestamps.length) {
+                return;
+            }
+            int capacity = timestamps.length * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            if (longValues != null) {
+                longValues = Arrays.copyOf(longValues, capacity);
+            } else {
+                doubleValues = Arrays.copyOf(doubleValues, capacity);
+            }
+        }
+
+        public DataPointBatch build() {
+            if (valueType == null) {
+                return new DataPointBatch(metric, tags, new long[0], new long[0]);
+            }
+            return new DataPointBatch(metric, tags, valueType, timestamps, longValues,
+                    doubleValues, count);
+        }
+    }
+
+    @Override
+    public String getMetric() {
+        return metric;
+    }
+
+    public TagSet getTags() {
+        return tags;
+    }
+
+    public ValueType getValueType() {
+        return valueType;
+    }
+
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    /**
+     * Returns the value at the index as a long, a double value is truncated.
+     */
+    public long getLongValue(int index) {
+        checkIndex(index);
+        return valueType == ValueType.LONG ? longValues[index] : (long) doubleValues[index];
+    }
+
+    /**
+     * Returns the value at the index as a double.
+     */
+    public double getDoubleValue(int index) {
+        checkIndex(index);
+        return valueType == ValueType.DOUBLE ? doubleValues[index] : (double) longValues[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", count: " + count);
+        }
+    }
+
+    /**
+     * Returns the number of data points in the batch.
+     */
+    @Override
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Returns the estimated bytes, the metric and tags of every point are counted since every
+     * point is sent with them.
+     */
+    @Override
+    public long size() {
+        return (long) (utf8Length(metric) + tags.bytes() + 16) * count;
+    }
+
+    public String toString() {
+        final StringBuilder buf = new StringBuilder();
+        buf.append("metric = ").append(this.metric);
+        buf.append(" count = ").append(this.count);
+        for (int i = 0; i < tags.size(); i++) {
+            buf.append(" ").append(tags.keyAt(i)).append(" = ").append(tags.valueAt(i));
+        }
+        return buf.toString();
+    }
+}
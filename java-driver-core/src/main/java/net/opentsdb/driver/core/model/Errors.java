@@ -18,16 +18,34 @@
 package net.opentsdb.driver.core.model;
 
 /**
- * Put errors for put operation if failed 
+ * Put errors for put operation if failed, with the failed data point echoed by opentsdb when
+ * the put is detailed
  * */
 public class Errors {
     private String error;
-    
+    private ErrorDataPoint datapoint;
+
+    public Errors() {
+    }
+
     public Errors(String error) {
         // TODO Auto-generated constructor stub
         this.error = error;
     }
 
+    public Errors(String error, ErrorDataPoint datapoint) {
+        this.error = error;
+        this.datapoint = datapoint;
+    }
+
+    public ErrorDataPoint getDatapoint() {
+        return datapoint;
+    }
+
+    public void setDatapoint(ErrorDataPoint datapoint) {
+        this.datapoint = datapoint;
+    }
+
     public String getError() {
         return error;
     }
@@ -36,4 +54,8 @@ public class Errors {
         this.error = error;
     }
 
+    public String toString() {
+        return "error = " + error + (datapoint != null ? ", datapoint : " + datapoint : "");
+    }
+
 }
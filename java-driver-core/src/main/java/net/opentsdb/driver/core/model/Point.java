@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.model;
+
+/**
+ * The base of everything which can be put into opentsdb by {@link net.opentsdb.driver.core.Session}
+ * and {@link net.opentsdb.driver.core.BatchWriter}, see {@link DataPoint} for the general boxed
+ * form and {@link PrimitiveDataPoint} for the allocation free form.
+ */
+public abstract class Point extends BaseRequest {
+
+    public abstract String getMetric();
+
+    /**
+     * Returns the estimated bytes of the point, it is used by
+     * {@link net.opentsdb.driver.core.BatchWriter} to limit the bytes of one batch.
+     */
+    public abstract long size();
+
+    /**
+     * Returns the number of data points this point puts into opentsdb.
+     */
+    public int count() {
+        return 1;
+    }
+
+    /**
+     * Returns the UTF-8 length of the string without encoding it.
+     */
+    protected static int utf8Length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x800) {
+                bytes += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                bytes++;
+            }
+        }
+        return bytes;
+    }
+}
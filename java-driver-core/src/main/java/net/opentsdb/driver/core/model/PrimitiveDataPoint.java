@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.model;
+
+/**
+ * A data point whose timestamp and value are primitives, the value is a long or a double told by
+ * {@link ValueType}, and whose tags are a shared {@link TagSet}; unlike {@link DataPoint} it boxes
+ * nothing and copies no tags, so a point is a single small object. It is immutable.
+ * <p/>
+ * It can be put by every put of {@link net.opentsdb.driver.core.Session} and
+ * {@link net.opentsdb.driver.core.BatchWriter}, and is serialized without unboxing.
+ */
+public final class PrimitiveDataPoint extends Point {
+    private final String metric;
+    private final TagSet tags;
+    private final long timestamp;
+    private final long value;
+    private final ValueType valueType;
+
+    /**
+     * Constructs a data point with a long value.
+     *
+     * @param metric the metric of the data point
+     * @param tags the tags of the data point, shared by the points of the series
+     * @param timestamp the timestamp in seconds or milliseconds
+     * @param value the long value
+     */
+    public PrimitiveDataPoint(String metric, TagSet tags, long timestamp, long value) {
+        this(metric, tags, timestamp, value, ValueType.LONG);
+    }
+
+    /**
+     * Constructs a data point with a double value.
+     *
+     * @param metric the metric of the data point
+     * @param tags the tags of the data point, shared by the points of the series
+     * @param timestamp the timestamp in seconds or milliseconds
+     * @param value the double value
+     */
+    public PrimitiveDataPoint(String metric, TagSet tags, long timestamp, double value) {
+        this(metric, tags, timestamp, Double.doubleToRawLongBits(value), ValueType.DOUBLE);
+    }
+
+    private PrimitiveDataPoint(String metric, TagSet tags, long timestamp, long value,
+            ValueType valueType) {
+        this.metric = metric;
+        this.tags = tags != null ? tags : TagSet.EMPTY;
+        this.timestamp = timestamp;
+        this.value = value;
+        this.valueType = valueType;
+    }
+
+    @Override
+    public String getMetric() {
+        return metric;
+    }
+
+    public TagSet getTags() {
+        return tags;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public ValueType getValueType() {
+        return valueType;
+    }
+
+    /**
+     * Returns the value as a long, a double value is truncated.
+     */
+    public long getLongValue() {
+        return valueType == ValueType.LONG ? value : (long) Double.longBitsToDouble(value);
+    }
+
+    /**
+     * Returns the value as a double.
+     */
+    public double getDoubleValue() {
+        return valueType == ValueType.DOUBLE ? Double.longBitsToDouble(value) : (double) value;
+    }
+
+    /**
+     * Returns the estimated bytes, the UTF-8 length of the metric and tags with 8 bytes of the
+     * timestamp and 8 of the value.
+     */
+    @Override
+    public long size() {
+        return utf8Length(metric) + tags.bytes() + 16;
+    }
+
+    public String toString() {
+        final StringBuilder buf = new StringBuilder();
+        buf.append("metric = ").append(this.metric);
+        buf.append(" ts = ").append(this.timestamp);
+        buf.append(" value = ");
+        if (valueType == ValueType.LONG) {
+            buf.append(getLongValue());
+        } else {
+            buf.append(getDoubleValue());
+        }
+        for (int i = 0; i < tags.size(); i++) {
+            buf.append(" ").append(tags.keyAt(i)).append(" = ").append(tags.valueAt(i));
+        }
+        return buf.toString();
+    }
+}
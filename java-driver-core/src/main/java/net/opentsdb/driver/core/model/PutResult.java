@@ -27,6 +27,7 @@ public class PutResult extends Response {
     private List<Errors> errors;
     private int failed;
     private int success;
+    private int spooled;
 
     public PutResult(int failed, int success, List<Errors> errors) {
         // TODO Auto-generated constructor stub
@@ -59,11 +60,24 @@ public class PutResult extends Response {
         this.success = success;
     }
 
+    /**
+     * Returns the number of data points written to the spool of the session to be put later,
+     * because opentsdb could not be reached
+     */
+    public int getSpooled() {
+        return spooled;
+    }
+
+    public void setSpooled(int spooled) {
+        this.spooled = spooled;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj != null && obj instanceof PutResult) {
             PutResult tmPutResult = (PutResult) obj;
             return (tmPutResult.failed == failed) && (tmPutResult.success == success)
+                    && (tmPutResult.spooled == spooled)
                     && (tmPutResult.errors.equals(errors));
         }
         return false;
@@ -19,6 +19,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import com.alibaba.fastjson.annotation.JSONField;
 
 /**
  * The Query consist of some elements like start which means the start timestamp to query ,if end is
@@ -198,6 +199,15 @@ public class Query extends BaseRequest {
         this.showTSUIDs = showTSUIDs;
     }
 
+    /**
+     * Returns if the summary of the query is asked for; it is kept out of the query body as
+     * before, the fastjson serializer never wrote it.
+     */
+    @JSONField(serialize = false)
+    public Boolean getShowSummary() {
+        return showSummary;
+    }
+
     public Boolean getShowStats() {
         return showStats;
     }
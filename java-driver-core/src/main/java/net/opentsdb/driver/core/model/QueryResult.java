@@ -14,29 +14,91 @@
  */
 package net.opentsdb.driver.core.model;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
 import java.util.TreeMap;
-import java.util.stream.Collectors;
+import com.alibaba.fastjson.annotation.JSONCreator;
 
 /**
  * QueryResult which, when you send the start and end timestamp to get the data points,then with the
  * metric and filter/tags we will return the metric with the specified tags and dps means a map with
  * the timestamp to value , for detailed information see
  * http://opentsdb.net/docs/build/html/api_http/put.html
+ * <p/>
+ * The data points are kept in a sorted long array of the timestamps and a long or a double array
+ * of the values, told by {@link #getValueType()}: the values are longs while every value of the
+ * series is an integer, doubles otherwise. The arrays are returned without a copy, they must not
+ * be modified; read them by index, by a {@link Cursor}, or find a timestamp by
+ * {@link #indexOf(long)} and {@link #ceilingIndex(long)} in O(log n).
  */
 public class QueryResult extends Response {
+    private static final long[] NO_LONGS = new long[0];
+
     private String metric;
     private Map<String, String> tags;
     private List<String> aggregatedTags;
-    private Map<Long, Object> dps;
+    private long[] timestamps = NO_LONGS;
+    private long[] longValues = NO_LONGS;
+    private double[] doubleValues;
+    private ValueType valueType = ValueType.LONG;
 
+    @JSONCreator
     public QueryResult(String metric, Map<String, String> tags, List<String> aggregatedTags,
             Map<Long, Object> dps) {
         this.metric = metric;
         this.tags = tags;
         this.aggregatedTags = aggregatedTags;
-        this.dps = dps;
+        setDps(dps);
+    }
+
+    /**
+     * Constructs a query result of long values.
+     *
+     * @param timestamps the timestamps sorted ascending, kept without a copy
+     * @param values the values of the timestamps, kept without a copy
+     */
+    public QueryResult(String metric, Map<String, String> tags, List<String> aggregatedTags,
+            long[] timestamps, long[] values) {
+        this.metric = metric;
+        this.tags = tags;
+        this.aggregatedTags = aggregatedTags;
+        checkLength(timestamps, values.length);
+        this.timestamps = timestamps;
+        this.longValues = values;
+        this.valueType = ValueType.LONG;
+    }
+
+    /**
+     * Constructs a query result of double values.
+     *
+     * @param timestamps the timestamps sorted ascending, kept without a copy
+     * @param values the values of the timestamps, kept without a copy
+     */
+    public QueryResult(String metric, Map<String, String> tags, List<String> aggregatedTags,
+            long[] timestamps, double[] values) {
+        this.metric = metric;
+        this.tags = tags;
+        this.aggregatedTags = aggregatedTags;
+        checkLength(timestamps, values.length);
+        this.timestamps = timestamps;
+        this.doubleValues = values;
+        this.longValues = null;
+        this.valueType = ValueType.DOUBLE;
+    }
+
+    private static void checkLength(long[] timestamps, int values) {
+        if (timestamps.length != values) {
+            throw new IllegalArgumentException(
+                    timestamps.length + " timestamps but " + values + " values");
+        }
     }
 
     public String getMetric() {
@@ -63,27 +125,261 @@ public class QueryResult extends Response {
         this.aggregatedTags = aggregatedTags;
     }
 
-    private Map<Long, Object> getDps() {
-        return dps;
+    /**
+     * Sets the data points of the timestamp to value map, the values which are not numbers are
+     * skipped; the map is copied into the arrays.
+     */
+    public void setDps(Map<Long, Object> dps) {
+        int size = dps != null ? dps.size() : 0;
+        long[] ts = new long[size];
+        Number[] values = new Number[size];
+        boolean sorted = true;
+        boolean integral = true;
+        int n = 0;
+        if (dps != null) {
+            for (Map.Entry<Long, Object> entry : dps.entrySet()) {
+                if (!(entry.getValue() instanceof Number) || entry.getKey() == null) {
+                    continue;
+                }
+                Number value = (Number) entry.getValue();
+                ts[n] = entry.getKey();
+                values[n] = value;
+                sorted &= n == 0 || ts[n - 1] < ts[n];
+                integral &= isIntegral(value);
+                n++;
+            }
+        }
+        if (!sorted && !(dps instanceof SortedMap)) {
+            sort(ts, values, n);
+        }
+        this.timestamps = n == size ? ts : Arrays.copyOf(ts, n);
+        if (integral) {
+            long[] longs = new long[n];
+            for (int i = 0; i < n; i++) {
+                longs[i] = values[i].longValue();
+            }
+            this.longValues = longs;
+            this.doubleValues = null;
+            this.valueType = ValueType.LONG;
+        } else {
+            double[] doubles = new double[n];
+            for (int i = 0; i < n; i++) {
+                doubles[i] = values[i].doubleValue();
+            }
+            this.doubleValues = doubles;
+            this.longValues = null;
+            this.valueType = ValueType.DOUBLE;
+        }
     }
 
-    public void setDps(Map<Long, Object> dps) {
-        this.dps = dps;
+    private static boolean isIntegral(Number value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            return true;
+        }
+        if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            // at most 18 digits always fit a long
+            return decimal.scale() <= 0 && decimal.precision() - decimal.scale() <= 18;
+        }
+        if (value instanceof BigInteger) {
+            return ((BigInteger) value).bitLength() < 64;
+        }
+        return false;
+    }
+
+    private static void sort(long[] ts, Number[] values, int n) {
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> ts[i]));
+        long[] sortedTs = Arrays.copyOf(ts, n);
+        Number[] sortedValues = Arrays.copyOf(values, n);
+        for (int i = 0; i < n; i++) {
+            ts[i] = sortedTs[order[i]];
+            values[i] = sortedValues[order[i]];
+        }
+    }
+
+    /**
+     * Returns a copy of this result which shares nothing with it, the tags, the aggregated tags
+     * and the arrays of the data points are copied.
+     */
+    public QueryResult copy() {
+        Map<String, String> tagsCopy = tags != null ? new LinkedHashMap<>(tags) : null;
+        List<String> aggregatedTagsCopy =
+                aggregatedTags != null ? new ArrayList<>(aggregatedTags) : null;
+        if (valueType == ValueType.LONG) {
+            return new QueryResult(metric, tagsCopy, aggregatedTagsCopy, timestamps.clone(),
+                    longValues.clone());
+        }
+        return new QueryResult(metric, tagsCopy, aggregatedTagsCopy, timestamps.clone(),
+                doubleValues.clone());
+    }
+
+    /**
+     * Returns the number of data points.
+     */
+    public int size() {
+        return timestamps.length;
+    }
+
+    /**
+     * Returns LONG when the values are kept in {@link #getLongValues()}, DOUBLE when they are
+     * kept in {@link #getDoubleValues()}.
+     */
+    public ValueType getValueType() {
+        return valueType;
+    }
+
+    /**
+     * Returns the sorted timestamps of the data points, not a copy.
+     */
+    public long[] getTimestamps() {
+        return timestamps;
+    }
+
+    /**
+     * Returns the long values of the data points, not a copy; null when the values are doubles.
+     */
+    public long[] getLongValues() {
+        return longValues;
+    }
+
+    /**
+     * Returns the double values of the data points, not a copy when the values are doubles; long
+     * values are converted into a new array on every call.
+     */
+    public double[] getDoubleValues() {
+        if (doubleValues != null) {
+            return doubleValues;
+        }
+        double[] doubles = new double[longValues.length];
+        for (int i = 0; i < doubles.length; i++) {
+            doubles[i] = longValues[i];
+        }
+        return doubles;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * Returns the value at the index as a long, a double value is truncated.
+     */
+    public long getLongValue(int index) {
+        return longValues != null ? longValues[index] : (long) doubleValues[index];
+    }
+
+    /**
+     * Returns the value at the index as a double.
+     */
+    public double getDoubleValue(int index) {
+        return doubleValues != null ? doubleValues[index] : (double) longValues[index];
+    }
+
+    /**
+     * Returns the index of the data point of the timestamp, -1 when there is none.
+     */
+    public int indexOf(long timestamp) {
+        int index = Arrays.binarySearch(timestamps, timestamp);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * Returns the index of the first data point at or after the timestamp, {@link #size()} when
+     * there is none.
+     */
+    public int ceilingIndex(long timestamp) {
+        int index = Arrays.binarySearch(timestamps, timestamp);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Returns a cursor over all the data points.
+     */
+    public Cursor cursor() {
+        return new Cursor(0, timestamps.length);
+    }
+
+    /**
+     * Returns a cursor over the data points from start to end, both inclusive.
+     */
+    public Cursor cursor(long start, long end) {
+        int from = ceilingIndex(start);
+        int to = end == Long.MAX_VALUE ? timestamps.length : ceilingIndex(end + 1);
+        return new Cursor(from, Math.max(from, to));
+    }
+
+    /**
+     * A cursor over the data points which boxes nothing, like
+     * {@code for (Cursor c = result.cursor(); c.next();) sum += c.doubleValue();}
+     */
+    public final class Cursor {
+        private int index;
+        private final int end;
+
+        private Cursor(int from, int end) {
+            this.index = from - 1;
+            this.end = end;
+        }
+
+        /**
+         * Moves to the next data point, false when there is none.
+         */
+        public boolean next() {
+            if (index + 1 >= end) {
+                index = end;
+                return false;
+            }
+            index++;
+            return true;
+        }
+
+        /**
+         * Returns the index of the data point in the arrays of the result.
+         */
+        public int index() {
+            check();
+            return index;
+        }
+
+        public long timestamp() {
+            check();
+            return timestamps[index];
+        }
+
+        public long longValue() {
+            check();
+            return getLongValue(index);
+        }
+
+        public double doubleValue() {
+            check();
+            return getDoubleValue(index);
+        }
+
+        private void check() {
+            if (index < 0 || index >= end) {
+                throw new NoSuchElementException();
+            }
+        }
     }
 
     /**
      * retun the all datapoint, by default it is a map, if use arrays flag should be array, but we
      * do not set ,so it is map; Inner the datapoint the map key is long and the map value is
-     * double. The map key is the timestamp and the value is the real value.
+     * double. The map key is the timestamp and the value is the real value. The map is built from
+     * the arrays on every call, prefer {@link #cursor()} or the arrays.
      */
     public Map<Long, Double> getDoubleDps() {
-        Map<Long, Double> tmMap =
-                (dps.entrySet().stream().filter(e -> e.getValue() instanceof Number)
-                        .collect(Collectors.toMap(e -> e.getKey(), e -> (double) e.getValue())));
-        return tmMap.entrySet().stream().filter(e -> e.getValue() instanceof Number)
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue,
-                        (oldValue, newValue) -> newValue, TreeMap::new));
-
+        TreeMap<Long, Double> dps = new TreeMap<>();
+        for (int i = 0; i < timestamps.length; i++) {
+            dps.put(timestamps[i], getDoubleValue(i));
+        }
+        return dps;
     }
 
     /**
@@ -91,12 +387,11 @@ public class QueryResult extends Response {
      * value type is int , which the map key is the timestamp and the map value is the real value;
      */
     public Map<Long, Integer> getIntDps() {
-        Map<Long, Integer> tmMap =
-                (dps.entrySet().stream().filter(e -> e.getValue() instanceof Number)
-                        .collect(Collectors.toMap(e -> e.getKey(), e -> (int) e.getValue())));
-        return tmMap.entrySet().stream().filter(e -> e.getValue() instanceof Number)
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue,
-                        (oldValue, newValue) -> newValue, TreeMap::new));
+        TreeMap<Long, Integer> dps = new TreeMap<>();
+        for (int i = 0; i < timestamps.length; i++) {
+            dps.put(timestamps[i], (int) getLongValue(i));
+        }
+        return dps;
     }
 
     /**
@@ -104,16 +399,28 @@ public class QueryResult extends Response {
      * value type is long , which the map key is the timestamp and the map value is the real value;
      */
     public Map<Long, Long> getLongDps() {
-        Map<Long, Long> tmMap = (dps.entrySet().stream().filter(e -> e.getValue() instanceof Number)
-                .collect(Collectors.toMap(e -> e.getKey(), e -> (long) e.getValue())));
-        return tmMap.entrySet().stream().filter(e -> e.getValue() instanceof Number)
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue,
-                        (oldValue, newValue) -> newValue, TreeMap::new));
+        TreeMap<Long, Long> dps = new TreeMap<>();
+        for (int i = 0; i < timestamps.length; i++) {
+            dps.put(timestamps[i], getLongValue(i));
+        }
+        return dps;
     }
 
 
     public String toString() {
+        StringBuilder dps = new StringBuilder("{");
+        for (int i = 0; i < timestamps.length; i++) {
+            if (i > 0) {
+                dps.append(", ");
+            }
+            dps.append(timestamps[i]).append('=');
+            if (valueType == ValueType.LONG) {
+                dps.append(longValues[i]);
+            } else {
+                dps.append(doubleValues[i]);
+            }
+        }
         return "metric : " + metric + " tags : " + tags + " aggregatedTags : " + aggregatedTags
-                + " dps : " + dps;
+                + " dps : " + dps.append('}');
     }
 }
@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable set of tags sorted by tag key. One tag set is meant to be created once for a
+ * series and shared by all of its points, so a point does not carry its own tags map; the hash
+ * code and the estimated bytes are computed once.
+ * <p/>
+ * It is a read only {@link Map} with the hash code of any map of the same tags, so it can be used
+ * where the tags map of {@link DataPoint} is.
+ */
+public final class TagSet extends AbstractMap<String, String> {
+    public static final TagSet EMPTY = new TagSet(new String[0], new String[0]);
+
+    private final String[] keys;
+    private final String[] values;
+    private final int hash;
+    private final int bytes;
+    private Set<Map.Entry<String, String>> entrySet;
+
+    private TagSet(String[] keys, String[] values) {
+        this.keys = keys;
+        this.values = values;
+        int h = 0;
+        int b = 0;
+        for (int i = 0; i < keys.length; i++) {
+            h += keys[i].hashCode() ^ values[i].hashCode();
+            b += Point.utf8Length(keys[i]) + Point.utf8Length(values[i]);
+        }
+        this.hash = h;
+        this.bytes = b;
+    }
+
+    /**
+     * Creates the tag set of the tags map, the entries with null key or value are skipped.
+     */
+    public static TagSet of(Map<String, String> tags) {
+        if (tags instanceof TagSet) {
+            return (TagSet) tags;
+        }
+        if (tags == null || tags.isEmpty()) {
+            return EMPTY;
+        }
+        Builder builder = new Builder();
+        for (Map.Entry<String, String> entry : tags.entrySet()) {
+            builder.tag(entry.getKey(), entry.getValue());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates the tag set of the key value pairs, like of("host", "web01", "dc", "hz").
+     */
+    public static TagSet of(String... keyValues) {
+        if (keyValues.length % 2 != 0) {
+            throw new IllegalArgumentException("The tags should be key value pairs.");
+        }
+        Builder builder = new Builder();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            builder.tag(keyValues[i], keyValues[i + 1]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Helper class to build {@link TagSet} instances.
+     */
+    public static class Builder {
+        private String[] keys = new String[4];
+        private String[] values = new String[4];
+        private int size = 0;
+
+        /**
+         * Add the tag, the later value wins when a key is added twice, null keys or values are
+         * skipped.
+         */
+        public Builder tag(String key, String value) {
+            if (key == null || value == null) {
+                return this;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            keys[size] = key;
+            values[size] = value;
+            size++;
+            return this;
+        }
+
+        public TagSet build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            // insertion sort, tag sets are small
+            String[] k = Arrays.copyOf(keys, size);
+            String[] v = Arrays.copyOf(values, size);
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                String key = k[i];
+                String value = v[i];
+                int j = n - 1;
+                while (j >= 0 && k[j].compareTo(key) > 0) {
+                    j--;
+                }
+                if (j >= 0 && k[j].equals(key)) {
+                    v[j] = value;
+                    continue;
+                }
+                System.arraycopy(k, j + 1, k, j + 2, n - j - 1);
+                System.arraycopy(v, j + 1, v, j + 2, n - j - 1);
+                k[j + 1] = key;
+                v[j + 1] = value;
+                n++;
+            }
+            if (n < size) {
+                k = Arrays.copyOf(k, n);
+                v = Arrays.copyOf(v, n);
+            }
+            return new TagSet(k, v);
+        }
+    }
+
+    /**
+     * Returns the tag key at the index, the keys are sorted.
+     */
+    public String keyAt(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Returns the tag value at the index.
+     */
+    public String valueAt(int index) {
+        return values[index];
+    }
+
+    /**
+     * Returns the estimated bytes of the tags, the sum of the UTF-8 length of the keys and values.
+     */
+    public int bytes() {
+        return bytes;
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        int index = indexOf(key);
+        return index >= 0 ? values[index] : null;
+    }
+
+    private int indexOf(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(keys, key);
+        return index >= 0 ? index : -1;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new Iterator<Map.Entry<String, String>>() {
+                        private int index = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < keys.length;
+                        }
+
+                        @Override
+                        public Map.Entry<String, String> next() {
+                            if (index >= keys.length) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<String, String> entry =
+                                    new SimpleImmutableEntry<>(keys[index], values[index]);
+                            index++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.length;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (o instanceof TagSet) {
+            TagSet other = (TagSet) o;
+            return hash == other.hash && Arrays.equals(keys, other.keys)
+                    && Arrays.equals(values, other.values);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.policies;
+
+/**
+ * What a {@link net.opentsdb.driver.core.Session} does with a new request when maxInFlightRequests
+ * requests or maxInFlightBytes bytes are already in flight, see
+ * {@link net.opentsdb.driver.core.InFlightLimiter}. The requests over the limit wait in a pending
+ * queue of maxPendingRequests, the policy decides what happens when that queue is full too.
+ */
+public enum BackpressurePolicy {
+    /**
+     * The caller blocks until the pending queue has room, for at most backpressureTimeout ms,
+     * after that the request fails with
+     * {@link net.opentsdb.driver.core.exceptions.BackpressureException}.
+     */
+    BLOCK,
+    /**
+     * The oldest pending request is dropped to make room for the new one, the dropped request
+     * fails with {@link net.opentsdb.driver.core.exceptions.BackpressureException}.
+     */
+    DROP_OLDEST,
+    /**
+     * The new request is dropped and fails with
+     * {@link net.opentsdb.driver.core.exceptions.BackpressureException}.
+     */
+    DROP_NEWEST,
+    /**
+     * Nothing waits, a request fails with
+     * {@link net.opentsdb.driver.core.exceptions.BackpressureException} as soon as the in flight
+     * limit is reached.
+     */
+    FAIL_FAST
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.policies;
+
+import java.util.Locale;
+import net.opentsdb.driver.core.model.Errors;
+
+/**
+ * Classifies the put errors by the messages of opentsdb: its storage exceptions, throttling and
+ * timeouts, and the asynchbase exceptions of a region or region server briefly unavailable are
+ * retryable, everything else, like an invalid metric or tag, a missing field or an unparsable
+ * value, is permanent. The quoted parts of a message are the metric, tag names or values of the
+ * user, they are not looked at.
+ */
+public class DefaultPutErrorClassifier implements PutErrorClassifier {
+    public static final DefaultPutErrorClassifier INSTANCE = new DefaultPutErrorClassifier();
+
+    /** the phrases opentsdb starts the error of a data point with when it could not write it */
+    private static final String[] RETRYABLE_PHRASES =
+            {"storage exception", "please throttle", "timeout exception"};
+
+    private static final String[] RETRYABLE_EXCEPTIONS = {"pleasethrottleexception",
+            "notservingregionexception", "regionofflineexception", "regionmovedexception",
+            "regionserverstoppedexception", "connectionresetexception", "rpctimedoutexception",
+            "timeoutexception"};
+
+    @Override
+    public boolean isRetryable(Errors error) {
+        if (error == null || error.getError() == null) {
+            return false;
+        }
+        String message = unquote(error.getError()).trim().toLowerCase(Locale.ROOT);
+        for (String phrase : RETRYABLE_PHRASES) {
+            if (message.startsWith(phrase)) {
+                return true;
+            }
+        }
+        for (String exception : RETRYABLE_EXCEPTIONS) {
+            if (message.contains(exception)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drop the parts of the message between single or double quotes.
+     */
+    private static String unquote(String message) {
+        StringBuilder unquoted = new StringBuilder(message.length());
+        char quote = 0;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else {
+                unquoted.append(c);
+            }
+        }
+        return unquoted.toString();
+    }
+}
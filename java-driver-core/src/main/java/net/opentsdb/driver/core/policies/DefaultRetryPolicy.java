@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.policies;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import net.opentsdb.driver.core.TConstants;
+import net.opentsdb.driver.core.exceptions.AbnormalResultException;
+import net.opentsdb.driver.core.http.HttpApiEndpoint;
+
+/**
+ * The default {@link RetryPolicy}: the io errors, timeouts and 5xx answers of opentsdb are
+ * retried, the other answers like 400 are caused by the request and fail at once. The delay
+ * grows exponentially from baseDelay to maxDelay, and a random part of it is waited ("full
+ * jitter"), so the clients which failed together do not retry together. When a
+ * {@link RetryBudget} is set the retries are bounded by it.
+ */
+public class DefaultRetryPolicy implements RetryPolicy {
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int REQUEST_TIMEOUT = 408;
+
+    private final long baseDelay;
+    private final long maxDelay;
+    private final RetryBudget budget;
+
+    /**
+     * Constructs a policy with the default delays and budget, see
+     * Tconstants.DEFAULT_RETRY_BASE_DELAY, DEFAULT_RETRY_MAX_DELAY and DEFAULT_RETRY_BUDGET_RATIO
+     */
+    public DefaultRetryPolicy() {
+        this(new Builder());
+    }
+
+    public DefaultRetryPolicy(Builder builder) {
+        this.baseDelay = builder.baseDelay;
+        this.maxDelay = Math.max(builder.maxDelay, builder.baseDelay);
+        this.budget = builder.budget;
+    }
+
+    /**
+     * Helper class to build {@link DefaultRetryPolicy} instances.
+     */
+    public static class Builder {
+        private long baseDelay = TConstants.DEFAULT_RETRY_BASE_DELAY;
+        private long maxDelay = TConstants.DEFAULT_RETRY_MAX_DELAY;
+        private RetryBudget budget = new RetryBudget(TConstants.DEFAULT_RETRY_BUDGET_RATIO,
+                TConstants.DEFAULT_RETRY_BUDGET_MIN_PER_SECOND);
+
+        /**
+         * Sets the max delay of the first retry, ms; 0 retries at once.
+         */
+        public Builder baseDelay(long baseDelay) {
+            this.baseDelay = Math.max(baseDelay, 0);
+            return this;
+        }
+
+        /**
+         * Sets the max delay of any retry, ms.
+         */
+        public Builder maxDelay(long maxDelay) {
+            this.maxDelay = Math.max(maxDelay, 0);
+            return this;
+        }
+
+        /**
+         * Sets the budget the retries are taken from, null for no budget.
+         */
+        public Builder budget(RetryBudget budget) {
+            this.budget = budget;
+            return this;
+        }
+
+        public DefaultRetryPolicy build() {
+            return new DefaultRetryPolicy(this);
+        }
+    }
+
+    @Override
+    public boolean isRetryable(HttpApiEndpoint endpoint, Throwable error) {
+        Throwable cause = error;
+        if (cause instanceof ExecutionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof AbnormalResultException) {
+            int code;
+            try {
+                code = Integer.parseInt(((AbnormalResultException) cause).getStatCode());
+            } catch (NumberFormatException e) {
+                return true;
+            }
+            return code >= TConstants.SERVER_ERROR_PREFIX || code == TOO_MANY_REQUESTS
+                    || code == REQUEST_TIMEOUT;
+        }
+        return cause instanceof IOException || cause instanceof TimeoutException;
+    }
+
+    @Override
+    public long retryDelay(int retry) {
+        if (budget != null && !budget.tryWithdraw()) {
+            return -1;
+        }
+        if (baseDelay == 0) {
+            return 0;
+        }
+        long delay = baseDelay << Math.min(Math.max(retry - 1, 0), 30);
+        if (delay <= 0 || delay > maxDelay) {
+            delay = maxDelay;
+        }
+        return ThreadLocalRandom.current().nextLong(delay + 1);
+    }
+
+    @Override
+    public void onSuccess() {
+        if (budget != null) {
+            budget.deposit();
+        }
+    }
+
+    public RetryBudget getBudget() {
+        return budget;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.policies;
+
+import java.util.concurrent.TimeUnit;
+import net.opentsdb.driver.core.http.HttpApiEndpoint;
+
+/**
+ * Decides when a duplicate of a slow read is sent, see {@link PercentileHedgingPolicy}. Only the
+ * idempotent queries are hedged: query, queryLast, queryExp and queryGexp. The duplicate goes to
+ * another node, or another connection of the only node; the first answer wins and the other
+ * request is cancelled.
+ * <p/>
+ * One policy is shared by the sessions of a configuration, so it must be thread safe.
+ */
+public interface HedgingPolicy {
+
+    /**
+     * Returns the time to wait for the answer before the duplicate is sent, ms; or -1 not to
+     * hedge the request. It is called once for every try of a request which may be hedged.
+     *
+     * @param endpoint the endpoint of the request
+     */
+    long hedgeDelay(HttpApiEndpoint endpoint);
+
+    /**
+     * Returns true when the duplicate may be sent now, it is called when the delay is over and
+     * no answer came yet.
+     *
+     * @param endpoint the endpoint of the request
+     */
+    boolean allowHedge(HttpApiEndpoint endpoint);
+
+    /**
+     * Called with the latency of every answered request which may be hedged, measured from
+     * the first request; the latency of a hedged one is the one of the winner.
+     *
+     * @param endpoint the endpoint of the request
+     * @param latency the latency
+     * @param unit the unit of the latency
+     */
+    void onResponse(HttpApiEndpoint endpoint, long latency, TimeUnit unit);
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.policies;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.opentsdb.driver.core.Node;
+
+/**
+ * Sends a request to the node with the fewest requests in flight, so a node which answers slowly
+ * gets less of them; the scan starts from the next node each time, so the nodes with equal
+ * counts are chosen in turn.
+ */
+public class LeastOutstandingPolicy implements LoadBalancingPolicy {
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Override
+    public Node select(List<Node> nodes) {
+        int size = nodes.size();
+        if (size == 1) {
+            return nodes.get(0);
+        }
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        Node best = null;
+        int least = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            Node node = nodes.get((start + i) % size);
+            int outstanding = node.getOutstanding();
+            if (outstanding < least) {
+                best = node;
+                least = outstanding;
+            }
+        }
+        return best;
+    }
+}
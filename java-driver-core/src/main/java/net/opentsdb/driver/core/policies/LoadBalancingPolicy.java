@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.policies;
+
+import java.util.List;
+import net.opentsdb.driver.core.Node;
+
+/**
+ * Chooses the node of the contact points of a {@link net.opentsdb.driver.core.Cluster} each
+ * request of a session is sent to; a retried request is chosen a node again. See
+ * {@link RoundRobinPolicy}, {@link LeastOutstandingPolicy} and {@link PowerOfTwoChoicesPolicy}.
+ * <p/>
+ * One policy may be shared by the sessions of more clusters, so it must be thread safe.
+ */
+public interface LoadBalancingPolicy {
+
+    /**
+     * Returns the node to send the next request to.
+     *
+     * @param nodes the nodes of the session, never empty
+     */
+    Node select(List<Node> nodes);
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.policies;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.opentsdb.driver.core.TConstants;
+import net.opentsdb.driver.core.http.HttpApiEndpoint;
+
+/**
+ * A {@link HedgingPolicy} which sends the duplicate of a read when it takes longer than the given
+ * percentile of the latency of the last reads of its endpoint, so only the slowest ones are
+ * hedged. The delay is kept between minDelay and maxDelay, and is maxDelay till enough reads
+ * were answered to know the percentile.
+ * <p/>
+ * The duplicates are taken from a {@link RetryBudget} every read deposits into, so with the
+ * default ratio hedging adds at most a tenth of the reads, even when a node gets slow.
+ */
+public class PercentileHedgingPolicy implements HedgingPolicy {
+    /** the number of the last latencies of an endpoint the percentile is taken over */
+    private static final int WINDOW = 1000;
+    /** the percentile is computed again after this many latencies */
+    private static final int RECOMPUTE = 100;
+
+    private final double percentile;
+    private final long minDelay;
+    private final long maxDelay;
+    private final RetryBudget budget;
+    private final Map<HttpApiEndpoint, LatencyWindow> windows;
+    private final AtomicLong hedgeCount = new AtomicLong();
+
+    /**
+     * The last latencies of an endpoint, and their percentile.
+     */
+    private static final class LatencyWindow {
+        private final long[] samples = new long[WINDOW];
+        private long count;
+        private volatile long threshold = -1;
+
+        synchronized void add(long latency, double percentile) {
+            samples[(int) (count++ % WINDOW)] = latency;
+            if (count % RECOMPUTE == 0) {
+                int n = (int) Math.min(count, WINDOW);
+                long[] sorted = Arrays.copyOf(samples, n);
+                Arrays.sort(sorted);
+                threshold = sorted[Math.max((int) Math.ceil(percentile * n) - 1, 0)];
+            }
+        }
+    }
+
+    /**
+     * Constructs a policy with the default percentile, delays and budget, see
+     * Tconstants.DEFAULT_HEDGE_PERCENTILE, DEFAULT_HEDGE_MIN_DELAY, DEFAULT_HEDGE_MAX_DELAY and
+     * DEFAULT_HEDGE_BUDGET_RATIO
+     */
+    public PercentileHedgingPolicy() {
+        this(new Builder());
+    }
+
+    public PercentileHedgingPolicy(Builder builder) {
+        this.percentile = builder.percentile;
+        this.minDelay = builder.minDelay;
+        this.maxDelay = Math.max(builder.maxDelay, builder.minDelay);
+        this.budget = builder.budget;
+        Map<HttpApiEndpoint, LatencyWindow> windows = new EnumMap<>(HttpApiEndpoint.class);
+        for (HttpApiEndpoint endpoint : HttpApiEndpoint.values()) {
+            windows.put(endpoint, new LatencyWindow());
+        }
+        this.windows = Collections.unmodifiableMap(windows);
+    }
+
+    /**
+     * Helper class to build {@link PercentileHedgingPolicy} instances.
+     */
+    public static class Builder {
+        private double percentile = TConstants.DEFAULT_HEDGE_PERCENTILE;
+        private long minDelay = TConstants.DEFAULT_HEDGE_MIN_DELAY;
+        private long maxDelay = TConstants.DEFAULT_HEDGE_MAX_DELAY;
+        private RetryBudget budget = new RetryBudget(TConstants.DEFAULT_HEDGE_BUDGET_RATIO,
+                TConstants.DEFAULT_HEDGE_BUDGET_MIN_PER_SECOND);
+
+        /**
+         * Sets the percentile of the latency a read is hedged after, like 0.95.
+         */
+        public Builder percentile(double percentile) {
+            if (percentile <= 0 || percentile > 1) {
+                throw new IllegalArgumentException("the percentile must be in (0, 1]");
+            }
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * Sets the min delay of the duplicate, ms.
+         */
+        public Builder minDelay(long minDelay) {
+            this.minDelay = Math.max(minDelay, 0);
+            return this;
+        }
+
+        /**
+         * Sets the max delay of the duplicate, ms; it is the delay till the percentile is known.
+         */
+        public Builder maxDelay(long maxDelay) {
+            this.maxDelay = Math.max(maxDelay, 0);
+            return this;
+        }
+
+        /**
+         * Sets the budget the duplicates are taken from, null for no budget.
+         */
+        public Builder budget(RetryBudget budget) {
+            this.budget = budget;
+            return this;
+        }
+
+        public PercentileHedgingPolicy build() {
+            return new PercentileHedgingPolicy(this);
+        }
+    }
+
+    @Override
+    public long hedgeDelay(HttpApiEndpoint endpoint) {
+        if (budget != null) {
+            budget.deposit();
+        }
+        long threshold = windows.get(endpoint).threshold;
+        if (threshold < 0) {
+            return maxDelay;
+        }
+        long delay = (long) Math.ceil((double) threshold / TimeUnit.MILLISECONDS.toNanos(1));
+        return Math.min(Math.max(delay, minDelay), maxDelay);
+    }
+
+    @Override
+    public boolean allowHedge(HttpApiEndpoint endpoint) {
+        if (budget != null && !budget.tryWithdraw()) {
+            return false;
+        }
+        hedgeCount.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public void onResponse(HttpApiEndpoint endpoint, long latency, TimeUnit unit) {
+        windows.get(endpoint).add(unit.toNanos(latency), percentile);
+    }
+
+    /**
+     * Returns the latency percentile of the endpoint the reads are hedged after, -1 till it is
+     * known
+     *
+     * @param endpoint the endpoint
+     * @param unit the unit of the returned latency
+     */
+    public double getThreshold(HttpApiEndpoint endpoint, TimeUnit unit) {
+        long threshold = windows.get(endpoint).threshold;
+        return threshold < 0 ? -1 : (double) threshold / unit.toNanos(1);
+    }
+
+    /**
+     * Returns the number of duplicates sent
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    public RetryBudget getBudget() {
+        return budget;
+    }
+}
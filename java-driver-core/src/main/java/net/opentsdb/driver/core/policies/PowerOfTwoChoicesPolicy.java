@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.policies;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import net.opentsdb.driver.core.Node;
+
+/**
+ * Picks two nodes at random and sends the request to the one with the lower cost, the moving
+ * average of its latency times its requests in flight plus one; this follows the latency of the
+ * nodes without scanning them all, and unlike choosing the best node alone it does not send
+ * every request to the node which looked fastest a moment ago.
+ * <p/>
+ * A node which has not answered yet costs 0, so every node is tried early.
+ */
+public class PowerOfTwoChoicesPolicy implements LoadBalancingPolicy {
+
+    @Override
+    public Node select(List<Node> nodes) {
+        int size = nodes.size();
+        if (size == 1) {
+            return nodes.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        Node a = nodes.get(first);
+        Node b = nodes.get(second);
+        return cost(b) < cost(a) ? b : a;
+    }
+
+    private static double cost(Node node) {
+        return node.getLatencyEwma(TimeUnit.NANOSECONDS) * (node.getOutstanding() + 1);
+    }
+}
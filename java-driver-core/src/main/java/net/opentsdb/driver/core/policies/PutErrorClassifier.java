@@ -0,0 +1,32 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.policies;
+
+import net.opentsdb.driver.core.model.Errors;
+
+/**
+ * Tells whether a data point rejected by a detailed put may succeed when it is sent again, like
+ * when the storage of opentsdb timed out, or is rejected for good, like when its value can not
+ * be parsed; see {@link DefaultPutErrorClassifier}.
+ */
+public interface PutErrorClassifier {
+
+    /**
+     * Returns true when the data point of the error should be put again.
+     *
+     * @param error the error of one data point returned by opentsdb
+     */
+    boolean isRetryable(Errors error);
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.policies;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the retries to a ratio of the successful requests, so the retries can not multiply the
+ * load of opentsdb while it is failing: every success deposits ratio tokens, every retry takes
+ * one. minRetriesPerSecond tokens are added every second anyway, so the rare failures of a
+ * quiet client are still retried. At most ten seconds of them, or of the ratio of successes, are
+ * kept.
+ */
+public class RetryBudget {
+    /** the tokens are counted in thousandths */
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+    private final long refillPerSecond;
+    private final long maxBalance;
+    private final AtomicLong balance;
+    private final AtomicLong lastRefill = new AtomicLong(System.nanoTime());
+
+    /**
+     * Constructs a budget.
+     *
+     * @param ratio the retries allowed for one successful request, like 0.1
+     * @param minRetriesPerSecond the retries allowed every second without any success
+     */
+    public RetryBudget(double ratio, int minRetriesPerSecond) {
+        if (ratio < 0 || minRetriesPerSecond < 0) {
+            throw new IllegalArgumentException("the retry budget can not be negative");
+        }
+        this.deposit = (long) (ratio * SCALE);
+        this.refillPerSecond = minRetriesPerSecond * SCALE;
+        this.maxBalance = Math.max(refillPerSecond, SCALE) * 10;
+        this.balance = new AtomicLong(maxBalance);
+    }
+
+    /**
+     * Deposit the tokens of a successful request.
+     */
+    public void deposit() {
+        if (deposit > 0 && balance.get() < maxBalance) {
+            balance.accumulateAndGet(deposit,
+                    (current, add) -> Math.min(current + add, maxBalance));
+        }
+    }
+
+    /**
+     * Take the token of one retry.
+     *
+     * @return false when the budget is spent and the request should not be retried
+     */
+    public boolean tryWithdraw() {
+        refill();
+        while (true) {
+            long current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    private void refill() {
+        if (refillPerSecond == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long last = lastRefill.get();
+        long tokens = (now - last) * refillPerSecond / TimeUnit.SECONDS.toNanos(1);
+        if (tokens > 0 && lastRefill.compareAndSet(last, now)) {
+            balance.accumulateAndGet(tokens, (current, add) -> Math.min(current + add, maxBalance));
+        }
+    }
+
+    /**
+     * Returns the number of retries allowed now
+     */
+    public long getBalance() {
+        refill();
+        return balance.get() / SCALE;
+    }
+}
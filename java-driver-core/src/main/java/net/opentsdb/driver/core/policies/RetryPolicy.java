@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.policies;
+
+import net.opentsdb.driver.core.http.HttpApiEndpoint;
+
+/**
+ * Decides if and when a failed request of a session is tried again, up to putRetryNum or
+ * queryRetryNum tries; see {@link DefaultRetryPolicy}. An asynchronous request is tried again
+ * from a timer, so no thread waits for the delay.
+ * <p/>
+ * One policy is shared by the sessions of a configuration, so it must be thread safe.
+ */
+public interface RetryPolicy {
+
+    /**
+     * Returns true when the request failed by the error may succeed when it is tried again;
+     * otherwise the error is given to the caller at once.
+     *
+     * @param endpoint the endpoint of the request
+     * @param error the error of the last try
+     */
+    boolean isRetryable(HttpApiEndpoint endpoint, Throwable error);
+
+    /**
+     * Returns the time to wait before the retry, ms; or -1 when no more retries are allowed,
+     * then the request fails with {@link net.opentsdb.driver.core.exceptions.OverRetryException}.
+     *
+     * @param retry the number of the retry, 1 for the second try
+     */
+    long retryDelay(int retry);
+
+    /**
+     * Called when a request succeeded.
+     */
+    void onSuccess();
+}
@@ -0,0 +1,420 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.spool;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A write-ahead spool on the local disk for the put bodies which could not be sent, so they
+ * survive an outage of opentsdb and a restart of the application. The bodies are appended to
+ * memory mapped segment files and read back in order by a single replayer, which acknowledges
+ * every body once opentsdb took it; a segment is deleted when all of its bodies are
+ * acknowledged. The mapped pages are forced to the disk by a background thread, appends never
+ * wait for the disk.
+ * <p/>
+ * A directory is used by one spool at a time, it is locked until the spool is closed.
+ */
+public class Spool implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(Spool.class);
+    private static final String LOCK_FILE = "spool.lock";
+
+    /**
+     * One spooled put body.
+     */
+    public static final class Record {
+        private final SpoolSegment segment;
+        private final int position;
+        private final byte[] payload;
+        private final int count;
+
+        Record(SpoolSegment segment, int position, byte[] payload, int count) {
+            this.segment = segment;
+            this.position = position;
+            this.payload = payload;
+            this.count = count;
+        }
+
+        /**
+         * Returns the put body json
+         */
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        /**
+         * Returns the number of data points in the body
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+
+    private final File dir;
+    private final int segmentSize;
+    private final long maxBytes;
+    private final RandomAccessFile lockFile;
+    private final FileLock lock;
+    private final ArrayDeque<SpoolSegment> segments = new ArrayDeque<>();
+    private final ReentrantLock mutex = new ReentrantLock();
+    private final Condition notEmpty = mutex.newCondition();
+    private final ScheduledExecutorService forcer;
+    private long nextSequence;
+    private long totalBytes;
+    private boolean closed;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong acked = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private Spool(File dir, int segmentSize, long maxBytes, RandomAccessFile lockFile,
+            FileLock lock, long forceInterval) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxBytes = maxBytes;
+        this.lockFile = lockFile;
+        this.lock = lock;
+        this.forcer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "opentsdb-spool-force");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.forcer.scheduleWithFixedDelay(this::force, forceInterval, forceInterval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Open the spool in the directory, the bodies left by an earlier spool are read first.
+     *
+     * @param dir the directory of the segment files, created if missing
+     * @param segmentSize the size of one segment file, bytes
+     * @param maxBytes the max total size of the segment files, bytes; appends are dropped beyond
+     * @param forceInterval the interval the segments are forced to the disk, ms
+     * @return the spool, or null when the directory is locked by another spool
+     * @throws IOException when the directory can not be used
+     */
+    public static Spool open(File dir, int segmentSize, long maxBytes, long forceInterval)
+            throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can not create spool directory : " + dir);
+        }
+        RandomAccessFile lockFile = new RandomAccessFile(new File(dir, LOCK_FILE), "rw");
+        FileLock lock;
+        try {
+            lock = lockFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } catch (IOException | RuntimeException e) {
+            lockFile.close();
+            throw e;
+        }
+        if (lock == null) {
+            lockFile.close();
+            return null;
+        }
+        Spool spool = new Spool(dir, segmentSize, maxBytes, lockFile, lock, forceInterval);
+        try {
+            spool.recover();
+        } catch (IOException | RuntimeException e) {
+            spool.close();
+            throw e;
+        }
+        return spool;
+    }
+
+    private void recover() throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SpoolSegment.SUFFIX));
+        if (files == null) {
+            throw new IOException("can not list spool directory : " + dir);
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = file.getName();
+            long sequence;
+            try {
+                sequence = Long.parseLong(
+                        name.substring(0, name.length() - SpoolSegment.SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            SpoolSegment segment = SpoolSegment.recover(file, sequence);
+            if (segment.getPending() == 0) {
+                segment.delete();
+                continue;
+            }
+            LOG.info("Recovered " + segment.getPending() + " spooled put bodies from " + file);
+            segments.add(segment);
+            totalBytes += segment.getCapacity();
+        }
+    }
+
+    /**
+     * Append a put body.
+     *
+     * @param payload the put body json
+     * @param count the number of data points in the body
+     * @return false when the spool is full or closed and the body is dropped
+     * @throws IOException when a new segment file can not be created
+     */
+    public boolean append(byte[] payload, int count) throws IOException {
+        mutex.lock();
+        try {
+            if (closed) {
+                dropped.addAndGet(count);
+                return false;
+            }
+            SpoolSegment last = segments.peekLast();
+            if (last == null || !last.append(payload, count)) {
+                int capacity = Math.max(segmentSize, SpoolSegment.HEADER_SIZE + payload.length);
+                if (totalBytes + capacity > maxBytes) {
+                    dropped.addAndGet(count);
+                    return false;
+                }
+                if (last != null) {
+                    last.seal();
+                    if (last.getPending() == 0) {
+                        remove(last);
+                    }
+                }
+                SpoolSegment segment = SpoolSegment.create(dir, nextSequence++, capacity);
+                segments.add(segment);
+                totalBytes += capacity;
+                segment.append(payload, count);
+            }
+            appended.addAndGet(count);
+            notEmpty.signal();
+            return true;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Read the oldest body not acknowledged yet, waiting for one up to the timeout; the same
+     * body is returned until it is acknowledged.
+     *
+     * @return the body, or null when none is spooled within the timeout
+     */
+    public Record peek(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        mutex.lock();
+        try {
+            while (!closed) {
+                for (SpoolSegment segment : segments) {
+                    Record record = segment.peek();
+                    if (record != null) {
+                        return record;
+                    }
+                }
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return null;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Acknowledge the body, the segment holding it is deleted once all of its bodies are.
+     */
+    public void ack(Record record) throws IOException {
+        mutex.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            record.segment.ack(record.position);
+            acked.addAndGet(record.count);
+            if (record.segment.getPending() == 0 && record.segment.isSealed()) {
+                remove(record.segment);
+            }
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    private void remove(SpoolSegment segment) throws IOException {
+        segments.remove(segment);
+        totalBytes -= segment.getCapacity();
+        segment.delete();
+    }
+
+    private void force() {
+        List<SpoolSegment> toForce;
+        mutex.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            toForce = new ArrayList<>(segments);
+        } finally {
+            mutex.unlock();
+        }
+        for (SpoolSegment segment : toForce) {
+            try {
+                segment.force();
+            } catch (RuntimeException e) {
+                LOG.warn("Force spool segment " + segment.getSequence() + " failed : " + e);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of spooled data points not acknowledged yet
+     */
+    public long getPendingCount() {
+        mutex.lock();
+        try {
+            long pending = 0;
+            for (SpoolSegment segment : segments) {
+                pending += segment.getPendingCount();
+            }
+            return pending;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of spooled bodies not acknowledged yet
+     */
+    public int getPendingRecords() {
+        mutex.lock();
+        try {
+            int pending = 0;
+            for (SpoolSegment segment : segments) {
+                pending += segment.getPending();
+            }
+            return pending;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Returns the size of the spooled bodies not acknowledged yet, bytes
+     */
+    public long getPendingBytes() {
+        mutex.lock();
+        try {
+            long pending = 0;
+            for (SpoolSegment segment : segments) {
+                pending += segment.getPendingBytes();
+            }
+            return pending;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Returns the total size of the segment files, bytes
+     */
+    public long getTotalBytes() {
+        mutex.lock();
+        try {
+            return totalBytes;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of data points appended since the spool is opened
+     */
+    public long getAppendedCount() {
+        return appended.get();
+    }
+
+    /**
+     * Returns the number of data points acknowledged since the spool is opened
+     */
+    public long getAckedCount() {
+        return acked.get();
+    }
+
+    /**
+     * Returns the number of data points dropped because the spool is full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Force the segments to the disk and release the directory, the bodies not acknowledged
+     * are read again by the next spool of the directory.
+     */
+    @Override
+    public void close() throws IOException {
+        mutex.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            mutex.unlock();
+        }
+        forcer.shutdown();
+        try {
+            forcer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        IOException error = null;
+        for (SpoolSegment segment : segments) {
+            try {
+                segment.force();
+                segment.close();
+            } catch (IOException | RuntimeException e) {
+                error = error != null ? error : new IOException(e);
+            }
+        }
+        segments.clear();
+        try {
+            lock.release();
+        } finally {
+            lockFile.close();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.spool;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * One append-only segment file of a {@link Spool}, memory mapped as a whole. Every record is
+ * written as its length, its data point count, the CRC32 of its payload and the payload; the
+ * length is written last so a record is visible only once complete, and it is negated in place
+ * when the record is acknowledged. A zero length marks the end of the records. Not thread safe,
+ * the spool guards it.
+ */
+final class SpoolSegment {
+    static final int HEADER_SIZE = 12;
+    static final String SUFFIX = ".spool";
+
+    private final long sequence;
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private int writePosition;
+    private int readPosition;
+    private int pending;
+    private long pendingCount;
+    private long pendingBytes;
+    private boolean sealed;
+    private volatile boolean dirty;
+
+    private SpoolSegment(long sequence, File file, RandomAccessFile raf, MappedByteBuffer buffer) {
+        this.sequence = sequence;
+        this.file = file;
+        this.raf = raf;
+        this.buffer = buffer;
+    }
+
+    static String fileName(long sequence) {
+        return String.format("%020d%s", sequence, SUFFIX);
+    }
+
+    /**
+     * Create a new empty segment of the given capacity.
+     */
+    static SpoolSegment create(File dir, long sequence, int capacity) throws IOException {
+        File file = new File(dir, fileName(sequence));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(capacity);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    capacity);
+            return new SpoolSegment(sequence, file, raf, buffer);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a segment left by an earlier session; it is sealed, the records after a torn or
+     * corrupted one are ignored.
+     */
+    static SpoolSegment recover(File file, long sequence) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        SpoolSegment segment;
+        try {
+            long length = raf.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("spool segment too large : " + file);
+            }
+            MappedByteBuffer buffer =
+                    raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            segment = new SpoolSegment(sequence, file, raf, buffer);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+        segment.scan();
+        segment.sealed = true;
+        return segment;
+    }
+
+    private void scan() {
+        int position = 0;
+        int first = -1;
+        while (position + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            int size = Math.abs(length);
+            if (length == 0 || size > buffer.capacity() - position - HEADER_SIZE) {
+                break;
+            }
+            if (length > 0) {
+                if (crc(position + HEADER_SIZE, size) != buffer.getInt(position + 8)) {
+                    break;
+                }
+                pending++;
+                pendingCount += buffer.getInt(position + 4);
+                pendingBytes += size;
+                if (first < 0) {
+                    first = position;
+                }
+            }
+            position += HEADER_SIZE + size;
+        }
+        writePosition = position;
+        readPosition = first < 0 ? position : first;
+    }
+
+    private int crc(int position, int length) {
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(position);
+        payload.limit(position + length);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Append one record.
+     *
+     * @return false when the segment is sealed or has no room for the record
+     */
+    boolean append(byte[] payload, int count) {
+        if (sealed || writePosition + HEADER_SIZE + payload.length > buffer.capacity()) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer out = buffer.duplicate();
+        out.position(writePosition + HEADER_SIZE);
+        out.put(payload);
+        buffer.putInt(writePosition + 4, count);
+        buffer.putInt(writePosition + 8, (int) crc.getValue());
+        buffer.putInt(writePosition, payload.length);
+        writePosition += HEADER_SIZE + payload.length;
+        pending++;
+        pendingCount += count;
+        pendingBytes += payload.length;
+        dirty = true;
+        return true;
+    }
+
+    /**
+     * Read the oldest record not acknowledged yet.
+     *
+     * @return the record, or null when every record is acknowledged
+     */
+    Spool.Record peek() {
+        while (readPosition < writePosition) {
+            int length = buffer.getInt(readPosition);
+            if (length > 0) {
+                byte[] payload = new byte[length];
+                ByteBuffer in = buffer.duplicate();
+                in.position(readPosition + HEADER_SIZE);
+                in.get(payload);
+                return new Spool.Record(this, readPosition, payload,
+                        buffer.getInt(readPosition + 4));
+            }
+            readPosition += HEADER_SIZE - length;
+        }
+        return null;
+    }
+
+    /**
+     * Acknowledge the record at the position, it is never read again, even after a restart.
+     */
+    void ack(int position) {
+        int length = buffer.getInt(position);
+        if (length <= 0) {
+            return;
+        }
+        buffer.putInt(position, -length);
+        pending--;
+        pendingCount -= buffer.getInt(position + 4);
+        pendingBytes -= length;
+        dirty = true;
+        if (position == readPosition) {
+            readPosition += HEADER_SIZE + length;
+        }
+    }
+
+    void seal() {
+        sealed = true;
+    }
+
+    /**
+     * Flush the mapped pages to the disk if the segment has changed since the last force.
+     */
+    void force() {
+        if (dirty) {
+            dirty = false;
+            buffer.force();
+        }
+    }
+
+    void close() throws IOException {
+        raf.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        if (!file.delete() && file.exists()) {
+            throw new IOException("can not delete spool segment : " + file);
+        }
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    int getPending() {
+        return pending;
+    }
+
+    long getPendingCount() {
+        return pendingCount;
+    }
+
+    long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+}
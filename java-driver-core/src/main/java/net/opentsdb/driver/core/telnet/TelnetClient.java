@@ -0,0 +1,304 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.telnet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import net.opentsdb.driver.core.codec.TelnetLineSerializer;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.exceptions.BackpressureException;
+import net.opentsdb.driver.core.model.Point;
+
+/**
+ * Puts data points with the opentsdb telnet protocol over a few persistent non-blocking
+ * connections served by one io thread. Every put is written as lines into the direct buffers of
+ * one connection, round robin, and pipelined to the socket without waiting for any answer; the
+ * lines wait in the buffers while a connection is reconnected. When more than
+ * telnetMaxQueuedBytes are queued on a connection, the put blocks up to backpressureTimeout and
+ * then fails with {@link BackpressureException}.
+ */
+public class TelnetClient implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(TelnetClient.class);
+    private static final long SELECT_TIMEOUT = 100;
+    private static final int MAX_LINE_BUFFER = 1024 * 1024;
+
+    /**
+     * The lines of one put, encoded before they are appended to a connection.
+     */
+    private static final class LineBuffer extends ByteArrayOutputStream {
+        LineBuffer() {
+            super(8 * 1024);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    private final InetSocketAddress[] addresses;
+    private final Configuration configuration;
+    private final TelnetConnection[] connections;
+    private final DirectBufferPool pool;
+    private final TelnetLineSerializer serializer = new TelnetLineSerializer();
+    private final ThreadLocal<LineBuffer> lineBuffers = ThreadLocal.withInitial(LineBuffer::new);
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicInteger connectedCount = new AtomicInteger();
+    private Selector selector;
+    private Thread ioThread;
+    private volatile boolean running;
+
+    public TelnetClient(String host, int port, Configuration configuration) {
+        this(Collections.singletonList(InetSocketAddress.createUnresolved(host, port)),
+                configuration);
+    }
+
+    /**
+     * Constructs a client whose connections are spread over the addresses, the connection i goes
+     * to the address i modulo their number.
+     *
+     * @param addresses the telnet addresses of the opentsdb instances, not resolved yet
+     * @param configuration the configuration with the telnet options
+     */
+    public TelnetClient(List<InetSocketAddress> addresses, Configuration configuration) {
+        this.addresses = addresses.toArray(new InetSocketAddress[addresses.size()]);
+        this.configuration = configuration;
+        this.pool = new DirectBufferPool(configuration.getTelnetBufferSize(),
+                configuration.getTelnetConnections() * 4);
+        this.connections = new TelnetConnection[configuration.getTelnetConnections()];
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = new TelnetConnection(i, pool, configuration.getTelnetMaxQueuedBytes());
+        }
+    }
+
+    /**
+     * Start the io thread, the connections are made in the background.
+     */
+    public void start() throws IOException {
+        selector = Selector.open();
+        running = true;
+        ioThread = new Thread(this::run, "opentsdb-telnet-io");
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    /**
+     * Queue the lines of the data points on one connection.
+     *
+     * @param dataPoints the data points to put
+     * @return the number of data points queued
+     * @throws IllegalArgumentException when a data point can not be written as a telnet line
+     * @throws BackpressureException when the connection has too many lines queued
+     */
+    public int write(List<? extends Point> dataPoints)
+            throws IOException, BackpressureException, InterruptedException {
+        if (!running) {
+            throw new IOException("the telnet client is not running");
+        }
+        LineBuffer lines = lineBuffers.get();
+        lines.reset();
+        int count;
+        try {
+            count = serializer.serialize(dataPoints, lines);
+            if (count == 0) {
+                return 0;
+            }
+            TelnetConnection connection = connections[Math.floorMod(next.getAndIncrement(),
+                    connections.length)];
+            if (connection.append(lines.array(), 0, lines.size(), TimeUnit.MILLISECONDS
+                    .toNanos(configuration.getBackpressureTimeout()))) {
+                selector.wakeup();
+            }
+        } finally {
+            if (lines.array().length > MAX_LINE_BUFFER) {
+                lineBuffers.remove();
+            }
+        }
+        return count;
+    }
+
+    private void run() {
+        ByteBuffer scratch = ByteBuffer.allocateDirect(4096);
+        while (running) {
+            long now = System.nanoTime();
+            for (TelnetConnection connection : connections) {
+                if (connection.connectIfDue(selector, addressOf(connection), now)
+                        && connection.isConnected()) {
+                    connected(connection);
+                }
+                if (connection.isConnected()) {
+                    flush(connection, now);
+                }
+                connection.updateInterest();
+            }
+            try {
+                selector.select(SELECT_TIMEOUT);
+            } catch (IOException e) {
+                LOG.error("Telnet selector failed : " + e);
+                continue;
+            }
+            now = System.nanoTime();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                TelnetConnection connection = (TelnetConnection) key.attachment();
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isConnectable()) {
+                        connection.finishConnect();
+                        if (connection.isConnected()) {
+                            connected(connection);
+                        }
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        connection.read(scratch);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        writtenBytes.addAndGet(connection.write());
+                    }
+                } catch (IOException | RuntimeException e) {
+                    lost(connection, now, e);
+                }
+            }
+        }
+        for (TelnetConnection connection : connections) {
+            connection.close();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+
+    private InetSocketAddress addressOf(TelnetConnection connection) {
+        return addresses[connection.getId() % addresses.length];
+    }
+
+    private void connected(TelnetConnection connection) {
+        connectedCount.incrementAndGet();
+        LOG.info("Telnet connection " + connection.getId() + " to " + addressOf(connection)
+                + " is connected");
+    }
+
+    private void flush(TelnetConnection connection, long now) {
+        try {
+            writtenBytes.addAndGet(connection.write());
+        } catch (IOException | RuntimeException e) {
+            lost(connection, now, e);
+        }
+    }
+
+    private void lost(TelnetConnection connection, long now, Exception e) {
+        if (connection.isConnected()) {
+            connectedCount.decrementAndGet();
+        }
+        LOG.warn("Telnet connection " + connection.getId() + " to " + addressOf(connection)
+                + " is lost, reconnecting : " + e);
+        reconnects.incrementAndGet();
+        connection.disconnect(now);
+    }
+
+    /**
+     * Returns the number of the connections which are connected now
+     */
+    public int getConnectedCount() {
+        return connectedCount.get();
+    }
+
+    /**
+     * Returns the number of bytes written to the sockets
+     */
+    public long getWrittenBytes() {
+        return writtenBytes.get();
+    }
+
+    /**
+     * Returns the number of bytes queued and not written yet
+     */
+    public long getQueuedBytes() {
+        long queued = 0;
+        for (TelnetConnection connection : connections) {
+            queued += connection.getQueuedBytes();
+        }
+        return queued;
+    }
+
+    /**
+     * Returns how often a connection was lost or could not be made
+     */
+    public long getReconnectCount() {
+        return reconnects.get();
+    }
+
+    /**
+     * Wait until the queued lines are written, up to the timeout.
+     *
+     * @return true when every line is written
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (getQueuedBytes() > 0) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            selector.wakeup();
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Write the queued lines for up to telnetCloseTimeout and close the connections, see
+     * {@link Configuration}.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        try {
+            if (!flush(configuration.getTelnetCloseTimeout(), TimeUnit.MILLISECONDS)) {
+                LOG.warn(getQueuedBytes() + " bytes of telnet lines are dropped on close");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            ioThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
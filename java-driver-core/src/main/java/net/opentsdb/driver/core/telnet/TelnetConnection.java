@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.telnet;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import net.opentsdb.driver.core.exceptions.BackpressureException;
+import net.opentsdb.driver.core.policies.BackpressurePolicy;
+
+/**
+ * One persistent telnet connection of a {@link TelnetClient}. The callers append lines to the
+ * direct buffers queued here, the io thread writes the queued buffers to the socket in order and
+ * reconnects when the connection is lost; the lines stay queued while the connection is down.
+ * A line is never split across buffers, so the line being written when the connection is lost
+ * is found in the buffer being written. The socket state is only touched by the io thread.
+ */
+final class TelnetConnection {
+    private static final long MIN_RECONNECT_DELAY = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MAX_RECONNECT_DELAY = TimeUnit.SECONDS.toNanos(5);
+
+    private final int id;
+    private final DirectBufferPool pool;
+    private final long maxQueuedBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+    private long queuedBytes;
+
+    // io thread only
+    private SocketChannel channel;
+    private SelectionKey key;
+    private boolean connected;
+    private ByteBuffer writing;
+    private long reconnectAt;
+    private long reconnectDelay = MIN_RECONNECT_DELAY;
+
+    TelnetConnection(int id, DirectBufferPool pool, long maxQueuedBytes) {
+        this.id = id;
+        this.pool = pool;
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    /**
+     * Queue the lines, waiting up to the timeout while more than maxQueuedBytes are queued.
+     *
+     * @return true when nothing was queued before, the io thread should be woken up
+     */
+    boolean append(byte[] lines, int off, int len, long timeoutNanos)
+            throws BackpressureException, InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long nanos = timeoutNanos;
+            while (queuedBytes > 0 && queuedBytes + len > maxQueuedBytes) {
+                if (nanos <= 0) {
+                    throw new BackpressureException(BackpressurePolicy.BLOCK,
+                            "telnet connection " + id + " has " + queuedBytes
+                                    + " bytes queued, the lines are not written in time");
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            boolean wasEmpty = queuedBytes == 0;
+            while (len > 0) {
+                ByteBuffer tail = queue.peekLast();
+                int n = tail == null ? 0 : wholeLines(lines, off, len, tail.remaining());
+                if (n == 0) {
+                    // the next line starts a new buffer, one of its own when it is too long
+                    int line = firstLine(lines, off, len);
+                    tail = line > pool.getBufferSize() ? ByteBuffer.allocateDirect(line)
+                            : pool.acquire();
+                    queue.addLast(tail);
+                    n = wholeLines(lines, off, len, tail.remaining());
+                }
+                tail.put(lines, off, n);
+                off += n;
+                len -= n;
+                queuedBytes += n;
+            }
+            return wasEmpty;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return the bytes of the whole lines at the offset which fit in the room.
+     */
+    private static int wholeLines(byte[] lines, int off, int len, int room) {
+        if (len <= room) {
+            return len;
+        }
+        for (int i = off + room - 1; i >= off; i--) {
+            if (lines[i] == '\n') {
+                return i - off + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Return the bytes of the first line at the offset, its '\n' included.
+     */
+    private static int firstLine(byte[] lines, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            if (lines[i] == '\n') {
+                return i - off + 1;
+            }
+        }
+        return len;
+    }
+
+    boolean hasQueued() {
+        lock.lock();
+        try {
+            return queuedBytes > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getQueuedBytes() {
+        lock.lock();
+        try {
+            return queuedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Start to connect if the connection is down and the reconnect delay is over.
+     *
+     * @return true when a new connection is started
+     */
+    boolean connectIfDue(Selector selector, InetSocketAddress address, long now) {
+        if (channel != null || now < reconnectAt) {
+            return false;
+        }
+        try {
+            // resolved again on every connect, the address of the host may have changed
+            address = new InetSocketAddress(address.getHostString(), address.getPort());
+            if (address.isUnresolved()) {
+                throw new IOException("unresolved telnet host : " + address.getHostString());
+            }
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+            if (channel.connect(address)) {
+                onConnected();
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            disconnect(now);
+            return false;
+        }
+    }
+
+    /**
+     * Finish the connecting, called by the io thread when the socket is connectable.
+     */
+    void finishConnect() throws IOException {
+        if (channel.finishConnect()) {
+            onConnected();
+        }
+    }
+
+    private void onConnected() {
+        connected = true;
+        reconnectDelay = MIN_RECONNECT_DELAY;
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Read and drop what opentsdb answers, the error messages of the bad lines; otherwise the
+     * receive buffer fills up and opentsdb stops reading the lines.
+     *
+     * @return the number of bytes read
+     */
+    int read(ByteBuffer scratch) throws IOException {
+        int total = 0;
+        int n;
+        scratch.clear();
+        while ((n = channel.read(scratch)) > 0) {
+            total += n;
+            scratch.clear();
+        }
+        if (n < 0) {
+            throw new IOException("telnet connection " + id + " closed by opentsdb");
+        }
+        return total;
+    }
+
+    /**
+     * Write the queued buffers until the socket would block.
+     *
+     * @return the number of bytes written
+     */
+    long write() throws IOException {
+        long total = 0;
+        while (true) {
+            if (writing == null) {
+                lock.lock();
+                try {
+                    writing = queue.pollFirst();
+                } finally {
+                    lock.unlock();
+                }
+                if (writing == null) {
+                    return total;
+                }
+                writing.flip();
+            }
+            int written = channel.write(writing);
+            total += written;
+            if (writing.hasRemaining()) {
+                return total;
+            }
+            int size = writing.limit();
+            pool.release(writing);
+            writing = null;
+            lock.lock();
+            try {
+                queuedBytes -= size;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Update the interest of the socket, writable only while lines are queued.
+     */
+    void updateInterest() {
+        if (connected && key.isValid()) {
+            int ops = writing != null || hasQueued()
+                    ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                    : SelectionKey.OP_READ;
+            if (key.interestOps() != ops) {
+                key.interestOps(ops);
+            }
+        }
+    }
+
+    /**
+     * Close the socket after a failure and schedule the reconnect. The line being written is
+     * written again from its start, which is in the same buffer, on the next connection.
+     */
+    void disconnect(long now) {
+        close();
+        if (writing != null) {
+            int start = writing.position();
+            while (start > 0 && writing.get(start - 1) != '\n') {
+                start--;
+            }
+            writing.position(start);
+        }
+        reconnectAt = now + reconnectDelay;
+        reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY);
+    }
+
+    void close() {
+        connected = false;
+        if (key != null) {
+            key.cancel();
+            key = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+            channel = null;
+        }
+    }
+
+    int getId() {
+        return id;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import static org.junit.Assert.fail;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Waits for the background work of the driver in the tests, like the health checks or the
+ * connection eviction.
+ */
+public final class Await {
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    private Await() {
+    }
+
+    /**
+     * Wait till the condition holds, fail when it does not within 10 seconds.
+     *
+     * @param condition the condition to wait for
+     */
+    public static void until(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() >= deadline) {
+                fail("the condition did not hold within " + TIMEOUT + " ms");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
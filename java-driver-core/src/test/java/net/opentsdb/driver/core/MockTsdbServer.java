@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A tiny in-process http server which answers like opentsdb, used to test the driver without a
+ * real opentsdb. Every endpoint answers with the registered status and body, the received request
+ * bodies are recorded for assertion.
+ */
+public class MockTsdbServer implements Closeable {
+
+    /**
+     * The answer of one request.
+     */
+    public interface Handler {
+        Reply handle(String path, String query, String body);
+    }
+
+    public static class Reply {
+        final int status;
+        final String body;
+        final long delay;
+
+        public Reply(int status, String body) {
+            this(status, body, 0);
+        }
+
+        public Reply(int status, String body, long delay) {
+            this.status = status;
+            this.body = body;
+            this.delay = delay;
+        }
+    }
+
+    private final HttpServer server;
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+    private final List<String> bodies = new CopyOnWriteArrayList<>();
+    private final List<String> uris = new CopyOnWriteArrayList<>();
+    private final List<String> encodings = new CopyOnWriteArrayList<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    public MockTsdbServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", this::handle);
+        handle("/api/version", (path, query, body) -> new Reply(200, "{\"version\":\"2.3.0\"}"));
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public MockTsdbServer handle(String path, Handler handler) {
+        handlers.put(path, handler);
+        return this;
+    }
+
+    public List<String> getBodies() {
+        return bodies;
+    }
+
+    public List<String> getUris() {
+        return uris;
+    }
+
+    /**
+     * The Content-Encoding of every request, "identity" when it has none.
+     */
+    public List<String> getEncodings() {
+        return encodings;
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * The number of connections the requests were received on.
+     */
+    public int getConnectionCount() {
+        return clientPorts.size();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        String path = exchange.getRequestURI().getPath();
+        String query = exchange.getRequestURI().getQuery();
+        InputStream in = exchange.getRequestBody();
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        encodings.add(encoding != null ? encoding : "identity");
+        if ("gzip".equals(encoding)) {
+            in = new GZIPInputStream(in);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        String body = new String(out.toByteArray(), TConstants.UTF8_CHARSET);
+        bodies.add(body);
+        uris.add(exchange.getRequestURI().toString());
+
+        Handler handler = handlers.get(path);
+        Reply reply = handler != null ? handler.handle(path, query, body)
+                : new Reply(404, "{\"error\":{\"code\":404,\"message\":\"Endpoint not found\"}}");
+        if (reply.delay > 0) {
+            try {
+                Thread.sleep(reply.delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        byte[] bytes = reply.body == null ? new byte[0]
+                : reply.body.getBytes(TConstants.UTF8_CHARSET);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(reply.status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
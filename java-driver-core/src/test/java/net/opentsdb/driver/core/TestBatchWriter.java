@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.Test;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.exceptions.ErrorValueTypeException;
+import net.opentsdb.driver.core.model.DataPoint;
+import net.opentsdb.driver.core.model.DataPointBatch;
+import net.opentsdb.driver.core.model.Point;
+import net.opentsdb.driver.core.model.PrimitiveDataPoint;
+import net.opentsdb.driver.core.model.PutResult;
+import net.opentsdb.driver.core.model.TagSet;
+
+public class TestBatchWriter {
+
+    /**
+     * A session which records the put batches instead of sending them to opentsdb.
+     */
+    static class RecordSession extends Session {
+        final List<List<? extends Point>> batches = new CopyOnWriteArrayList<>();
+
+        RecordSession(Configuration configuration) {
+            super("localhost", TConstants.DEFAULT_PORT, configuration);
+        }
+
+        @Override
+        public PutResult put(List<? extends Point> dataPoints, boolean sync, boolean detailed) {
+            batches.add(dataPoints);
+            int success = 0;
+            for (Point dataPoint : dataPoints) {
+                success += dataPoint.count();
+            }
+            return new PutResult(0, success, new ArrayList<>());
+        }
+    }
+
+    private DataPoint dataPoint(long ts) throws ErrorValueTypeException {
+        HashMap<String, String> tags = new HashMap<>();
+        tags.put("tagk1", "tagv1");
+        return new DataPoint.Builder().setMetric("metric").setTimestamp(ts).setTags(tags)
+                .setValue(ts).build();
+    }
+
+    @Test
+    public void testFlushBySize() throws Exception {
+        Configuration configuration =
+                new Configuration.Builder().batchSize(10).batchLinger(60000).build();
+        RecordSession session = new RecordSession(configuration);
+        BatchWriter batchWriter = session.newBatchWriter();
+        for (int i = 0; i < 25; i++) {
+            batchWriter.write(dataPoint(i));
+        }
+        batchWriter.flush();
+        assertTrue(session.batches.size() == 3);
+        assertTrue(batchWriter.getFlushedCount() == 25);
+        session.close();
+        assertTrue(batchWriter.isClosed());
+    }
+
+    @Test
+    public void testFlushByBytes() throws Exception {
+        long pointSize = dataPoint(0).size();
+        Configuration configuration = new Configuration.Builder().batchSize(1000)
+                .batchBytes(pointSize * 4).batchLinger(60000).build();
+        RecordSession session = new RecordSession(configuration);
+        BatchWriter batchWriter = session.newBatchWriter();
+        for (int i = 0; i < 8; i++) {
+            batchWriter.write(dataPoint(i));
+        }
+        batchWriter.flush();
+        assertTrue(session.batches.size() == 2);
+        assertTrue(session.batches.get(0).size() == 4);
+        session.close();
+    }
+
+    @Test
+    public void testFlushByLinger() throws Exception {
+        Configuration configuration =
+                new Configuration.Builder().batchSize(1000).batchLinger(20).build();
+        RecordSession session = new RecordSession(configuration);
+        BatchWriter batchWriter = session.newBatchWriter();
+        batchWriter.write(dataPoint(1));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (session.batches.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(session.batches.size() == 1);
+        batchWriter.close();
+    }
+
+    @Test
+    public void testPrimitivePoints() throws Exception {
+        Configuration configuration =
+                new Configuration.Builder().batchSize(10).batchLinger(60000).build();
+        RecordSession session = new RecordSession(configuration);
+        BatchWriter batchWriter = session.newBatchWriter();
+        TagSet tags = TagSet.of("tagk1", "tagv1");
+        for (int i = 0; i < 10; i++) {
+            batchWriter.write(new PrimitiveDataPoint("metric", tags, i, i * 0.5));
+        }
+        batchWriter.write(dataPoint(10));
+        batchWriter.flush();
+        assertTrue(session.batches.size() == 2);
+        assertTrue(batchWriter.getFlushedCount() == 11);
+        session.close();
+    }
+
+    @Test
+    public void testDataPointBatch() throws Exception {
+        Configuration configuration =
+                new Configuration.Builder().batchSize(100).batchLinger(60000).build();
+        RecordSession session = new RecordSession(configuration);
+        BatchWriter batchWriter = session.newBatchWriter();
+        DataPointBatch.Builder builder =
+                new DataPointBatch.Builder().setMetric("metric").setTags(TagSet.of("k", "v"));
+        for (int i = 0; i < 60; i++) {
+            builder.add(i, (double) i);
+        }
+        batchWriter.write(builder.build());
+        assertTrue(session.batches.isEmpty());
+        batchWriter.write(builder.build());
+        batchWriter.flush();
+        assertTrue(session.batches.size() == 1);
+        assertTrue(batchWriter.getWrittenCount() == 120);
+        assertTrue(batchWriter.getFlushedCount() == 120);
+        session.close();
+    }
+
+    @Test
+    public void testCloseFlushes() throws Exception {
+        Configuration configuration =
+                new Configuration.Builder().batchSize(1000).batchLinger(60000).build();
+        RecordSession session = new RecordSession(configuration);
+        BatchWriter batchWriter = session.newBatchWriter();
+        batchWriter.write(dataPoint(1));
+        batchWriter.write(dataPoint(2));
+        batchWriter.close();
+        assertTrue(session.batches.size() == 1);
+        assertTrue(batchWriter.getWrittenCount() == 2);
+        assertTrue(batchWriter.getBatchCount() == 1);
+    }
+
+    @Test
+    public void testCloseWaitsForLinger() throws Exception {
+        Configuration configuration = new Configuration.Builder().batchSize(1000)
+                .batchLinger(5).batchBufferNum(1).batchThreadCount(1).build();
+        RecordSession session = new RecordSession(configuration) {
+            @Override
+            public PutResult put(List<? extends Point> dataPoints, boolean sync,
+                    boolean detailed) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.put(dataPoints, sync, detailed);
+            }
+        };
+        BatchWriter batchWriter = session.newBatchWriter();
+        // one batch being put, one queued, and the linger check blocked queueing the third
+        for (int i = 0; i < 3; i++) {
+            batchWriter.write(dataPoint(i));
+            Thread.sleep(30);
+        }
+        batchWriter.close();
+        assertTrue(batchWriter.getFlushedCount() == 3);
+        assertTrue(batchWriter.getFailedCount() == 0);
+        try {
+            batchWriter.write(dataPoint(3));
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(batchWriter.getWrittenCount() == 3);
+        }
+    }
+
+    @Test
+    public void testPartialFailure() throws Exception {
+        MockTsdbServer server = new MockTsdbServer();
+        // refuses the data point at timestamp 1
+        server.handle("/api/put", (path, query, body) -> {
+            JSONArray points = JSON.parseArray(body);
+            JSONArray errors = new JSONArray();
+            for (int i = 0; i < points.size(); i++) {
+                JSONObject point = points.getJSONObject(i);
+                if (point.getLongValue("timestamp") == 1) {
+                    JSONObject failed = new JSONObject();
+                    failed.put("datapoint", point);
+                    failed.put("error", "Unable to parse value to a number");
+                    errors.add(failed);
+                }
+            }
+            JSONObject result = new JSONObject();
+            result.put("success", points.size() - errors.size());
+            result.put("failed", errors.size());
+            result.put("errors", errors);
+            return new MockTsdbServer.Reply(errors.isEmpty() ? 200 : 400, result.toJSONString());
+        });
+        List<Point> deadLetters = new CopyOnWriteArrayList<>();
+        Configuration configuration = new Configuration.Builder().socketTimeout(5000)
+                .connectionTimeout(1000).batchSize(5).batchLinger(60000)
+                .deadLetterHandler((dataPoints, errors) -> deadLetters.addAll(dataPoints))
+                .build();
+        Session session = new Session("127.0.0.1", server.getPort(), configuration);
+        session.start();
+        try {
+            BatchWriter batchWriter = session.newBatchWriter();
+            for (int i = 0; i < 10; i++) {
+                batchWriter.write(dataPoint(i));
+            }
+            batchWriter.flush();
+            assertTrue(batchWriter.getBatchCount() == 2);
+            assertTrue(batchWriter.getWrittenCount() == 10);
+            assertTrue(batchWriter.getFlushedCount() == 9);
+            assertTrue(batchWriter.getRejectedCount() == 1);
+            assertTrue(batchWriter.getSpooledCount() == 0);
+            assertTrue(batchWriter.getFailedCount() == 0);
+            assertTrue(deadLetters.size() == 1);
+            batchWriter.close();
+        } finally {
+            session.close();
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.model.Point;
+import net.opentsdb.driver.core.model.PrimitiveDataPoint;
+import net.opentsdb.driver.core.model.TagSet;
+
+public class TestCircuitBreaker {
+    private static final String PUT_RESULT = "{\"success\":1,\"failed\":0,\"errors\":[]}";
+    private static final String SERVER_ERROR =
+            "{\"error\":{\"code\":500,\"message\":\"Storage exception\"}}";
+    private static final String BAD_REQUEST =
+            "{\"error\":{\"code\":400,\"message\":\"Unable to parse the request\"}}";
+
+    private MockTsdbServer healthy;
+    private MockTsdbServer sick;
+    private volatile MockTsdbServer.Reply sickReply;
+
+    @Before
+    public void init() throws Exception {
+        healthy = new MockTsdbServer();
+        healthy.handle("/api/put", (path, query, body) -> new MockTsdbServer.Reply(200, PUT_RESULT));
+        sick = new MockTsdbServer();
+        sickReply = new MockTsdbServer.Reply(500, SERVER_ERROR);
+        sick.handle("/api/put", (path, query, body) -> sickReply);
+        sick.handle("/api/version", (path, query, body) -> sickReply.status == 200
+                ? new MockTsdbServer.Reply(200, "{\"version\":\"2.3.0\"}") : sickReply);
+    }
+
+    @After
+    public void end() throws Exception {
+        healthy.close();
+        sick.close();
+    }
+
+    private List<Point> points() {
+        List<Point> dataPoints = new ArrayList<>();
+        dataPoints.add(new PrimitiveDataPoint("metric", TagSet.of("k", "v"), 1L, 1L));
+        return dataPoints;
+    }
+
+    private Cluster cluster(Configuration.Builder configuration) {
+        return Cluster.builder().addContactPoint("127.0.0.1", healthy.getPort())
+                .addContactPoint("127.0.0.1", sick.getPort())
+                .withConfiguration(configuration.socketTimeout(5000).connectionTimeout(1000)
+                        .circuitBreakerWindow(4).circuitBreakerOpenTime(200)
+                        .circuitBreakerRampUpTime(300).build())
+                .build();
+    }
+
+    @Test
+    public void testEjectAndRecover() throws Exception {
+        Cluster cluster = cluster(new Configuration.Builder().putRetryNum(3));
+        try {
+            Session session = cluster.connect();
+            Node node = session.getNodes().get(1);
+            // the failed puts are retried on the other node
+            for (int i = 0; i < 20; i++) {
+                session.put(points(), true, true);
+            }
+            assertTrue(node.getState() == NodeState.EJECTED);
+            int sickCount = sick.getRequestCount();
+            for (int i = 0; i < 20; i++) {
+                session.put(points(), true, true);
+            }
+            // only the version probes go to the ejected node
+            assertTrue(sick.getRequestCount() - sickCount <= 2);
+
+            sickReply = new MockTsdbServer.Reply(200, PUT_RESULT);
+            Await.until(() -> node.getState() != NodeState.EJECTED);
+            assertTrue(node.getState() == NodeState.RECOVERING);
+            Await.until(() -> {
+                try {
+                    session.put(points(), true, true);
+                } catch (Exception e) {
+                    return false;
+                }
+                return node.getState() == NodeState.UP;
+            });
+            assertTrue(node.getState() == NodeState.UP);
+            sickCount = sick.getRequestCount();
+            for (int i = 0; i < 20; i++) {
+                session.put(points(), true, true);
+            }
+            assertTrue(sick.getRequestCount() - sickCount == 10);
+        } finally {
+            cluster.close();
+        }
+    }
+
+    @Test
+    public void testSlowCall() throws Exception {
+        sickReply = new MockTsdbServer.Reply(200, PUT_RESULT, 100);
+        Cluster cluster = cluster(new Configuration.Builder().circuitBreakerSlowCallTime(50));
+        try {
+            Session session = cluster.connect();
+            for (int i = 0; i < 20; i++) {
+                session.put(points(), true, true);
+            }
+            assertTrue(session.getNodes().get(1).getState() == NodeState.EJECTED);
+            assertTrue(session.getNodes().get(0).getState() == NodeState.UP);
+        } finally {
+            cluster.close();
+        }
+    }
+
+    @Test
+    public void testBadRequestKeepsNodeUp() throws Exception {
+        sickReply = new MockTsdbServer.Reply(400, BAD_REQUEST);
+        Cluster cluster = cluster(new Configuration.Builder().putRetryNum(0));
+        try {
+            Session session = cluster.connect();
+            for (int i = 0; i < 20; i++) {
+                try {
+                    session.put(points(), true, true);
+                } catch (Exception e) {
+                    // the bad requests fail, the node is not to blame
+                }
+            }
+            assertTrue(session.getNodes().get(1).getState() == NodeState.UP);
+        } finally {
+            cluster.close();
+        }
+    }
+
+    @Test
+    public void testAllNodesEjected() throws Exception {
+        Configuration configuration = new Configuration.Builder().socketTimeout(5000)
+                .connectionTimeout(1000).circuitBreakerWindow(2).putRetryNum(0).build();
+        Session session = new Session("127.0.0.1", sick.getPort(), configuration);
+        session.start();
+        try {
+            for (int i = 0; i < 5; i++) {
+                try {
+                    session.put(points(), true, true);
+                } catch (Exception e) {
+                    // failed by the node
+                }
+            }
+            assertTrue(session.getNodes().get(0).getState() == NodeState.EJECTED);
+            // the only node is still tried
+            int count = sick.getRequestCount();
+            sickReply = new MockTsdbServer.Reply(200, PUT_RESULT);
+            assertTrue(session.put(points(), true, true).getSuccess() == 1);
+            assertTrue(sick.getRequestCount() > count);
+        } finally {
+            session.close();
+        }
+    }
+}
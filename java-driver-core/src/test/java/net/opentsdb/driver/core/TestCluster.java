@@ -1,8 +1,11 @@
 package net.opentsdb.driver.core;
 
+import static org.junit.Assert.assertTrue;
 import java.io.IOException;
 import org.junit.Test;
 import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.model.PrimitiveDataPoint;
+import net.opentsdb.driver.core.model.TagSet;
 
 public class TestCluster {
     private final String host = "localhost";
@@ -21,4 +24,40 @@ public class TestCluster {
             cluster.close();
         }
     }
+
+    @Test
+    public void testSharedConnections() throws Exception {
+        MockTsdbServer server = new MockTsdbServer();
+        server.handle("/api/put", (path, query, body) -> new MockTsdbServer.Reply(200,
+                "{\"success\":1,\"failed\":0,\"errors\":[]}"));
+        Configuration configuration = new Configuration.Builder().socketTimeout(5000)
+                .connectionTimeout(1000).keepaliveTimeout(10000).build();
+        Cluster cluster = new Cluster.Builder().addContactPoint("127.0.0.1", server.getPort())
+                .withConfiguration(configuration).build();
+        try {
+            Session first = cluster.connect();
+            Session second = cluster.newSession();
+            Session third = cluster.newSession();
+            PrimitiveDataPoint point =
+                    new PrimitiveDataPoint("metric", TagSet.of("k", "v"), 1L, 1L);
+            // one after another the sessions lease the same idle connection of the shared pool
+            for (Session session : new Session[] {first, second, third, first}) {
+                assertTrue(session.put(point).getSuccess() == 1);
+            }
+            assertTrue(server.getRequestCount() == 4);
+            assertTrue(server.getConnectionCount() == 1);
+
+            // a closed session leaves the connections to the others
+            cluster.close(second);
+            assertTrue(!second.isRunning());
+            assertTrue(third.put(point).getSuccess() == 1);
+            assertTrue(server.getConnectionCount() == 1);
+
+            cluster.close();
+            assertTrue(!first.isRunning() && !third.isRunning());
+        } finally {
+            cluster.close();
+            server.close();
+        }
+    }
 }
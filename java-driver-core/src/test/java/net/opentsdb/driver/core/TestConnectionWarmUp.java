@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import static org.junit.Assert.assertTrue;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.model.Point;
+import net.opentsdb.driver.core.model.PrimitiveDataPoint;
+import net.opentsdb.driver.core.model.PutResult;
+import net.opentsdb.driver.core.model.TagSet;
+
+public class TestConnectionWarmUp {
+    private static final String PUT_RESULT = "{\"success\":1,\"failed\":0,\"errors\":[]}";
+
+    private MockTsdbServer server;
+
+    @Before
+    public void init() throws Exception {
+        server = new MockTsdbServer();
+        server.handle("/api/put",
+                (path, query, body) -> new MockTsdbServer.Reply(200, PUT_RESULT, 100));
+    }
+
+    @After
+    public void end() throws Exception {
+        server.close();
+    }
+
+    private Point point() {
+        return new PrimitiveDataPoint("metric", TagSet.of("k", "v"), 1L, 1L);
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        Configuration configuration = new Configuration.Builder().socketTimeout(5000)
+                .connectionTimeout(1000).keepaliveTimeout(60000).warmUpConnections(4).build();
+        Session session = new Session("127.0.0.1", server.getPort(), configuration);
+        session.start();
+        try {
+            Node node = session.getNodes().get(0);
+            // the connections are open before the first request, no request is sent for it
+            assertTrue(node.getIdleConnections() == 4);
+            assertTrue(server.getRequestCount() == 0);
+
+            List<CompletableFuture<PutResult>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(session.putAsync(point()));
+            }
+            for (CompletableFuture<PutResult> future : futures) {
+                assertTrue(future.get(10, TimeUnit.SECONDS).getSuccess() == 1);
+            }
+            assertTrue(server.getConnectionCount() <= 4);
+            Await.until(() -> node.getIdleConnections() == 4);
+            assertTrue(node.getIdleConnections() == 4);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testMinIdle() throws Exception {
+        // without keepalive every request uses up its connection, the keeper opens new ones
+        Configuration configuration = new Configuration.Builder().socketTimeout(5000)
+                .connectionTimeout(1000).minIdleConnections(2).build();
+        Session session = new Session("127.0.0.1", server.getPort(), configuration);
+        session.start();
+        try {
+            Node node = session.getNodes().get(0);
+            Await.until(() -> node.getIdleConnections() == 2);
+            assertTrue(node.getIdleConnections() == 2);
+
+            assertTrue(session.putAsync(point()).get(10, TimeUnit.SECONDS).getSuccess() == 1);
+            assertTrue(session.putAsync(point()).get(10, TimeUnit.SECONDS).getSuccess() == 1);
+            Await.until(() -> node.getIdleConnections() == 2 && server.getConnectionCount() == 2);
+            assertTrue(node.getIdleConnections() == 2);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testUnreachableNode() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Configuration configuration = new Configuration.Builder().connectionTimeout(200)
+                .warmUpConnections(4).build();
+        Session session = new Session("127.0.0.1", port, configuration);
+        long start = System.nanoTime();
+        session.start();
+        try {
+            // start does not fail nor wait longer than the connection timeout allows
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+            assertTrue(session.getNodes().get(0).getIdleConnections() == 0);
+        } finally {
+            session.close();
+        }
+    }
+}
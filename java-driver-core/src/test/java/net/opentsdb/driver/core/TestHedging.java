@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.http.HttpApiEndpoint;
+import net.opentsdb.driver.core.model.Aggregator;
+import net.opentsdb.driver.core.model.MetricQuery;
+import net.opentsdb.driver.core.model.Point;
+import net.opentsdb.driver.core.model.PrimitiveDataPoint;
+import net.opentsdb.driver.core.model.Query;
+import net.opentsdb.driver.core.model.QueryResult;
+import net.opentsdb.driver.core.model.TagSet;
+import net.opentsdb.driver.core.policies.PercentileHedgingPolicy;
+
+public class TestHedging {
+    private static final String QUERY_RESULT =
+            "[{\"metric\":\"metric\",\"tags\":{},\"aggregateTags\":[],\"dps\":{\"1\":1}}]";
+    private static final String PUT_RESULT = "{\"success\":1,\"failed\":0,\"errors\":[]}";
+    private static final long SLOW = 3000;
+
+    private MockTsdbServer fast;
+    private MockTsdbServer slow;
+    private Cluster cluster;
+
+    @Before
+    public void init() throws Exception {
+        fast = new MockTsdbServer();
+        fast.handle("/api/query",
+                (path, query, body) -> new MockTsdbServer.Reply(200, QUERY_RESULT));
+        slow = new MockTsdbServer();
+        slow.handle("/api/query",
+                (path, query, body) -> new MockTsdbServer.Reply(200, QUERY_RESULT, SLOW));
+    }
+
+    @After
+    public void end() throws Exception {
+        if (cluster != null) {
+            cluster.close();
+        }
+        fast.close();
+        slow.close();
+    }
+
+    private Query query() {
+        List<MetricQuery> metricQueries = new ArrayList<>();
+        metricQueries.add(
+                new MetricQuery.Builder().metric("metric").aggregator(Aggregator.sum).build());
+        return new Query.Builder().start(0L).sub(metricQueries).build();
+    }
+
+    private Configuration.Builder configuration(PercentileHedgingPolicy policy) {
+        return new Configuration.Builder().socketTimeout(5000).connectionTimeout(1000)
+                .hedgingPolicy(policy);
+    }
+
+    @Test
+    public void testHedgeSlowNode() throws Exception {
+        PercentileHedgingPolicy policy = new PercentileHedgingPolicy.Builder().maxDelay(50).build();
+        cluster = Cluster.builder().addContactPoint("127.0.0.1", fast.getPort())
+                .addContactPoint("127.0.0.1", slow.getPort())
+                .withConfiguration(configuration(policy).build()).build();
+        Session session = cluster.connect();
+        for (int i = 0; i < 4; i++) {
+            long start = System.nanoTime();
+            List<QueryResult> results = i % 2 == 0 ? session.query(query())
+                    : session.queryAsync(query()).get(10, TimeUnit.SECONDS);
+            assertTrue(results.size() == 1);
+            // the duplicate to the fast node answers long before the slow node
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < SLOW / 2);
+        }
+        // round robin sends every second query to the slow node first
+        assertTrue(slow.getRequestCount() >= 2);
+        assertTrue(policy.getHedgeCount() >= 2 && policy.getHedgeCount() <= 4);
+        assertTrue(fast.getRequestCount() >= 4);
+    }
+
+    @Test
+    public void testHedgeSingleNode() throws Exception {
+        // the first request is stuck, the duplicate goes over another connection
+        AtomicInteger requests = new AtomicInteger();
+        fast.handle("/api/query", (path, query, body) -> new MockTsdbServer.Reply(200,
+                QUERY_RESULT, requests.getAndIncrement() == 0 ? SLOW : 0));
+        fast.handle("/api/put", (path, query, body) -> new MockTsdbServer.Reply(200, PUT_RESULT));
+        PercentileHedgingPolicy policy = new PercentileHedgingPolicy.Builder().maxDelay(50).build();
+        Session session = new Session("127.0.0.1", fast.getPort(), configuration(policy).build());
+        session.start();
+        try {
+            long start = System.nanoTime();
+            assertTrue(session.queryAsync(query()).get(10, TimeUnit.SECONDS).size() == 1);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < SLOW / 2);
+            assertTrue(policy.getHedgeCount() == 1);
+            assertTrue(fast.getRequestCount() == 2);
+
+            // the writes are never duplicated
+            List<Point> points = new ArrayList<>();
+            points.add(new PrimitiveDataPoint("metric", TagSet.of("k", "v"), 1L, 1L));
+            assertTrue(session.put(points, true, true).getSuccess() == 1);
+            assertTrue(policy.getHedgeCount() == 1);
+            assertTrue(fast.getRequestCount() == 3);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testNoHedgeForFastQueries() throws Exception {
+        PercentileHedgingPolicy policy =
+                new PercentileHedgingPolicy.Builder().minDelay(200).build();
+        Session session = new Session("127.0.0.1", fast.getPort(), configuration(policy).build());
+        session.start();
+        try {
+            for (int i = 0; i < 200; i++) {
+                assertTrue(session.query(query()).size() == 1);
+            }
+            // the queries are answered long before the min delay, and the percentile is known
+            assertTrue(policy.getHedgeCount() == 0);
+            assertTrue(fast.getRequestCount() == 200);
+            assertTrue(policy.getThreshold(HttpApiEndpoint.QUERY, TimeUnit.MILLISECONDS) >= 0);
+        } finally {
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import static org.junit.Assert.assertTrue;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.exceptions.BackpressureException;
+import net.opentsdb.driver.core.model.DataPoint;
+import net.opentsdb.driver.core.model.PutResult;
+import net.opentsdb.driver.core.policies.BackpressurePolicy;
+
+public class TestInFlightLimiter {
+
+    private InFlightLimiter limiter(int requests, long bytes, int pending,
+            BackpressurePolicy policy) {
+        return new InFlightLimiter(new Configuration.Builder().maxInFlightRequests(requests)
+                .maxInFlightBytes(bytes).maxPendingRequests(pending).backpressurePolicy(policy)
+                .backpressureTimeout(50).build());
+    }
+
+    private static boolean failedWith(CompletableFuture<?> future, BackpressurePolicy policy)
+            throws InterruptedException {
+        try {
+            future.get();
+            return false;
+        } catch (ExecutionException e) {
+            return e.getCause() instanceof BackpressureException
+                    && ((BackpressureException) e.getCause()).getPolicy() == policy;
+        }
+    }
+
+    @Test
+    public void testDisabled() {
+        InFlightLimiter limiter = new InFlightLimiter(new Configuration.Builder().build());
+        assertTrue(!limiter.isEnabled());
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(limiter.acquire(100).isDone());
+        }
+        assertTrue(limiter.getInFlightRequests() == 0);
+    }
+
+    @Test
+    public void testPendingGrantedInOrder() throws Exception {
+        InFlightLimiter limiter = limiter(2, 0, 10, BackpressurePolicy.BLOCK);
+        InFlightLimiter.Permit p1 = limiter.acquire(10).get();
+        limiter.acquire(10).get();
+        CompletableFuture<InFlightLimiter.Permit> f3 = limiter.acquire(10);
+        CompletableFuture<InFlightLimiter.Permit> f4 = limiter.acquire(10);
+        assertTrue(!f3.isDone() && !f4.isDone());
+        assertTrue(limiter.getPendingRequests() == 2);
+        limiter.release(p1);
+        limiter.release(p1);
+        assertTrue(f3.isDone() && !f4.isDone());
+        assertTrue(limiter.getInFlightRequests() == 2);
+        assertTrue(limiter.getInFlightBytes() == 20);
+    }
+
+    @Test
+    public void testBytes() throws Exception {
+        InFlightLimiter limiter = limiter(0, 100, 10, BackpressurePolicy.BLOCK);
+        InFlightLimiter.Permit big = limiter.acquire(500).get();
+        CompletableFuture<InFlightLimiter.Permit> small = limiter.acquire(10);
+        assertTrue(!small.isDone());
+        limiter.release(big);
+        assertTrue(small.isDone());
+    }
+
+    @Test
+    public void testBlockTimeout() throws Exception {
+        InFlightLimiter limiter = limiter(1, 0, 0, BackpressurePolicy.BLOCK);
+        limiter.acquire(1).get();
+        long start = System.nanoTime();
+        try {
+            limiter.acquireSync(1);
+            assertTrue(false);
+        } catch (BackpressureException e) {
+            assertTrue(e.getPolicy() == BackpressurePolicy.BLOCK);
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertTrue(limiter.getBlockedCount() == 1);
+        assertTrue(limiter.getTimeoutCount() == 1);
+    }
+
+    @Test
+    public void testSyncTimeoutQueued() throws Exception {
+        InFlightLimiter limiter = limiter(1, 0, 10, BackpressurePolicy.BLOCK);
+        InFlightLimiter.Permit p1 = limiter.acquire(1).get();
+        long start = System.nanoTime();
+        try {
+            // the pending queue has room, so the caller waits queued, not blocked
+            limiter.acquireSync(1);
+            assertTrue(false);
+        } catch (BackpressureException e) {
+            assertTrue(e.getPolicy() == BackpressurePolicy.BLOCK);
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertTrue(limiter.getBlockedCount() == 0);
+        assertTrue(limiter.getTimeoutCount() == 1);
+        // the cancelled waiter gives back the permit it is granted
+        limiter.release(p1);
+        assertTrue(limiter.getInFlightRequests() == 0);
+        assertTrue(limiter.getPendingRequests() == 0);
+    }
+
+    @Test
+    public void testQueuedDoesNotBlock() throws Exception {
+        InFlightLimiter limiter = limiter(1, 0, 0, BackpressurePolicy.BLOCK);
+        InFlightLimiter.Permit p1 = limiter.acquire(1).get();
+        long start = System.nanoTime();
+        CompletableFuture<InFlightLimiter.Permit> resend = limiter.acquireQueued(1);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(40));
+        assertTrue(!resend.isDone());
+        assertTrue(limiter.getBlockedCount() == 0);
+        limiter.release(p1);
+        assertTrue(resend.isDone() && !resend.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        InFlightLimiter limiter = limiter(1, 0, 2, BackpressurePolicy.DROP_OLDEST);
+        limiter.acquire(1).get();
+        CompletableFuture<InFlightLimiter.Permit> f2 = limiter.acquire(1);
+        CompletableFuture<InFlightLimiter.Permit> f3 = limiter.acquire(1);
+        CompletableFuture<InFlightLimiter.Permit> f4 = limiter.acquire(1);
+        assertTrue(failedWith(f2, BackpressurePolicy.DROP_OLDEST));
+        assertTrue(!f3.isDone() && !f4.isDone());
+        assertTrue(limiter.getDroppedOldestCount() == 1);
+    }
+
+    @Test
+    public void testDropNewestAndFailFast() throws Exception {
+        InFlightLimiter limiter = limiter(1, 0, 1, BackpressurePolicy.DROP_NEWEST);
+        limiter.acquire(1).get();
+        CompletableFuture<InFlightLimiter.Permit> f2 = limiter.acquire(1);
+        assertTrue(failedWith(limiter.acquire(1), BackpressurePolicy.DROP_NEWEST));
+        assertTrue(!f2.isDone());
+        assertTrue(limiter.getDroppedNewestCount() == 1);
+
+        limiter = limiter(1, 0, 10, BackpressurePolicy.FAIL_FAST);
+        limiter.acquire(1).get();
+        assertTrue(failedWith(limiter.acquire(1), BackpressurePolicy.FAIL_FAST));
+        assertTrue(limiter.getFailFastCount() == 1);
+        assertTrue(limiter.getPendingRequests() == 0);
+    }
+
+    @Test
+    public void testSessionFailFast() throws Exception {
+        MockTsdbServer server = new MockTsdbServer();
+        server.handle("/api/put", (path, query, body) -> new MockTsdbServer.Reply(200,
+                "{\"success\":1,\"failed\":0,\"errors\":[]}", 300));
+        Configuration configuration = new Configuration.Builder().socketTimeout(5000)
+                .connectionTimeout(1000).maxInFlightRequests(1)
+                .backpressurePolicy(BackpressurePolicy.FAIL_FAST).build();
+        Session session = new Session("127.0.0.1", server.getPort(), configuration);
+        session.start();
+        try {
+            HashMap<String, String> tags = new HashMap<>();
+            tags.put("tagk1", "tagv1");
+            DataPoint dataPoint = new DataPoint.Builder().setMetric("metric").setTimestamp(1L)
+                    .setTags(tags).setValue(1).build();
+            CompletableFuture<PutResult> first = session.putAsync(dataPoint);
+            assertTrue(failedWith(session.putAsync(dataPoint), BackpressurePolicy.FAIL_FAST));
+            assertTrue(first.get(10, TimeUnit.SECONDS).getSuccess() == 1);
+            assertTrue(session.getInFlightLimiter().getInFlightRequests() == 0);
+            assertTrue(session.put(dataPoint).getSuccess() == 1);
+            assertTrue(session.getInFlightLimiter().getFailFastCount() == 1);
+        } finally {
+            session.close();
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.model.Point;
+import net.opentsdb.driver.core.model.PrimitiveDataPoint;
+import net.opentsdb.driver.core.model.PutResult;
+import net.opentsdb.driver.core.model.TagSet;
+import net.opentsdb.driver.core.policies.LeastOutstandingPolicy;
+import net.opentsdb.driver.core.policies.PowerOfTwoChoicesPolicy;
+import net.opentsdb.driver.core.policies.RoundRobinPolicy;
+
+public class TestLoadBalancing {
+    private MockTsdbServer fast;
+    private MockTsdbServer slow;
+
+    private static final String PUT_RESULT = "{\"success\":1,\"failed\":0,\"errors\":[]}";
+
+    @Before
+    public void init() throws Exception {
+        fast = new MockTsdbServer();
+        fast.handle("/api/put", (path, query, body) -> new MockTsdbServer.Reply(200, PUT_RESULT));
+        slow = new MockTsdbServer();
+        slow.handle("/api/put",
+                (path, query, body) -> new MockTsdbServer.Reply(200, PUT_RESULT, 50));
+    }
+
+    @After
+    public void end() throws Exception {
+        fast.close();
+        slow.close();
+    }
+
+    private List<Point> points() {
+        List<Point> dataPoints = new ArrayList<>();
+        dataPoints.add(new PrimitiveDataPoint("metric", TagSet.of("k", "v"), 1L, 1L));
+        return dataPoints;
+    }
+
+    private Configuration.Builder configuration() {
+        return new Configuration.Builder().socketTimeout(5000).connectionTimeout(1000);
+    }
+
+    private Cluster cluster(Configuration configuration) {
+        return Cluster.builder().addContactPoint("127.0.0.1", fast.getPort())
+                .addContactPoint("127.0.0.1", slow.getPort()).withConfiguration(configuration)
+                .build();
+    }
+
+    @Test
+    public void testRoundRobin() throws Exception {
+        Cluster cluster = cluster(configuration().build());
+        try {
+            Session session = cluster.connect();
+            assertTrue(session.getNodes().size() == 2);
+            for (int i = 0; i < 10; i++) {
+                session.put(points(), false, false);
+            }
+            assertTrue(fast.getRequestCount() == 5);
+            assertTrue(slow.getRequestCount() == 5);
+            for (Node node : session.getNodes()) {
+                assertTrue(node.getRequestCount() == 5);
+                assertTrue(node.getOutstanding() == 0);
+                assertTrue(node.getLatencyEwma(TimeUnit.NANOSECONDS) > 0);
+            }
+            assertTrue(session.getNodes().get(1).getLatencyEwma(TimeUnit.MILLISECONDS) >= 40);
+        } finally {
+            cluster.close();
+        }
+    }
+
+    @Test
+    public void testLeastOutstanding() throws Exception {
+        Cluster cluster = cluster(configuration()
+                .loadBalancingPolicy(new LeastOutstandingPolicy()).build());
+        try {
+            Session session = cluster.connect();
+            // connect to both nodes first
+            session.put(points(), false, false);
+            session.put(points(), false, false);
+            int fastCount = fast.getRequestCount();
+            int slowCount = slow.getRequestCount();
+            List<CompletableFuture<PutResult>> results = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                results.add(session.putAsync(points(), false, false));
+                Thread.sleep(5);
+            }
+            for (CompletableFuture<PutResult> result : results) {
+                result.get(10, TimeUnit.SECONDS);
+            }
+            // the slow node holds its requests longer, so it is chosen less
+            fastCount = fast.getRequestCount() - fastCount;
+            slowCount = slow.getRequestCount() - slowCount;
+            assertTrue(fastCount + slowCount == 40);
+            assertTrue(fastCount > slowCount * 2);
+        } finally {
+            cluster.close();
+        }
+    }
+
+    @Test
+    public void testPowerOfTwoChoices() throws Exception {
+        Cluster cluster = cluster(configuration()
+                .loadBalancingPolicy(new PowerOfTwoChoicesPolicy()).build());
+        try {
+            Session session = cluster.connect();
+            for (int i = 0; i < 20; i++) {
+                session.put(points(), false, false);
+            }
+            // both nodes are tried, then the fast one wins every choice of the two
+            assertTrue(slow.getRequestCount() >= 1);
+            assertTrue(fast.getRequestCount() >= 18);
+        } finally {
+            cluster.close();
+        }
+    }
+
+    @Test
+    public void testPolicies() {
+        Configuration configuration = new Configuration.Builder().build();
+        Node a = new Node("a", 1, configuration);
+        Node b = new Node("b", 1, configuration);
+        Node c = new Node("c", 1, configuration);
+        List<Node> nodes = Arrays.asList(a, b, c);
+
+        RoundRobinPolicy roundRobin = new RoundRobinPolicy();
+        assertTrue(roundRobin.select(nodes) == a);
+        assertTrue(roundRobin.select(nodes) == b);
+        assertTrue(roundRobin.select(nodes) == c);
+        assertTrue(roundRobin.select(nodes) == a);
+
+        a.begin();
+        a.begin();
+        c.begin();
+        LeastOutstandingPolicy leastOutstanding = new LeastOutstandingPolicy();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(leastOutstanding.select(nodes) == b);
+        }
+        b.begin();
+        b.begin();
+        // a and b have 2, c has 1
+        assertTrue(leastOutstanding.select(nodes) == c);
+
+        assertTrue(new PowerOfTwoChoicesPolicy().select(Arrays.asList(a)) == a);
+    }
+
+    @Test
+    public void testContactPoints() {
+        Cluster cluster = Cluster.builder().withAddress("tsd1").addContactPoints("tsd2", "tsd3")
+                .addContactPoint("tsd4", 4343).withPort(4244)
+                .withConfiguration(new Configuration.Builder().build()).build();
+        assertTrue(cluster.getContactPoints().size() == 4);
+        assertTrue(cluster.getContactPoints().get(0).getHostString().equals("tsd1"));
+        assertTrue(cluster.getContactPoints().get(2).getPort() == 4244);
+        assertTrue(cluster.getContactPoints().get(3).getPort() == 4343);
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.exceptions.ErrorResultException;
+import net.opentsdb.driver.core.model.DataPoint;
+import net.opentsdb.driver.core.model.DataPointBatch;
+import net.opentsdb.driver.core.model.Errors;
+import net.opentsdb.driver.core.model.Point;
+import net.opentsdb.driver.core.model.PutResult;
+import net.opentsdb.driver.core.http.HttpApiEndpoint;
+import net.opentsdb.driver.core.model.TagSet;
+import net.opentsdb.driver.core.policies.DefaultPutErrorClassifier;
+import net.opentsdb.driver.core.policies.RetryPolicy;
+
+public class TestPartialPut {
+    private MockTsdbServer server;
+    private final AtomicInteger storageErrors = new AtomicInteger();
+
+    /**
+     * Fails the data point at timestamp 1 for good, and the one at timestamp 2 with a storage
+     * exception as many times as storageErrors says.
+     */
+    @Before
+    public void init() throws Exception {
+        server = new MockTsdbServer();
+        server.handle("/api/put", (path, query, body) -> {
+            JSONArray points = JSON.parseArray(body);
+            JSONArray errors = new JSONArray();
+            int success = 0;
+            for (int i = 0; i < points.size(); i++) {
+                JSONObject point = points.getJSONObject(i);
+                long timestamp = point.getLongValue("timestamp");
+                String error = null;
+                if (timestamp == 1) {
+                    error = "Unable to parse value to a number";
+                } else if (timestamp == 2 && storageErrors.getAndDecrement() > 0) {
+                    error = "Storage exception: please retry";
+                }
+                if (error == null) {
+                    success++;
+                } else {
+                    JSONObject failed = new JSONObject();
+                    failed.put("datapoint", point);
+                    failed.put("error", error);
+                    errors.add(failed);
+                }
+            }
+            JSONObject result = new JSONObject();
+            result.put("success", success);
+            result.put("failed", errors.size());
+            result.put("errors", errors);
+            return new MockTsdbServer.Reply(errors.isEmpty() ? 200 : 400, result.toJSONString());
+        });
+    }
+
+    @After
+    public void end() throws Exception {
+        server.close();
+    }
+
+    private Session session(DeadLetterHandler deadLetterHandler) throws Exception {
+        Configuration configuration = new Configuration.Builder().socketTimeout(5000)
+                .connectionTimeout(1000).deadLetterHandler(deadLetterHandler).build();
+        Session session = new Session("127.0.0.1", server.getPort(), configuration);
+        session.start();
+        return session;
+    }
+
+    private List<DataPoint> dataPoints(int count) throws Exception {
+        HashMap<String, String> tags = new HashMap<>();
+        tags.put("tagk1", "tagv1");
+        List<DataPoint> dataPoints = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            dataPoints.add(new DataPoint.Builder().setMetric("metric").setTimestamp((long) i)
+                    .setTags(tags).setValue(i).build());
+        }
+        return dataPoints;
+    }
+
+    @Test
+    public void testSplit() throws Exception {
+        List<Point> dataPoints = new ArrayList<>(dataPoints(2));
+        dataPoints.add(new DataPointBatch("metric", TagSet.of("tagk1", "tagv1"),
+                new long[] {2, 3}, new long[] {2, 3}));
+        String content = "{\"success\":2,\"failed\":2,\"errors\":["
+                + "{\"datapoint\":{\"metric\":\"metric\",\"timestamp\":1,\"value\":1,"
+                + "\"tags\":{\"tagk1\":\"tagv1\"}},\"error\":\"Unable to parse value\"},"
+                + "{\"datapoint\":{\"metric\":\"metric\",\"timestamp\":3,\"value\":3,"
+                + "\"tags\":{\"tagk1\":\"tagv1\"}},\"error\":\"Please throttle writes\"}]}";
+        PutFailures failures = PutFailures.split(dataPoints,
+                JSON.parseObject(content, PutResult.class), DefaultPutErrorClassifier.INSTANCE);
+        assertTrue(failures.isMatched());
+        assertTrue(failures.getRejected().size() == 1);
+        assertTrue(failures.getRejected().get(0) == dataPoints.get(1));
+        assertTrue(failures.getRetryable().size() == 1);
+        assertTrue(failures.getRetryable().get(0).getMetric().equals("metric"));
+        assertTrue(failures.getRetryableErrors().get(0).getDatapoint().getTimestamp() == 3L);
+
+        String summary = "{\"success\":2,\"failed\":2}";
+        assertTrue(!PutFailures.split(dataPoints, JSON.parseObject(summary, PutResult.class),
+                DefaultPutErrorClassifier.INSTANCE).isMatched());
+    }
+
+    @Test
+    public void testClassifier() {
+        assertTrue(DefaultPutErrorClassifier.INSTANCE
+                .isRetryable(new Errors("Storage exception: HBase timed out")));
+        assertTrue(DefaultPutErrorClassifier.INSTANCE
+                .isRetryable(new Errors("Please throttle writes")));
+        assertTrue(!DefaultPutErrorClassifier.INSTANCE
+                .isRetryable(new Errors("Unable to parse value to a number")));
+        assertTrue(!DefaultPutErrorClassifier.INSTANCE.isRetryable(new Errors()));
+        assertTrue(DefaultPutErrorClassifier.INSTANCE.isRetryable(new Errors(
+                "Storage exception: org.hbase.async.NotServingRegionException: region moved")));
+        assertTrue(DefaultPutErrorClassifier.INSTANCE.isRetryable(new Errors(
+                "Unexpected exception: org.hbase.async.PleaseThrottleException: 10000 RPCs")));
+        // the names of the user are not scanned
+        assertTrue(!DefaultPutErrorClassifier.INSTANCE.isRetryable(
+                new Errors("No such name for 'metrics': 'hbase.rpc.calls'")));
+        assertTrue(!DefaultPutErrorClassifier.INSTANCE.isRetryable(
+                new Errors("Invalid tag value (\"timeout rpc\"): illegal character: ")));
+    }
+
+    @Test
+    public void testResendRetryableOnly() throws Exception {
+        List<Point> deadLetters = new ArrayList<>();
+        Session session = session((dataPoints, errors) -> deadLetters.addAll(dataPoints));
+        try {
+            storageErrors.set(1);
+            List<DataPoint> dataPoints = dataPoints(4);
+            PutResult putResult = session.put(dataPoints, true, true);
+            assertTrue(putResult.getSuccess() == 3);
+            assertTrue(putResult.getFailed() == 1);
+            assertTrue(deadLetters.size() == 1 && deadLetters.get(0) == dataPoints.get(1));
+            assertTrue(server.getBodies().size() == 2);
+            JSONArray resent = JSON.parseArray(server.getBodies().get(1));
+            assertTrue(resent.size() == 1);
+            assertTrue(resent.getJSONObject(0).getLongValue("timestamp") == 2);
+
+            storageErrors.set(1);
+            deadLetters.clear();
+            putResult = session.putAsync(dataPoints, true, true).get(10, TimeUnit.SECONDS);
+            assertTrue(putResult.getSuccess() == 3);
+            assertTrue(deadLetters.size() == 1);
+            assertTrue(server.getBodies().size() == 4);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testFailedPointsOnly() throws Exception {
+        Session session = session(null);
+        try {
+            storageErrors.set(Integer.MAX_VALUE);
+            List<DataPoint> dataPoints = dataPoints(4);
+            try {
+                session.put(dataPoints, true, true);
+                assertTrue(false);
+            } catch (ErrorResultException e) {
+                assertTrue(e.getDataPoints().size() == 2);
+                assertTrue(e.getErrors().size() == 2);
+            }
+            assertTrue(server.getBodies().size() == 1 + TConstants.NORMAL_RETRY);
+
+            try {
+                session.putAsync(dataPoints, true, true).get(10, TimeUnit.SECONDS);
+                assertTrue(false);
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof ErrorResultException);
+                assertTrue(((ErrorResultException) e.getCause()).getDataPoints().size() == 2);
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testResendThroughRetryPolicy() throws Exception {
+        AtomicLong delay = new AtomicLong(300);
+        AtomicInteger retries = new AtomicInteger();
+        RetryPolicy retryPolicy = new RetryPolicy() {
+            @Override
+            public boolean isRetryable(HttpApiEndpoint endpoint, Throwable error) {
+                return true;
+            }
+
+            @Override
+            public long retryDelay(int retry) {
+                retries.incrementAndGet();
+                return delay.get();
+            }
+
+            @Override
+            public void onSuccess() {}
+        };
+        Configuration configuration = new Configuration.Builder().socketTimeout(5000)
+                .connectionTimeout(1000).retryPolicy(retryPolicy)
+                .deadLetterHandler((dataPoints, errors) -> {}).build();
+        Session session = new Session("127.0.0.1", server.getPort(), configuration);
+        session.start();
+        try {
+            List<DataPoint> dataPoints = dataPoints(4);
+            storageErrors.set(1);
+            long start = System.nanoTime();
+            assertTrue(session.put(dataPoints, true, true).getSuccess() == 3);
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300));
+            storageErrors.set(1);
+            start = System.nanoTime();
+            assertTrue(session.putAsync(dataPoints, true, true).get(10, TimeUnit.SECONDS)
+                    .getSuccess() == 3);
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300));
+            assertTrue(retries.get() == 2);
+            assertTrue(server.getBodies().size() == 4);
+
+            // no retry left in the budget, the retryable data points fail at once
+            delay.set(-1);
+            storageErrors.set(1);
+            try {
+                session.put(dataPoints, true, true);
+                assertTrue(false);
+            } catch (ErrorResultException e) {
+                assertTrue(e.getDataPoints().size() == 1);
+            }
+            try {
+                storageErrors.set(1);
+                session.putAsync(dataPoints, true, true).get(10, TimeUnit.SECONDS);
+                assertTrue(false);
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof ErrorResultException);
+            }
+            assertTrue(server.getBodies().size() == 6);
+        } finally {
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.model.Aggregator;
+import net.opentsdb.driver.core.model.Filter;
+import net.opentsdb.driver.core.model.FilterType;
+import net.opentsdb.driver.core.model.MetricQuery;
+import net.opentsdb.driver.core.model.Query;
+import net.opentsdb.driver.core.model.QueryResult;
+
+public class TestQueryCache {
+    private static final long NOW = 1546300800000L;
+
+    private static Query query(Map<String, String> tags, List<Filter> filters, String downsample,
+            Long end) {
+        List<MetricQuery> metricQueries = new ArrayList<>();
+        metricQueries.add(new MetricQuery.Builder().metric("metric").aggregator(Aggregator.sum)
+                .downsample(downsample).tags(tags).filters(filters).build());
+        return new Query.Builder().start(0L).end(end).sub(metricQueries).build();
+    }
+
+    private static Filter filter(String tagk, String value) {
+        return new Filter.Builder().setType(FilterType.literal_or).setTagk(tagk)
+                .setFilter(value).build();
+    }
+
+    private static List<QueryResult> results(int points) {
+        return Collections.singletonList(new QueryResult("metric", new HashMap<>(), null,
+                new long[points], new long[points]));
+    }
+
+    @Test
+    public void testFingerprint() {
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("a", "1");
+        tags.put("b", "2");
+        Map<String, String> reversed = new LinkedHashMap<>();
+        reversed.put("b", "2");
+        reversed.put("a", "1");
+        String key = QueryCache.fingerprint(query(tags,
+                Arrays.asList(filter("host", "h1"), filter("dc", "d1")), "1m-avg", NOW));
+        assertTrue(key.equals(QueryCache.fingerprint(query(reversed,
+                Arrays.asList(filter("dc", "d1"), filter("host", "h1")), "1m-avg", NOW))));
+        assertTrue(!key.equals(QueryCache.fingerprint(query(tags,
+                Arrays.asList(filter("dc", "d1"), filter("host", "h2")), "1m-avg", NOW))));
+        assertTrue(!key.equals(QueryCache.fingerprint(query(tags,
+                Arrays.asList(filter("dc", "d1"), filter("host", "h1")), "5m-avg", NOW))));
+        assertTrue(!key.equals(QueryCache.fingerprint(query(tags,
+                Arrays.asList(filter("dc", "d1"), filter("host", "h1")), "1m-avg", NOW + 1))));
+        // the summary is an element of the answer
+        Query summary = new Query.Builder().start(0L).end(NOW).showSummary(true)
+                .sub(query(null, null, null, NOW).getQueries()).build();
+        assertTrue(!QueryCache.fingerprint(summary)
+                .equals(QueryCache.fingerprint(query(null, null, null, NOW))));
+    }
+
+    @Test
+    public void testTtl() {
+        QueryCache cache = new QueryCache(new Configuration.Builder().queryCacheMaxBytes(1 << 20)
+                .queryCacheRecentTtl(10).queryCacheHistoricalTtl(1000)
+                .queryCacheHistoricalAge(60000).build());
+        assertTrue(cache.ttl(query(null, null, null, null), NOW) == 10);
+        assertTrue(cache.ttl(query(null, null, null, NOW - 1000), NOW) == 10);
+        assertTrue(cache.ttl(query(null, null, null, NOW - 120000), NOW) == 1000);
+        // an end in seconds
+        assertTrue(cache.ttl(query(null, null, null, (NOW - 120000) / 1000), NOW) == 1000);
+        assertTrue(cache.ttl(query(null, null, null, NOW / 1000), NOW) == 10);
+    }
+
+    @Test
+    public void testExpiryAndWeight() throws Exception {
+        QueryCache cache = new QueryCache(new Configuration.Builder().queryCacheMaxBytes(1 << 20)
+                .queryCacheRecentTtl(100).build());
+        Query query = query(null, null, null, null);
+        String key = QueryCache.fingerprint(query);
+        cache.put(key, query, results(10));
+        assertTrue(cache.get(key).get(0).size() == 10);
+        Thread.sleep(150);
+        assertTrue(cache.get(key) == null);
+
+        // far more than the max bytes, it is not kept
+        cache.put(key, query, results(1 << 20));
+        assertTrue(cache.get(key) == null);
+        assertTrue(cache.size() == 0);
+    }
+
+    @Test
+    public void testSharedBySessions() throws Exception {
+        MockTsdbServer server = new MockTsdbServer();
+        server.handle("/api/query", (path, query, body) -> new MockTsdbServer.Reply(200,
+                "[{\"metric\":\"metric\",\"tags\":{},\"aggregateTags\":[],\"dps\":{\"1\":1}}]"));
+        Configuration configuration = new Configuration.Builder().socketTimeout(5000)
+                .connectionTimeout(1000).queryCacheMaxBytes(1 << 20).build();
+        Cluster cluster = new Cluster.Builder().addContactPoint("127.0.0.1", server.getPort())
+                .withConfiguration(configuration).build();
+        try {
+            Session first = cluster.connect();
+            Session second = cluster.newSession();
+            Query query = query(null, null, null, NOW);
+            assertTrue(first.query(query).get(0).size() == 1);
+            assertTrue(second.query(query).get(0).size() == 1);
+            assertTrue(second.queryAsync(query).get().get(0).size() == 1);
+            assertTrue(queries(server) == 1);
+
+            // the callers do not share the results
+            List<QueryResult> results = first.query(query);
+            results.get(0).getTimestamps()[0] = 42;
+            results.get(0).setMetric("changed");
+            QueryResult cached = second.query(query).get(0);
+            assertTrue(cached.getTimestamp(0) == 1 && cached.getMetric().equals("metric"));
+            try {
+                results.clear();
+                assertTrue(false);
+            } catch (UnsupportedOperationException e) {
+                // the cached list is unmodifiable
+            }
+
+            // a delete, sent to /api/query as well, drops the cached results
+            first.delete(query(null, null, null, NOW));
+            assertTrue(second.query(query).get(0).size() == 1);
+            assertTrue(queries(server) == 3);
+        } finally {
+            cluster.close();
+            server.close();
+        }
+    }
+
+    private static int queries(MockTsdbServer server) {
+        int count = 0;
+        for (String uri : server.getUris()) {
+            if (uri.startsWith("/api/query?") || uri.equals("/api/query")) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
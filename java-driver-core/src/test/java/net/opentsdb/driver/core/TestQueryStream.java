@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.apache.http.ParseException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.exceptions.AbnormalResultException;
+import net.opentsdb.driver.core.model.Aggregator;
+import net.opentsdb.driver.core.model.MetricQuery;
+import net.opentsdb.driver.core.model.Query;
+import net.opentsdb.driver.core.model.QueryResult;
+
+public class TestQueryStream {
+    private MockTsdbServer server;
+    private Session session;
+
+    @Before
+    public void init() throws Exception {
+        server = new MockTsdbServer();
+        session = new Session("127.0.0.1", server.getPort(), new Configuration.Builder()
+                .socketTimeout(5000).connectionTimeout(1000).build());
+        session.start();
+    }
+
+    @After
+    public void end() throws Exception {
+        session.close();
+        server.close();
+    }
+
+    private static String results(int series, int points) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int s = 0; s < series; s++) {
+            sb.append(s > 0 ? "," : "").append("{\"metric\":\"metric\",\"tags\":{\"host\":\"h")
+                    .append(s).append("\"},\"aggregateTags\":[],\"dps\":{");
+            for (int i = 0; i < points; i++) {
+                sb.append(i > 0 ? "," : "").append('"').append(i + 1).append("\":").append(s);
+            }
+            sb.append("}}");
+        }
+        return sb.append(']').toString();
+    }
+
+    private static Query query() {
+        List<MetricQuery> metricQueries = new ArrayList<>();
+        metricQueries.add(
+                new MetricQuery.Builder().metric("metric").aggregator(Aggregator.sum).build());
+        return new Query.Builder().start(0L).sub(metricQueries).build();
+    }
+
+    @Test
+    public void testQueryStream() throws Exception {
+        String content = results(3, 100);
+        server.handle("/api/query", (path, query, body) -> new MockTsdbServer.Reply(200, content));
+        List<QueryResult> expected = session.query(query());
+        int count = 0;
+        try (QueryResultStream stream = session.queryStream(query())) {
+            while (stream.hasNext()) {
+                QueryResult result = stream.next();
+                assertTrue(result.getTags().equals(expected.get(count).getTags()));
+                assertTrue(result.getLongDps().equals(expected.get(count).getLongDps()));
+                count++;
+            }
+        }
+        assertTrue(count == 3);
+        try (Stream<QueryResult> stream = session.queryStream(query()).stream()) {
+            assertTrue(stream.filter(r -> r.size() == 100).count() == 3);
+        }
+
+        server.handle("/api/query", (path, query, body) -> new MockTsdbServer.Reply(200, "[]"));
+        try (QueryResultStream stream = session.queryStream(query())) {
+            assertTrue(!stream.hasNext());
+        }
+    }
+
+    @Test
+    public void testSeriesConsumer() throws Exception {
+        server.handle("/api/query",
+                (path, query, body) -> new MockTsdbServer.Reply(200, results(3, 100)));
+        StringBuilder events = new StringBuilder();
+        double[] sum = new double[1];
+        session.query(query(), new SeriesConsumer() {
+            @Override
+            public void onSeriesStart(String metric, Map<String, String> tags,
+                    List<String> aggregatedTags) {
+                events.append('[').append(tags.get("host"));
+            }
+
+            @Override
+            public void onPoint(long timestamp, double value) {
+                sum[0] += value;
+            }
+
+            @Override
+            public void onSeriesEnd() {
+                events.append(']');
+            }
+        });
+        assertTrue(events.toString().equals("[h0][h1][h2]"));
+        assertTrue(sum[0] == 100 * (0 + 1 + 2));
+    }
+
+    @Test
+    public void testEarlyClose() throws Exception {
+        // far more than the read ahead buffer and the socket buffers
+        String content = results(400, 2000);
+        server.handle("/api/query", (path, query, body) -> new MockTsdbServer.Reply(200, content));
+        try (QueryResultStream stream = session.queryStream(query())) {
+            assertTrue(stream.next().getTags().get("host").equals("h0"));
+            assertTrue(stream.next().getTags().get("host").equals("h1"));
+        }
+        // the aborted connection is not reused, the next query opens another one
+        server.handle("/api/query",
+                (path, query, body) -> new MockTsdbServer.Reply(200, results(1, 10)));
+        assertTrue(session.query(query()).size() == 1);
+        assertTrue(server.getConnectionCount() == 2);
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        server.handle("/api/query", (path, query, body) -> new MockTsdbServer.Reply(400,
+                "{\"error\":{\"code\":400,\"message\":\"No such name for 'metrics'\"}}"));
+        try {
+            session.queryStream(query());
+            fail();
+        } catch (AbnormalResultException e) {
+            assertTrue(e.getStatCode().equals("400"));
+        }
+
+        String content = results(2, 10);
+        String cut = content.substring(0, content.indexOf("\"h1\"") + 10);
+        server.handle("/api/query", (path, query, body) -> new MockTsdbServer.Reply(200, cut));
+        try (QueryResultStream stream = session.queryStream(query())) {
+            assertTrue(stream.next().size() == 10);
+            stream.hasNext();
+            fail();
+        } catch (ParseException e) {
+            // the second series is cut
+        }
+    }
+}
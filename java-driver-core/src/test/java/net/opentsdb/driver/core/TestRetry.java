@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.exceptions.AbnormalResultException;
+import net.opentsdb.driver.core.exceptions.OverRetryException;
+import net.opentsdb.driver.core.model.Aggregator;
+import net.opentsdb.driver.core.model.MetricQuery;
+import net.opentsdb.driver.core.model.Query;
+import net.opentsdb.driver.core.model.QueryResult;
+import net.opentsdb.driver.core.policies.DefaultRetryPolicy;
+import net.opentsdb.driver.core.policies.RetryBudget;
+
+public class TestRetry {
+    private static final String QUERY_RESULT =
+            "[{\"metric\":\"metric\",\"tags\":{},\"aggregateTags\":[],\"dps\":{\"1\":1}}]";
+    private static final String SERVER_ERROR =
+            "{\"error\":{\"code\":503,\"message\":\"Please try again later\"}}";
+    private static final String BAD_REQUEST =
+            "{\"error\":{\"code\":400,\"message\":\"No such name for 'metrics'\"}}";
+
+    private MockTsdbServer server;
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile MockTsdbServer.Reply error = new MockTsdbServer.Reply(503, SERVER_ERROR);
+    private Session session;
+
+    @Before
+    public void init() throws Exception {
+        server = new MockTsdbServer();
+        server.handle("/api/query", (path, query, body) -> failures.getAndDecrement() > 0 ? error
+                : new MockTsdbServer.Reply(200, QUERY_RESULT));
+    }
+
+    @After
+    public void end() throws Exception {
+        if (session != null) {
+            session.close();
+        }
+        server.close();
+    }
+
+    private void start(DefaultRetryPolicy policy) throws Exception {
+        Configuration configuration = new Configuration.Builder().socketTimeout(5000)
+                .connectionTimeout(1000).queryRetryNum(4).retryPolicy(policy).build();
+        session = new Session("127.0.0.1", server.getPort(), configuration);
+        session.start();
+    }
+
+    private Query query() {
+        List<MetricQuery> metricQueries = new ArrayList<>();
+        metricQueries.add(
+                new MetricQuery.Builder().metric("metric").aggregator(Aggregator.sum).build());
+        return new Query.Builder().start(0L).sub(metricQueries).build();
+    }
+
+    @Test
+    public void testBackoff() throws Exception {
+        start(new DefaultRetryPolicy.Builder().baseDelay(0).build());
+        failures.set(3);
+        assertTrue(session.query(query()).size() == 1);
+        assertTrue(server.getRequestCount() == 4);
+
+        failures.set(3);
+        assertTrue(session.queryAsync(query()).get(10, TimeUnit.SECONDS).size() == 1);
+        assertTrue(server.getRequestCount() == 8);
+
+        // the fourth failure spends the tries
+        failures.set(4);
+        try {
+            session.query(query());
+            assertTrue(false);
+        } catch (OverRetryException e) {
+            assertTrue(server.getRequestCount() == 12);
+        }
+    }
+
+    @Test
+    public void testDelayedAsync() throws Exception {
+        start(new DefaultRetryPolicy.Builder().baseDelay(200).maxDelay(200).build());
+        failures.set(1);
+        assertTrue(session.queryAsync(query()).get(10, TimeUnit.SECONDS).size() == 1);
+        assertTrue(server.getRequestCount() == 2);
+    }
+
+    @Test
+    public void testRetryAfterClose() throws Exception {
+        start(new DefaultRetryPolicy.Builder().baseDelay(300).maxDelay(300).build());
+        failures.set(1);
+        CompletableFuture<List<QueryResult>> future = session.queryAsync(query());
+        Await.until(() -> server.getRequestCount() == 1);
+        session.close();
+        session = null;
+        // the retry scheduled on the timer finds the node closed
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            assertTrue(false);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertTrue(server.getRequestCount() == 1);
+        }
+    }
+
+    @Test
+    public void testFatalError() throws Exception {
+        start(new DefaultRetryPolicy.Builder().baseDelay(0).build());
+        error = new MockTsdbServer.Reply(400, BAD_REQUEST);
+        failures.set(1);
+        try {
+            session.query(query());
+            assertTrue(false);
+        } catch (AbnormalResultException e) {
+            assertTrue(e.getStatCode().equals("400"));
+            assertTrue(server.getRequestCount() == 1);
+        }
+        failures.set(1);
+        try {
+            session.queryAsync(query()).get(10, TimeUnit.SECONDS);
+            assertTrue(false);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AbnormalResultException);
+            assertTrue(server.getRequestCount() == 2);
+        }
+    }
+
+    @Test
+    public void testNotJsonError() throws Exception {
+        start(new DefaultRetryPolicy.Builder().baseDelay(0).build());
+        error = new MockTsdbServer.Reply(502, "<html>Bad Gateway</html>");
+        failures.set(2);
+        assertTrue(session.query(query()).size() == 1);
+        assertTrue(server.getRequestCount() == 3);
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        RetryBudget budget = new RetryBudget(0, 0);
+        start(new DefaultRetryPolicy.Builder().baseDelay(0).budget(budget).build());
+        failures.set(Integer.MAX_VALUE);
+        // ten retries are in the budget, then every query is tried once only
+        int tries = 0;
+        for (int i = 0; i < 5; i++) {
+            try {
+                session.query(query());
+            } catch (OverRetryException e) {
+                tries++;
+            }
+        }
+        assertTrue(tries == 5);
+        assertTrue(budget.getBalance() == 0);
+        assertTrue(server.getRequestCount() == 15);
+    }
+}
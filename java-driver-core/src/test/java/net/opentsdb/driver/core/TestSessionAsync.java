@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import static org.junit.Assert.assertTrue;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpHost;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.exceptions.OverRetryException;
+import net.opentsdb.driver.core.http.BufferPool;
+import net.opentsdb.driver.core.http.HttpAsyncClient;
+import net.opentsdb.driver.core.model.Aggregator;
+import net.opentsdb.driver.core.model.DataPoint;
+import net.opentsdb.driver.core.model.MetricQuery;
+import net.opentsdb.driver.core.model.PutResult;
+import net.opentsdb.driver.core.model.Query;
+import net.opentsdb.driver.core.model.QueryResult;
+
+public class TestSessionAsync {
+    private MockTsdbServer server;
+    private Session session;
+
+    @Before
+    public void init() throws Exception {
+        server = new MockTsdbServer();
+        server.handle("/api/put", (path, query, body) -> new MockTsdbServer.Reply(200,
+                "{\"success\":1,\"failed\":0,\"errors\":[]}"));
+        server.handle("/api/query", (path, query, body) -> new MockTsdbServer.Reply(200,
+                "[{\"metric\":\"metric\",\"tags\":{\"tagk1\":\"tagv1\"},\"aggregateTags\":[],"
+                        + "\"dps\":{\"1550473214\":100}}]"));
+        Configuration configuration =
+                new Configuration.Builder().socketTimeout(5000).connectionTimeout(1000).build();
+        session = new Session("127.0.0.1", server.getPort(), configuration);
+        session.start();
+    }
+
+    @After
+    public void end() throws Exception {
+        session.close();
+        server.close();
+    }
+
+    private Query query() {
+        MetricQuery metricQuery =
+                new MetricQuery.Builder().metric("metric").aggregator(Aggregator.sum).build();
+        List<MetricQuery> metricQueries = new ArrayList<>();
+        metricQueries.add(metricQuery);
+        return new Query.Builder().start(0L).sub(metricQueries).build();
+    }
+
+    @Test
+    public void testPutAsync() throws Exception {
+        HashMap<String, String> tags = new HashMap<>();
+        tags.put("tagk1", "tagv1");
+        List<CompletableFuture<PutResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            DataPoint dataPoint = new DataPoint.Builder().setMetric("metric")
+                    .setTimestamp((long) i).setTags(tags).setValue(i).build();
+            futures.add(session.putAsync(dataPoint));
+        }
+        for (CompletableFuture<PutResult> future : futures) {
+            assertTrue(future.get(10, TimeUnit.SECONDS).getSuccess() == 1);
+        }
+        assertTrue(server.getUris().get(0).contains("details=true"));
+    }
+
+    @Test
+    public void testPutBody() throws Exception {
+        HashMap<String, String> tags = new HashMap<>();
+        tags.put("tagk1", "tagv1");
+        List<DataPoint> dataPoints = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            dataPoints.add(new DataPoint.Builder().setMetric("metric").setTimestamp((long) i)
+                    .setTags(tags).setValue(i).build());
+        }
+        session.put(dataPoints, true, true);
+        String body = server.getBodies().get(server.getBodies().size() - 1);
+        assertTrue(body.equals(
+                JSON.toJSONString(dataPoints, SerializerFeature.DisableCircularReferenceDetect)));
+    }
+
+    @Test
+    public void testCompressedPut() throws Exception {
+        Configuration configuration = new Configuration.Builder().socketTimeout(5000)
+                .connectionTimeout(1000).compression(true).compressionThreshold(1024).build();
+        Session compressSession = new Session("127.0.0.1", server.getPort(), configuration);
+        compressSession.start();
+        try {
+            HashMap<String, String> tags = new HashMap<>();
+            tags.put("tagk1", "tagv1");
+            List<DataPoint> dataPoints = new ArrayList<>();
+            for (int i = 0; i < 3000; i++) {
+                dataPoints.add(new DataPoint.Builder().setMetric("metric")
+                        .setTimestamp((long) i).setTags(tags).setValue(i).build());
+            }
+            compressSession.put(dataPoints, true, true);
+            assertTrue(server.getEncodings().get(0).equals("gzip"));
+            assertTrue(server.getBodies().get(0).equals(JSON.toJSONString(dataPoints,
+                    SerializerFeature.DisableCircularReferenceDetect)));
+
+            compressSession.put(dataPoints.subList(0, 1), true, true);
+            assertTrue(server.getEncodings().get(1).equals("identity"));
+            assertTrue(compressSession.queryAsync(query()).get(10, TimeUnit.SECONDS).size() == 1);
+        } finally {
+            compressSession.close();
+        }
+    }
+
+    @Test
+    public void testQueryAndVersionAsync() throws Exception {
+        List<QueryResult> queryResults = session.queryAsync(query()).get(10, TimeUnit.SECONDS);
+        assertTrue(queryResults.size() == 1);
+        assertTrue(queryResults.get(0).getMetric().equals("metric"));
+        assertTrue(session.versionAsync().get(10, TimeUnit.SECONDS) == TsdbVsersion.VERSION_2_3);
+    }
+
+    @Test
+    public void testAsyncOverRetry() throws Exception {
+        server.handle("/api/query/last", (path, query, body) -> new MockTsdbServer.Reply(500,
+                "{\"error\":{\"code\":500,\"message\":\"Internal error\"}}"));
+        try {
+            session.queryLastAsync(query()).get(10, TimeUnit.SECONDS);
+            assertTrue(false);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OverRetryException);
+        }
+        assertTrue(server.getRequestCount() == TConstants.NORMAL_RETRY);
+    }
+
+    @Test
+    public void testInterruptedPut() throws Exception {
+        server.handle("/api/put", (path, query, body) -> new MockTsdbServer.Reply(200,
+                "{\"success\":1,\"failed\":0,\"errors\":[]}", 3000));
+        Configuration configuration =
+                new Configuration.Builder().socketTimeout(5000).connectionTimeout(1000).build();
+        BufferPool bufferPool = new BufferPool(1024, 64);
+        HttpAsyncClient client = new HttpAsyncClient(configuration, bufferPool, Scheduler.TIMER);
+        Session shared = new Session(
+                Collections.singletonList(new InetSocketAddress("127.0.0.1", server.getPort())),
+                configuration, client, bufferPool, null);
+        shared.start();
+        HashMap<String, String> tags = new HashMap<>();
+        tags.put("tagk1", "tagv1");
+        DataPoint dataPoint = new DataPoint.Builder().setMetric("metric")
+                .setTimestamp(1550473214L).setTags(tags).setValue(100).build();
+        try {
+            Thread caller = new Thread(() -> {
+                try {
+                    shared.put(Arrays.asList(dataPoint), false, false);
+                } catch (Exception e) {
+                    // interrupted
+                }
+            });
+            caller.start();
+            Await.until(() -> server.getRequestCount() == 1);
+            caller.interrupt();
+            caller.join(10000);
+            // the request is aborted and its body is back in the pool only then
+            HttpHost host = new HttpHost("127.0.0.1", server.getPort());
+            Await.until(() -> client.getRouteStats(host).getLeased() == 0);
+            Await.until(() -> bufferPool.getFreeChunks() > 0);
+        } finally {
+            shared.close();
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.model.DataPoint;
+import net.opentsdb.driver.core.model.Point;
+import net.opentsdb.driver.core.model.PrimitiveDataPoint;
+import net.opentsdb.driver.core.model.PutResult;
+
+public class TestSessionSpool {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockTsdbServer server;
+    private final AtomicBoolean down = new AtomicBoolean(true);
+
+    @Before
+    public void init() throws Exception {
+        server = new MockTsdbServer();
+        server.handle("/api/put", (path, query, body) -> down.get()
+                ? new MockTsdbServer.Reply(500,
+                        "{\"error\":{\"code\":500,\"message\":\"Internal error\"}}")
+                : new MockTsdbServer.Reply(200, "{\"success\":1,\"failed\":0,\"errors\":[]}"));
+    }
+
+    @After
+    public void end() throws Exception {
+        server.close();
+    }
+
+    private Session session() throws Exception {
+        return session(null);
+    }
+
+    private Session session(DeadLetterHandler deadLetterHandler) throws Exception {
+        Configuration configuration = new Configuration.Builder().socketTimeout(5000)
+                .connectionTimeout(1000).putRetryNum(1)
+                .spoolDirectory(folder.getRoot().getAbsolutePath()).spoolSegmentSize(4096)
+                .deadLetterHandler(deadLetterHandler).build();
+        Session session = new Session("127.0.0.1", server.getPort(), configuration);
+        session.start();
+        return session;
+    }
+
+    private List<DataPoint> dataPoints(int from, int count) throws Exception {
+        HashMap<String, String> tags = new HashMap<>();
+        tags.put("tagk1", "tagv1");
+        List<DataPoint> dataPoints = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            dataPoints.add(new DataPoint.Builder().setMetric("metric").setTimestamp((long) i)
+                    .setTags(tags).setValue(i).build());
+        }
+        return dataPoints;
+    }
+
+    /**
+     * Refuses the data point at timestamp 1 for good, and throttles the one at timestamp 2 once.
+     */
+    private void refuseFirstAndThrottleSecond() {
+        AtomicInteger throttled = new AtomicInteger(1);
+        server.handle("/api/put", (path, query, body) -> {
+            JSONArray points = JSON.parseArray(body);
+            JSONArray errors = new JSONArray();
+            for (int i = 0; i < points.size(); i++) {
+                JSONObject point = points.getJSONObject(i);
+                long timestamp = point.getLongValue("timestamp");
+                String error = timestamp == 1 ? "Unable to parse value to a number"
+                        : timestamp == 2 && throttled.getAndDecrement() > 0
+                                ? "Please throttle writes" : null;
+                if (error != null) {
+                    JSONObject failed = new JSONObject();
+                    failed.put("datapoint", point);
+                    failed.put("error", error);
+                    errors.add(failed);
+                }
+            }
+            JSONObject result = new JSONObject();
+            result.put("success", points.size() - errors.size());
+            result.put("failed", errors.size());
+            result.put("errors", errors);
+            return new MockTsdbServer.Reply(errors.isEmpty() ? 200 : 400, result.toJSONString());
+        });
+    }
+
+    private static void awaitEmpty(Session session) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (session.getSpool().getPendingCount() > 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    public void testSpoolAndReplay() throws Exception {
+        Session session = session();
+        try {
+            List<DataPoint> dataPoints = dataPoints(0, 3);
+            PutResult putResult = session.put(dataPoints, true, true);
+            assertTrue(putResult.getSpooled() == 3);
+            putResult = session.putAsync(dataPoints(3, 2), true, true).get(10, TimeUnit.SECONDS);
+            assertTrue(putResult.getSpooled() == 2);
+            assertTrue(session.getSpool().getPendingCount() == 5);
+
+            down.set(false);
+            awaitEmpty(session);
+            assertTrue(session.getSpool().getPendingCount() == 0);
+            String spooled =
+                    JSON.toJSONString(dataPoints, SerializerFeature.DisableCircularReferenceDetect);
+            assertTrue(server.getBodies().contains(spooled));
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testReplayAfterRestart() throws Exception {
+        Session session = session();
+        session.put(dataPoints(0, 3), true, true);
+        // no replay before the session is closed, opentsdb is still down
+        session.close();
+
+        down.set(false);
+        session = session();
+        try {
+            awaitEmpty(session);
+            assertTrue(session.getSpool().getPendingCount() == 0);
+            assertTrue(server.getBodies().contains(JSON.toJSONString(dataPoints(0, 3),
+                    SerializerFeature.DisableCircularReferenceDetect)));
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testSpoolBatchWriter() throws Exception {
+        Session session = session();
+        try {
+            // the batches are put without sync, tried once
+            BatchWriter batchWriter = session.newBatchWriter();
+            batchWriter.write(dataPoints(0, 5));
+            batchWriter.flush();
+            assertTrue(batchWriter.getFailedCount() == 0);
+            assertTrue(session.getSpool().getPendingCount() == 5);
+
+            down.set(false);
+            awaitEmpty(session);
+            assertTrue(session.getSpool().getPendingCount() == 0);
+            assertTrue(server.getBodies().contains(JSON.toJSONString(dataPoints(0, 5),
+                    SerializerFeature.DisableCircularReferenceDetect)));
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testReplayKeepsThrottledBody() throws Exception {
+        Session session = session();
+        try {
+            session.put(dataPoints(0, 3), true, true);
+            AtomicInteger throttled = new AtomicInteger(2);
+            server.handle("/api/put", (path, query, body) -> throttled.getAndDecrement() > 0
+                    ? new MockTsdbServer.Reply(429,
+                            "{\"error\":{\"code\":429,\"message\":\"Please throttle\"}}")
+                    : new MockTsdbServer.Reply(200, "{\"success\":3,\"failed\":0,\"errors\":[]}"));
+            awaitEmpty(session);
+            assertTrue(session.getSpool().getPendingCount() == 0);
+            // tried again after the 429s instead of being dropped
+            assertTrue(throttled.get() < 0);
+            assertTrue(server.getBodies().contains(JSON.toJSONString(dataPoints(0, 3),
+                    SerializerFeature.DisableCircularReferenceDetect)));
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testReplaySplitsFailures() throws Exception {
+        List<Point> deadLetters = new CopyOnWriteArrayList<>();
+        Session session = session((dataPoints, errors) -> deadLetters.addAll(dataPoints));
+        try {
+            session.put(dataPoints(0, 3), true, true);
+            refuseFirstAndThrottleSecond();
+            awaitEmpty(session);
+            assertTrue(session.getSpool().getPendingCount() == 0);
+            assertTrue(deadLetters.size() == 1);
+            assertTrue(((PrimitiveDataPoint) deadLetters.get(0)).getTimestamp() == 1);
+            // only the throttled data point is put again
+            List<String> bodies = server.getBodies();
+            JSONArray resent = JSON.parseArray(bodies.get(bodies.size() - 1));
+            assertTrue(resent.size() == 1);
+            assertTrue(resent.getJSONObject(0).getLongValue("timestamp") == 2);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testReplayStringValueAndTsuid() throws Exception {
+        List<Point> deadLetters = new CopyOnWriteArrayList<>();
+        Session session = session((dataPoints, errors) -> deadLetters.addAll(dataPoints));
+        try {
+            List<DataPoint> dataPoints = dataPoints(0, 3);
+            dataPoints.get(1).setValue("not a number");
+            dataPoints.get(2).setTsuid("000001000001000001");
+            session.put(dataPoints, true, true);
+            refuseFirstAndThrottleSecond();
+            awaitEmpty(session);
+            assertTrue(session.getSpool().getPendingCount() == 0);
+            // the string value is read back, so the error of opentsdb is matched
+            assertTrue(deadLetters.size() == 1);
+            assertTrue(((DataPoint) deadLetters.get(0)).getValue().equals("not a number"));
+            // the throttled data point is put again with its tsuid
+            List<String> bodies = server.getBodies();
+            JSONArray resent = JSON.parseArray(bodies.get(bodies.size() - 1));
+            assertTrue(resent.size() == 1);
+            assertTrue(resent.getJSONObject(0).getString("tsuid").equals("000001000001000001"));
+            assertTrue(resent.getJSONObject(0).getLongValue("value") == 2);
+        } finally {
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core;
+
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.http.BufferPool;
+import net.opentsdb.driver.core.http.HttpApiEndpoint;
+import net.opentsdb.driver.core.http.HttpClient;
+import net.opentsdb.driver.core.model.Aggregator;
+import net.opentsdb.driver.core.model.MetricQuery;
+import net.opentsdb.driver.core.model.Query;
+import net.opentsdb.driver.core.model.QueryResult;
+
+public class TestStreamingResponse {
+    private static final int POINTS = 50000;
+
+    private MockTsdbServer server;
+    private String queryResult;
+
+    @Before
+    public void init() throws Exception {
+        StringBuilder sb = new StringBuilder(
+                "[{\"metric\":\"metric\",\"tags\":{\"k\":\"v\"},\"aggregateTags\":[],\"dps\":{");
+        for (int i = 0; i < POINTS; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('"').append(i + 1).append("\":").append(i);
+        }
+        queryResult = sb.append("}}]").toString();
+        server = new MockTsdbServer();
+        server.handle("/api/query", (path, query, body) -> new MockTsdbServer.Reply(200,
+                queryResult));
+    }
+
+    @After
+    public void end() throws Exception {
+        server.close();
+    }
+
+    private Configuration configuration() {
+        return new Configuration.Builder().socketTimeout(5000).connectionTimeout(1000).build();
+    }
+
+    private Query query() {
+        List<MetricQuery> metricQueries = new ArrayList<>();
+        metricQueries.add(
+                new MetricQuery.Builder().metric("metric").aggregator(Aggregator.sum).build());
+        return new Query.Builder().start(0L).sub(metricQueries).build();
+    }
+
+    private void assertResults(List<QueryResult> results) {
+        assertTrue(results.size() == 1);
+        assertTrue(results.get(0).getTags().get("k").equals("v"));
+        Map<Long, Integer> dps = results.get(0).getIntDps();
+        assertTrue(dps.size() == POINTS);
+        assertTrue(dps.get(1L) == 0);
+        assertTrue(dps.get((long) POINTS) == POINTS - 1);
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        Session session = new Session("127.0.0.1", server.getPort(), configuration());
+        session.start();
+        try {
+            assertResults(session.query(query()));
+            assertResults(session.queryAsync(query()).get(10, TimeUnit.SECONDS));
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testChunksReleased() throws Exception {
+        BufferPool pool = new BufferPool(1024, 1024);
+        HttpClient client = new HttpClient.Builder().setHost("127.0.0.1")
+                .setPort(server.getPort()).setConf(configuration()).setBufferPool(pool).client()
+                .build();
+        client.start();
+        try {
+            HttpResponse response = client.postDetailedAsync(null, null, HttpApiEndpoint.QUERY)
+                    .get(10, TimeUnit.SECONDS);
+            // the body is read into many chunks of the pool, none is free till it is read
+            assertTrue(response.getEntity().getContentLength() == queryResult.length());
+            assertTrue(pool.getFreeChunks() == 0);
+            assertTrue(EntityUtils.toString(response.getEntity()).equals(queryResult));
+            assertTrue(pool.getFreeChunks() == (queryResult.length() + 1023) / 1024);
+        } finally {
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.codec;
+
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.Test;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import net.opentsdb.driver.core.TConstants;
+import net.opentsdb.driver.core.model.DataPoint;
+import net.opentsdb.driver.core.model.DataPointBatch;
+import net.opentsdb.driver.core.model.Point;
+import net.opentsdb.driver.core.model.PrimitiveDataPoint;
+import net.opentsdb.driver.core.model.TagSet;
+
+public class TestDataPointSerializer {
+
+    private String serialize(List<? extends Point> dataPoints) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DataPointSerializer().serialize(dataPoints, out);
+        return new String(out.toByteArray(), TConstants.UTF8_CHARSET);
+    }
+
+    @Test
+    public void testSameAsFastjson() throws Exception {
+        HashMap<String, String> tags = new HashMap<>();
+        tags.put("tagk1", "tagv1");
+        tags.put("tagk2", "tagv2");
+        List<DataPoint> dataPoints = new ArrayList<>();
+        dataPoints.add(new DataPoint.Builder().setMetric("metric1").setTimestamp(1550473214L)
+                .setTags(tags).setValue(12333).build());
+        dataPoints.add(new DataPoint.Builder().setMetric("metric2").setTimestamp(1550473215L)
+                .setTags(tags).setValue(-1.5).build());
+        dataPoints.add(new DataPoint.Builder().setMetric("metric3").setTimestamp(1550473216L)
+                .setTags(tags).setValue(Long.MIN_VALUE).build());
+        String expected =
+                JSON.toJSONString(dataPoints, SerializerFeature.DisableCircularReferenceDetect);
+        assertTrue(serialize(dataPoints).equals(expected));
+    }
+
+    @Test
+    public void testPrimitivePoints() throws Exception {
+        TagSet tags = TagSet.of("tagk2", "tagv2", "tagk1", "tagv1");
+        List<Point> points = new ArrayList<>();
+        points.add(new PrimitiveDataPoint("metric1", tags, 1550473214L, 12333L));
+        points.add(new PrimitiveDataPoint("metric2", tags, 1550473215L, -1.5));
+        points.add(new PrimitiveDataPoint("metric3", TagSet.EMPTY, 1550473216L, Long.MIN_VALUE));
+        assertTrue(serialize(points).equals("["
+                + "{\"metric\":\"metric1\",\"tags\":{\"tagk1\":\"tagv1\",\"tagk2\":\"tagv2\"},"
+                + "\"timestamp\":1550473214,\"value\":12333},"
+                + "{\"metric\":\"metric2\",\"tags\":{\"tagk1\":\"tagv1\",\"tagk2\":\"tagv2\"},"
+                + "\"timestamp\":1550473215,\"value\":-1.5},"
+                + "{\"metric\":\"metric3\",\"tags\":{},"
+                + "\"timestamp\":1550473216,\"value\":-9223372036854775808}]"));
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        TagSet tags = TagSet.of("tagk1", "tagv1");
+        List<Point> points = new ArrayList<>();
+        points.add(new DataPointBatch("metric1", tags, new long[] {1L, 2L}, new long[] {10L, 20L}));
+        points.add(new DataPointBatch.Builder().setMetric("empty").setTags(tags).build());
+        points.add(new DataPointBatch.Builder().setMetric("metric2").setTags(tags)
+                .add(3L, 0.5).add(4L, 1.0).build());
+        assertTrue(serialize(points).equals("["
+                + "{\"metric\":\"metric1\",\"tags\":{\"tagk1\":\"tagv1\"},\"timestamp\":1,\"value\":10},"
+                + "{\"metric\":\"metric1\",\"tags\":{\"tagk1\":\"tagv1\"},\"timestamp\":2,\"value\":20},"
+                + "{\"metric\":\"metric2\",\"tags\":{\"tagk1\":\"tagv1\"},\"timestamp\":3,\"value\":0.5},"
+                + "{\"metric\":\"metric2\",\"tags\":{\"tagk1\":\"tagv1\"},\"timestamp\":4,\"value\":1.0}]"));
+    }
+
+    @Test
+    public void testEscapeAndUnicode() throws Exception {
+        HashMap<String, String> tags = new HashMap<>();
+        tags.put("host", "\u4e3b\u673a-\ud83d\ude00");
+        tags.put("path", "a\"b\\c\n\u0001");
+        List<DataPoint> dataPoints = new ArrayList<>();
+        dataPoints.add(new DataPoint.Builder().setMetric("sys.cpu").setTimestamp(1L)
+                .setTags(tags).setValue(100.0).build());
+        JSONArray array = JSON.parseArray(serialize(dataPoints));
+        JSONObject json = array.getJSONObject(0);
+        assertTrue(json.getString("metric").equals("sys.cpu"));
+        assertTrue(json.getJSONObject("tags").getString("host").equals("\u4e3b\u673a-\ud83d\ude00"));
+        assertTrue(json.getJSONObject("tags").getString("path").equals("a\"b\\c\n\u0001"));
+        assertTrue(json.getDouble("value") == 100.0);
+    }
+
+    @Test
+    public void testLargeBatch() throws Exception {
+        HashMap<String, String> tags = new HashMap<>();
+        tags.put("tagk1", "tagv1");
+        List<DataPoint> dataPoints = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            dataPoints.add(new DataPoint.Builder().setMetric("metric").setTimestamp((long) i)
+                    .setTags(tags).setValue(i * 0.25).build());
+        }
+        JSONArray array = JSON.parseArray(serialize(dataPoints));
+        assertTrue(array.size() == 5000);
+        assertTrue(array.getJSONObject(4999).getLong("timestamp") == 4999L);
+        assertTrue(array.getJSONObject(4999).getDouble("value") == 4999 * 0.25);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.codec;
+
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import net.opentsdb.driver.core.SeriesConsumer;
+import net.opentsdb.driver.core.TConstants;
+import net.opentsdb.driver.core.model.QueryResult;
+import net.opentsdb.driver.core.model.ValueType;
+
+public class TestQueryResultDecoder {
+
+    private static List<QueryResult> decode(String json) throws Exception {
+        return new QueryResultDecoder()
+                .decode(new ByteArrayInputStream(json.getBytes(TConstants.UTF8_CHARSET)));
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        String json = "[{\"metric\":\"sys.cpu\",\"tags\":{\"host\":\"web01\",\"dc\":null},"
+                + "\"aggregateTags\":[\"core\"],\"tsuids\":[\"0001\"],"
+                + "\"annotations\":[{\"description\":\"a \\\"quoted\\\" [note]\","
+                + "\"custom\":{\"k\":[1,{\"v\":true}]}}],"
+                + "\"dps\":{\"1546300800\":1,\"1546300801\":-2,\"1546300802\":3}},\n"
+                + " {\"metric\":\"m\\u00e9tric\\n\",\"tags\":{},\"aggregateTags\":[],"
+                + "\"dps\":{\"1\":1,\"2\":2.5,\"3\":-1.25e2,\"4\":null,\"5\":\"x\",\"6\":NaN},"
+                + "\"stats\":{\"avg\":0.5}},"
+                + "{\"metric\":\"empty\",\"dps\":{}}]";
+        List<QueryResult> results = decode(json);
+        assertTrue(results.size() == 3);
+
+        QueryResult first = results.get(0);
+        assertTrue(first.getMetric().equals("sys.cpu"));
+        assertTrue(first.getTags().size() == 1 && first.getTags().get("host").equals("web01"));
+        assertTrue(first.getAggregatedTags().equals(Arrays.asList("core")));
+        assertTrue(first.getValueType() == ValueType.LONG);
+        assertTrue(Arrays.equals(first.getTimestamps(),
+                new long[] {1546300800L, 1546300801L, 1546300802L}));
+        assertTrue(Arrays.equals(first.getLongValues(), new long[] {1, -2, 3}));
+
+        // the null and string values are skipped, one double makes the series doubles
+        QueryResult second = results.get(1);
+        assertTrue(second.getMetric().equals("m\u00e9tric\n"));
+        assertTrue(second.getValueType() == ValueType.DOUBLE);
+        assertTrue(Arrays.equals(second.getTimestamps(), new long[] {1, 2, 3, 6}));
+        assertTrue(Arrays.equals(second.getDoubleValues(),
+                new double[] {1, 2.5, -125, Double.NaN}));
+
+        assertTrue(results.get(2).size() == 0);
+        assertTrue(decode("[]").isEmpty());
+        assertTrue(decode("").isEmpty());
+    }
+
+    @Test
+    public void testArraysAndUnsorted() throws Exception {
+        List<QueryResult> results = decode(
+                "[{\"metric\":\"m\",\"dps\":[[3,30],[1,10],[2,20]]},"
+                        + "{\"metric\":\"m\",\"dps\":{\"20\":2.5,\"10\":1}}]");
+        assertTrue(Arrays.equals(results.get(0).getTimestamps(), new long[] {1, 2, 3}));
+        assertTrue(Arrays.equals(results.get(0).getLongValues(), new long[] {10, 20, 30}));
+        assertTrue(Arrays.equals(results.get(1).getTimestamps(), new long[] {10, 20}));
+        assertTrue(Arrays.equals(results.get(1).getDoubleValues(), new double[] {1, 2.5}));
+    }
+
+    @Test
+    public void testSameAsFastjson() throws Exception {
+        Random random = new Random(42);
+        StringBuilder json = new StringBuilder("[");
+        for (int series = 0; series < 20; series++) {
+            json.append(series > 0 ? "," : "").append("{\"metric\":\"metric").append(series)
+                    .append("\",\"tags\":{\"host\":\"h").append(series)
+                    .append("\"},\"aggregateTags\":[],\"dps\":{");
+            for (int i = 0; i < 1000; i++) {
+                json.append(i > 0 ? "," : "").append('"').append(1546300800000L + i * 1000)
+                        .append("\":");
+                if (series % 2 == 0) {
+                    json.append(random.nextLong() >> random.nextInt(64));
+                } else {
+                    double value = random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20);
+                    json.append(i % 3 == 0 ? Double.toString(value)
+                            : String.format("%.6f", value));
+                }
+            }
+            json.append("}}");
+        }
+        String content = json.append(']').toString();
+        List<QueryResult> decoded = decode(content);
+        List<QueryResult> expected = JSON.parseArray(content, QueryResult.class);
+        assertTrue(decoded.size() == expected.size());
+        for (int i = 0; i < decoded.size(); i++) {
+            QueryResult a = decoded.get(i);
+            QueryResult b = expected.get(i);
+            assertTrue(a.getMetric().equals(b.getMetric()) && a.getTags().equals(b.getTags()));
+            assertTrue(a.getValueType() == b.getValueType());
+            assertTrue(Arrays.equals(a.getTimestamps(), b.getTimestamps()));
+            for (int j = 0; j < a.size(); j++) {
+                // == as -0.000000 is -0.0 for the decoder like Double.parseDouble, 0 for fastjson
+                assertTrue(a.getDoubleValue(j) == b.getDoubleValue(j));
+            }
+            if (a.getValueType() == ValueType.LONG) {
+                assertTrue(Arrays.equals(a.getLongValues(), b.getLongValues()));
+            }
+        }
+    }
+
+    @Test
+    public void testNext() throws Exception {
+        QueryResultDecoder decoder = new QueryResultDecoder();
+        decoder.begin(new ByteArrayInputStream(("[{\"metric\":\"a\",\"dps\":{\"1\":1}},"
+                + "{\"metric\":\"b\",\"dps\":{}}]").getBytes(TConstants.UTF8_CHARSET)));
+        assertTrue(decoder.next().getMetric().equals("a"));
+        assertTrue(decoder.next().getMetric().equals("b"));
+        assertTrue(decoder.next() == null);
+        assertTrue(decoder.next() == null);
+
+        decoder.begin(new ByteArrayInputStream(new byte[0]));
+        assertTrue(decoder.next() == null);
+    }
+
+    @Test
+    public void testConsumer() throws Exception {
+        StringBuilder events = new StringBuilder();
+        SeriesConsumer consumer = new SeriesConsumer() {
+            @Override
+            public void onSeriesStart(String metric, Map<String, String> tags,
+                    List<String> aggregatedTags) {
+                events.append(metric).append(tags).append(aggregatedTags).append(':');
+            }
+
+            @Override
+            public void onPoint(long timestamp, double value) {
+                events.append(timestamp).append('=').append(value).append(',');
+            }
+
+            @Override
+            public void onSeriesEnd() {
+                events.append(';');
+            }
+        };
+        // the points of a series whose metric comes after the dps are kept till its end
+        new QueryResultDecoder().decode(new ByteArrayInputStream(("[{\"metric\":\"a\","
+                + "\"tags\":{},\"aggregateTags\":[\"host\"],\"dps\":{\"2\":1,\"1\":2.5}},"
+                + "{\"dps\":[[2,1],[1,2]],\"metric\":\"b\"},{}]")
+                        .getBytes(TConstants.UTF8_CHARSET)), consumer);
+        assertTrue(events.toString().equals("a{}[host]:2=1.0,1=2.5,;"
+                + "bnullnull:1=2.0,2=1.0,;nullnullnull:;"));
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        for (String json : new String[] {"{}", "[{\"metric\":\"m\"", "[{\"dps\":{\"x\":1}}]",
+                "[{\"dps\":{\"1\" 1}}]", "[{\"metric\":\"m\"}", "[1]",
+                "[{\"metric\":\"m\"},]"}) {
+            try {
+                decode(json);
+                assertTrue(json, false);
+            } catch (JSONException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.codec;
+
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.junit.Test;
+import net.opentsdb.driver.core.TConstants;
+import net.opentsdb.driver.core.model.DataPoint;
+import net.opentsdb.driver.core.model.DataPointBatch;
+import net.opentsdb.driver.core.model.Point;
+import net.opentsdb.driver.core.model.PrimitiveDataPoint;
+import net.opentsdb.driver.core.model.TagSet;
+
+public class TestSeriesKeyCache {
+
+    private String serialize(DataPointSerializer serializer, List<? extends Point> points)
+            throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(points, out);
+        return new String(out.toByteArray(), TConstants.UTF8_CHARSET);
+    }
+
+    @Test
+    public void testCanonicalKey() throws Exception {
+        SeriesKeyCache cache = new SeriesKeyCache(100);
+        LinkedHashMap<String, String> tags1 = new LinkedHashMap<>();
+        tags1.put("host", "web01");
+        tags1.put("dc", "hz");
+        LinkedHashMap<String, String> tags2 = new LinkedHashMap<>();
+        tags2.put("dc", "hz");
+        tags2.put("host", "web01");
+        byte[] fragment = cache.get("sys.cpu", tags1);
+        assertTrue(cache.get("sys.cpu", tags2) == fragment);
+        assertTrue(cache.get("sys.cpu", TagSet.of(tags1)) == fragment);
+        assertTrue(cache.size() == 1);
+        assertTrue(cache.stats().hitCount() == 2);
+        assertTrue(new String(fragment, TConstants.UTF8_CHARSET)
+                .equals("{\"metric\":\"sys.cpu\",\"tags\":{\"dc\":\"hz\",\"host\":\"web01\"},"));
+        cache.get("sys.mem", tags1);
+        assertTrue(cache.size() == 2);
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        SeriesKeyCache cache = new SeriesKeyCache(10);
+        for (int i = 0; i < 100; i++) {
+            cache.get("metric" + i, TagSet.of("k", "v"));
+        }
+        assertTrue(cache.size() <= 10);
+    }
+
+    @Test
+    public void testSameAsUncached() throws Exception {
+        HashMap<String, String> tags = new HashMap<>();
+        tags.put("tagk1", "tagv1");
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            points.add(new DataPoint.Builder().setMetric("metric" + (i % 3))
+                    .setTimestamp((long) i).setTags(tags).setValue(i * 0.5).build());
+            points.add(new PrimitiveDataPoint("metric" + (i % 3), TagSet.of(tags), i, (long) i));
+        }
+        points.add(new DataPointBatch("metric", TagSet.of(tags), new long[] {1L, 2L},
+                new double[] {1.5, 2.5}));
+        DataPointSerializer cached = new DataPointSerializer(new SeriesKeyCache(100));
+        String json = serialize(cached, points);
+        assertTrue(json.equals(serialize(new DataPointSerializer(), points)));
+        assertTrue(json.equals(serialize(cached, points)));
+        assertTrue(cached.getSeriesKeyCache().size() == 4);
+
+        List<DataPoint> dataPoints = new ArrayList<>();
+        dataPoints.add(new DataPoint.Builder().setMetric("metric").setTimestamp(1L)
+                .setTags(tags).setValue(1).setTsuid("000001").build());
+        assertTrue(serialize(cached, dataPoints).equals("[{\"metric\":\"metric\","
+                + "\"tags\":{\"tagk1\":\"tagv1\"},\"timestamp\":1,\"value\":1,\"tsuid\":\"000001\"}]"));
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.codec;
+
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.Test;
+import net.opentsdb.driver.core.TConstants;
+import net.opentsdb.driver.core.model.DataPoint;
+import net.opentsdb.driver.core.model.DataPointBatch;
+import net.opentsdb.driver.core.model.Point;
+import net.opentsdb.driver.core.model.PrimitiveDataPoint;
+import net.opentsdb.driver.core.model.TagSet;
+
+public class TestTelnetLineSerializer {
+
+    private static String lines(List<? extends Point> dataPoints) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TelnetLineSerializer().serialize(dataPoints, out);
+        return new String(out.toByteArray(), TConstants.UTF8_CHARSET);
+    }
+
+    @Test
+    public void testLines() throws Exception {
+        HashMap<String, String> tags = new HashMap<>();
+        tags.put("host", "h\u00e9");
+        List<Point> dataPoints = new ArrayList<>();
+        dataPoints.add(new DataPoint.Builder().setMetric("sys.cpu").setTimestamp(10L)
+                .setTags(tags).setValue(1.5).build());
+        dataPoints.add(new PrimitiveDataPoint("sys.mem", TagSet.of("b", "2", "a", "1"), 11L, 7L));
+        dataPoints.add(new DataPointBatch("sys.io", TagSet.of("dev", "sda"), new long[] {12, 13},
+                new double[] {0.25, 3}));
+        assertTrue(lines(dataPoints).equals("put sys.cpu 10 1.5 host=h\u00e9\n"
+                + "put sys.mem 11 7 a=1 b=2\n"
+                + "put sys.io 12 0.25 dev=sda\n"
+                + "put sys.io 13 3.0 dev=sda\n"));
+    }
+
+    @Test
+    public void testBadNames() throws Exception {
+        List<String[]> bad = Arrays.asList(new String[] {"sys cpu", "k", "v"},
+                new String[] {"sys.cpu", "k", "v\n"}, new String[] {"sys.cpu", "k=1", "v"});
+        for (String[] names : bad) {
+            try {
+                lines(Arrays.asList(
+                        new PrimitiveDataPoint(names[0], TagSet.of(names[1], names[2]), 1L, 1L)));
+                assertTrue(false);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        try {
+            lines(Arrays.asList(new PrimitiveDataPoint("sys.cpu", TagSet.EMPTY, 1L, 1L)));
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+            // opentsdb needs at least one tag
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.http;
+
+import static org.junit.Assert.assertTrue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import net.opentsdb.driver.core.Await;
+import net.opentsdb.driver.core.MockTsdbServer;
+import net.opentsdb.driver.core.conf.Configuration;
+
+public class TestConnectionEviction {
+    private MockTsdbServer server;
+    private ScheduledExecutorService evictor;
+    private HttpAsyncClient asyncClient;
+
+    @Before
+    public void init() throws Exception {
+        server = new MockTsdbServer();
+        evictor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void end() throws Exception {
+        if (asyncClient != null) {
+            asyncClient.close();
+        }
+        evictor.shutdownNow();
+        server.close();
+    }
+
+    private HttpClient client(Configuration configuration) throws Exception {
+        asyncClient = new HttpAsyncClient(configuration, null, evictor);
+        return new HttpClient.Builder().setHost("127.0.0.1").setPort(server.getPort())
+                .setConf(configuration).client(asyncClient).build();
+    }
+
+    private static Configuration.Builder configuration() {
+        return new Configuration.Builder().socketTimeout(5000).connectionTimeout(1000)
+                .keepaliveTimeout(60000).connectionEvictionInterval(20);
+    }
+
+    private static void version(HttpClient client) throws Exception {
+        HttpResponse response = client.versionAsync(HttpApiEndpoint.VERSION).get(10,
+                TimeUnit.SECONDS);
+        EntityUtils.consume(response.getEntity());
+        assertTrue(response.getStatusLine().getStatusCode() == 200);
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+        HttpClient client = client(configuration().maxIdleTime(200).build());
+        version(client);
+        assertTrue(client.getConnectionStats().getAvailable() == 1);
+        Await.until(() -> client.getConnectionStats().getAvailable() == 0);
+        assertTrue(client.getConnectionStats().getAvailable() == 0);
+
+        // the next request opens a new connection
+        version(client);
+        assertTrue(server.getConnectionCount() == 2);
+    }
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        HttpClient client =
+                client(configuration().maxIdleTime(0).connectionTimeToLive(300).build());
+        long start = System.currentTimeMillis();
+        version(client);
+        version(client);
+        assertTrue(server.getConnectionCount() == 1);
+        Await.until(() -> client.getConnectionStats().getAvailable() == 0);
+        assertTrue(System.currentTimeMillis() - start >= 300);
+        assertTrue(client.getConnectionStats().getAvailable() == 0);
+    }
+
+    @Test
+    public void testKeepAliveHint() throws Exception {
+        HttpAsyncClient.TsdbkeepAliveStrategy strategy =
+                new HttpAsyncClient(configuration().build()).new TsdbkeepAliveStrategy(10000);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        assertTrue(strategy.getKeepAliveDuration(response, new BasicHttpContext()) == 10000);
+
+        // the connection is given up a second before the server closes it
+        response.setHeader("Keep-Alive", "timeout=5, max=100");
+        assertTrue(strategy.getKeepAliveDuration(response, new BasicHttpContext()) == 4000);
+        response.setHeader("Keep-Alive", "timeout=1");
+        assertTrue(strategy.getKeepAliveDuration(response, new BasicHttpContext()) == 500);
+        // a longer hint does not extend the configured keepalive
+        response.setHeader("Keep-Alive", "timeout=60");
+        assertTrue(strategy.getKeepAliveDuration(response, new BasicHttpContext()) == 10000);
+    }
+}
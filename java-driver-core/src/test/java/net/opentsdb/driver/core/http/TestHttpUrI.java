@@ -22,6 +22,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashMap;
 import org.junit.Test;
+import net.opentsdb.driver.core.conf.Configuration;
 
 public class TestHttpUrI {
     
@@ -107,4 +108,26 @@ public class TestHttpUrI {
                 .setPort(4242).setEnableSSL(false).setApi(HttpApiEndpoint.DELETE).build();
         assertTrue(httpClientURIDelete.getRightUrI().equals(delete));
     }
+
+    @Test
+    public void testCachedUri() throws URISyntaxException {
+        HttpClient httpClient =
+                new HttpClient(null, new Configuration.Builder().build(), "localhost", 4242);
+        HashMap<String, String> params = new HashMap<>();
+        params.put("details", "true");
+        URI uri = httpClient.getURI(HttpApiEndpoint.PUT, params);
+        assertTrue(uri.toString().equals("http://localhost:4242/api/put?details=true"));
+        assertTrue(httpClient.getURI(HttpApiEndpoint.PUT, new HashMap<>(params)) == uri);
+
+        // the cached uri does not change with the map it was built from
+        params.put("sync", "true");
+        assertTrue(httpClient.getURI(HttpApiEndpoint.PUT, params).toString()
+                .equals("http://localhost:4242/api/put?details=true&sync=true"));
+        params.remove("sync");
+        assertTrue(httpClient.getURI(HttpApiEndpoint.PUT, params) == uri);
+
+        URI query = httpClient.getURI(HttpApiEndpoint.QUERY, null);
+        assertTrue(query.toString().equals("http://localhost:4242/api/query"));
+        assertTrue(httpClient.getURI(HttpApiEndpoint.QUERY, new HashMap<>()) == query);
+    }
 }
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.http;
+
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import org.junit.Test;
+
+public class TestPooledBytes {
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        BufferPool pool = new BufferPool(16, 8);
+        PooledOutputStream out = new PooledOutputStream(pool);
+        byte[] data = new byte[100];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        out.write(data, 0, 50);
+        for (int i = 50; i < 100; i++) {
+            out.write(data[i]);
+        }
+        PooledBytes bytes = out.toPooledBytes();
+        assertTrue(bytes.length() == 100);
+
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        bytes.writeTo(copy);
+        assertTrue(Arrays.equals(copy.toByteArray(), data));
+
+        copy.reset();
+        InputStream in = bytes.toEntity().getContent();
+        byte[] buf = new byte[7];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            copy.write(buf, 0, n);
+        }
+        assertTrue(Arrays.equals(copy.toByteArray(), data));
+
+        bytes.release();
+        assertTrue(pool.getFreeChunks() == 7);
+        bytes.release();
+        assertTrue(pool.getFreeChunks() == 7);
+    }
+
+    @Test
+    public void testCompress() throws Exception {
+        BufferPool pool = new BufferPool(16, 64);
+        PooledOutputStream small = new PooledOutputStream(pool, 200, 1);
+        small.write(new byte[100], 0, 100);
+        PooledBytes plain = small.toPooledBytes();
+        assertTrue(plain.getContentEncoding() == null);
+        assertTrue(plain.length() == 100);
+        plain.release();
+
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 10);
+        }
+        PooledOutputStream out = new PooledOutputStream(pool, 200, 1);
+        out.write(data, 0, 150);
+        assertTrue(!out.isCompressed());
+        out.write(data, 150, 850);
+        assertTrue(out.isCompressed());
+        assertTrue(out.size() == 1000);
+        PooledBytes bytes = out.toPooledBytes();
+        assertTrue(PooledBytes.GZIP_ENCODING.equals(bytes.getContentEncoding()));
+        assertTrue(bytes.length() < 1000);
+        assertTrue(PooledBytes.GZIP_ENCODING.equals(bytes.toEntity().getContentEncoding().getValue()));
+
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        InputStream in = new GZIPInputStream(bytes.getInputStream());
+        byte[] buf = new byte[64];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            copy.write(buf, 0, n);
+        }
+        assertTrue(Arrays.equals(copy.toByteArray(), data));
+        bytes.release();
+    }
+
+    @Test
+    public void testPoolBound() {
+        BufferPool pool = new BufferPool(16, 2);
+        byte[] a = pool.acquire();
+        byte[] b = pool.acquire();
+        byte[] c = pool.acquire();
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        assertTrue(pool.getFreeChunks() == 2);
+        assertTrue(pool.acquire() == a);
+    }
+}
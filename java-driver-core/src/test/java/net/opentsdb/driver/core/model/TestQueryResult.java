@@ -18,7 +18,10 @@
 package net.opentsdb.driver.core.model;
 
 import static org.junit.Assert.assertTrue;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.junit.Test;
 import com.alibaba.fastjson.JSON;
 
@@ -33,4 +36,76 @@ public class TestQueryResult {
         assertTrue(queryResult.get(0).getMetric().equals("aliyun.opentsdb.test"));
     }
 
+    @Test
+    public void testPrimitiveArrays() {
+        String content = "[{\"metric\":\"m\",\"tags\":{},\"aggregateTags\":[],"
+                + "\"dps\":{\"3\":30,\"1\":10,\"2\":20}},"
+                + "{\"metric\":\"m\",\"tags\":{},\"aggregateTags\":[],"
+                + "\"dps\":{\"1\":1,\"2\":2.5}}]";
+        List<QueryResult> queryResult = JSON.parseArray(content, QueryResult.class);
+        QueryResult longs = queryResult.get(0);
+        assertTrue(longs.getValueType() == ValueType.LONG);
+        assertTrue(Arrays.equals(longs.getTimestamps(), new long[] {1, 2, 3}));
+        assertTrue(Arrays.equals(longs.getLongValues(), new long[] {10, 20, 30}));
+        assertTrue(longs.getDoubleValue(2) == 30.0);
+        assertTrue(longs.getLongDps().get(2L) == 20L);
+
+        // one double value makes the whole series doubles
+        QueryResult doubles = queryResult.get(1);
+        assertTrue(doubles.getValueType() == ValueType.DOUBLE);
+        assertTrue(doubles.getLongValues() == null);
+        assertTrue(doubles.getDoubleValues() == doubles.getDoubleValues());
+        assertTrue(Arrays.equals(doubles.getDoubleValues(), new double[] {1.0, 2.5}));
+        assertTrue(doubles.getLongValue(1) == 2);
+    }
+
+    @Test
+    public void testCursor() {
+        long[] timestamps = new long[100];
+        double[] values = new double[100];
+        for (int i = 0; i < 100; i++) {
+            timestamps[i] = i * 10;
+            values[i] = i;
+        }
+        QueryResult result = new QueryResult("m", new HashMap<>(), null, timestamps, values);
+        assertTrue(result.getTimestamps() == timestamps);
+        assertTrue(result.getDoubleValues() == values);
+        assertTrue(result.indexOf(500) == 50);
+        assertTrue(result.indexOf(505) == -1);
+        assertTrue(result.ceilingIndex(505) == 51);
+        assertTrue(result.ceilingIndex(-1) == 0);
+        assertTrue(result.ceilingIndex(991) == 100);
+
+        double sum = 0;
+        int count = 0;
+        for (QueryResult.Cursor cursor = result.cursor(); cursor.next();) {
+            sum += cursor.doubleValue();
+            count++;
+        }
+        assertTrue(count == 100 && sum == 4950);
+
+        // both ends inclusive
+        QueryResult.Cursor range = result.cursor(95, 120);
+        assertTrue(range.next() && range.timestamp() == 100 && range.index() == 10);
+        assertTrue(range.next() && range.timestamp() == 110);
+        assertTrue(range.next() && range.timestamp() == 120 && range.longValue() == 12);
+        assertTrue(!range.next());
+        assertTrue(!result.cursor(121, 129).next());
+        assertTrue(!result.cursor(2000, 3000).next());
+    }
+
+    @Test
+    public void testSetDps() {
+        Map<Long, Object> dps = new HashMap<>();
+        for (long i = 1000; i > 0; i--) {
+            dps.put(i, i);
+        }
+        dps.put(2000L, "NaN");
+        QueryResult result = new QueryResult("m", null, null, dps);
+        assertTrue(result.size() == 1000);
+        for (int i = 1; i < result.size(); i++) {
+            assertTrue(result.getTimestamp(i - 1) < result.getTimestamp(i));
+            assertTrue(result.getLongValue(i) == result.getTimestamp(i));
+        }
+    }
 }
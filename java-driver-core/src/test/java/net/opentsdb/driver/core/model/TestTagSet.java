@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.model;
+
+import static org.junit.Assert.assertTrue;
+import java.util.HashMap;
+import org.junit.Test;
+
+public class TestTagSet {
+
+    @Test
+    public void testSortedAndShared() {
+        HashMap<String, String> map = new HashMap<>();
+        map.put("host", "web01");
+        map.put("dc", "hz");
+        map.put("app", "tsdb");
+        TagSet tags = TagSet.of(map);
+        assertTrue(tags.size() == 3);
+        assertTrue(tags.keyAt(0).equals("app"));
+        assertTrue(tags.keyAt(1).equals("dc"));
+        assertTrue(tags.keyAt(2).equals("host"));
+        assertTrue(tags.get("dc").equals("hz"));
+        assertTrue(tags.get("rack") == null);
+        assertTrue(tags.equals(map) && map.equals(tags));
+        assertTrue(tags.hashCode() == map.hashCode());
+        assertTrue(TagSet.of(tags) == tags);
+        assertTrue(tags.equals(TagSet.of("host", "web01", "app", "tsdb", "dc", "hz")));
+        assertTrue(tags.bytes() == "hostweb01dchzapptsdb".length());
+    }
+
+    @Test
+    public void testDuplicateAndEmpty() {
+        TagSet tags = new TagSet.Builder().tag("b", "1").tag("a", "2").tag("b", "3")
+                .tag(null, "4").tag("c", null).build();
+        assertTrue(tags.size() == 2);
+        assertTrue(tags.get("b").equals("3"));
+        assertTrue(TagSet.of(new HashMap<>()) == TagSet.EMPTY);
+    }
+
+    @Test
+    public void testPrimitiveDataPoint() {
+        TagSet tags = TagSet.of("host", "web01");
+        PrimitiveDataPoint longPoint = new PrimitiveDataPoint("sys.cpu", tags, 1L, 42L);
+        assertTrue(longPoint.getValueType() == ValueType.LONG);
+        assertTrue(longPoint.getLongValue() == 42L);
+        assertTrue(longPoint.getDoubleValue() == 42.0);
+        PrimitiveDataPoint doublePoint = new PrimitiveDataPoint("sys.cpu", tags, 1L, 0.25);
+        assertTrue(doublePoint.getValueType() == ValueType.DOUBLE);
+        assertTrue(doublePoint.getDoubleValue() == 0.25);
+        assertTrue(doublePoint.getTags() == longPoint.getTags());
+        assertTrue(doublePoint.size() == "sys.cpu".length() + tags.bytes() + 16);
+    }
+
+    @Test
+    public void testDataPointBatch() {
+        DataPointBatch.Builder builder =
+                new DataPointBatch.Builder().setMetric("sys.cpu").setTags(TagSet.of("h", "1"));
+        for (int i = 0; i < 100; i++) {
+            builder.add(i, (long) i * 2);
+        }
+        DataPointBatch batch = builder.build();
+        assertTrue(batch.count() == 100);
+        assertTrue(batch.getValueType() == ValueType.LONG);
+        assertTrue(batch.getTimestamp(99) == 99 && batch.getLongValue(99) == 198);
+        assertTrue(batch.getDoubleValue(50) == 100.0);
+        try {
+            builder.add(100L, 0.5);
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            batch.getTimestamp(100);
+            assertTrue(false);
+        } catch (IndexOutOfBoundsException e) {
+        }
+        try {
+            new DataPointBatch("m", TagSet.EMPTY, new long[2], new double[1]);
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.policies;
+
+import static org.junit.Assert.assertTrue;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutionException;
+import org.junit.Test;
+import net.opentsdb.driver.core.exceptions.AbnormalResultException;
+import net.opentsdb.driver.core.http.HttpApiEndpoint;
+
+public class TestDefaultRetryPolicy {
+
+    @Test
+    public void testRetryable() {
+        DefaultRetryPolicy policy = new DefaultRetryPolicy();
+        HttpApiEndpoint put = HttpApiEndpoint.PUT;
+        assertTrue(policy.isRetryable(put, new AbnormalResultException("500", null, null)));
+        assertTrue(policy.isRetryable(put, new AbnormalResultException("503", null, null)));
+        assertTrue(policy.isRetryable(put, new AbnormalResultException("429", null, null)));
+        assertTrue(!policy.isRetryable(put, new AbnormalResultException("400", null, null)));
+        assertTrue(!policy.isRetryable(put, new AbnormalResultException("404", null, null)));
+        assertTrue(policy.isRetryable(put, new SocketTimeoutException()));
+        assertTrue(policy.isRetryable(put, new ExecutionException(new SocketTimeoutException())));
+        assertTrue(!policy.isRetryable(put, new IllegalArgumentException()));
+    }
+
+    @Test
+    public void testDelay() {
+        DefaultRetryPolicy policy =
+                new DefaultRetryPolicy.Builder().baseDelay(10).maxDelay(50).budget(null).build();
+        for (int i = 0; i < 100; i++) {
+            long first = policy.retryDelay(1);
+            assertTrue(first >= 0 && first <= 10);
+            long second = policy.retryDelay(2);
+            assertTrue(second >= 0 && second <= 20);
+            long last = policy.retryDelay(40);
+            assertTrue(last >= 0 && last <= 50);
+        }
+        assertTrue(new DefaultRetryPolicy.Builder().baseDelay(0).budget(null).build()
+                .retryDelay(3) == 0);
+    }
+
+    @Test
+    public void testBudget() {
+        RetryBudget budget = new RetryBudget(0.5, 0);
+        // ten retries are kept at most
+        assertTrue(budget.getBalance() == 10);
+        DefaultRetryPolicy policy = new DefaultRetryPolicy.Builder().budget(budget).build();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(policy.retryDelay(1) >= 0);
+        }
+        assertTrue(policy.retryDelay(1) == -1);
+        policy.onSuccess();
+        assertTrue(policy.retryDelay(1) == -1);
+        policy.onSuccess();
+        assertTrue(policy.retryDelay(1) >= 0);
+        assertTrue(budget.getBalance() == 0);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.policies;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import net.opentsdb.driver.core.http.HttpApiEndpoint;
+
+public class TestPercentileHedgingPolicy {
+
+    @Test
+    public void testPercentile() {
+        PercentileHedgingPolicy policy = new PercentileHedgingPolicy.Builder().percentile(0.95)
+                .minDelay(5).maxDelay(500).budget(null).build();
+        // unknown percentile, the max delay
+        assertTrue(policy.hedgeDelay(HttpApiEndpoint.QUERY) == 500);
+        for (int i = 1; i <= 100; i++) {
+            policy.onResponse(HttpApiEndpoint.QUERY, i, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(policy.hedgeDelay(HttpApiEndpoint.QUERY) == 95);
+        // every endpoint has its own latencies
+        assertTrue(policy.hedgeDelay(HttpApiEndpoint.QUERY_LAST) == 500);
+
+        for (int i = 0; i < 1000; i++) {
+            policy.onResponse(HttpApiEndpoint.QUERY, 1, TimeUnit.MICROSECONDS);
+        }
+        assertTrue(policy.hedgeDelay(HttpApiEndpoint.QUERY) == 5);
+        for (int i = 0; i < 1000; i++) {
+            policy.onResponse(HttpApiEndpoint.QUERY, 10, TimeUnit.SECONDS);
+        }
+        assertTrue(policy.hedgeDelay(HttpApiEndpoint.QUERY) == 500);
+    }
+
+    @Test
+    public void testBudget() {
+        RetryBudget budget = new RetryBudget(0.5, 0);
+        PercentileHedgingPolicy policy =
+                new PercentileHedgingPolicy.Builder().budget(budget).build();
+        while (budget.getBalance() > 0) {
+            assertTrue(policy.allowHedge(HttpApiEndpoint.QUERY));
+        }
+        assertFalse(policy.allowHedge(HttpApiEndpoint.QUERY));
+        // two reads earn one duplicate
+        policy.hedgeDelay(HttpApiEndpoint.QUERY);
+        policy.hedgeDelay(HttpApiEndpoint.QUERY);
+        assertTrue(policy.allowHedge(HttpApiEndpoint.QUERY));
+        assertFalse(policy.allowHedge(HttpApiEndpoint.QUERY));
+    }
+}
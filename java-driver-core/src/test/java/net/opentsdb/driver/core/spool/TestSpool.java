@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.spool;
+
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import net.opentsdb.driver.core.TConstants;
+
+public class TestSpool {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] body(int i) {
+        return ("[{\"metric\":\"metric\",\"timestamp\":" + i + "}]").getBytes(TConstants.UTF8_CHARSET);
+    }
+
+    private static String text(Spool.Record record) {
+        return new String(record.getPayload(), TConstants.UTF8_CHARSET);
+    }
+
+    private static int segments(File dir) {
+        return dir.listFiles((d, name) -> name.endsWith(SpoolSegment.SUFFIX)).length;
+    }
+
+    @Test
+    public void testAppendInOrder() throws Exception {
+        File dir = folder.newFolder();
+        try (Spool spool = Spool.open(dir, 256, 1 << 20, 10)) {
+            for (int i = 0; i < 20; i++) {
+                assertTrue(spool.append(body(i), 1));
+            }
+            assertTrue(spool.getPendingCount() == 20);
+            assertTrue(segments(dir) > 1);
+            for (int i = 0; i < 20; i++) {
+                Spool.Record record = spool.peek(0, TimeUnit.MILLISECONDS);
+                assertTrue(text(record).equals(new String(body(i), TConstants.UTF8_CHARSET)));
+                assertTrue(spool.peek(0, TimeUnit.MILLISECONDS).getPayload().length
+                        == record.getPayload().length);
+                spool.ack(record);
+            }
+            assertTrue(spool.peek(10, TimeUnit.MILLISECONDS) == null);
+            assertTrue(spool.getPendingCount() == 0);
+            assertTrue(spool.getAckedCount() == 20);
+            // only the segment still appended to is kept
+            assertTrue(segments(dir) == 1);
+        }
+    }
+
+    @Test
+    public void testRecover() throws Exception {
+        File dir = folder.newFolder();
+        try (Spool spool = Spool.open(dir, 1024, 1 << 20, 1000)) {
+            for (int i = 0; i < 5; i++) {
+                spool.append(body(i), 2);
+            }
+            spool.ack(spool.peek(0, TimeUnit.MILLISECONDS));
+            spool.ack(spool.peek(0, TimeUnit.MILLISECONDS));
+        }
+        try (Spool spool = Spool.open(dir, 1024, 1 << 20, 1000)) {
+            assertTrue(spool.getPendingRecords() == 3);
+            assertTrue(spool.getPendingCount() == 6);
+            assertTrue(text(spool.peek(0, TimeUnit.MILLISECONDS))
+                    .equals(new String(body(2), TConstants.UTF8_CHARSET)));
+            spool.append(body(5), 2);
+            for (int i = 2; i < 6; i++) {
+                Spool.Record record = spool.peek(0, TimeUnit.MILLISECONDS);
+                assertTrue(text(record).equals(new String(body(i), TConstants.UTF8_CHARSET)));
+                spool.ack(record);
+            }
+        }
+        try (Spool spool = Spool.open(dir, 1024, 1 << 20, 1000)) {
+            assertTrue(spool.getPendingRecords() == 0);
+            assertTrue(segments(dir) == 0);
+        }
+    }
+
+    @Test
+    public void testCorruptedTail() throws Exception {
+        File dir = folder.newFolder();
+        try (Spool spool = Spool.open(dir, 1024, 1 << 20, 1000)) {
+            spool.append(body(0), 1);
+            spool.append(body(1), 1);
+        }
+        File segment = dir.listFiles((d, name) -> name.endsWith(SpoolSegment.SUFFIX))[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            // flip a payload byte of the second record
+            int second = SpoolSegment.HEADER_SIZE * 2 + body(0).length;
+            raf.seek(second);
+            raf.write('x');
+        }
+        try (Spool spool = Spool.open(dir, 1024, 1 << 20, 1000)) {
+            assertTrue(spool.getPendingRecords() == 1);
+            assertTrue(text(spool.peek(0, TimeUnit.MILLISECONDS))
+                    .equals(new String(body(0), TConstants.UTF8_CHARSET)));
+        }
+    }
+
+    @Test
+    public void testFullAndLocked() throws Exception {
+        File dir = folder.newFolder();
+        try (Spool spool = Spool.open(dir, 256, 512, 1000)) {
+            int appended = 0;
+            while (spool.append(body(appended), 1)) {
+                appended++;
+            }
+            assertTrue(appended > 0);
+            assertTrue(spool.getDroppedCount() == 1);
+            assertTrue(spool.getTotalBytes() <= 512);
+            assertTrue(Spool.open(dir, 256, 512, 1000) == null);
+        }
+        Spool spool = Spool.open(dir, 256, 512, 1000);
+        assertTrue(spool != null);
+        spool.close();
+    }
+}
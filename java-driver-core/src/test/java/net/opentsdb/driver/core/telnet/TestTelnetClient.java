@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.core.telnet;
+
+import static org.junit.Assert.assertTrue;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import net.opentsdb.driver.core.PutTransport;
+import net.opentsdb.driver.core.Session;
+import net.opentsdb.driver.core.TConstants;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.model.DataPoint;
+import net.opentsdb.driver.core.model.Point;
+import net.opentsdb.driver.core.model.PrimitiveDataPoint;
+import net.opentsdb.driver.core.model.TagSet;
+
+public class TestTelnetClient {
+
+    /**
+     * A tiny telnet server which records the received lines.
+     */
+    private static class LineServer implements Closeable {
+        private final ServerSocket serverSocket;
+        private final List<String> lines = new CopyOnWriteArrayList<>();
+        private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+        /** the lines are not read while paused */
+        private volatile boolean paused;
+
+        LineServer() throws IOException {
+            this(0);
+        }
+
+        LineServer(int receiveBufferSize) throws IOException {
+            serverSocket = new ServerSocket();
+            if (receiveBufferSize > 0) {
+                serverSocket.setReceiveBufferSize(receiveBufferSize);
+            }
+            serverSocket.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 50);
+            Thread acceptor = new Thread(() -> {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        Socket socket = serverSocket.accept();
+                        sockets.add(socket);
+                        Thread reader = new Thread(() -> read(socket));
+                        reader.setDaemon(true);
+                        reader.start();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private void read(Socket socket) {
+            while (paused && !socket.isClosed()) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), TConstants.UTF8_CHARSET))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    lines.add(line);
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void dropConnections() throws IOException {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            sockets.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            dropConnections();
+        }
+    }
+
+    private LineServer server;
+
+    @Before
+    public void init() throws Exception {
+        server = new LineServer();
+    }
+
+    @After
+    public void end() throws Exception {
+        server.close();
+    }
+
+    private void awaitLines(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (server.lines.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testSessionPut() throws Exception {
+        Configuration configuration = new Configuration.Builder()
+                .putTransport(PutTransport.TELNET).telnetConnections(3).telnetBufferSize(256)
+                .build();
+        // the http port is unused, the telnet lines go to the telnet port
+        Session session = new Session("127.0.0.1", server.getPort(), configuration);
+        session.start();
+        try {
+            List<Point> dataPoints = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                dataPoints.add(new PrimitiveDataPoint("metric", TagSet.of("k", "v"), i, i));
+            }
+            assertTrue(session.put(dataPoints, true, true).getSuccess() == 1000);
+            HashMap<String, String> tags = new HashMap<>();
+            tags.put("k", "v");
+            assertTrue(session.putAsync(new DataPoint.Builder().setMetric("metric")
+                    .setTimestamp(1000L).setTags(tags).setValue(1000).build())
+                    .get(10, TimeUnit.SECONDS).getSuccess() == 1);
+            assertTrue(session.getTelnetClient().flush(10, TimeUnit.SECONDS));
+            awaitLines(1001);
+            assertTrue(server.lines.size() == 1001);
+            assertTrue(server.lines.contains("put metric 999 999 k=v"));
+            assertTrue(server.lines.contains("put metric 1000 1000 k=v"));
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testReconnect() throws Exception {
+        Configuration configuration = new Configuration.Builder().telnetConnections(1).build();
+        TelnetClient client = new TelnetClient("127.0.0.1", server.getPort(), configuration);
+        client.start();
+        try {
+            List<Point> first = new ArrayList<>();
+            first.add(new PrimitiveDataPoint("metric", TagSet.of("k", "v"), 1L, 1L));
+            client.write(first);
+            awaitLines(1);
+            assertTrue(server.lines.size() == 1);
+
+            server.dropConnections();
+            // the lost connection is noticed when opentsdb closes it, then reconnected
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while ((client.getReconnectCount() == 0 || client.getConnectedCount() == 0)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(client.getReconnectCount() == 1);
+            assertTrue(client.getConnectedCount() == 1);
+
+            List<Point> next = new ArrayList<>();
+            next.add(new PrimitiveDataPoint("metric", TagSet.of("k", "v"), 2L, 1L));
+            client.write(next);
+            awaitLines(2);
+            assertTrue(server.lines.get(1).equals("put metric 2 1 k=v"));
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testReconnectSplitLine() throws Exception {
+        // the lines are longer than half a buffer, so most would span two buffers
+        Configuration configuration = new Configuration.Builder().telnetConnections(1)
+                .telnetBufferSize(32).telnetMaxQueuedBytes(64 * 1024 * 1024).build();
+        LineServer stalled = new LineServer(4096);
+        stalled.paused = true;
+        TelnetClient client = new TelnetClient("127.0.0.1", stalled.getPort(), configuration);
+        client.start();
+        try {
+            List<Point> dataPoints = new ArrayList<>();
+            for (int i = 0; i < 200000; i++) {
+                dataPoints.add(new PrimitiveDataPoint("metric", TagSet.of("k", "v"),
+                        1000000L + i, 1L));
+            }
+            client.write(dataPoints);
+            // wait until the socket would block in the middle of a buffer
+            long queued = -1;
+            while (client.getQueuedBytes() != queued) {
+                queued = client.getQueuedBytes();
+                Thread.sleep(200);
+            }
+            assertTrue(queued > 0);
+
+            stalled.dropConnections();
+            stalled.paused = false;
+            assertTrue(client.flush(10, TimeUnit.SECONDS));
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (!stalled.lines.contains("put metric 1199999 1 k=v")
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(client.getReconnectCount() == 1);
+            assertTrue(!stalled.lines.isEmpty());
+            // the line being written is sent whole again, not from the start of its last buffer
+            for (String line : stalled.lines) {
+                assertTrue(line, line.matches("put metric 1[0-9]{6} 1 k=v"));
+            }
+        } finally {
+            client.close();
+            stalled.close();
+        }
+    }
+}
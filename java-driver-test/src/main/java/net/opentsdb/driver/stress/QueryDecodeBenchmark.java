@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.stress;
+
+import com.alibaba.fastjson.JSON;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import net.opentsdb.driver.core.codec.QueryResultDecoder;
+import net.opentsdb.driver.core.model.QueryResult;
+
+/**
+ * A micro benchmark of decoding a query response of one day of 1 second data points, parsing
+ * it to a string and the dps to a map with fastjson as the driver did before against
+ * {@link QueryResultDecoder} decoding the bytes straight to the primitive arrays.
+ * <p/>
+ * Sample usage: QueryDecodeBenchmark [iterations]
+ */
+public class QueryDecodeBenchmark {
+    private static final int ROUNDS = 5;
+    private static final int POINTS = 86400;
+
+    /** keeps the results alive so the jit can not drop the loops */
+    private static long sink;
+
+    private static byte[] response(boolean doubles) {
+        Random random = new Random(42);
+        StringBuilder json = new StringBuilder("[{\"metric\":\"sys.cpu.user\",")
+                .append("\"tags\":{\"host\":\"web01\"},\"aggregateTags\":[],\"dps\":{");
+        for (int i = 0; i < POINTS; i++) {
+            json.append(i > 0 ? "," : "").append('"').append(1546300800 + i).append("\":");
+            if (doubles) {
+                json.append(random.nextDouble() * 100);
+            } else {
+                json.append(random.nextInt(1000000));
+            }
+        }
+        return json.append("}}]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long fastjson(byte[] response, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            String content = new String(response, StandardCharsets.UTF_8);
+            List<QueryResult> results = JSON.parseArray(content, QueryResult.class);
+            sink += results.get(0).size();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long decoder(byte[] response, int iterations) throws IOException {
+        QueryResultDecoder decoder = new QueryResultDecoder();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            List<QueryResult> results = decoder.decode(new ByteArrayInputStream(response));
+            sink += results.get(0).size();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void run(String name, byte[] response, int iterations) throws IOException {
+        // the first rounds warm up the jit
+        for (int round = 0; round < ROUNDS; round++) {
+            long fastjson = fastjson(response, iterations);
+            long decoder = decoder(response, iterations);
+            System.out.println(String.format(
+                    "%s round %d : fastjson %.1f ns/point, decoder %.1f ns/point", name, round,
+                    (double) fastjson / iterations / POINTS, (double) decoder / iterations / POINTS));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        run("long", response(false), iterations);
+        run("double", response(true), iterations);
+        System.out.println(sink == 0 ? "" : "done");
+    }
+}
@@ -35,10 +35,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import net.opentsdb.driver.core.Cluster;
+import net.opentsdb.driver.core.PutTransport;
 import net.opentsdb.driver.core.Session;
 import net.opentsdb.driver.core.conf.Configuration;
 import net.opentsdb.driver.core.exceptions.ErrorValueTypeException;
 import net.opentsdb.driver.core.model.DataPoint;
+import net.opentsdb.driver.core.policies.LeastOutstandingPolicy;
+import net.opentsdb.driver.core.policies.LoadBalancingPolicy;
+import net.opentsdb.driver.core.policies.PowerOfTwoChoicesPolicy;
+import net.opentsdb.driver.core.policies.RoundRobinPolicy;
 
 /**
  * A simple stress tool to demonstrate the use of the driver.
@@ -54,6 +59,8 @@ public class Stress {
     private String host;
     private int port;
     private int batch;
+    private PutTransport transport = PutTransport.HTTP;
+    private LoadBalancingPolicy loadBalancingPolicy = new RoundRobinPolicy();
 
     private static Options OPTIONS;
     private static HelpFormatter OPTIONS_FORMATTER;
@@ -74,9 +81,11 @@ public class Stress {
         OPTIONS.addOption("t", "threadNumber", true, "thread number to run all stress");
         OPTIONS.addOption("n", "number", true, "query / put data point number ");
         OPTIONS.addOption("o", "operation", true, "query / put data operation ");
-        OPTIONS.addOption("h", "host", true, "server host ");
+        OPTIONS.addOption("h", "host", true, "server host, or comma separated hosts ");
         OPTIONS.addOption("p", "port", true, "server port ");
         OPTIONS.addOption("b", "port", true, "use put multi data point");
+        OPTIONS.addOption("T", "transport", true, "put transport http / telnet ");
+        OPTIONS.addOption("L", "balancing", true, "load balancing of the hosts rr / least / p2c ");
         OPTIONS_FORMATTER = new HelpFormatter();
     }
 
@@ -121,6 +130,26 @@ public class Stress {
         if (cmd.hasOption('b')) {
             batch = Integer.parseInt(cmd.getOptionValue('b'));
         }
+
+        if (cmd.hasOption('T')) {
+            transport = PutTransport.valueOf(cmd.getOptionValue('T').toUpperCase());
+        }
+
+        if (cmd.hasOption('L')) {
+            switch (cmd.getOptionValue('L')) {
+                case "rr":
+                    loadBalancingPolicy = new RoundRobinPolicy();
+                    break;
+                case "least":
+                    loadBalancingPolicy = new LeastOutstandingPolicy();
+                    break;
+                case "p2c":
+                    loadBalancingPolicy = new PowerOfTwoChoicesPolicy();
+                    break;
+                default:
+                    return false;
+            }
+        }
         return true;
     }
 
@@ -140,8 +169,9 @@ public class Stress {
         ExecutorService pool = Executors.newFixedThreadPool(threadNumber,
                 new ThreadFactoryBuilder().setNameFormat("StressClient-%s").build());
 
-        Configuration configuration = new Configuration.Builder().build();
-        Cluster cluster = new Cluster.Builder().withAddress(host).withPort(port)
+        Configuration configuration = new Configuration.Builder().putTransport(transport)
+                .loadBalancingPolicy(loadBalancingPolicy).build();
+        Cluster cluster = new Cluster.Builder().addContactPoints(host.split(",")).withPort(port)
                 .withConfiguration(configuration).build();
         Session session;
         try {
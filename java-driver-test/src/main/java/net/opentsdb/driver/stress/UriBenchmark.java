@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.opentsdb.driver.stress;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Map;
+import net.opentsdb.driver.core.conf.Configuration;
+import net.opentsdb.driver.core.http.HttpApiEndpoint;
+import net.opentsdb.driver.core.http.HttpClient;
+import net.opentsdb.driver.core.http.HttpClientUrI;
+
+/**
+ * A micro benchmark of resolving the put uri of a request, building the put params and the uri
+ * for every request as the driver did before against the uri cached by the {@link HttpClient}.
+ * <p/>
+ * Sample usage: UriBenchmark [iterations]
+ */
+public class UriBenchmark {
+    private static final int ROUNDS = 5;
+
+    /** keeps the results alive so the jit can not drop the loops */
+    private static int sink;
+
+    private static Map<String, String> putParams() {
+        Map<String, String> map = new HashMap<>();
+        map.put("details", "true");
+        map.put("sync", "true");
+        map.put("timeout", 10000 + "");
+        return map;
+    }
+
+    private static long rebuilt(int iterations) throws URISyntaxException {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            URI uri = new HttpClientUrI.Builder().setHost("127.0.0.1").setPort(4242)
+                    .setApi(HttpApiEndpoint.PUT).setEnableSSL(false).build()
+                    .createURI(putParams());
+            sink += uri.hashCode();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long cached(HttpClient httpClient, Map<String, String> params, int iterations)
+            throws URISyntaxException {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            URI uri = httpClient.getURI(HttpApiEndpoint.PUT, params);
+            sink += uri.hashCode();
+        }
+        return System.nanoTime() - start;
+    }
+
+    public static void main(String[] args) throws URISyntaxException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        HttpClient httpClient =
+                new HttpClient(null, new Configuration.Builder().build(), "127.0.0.1", 4242);
+        Map<String, String> params = putParams();
+
+        // the first rounds warm up the jit
+        for (int round = 0; round < ROUNDS; round++) {
+            long rebuilt = rebuilt(iterations);
+            long cached = cached(httpClient, params, iterations);
+            System.out.println(String.format("round %d : rebuilt %.1f ns/op, cached %.1f ns/op",
+                    round, (double) rebuilt / iterations, (double) cached / iterations));
+        }
+        System.out.println(sink == 0 ? "" : "done");
+    }
+}